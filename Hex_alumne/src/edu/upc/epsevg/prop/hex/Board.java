@@ -1,6 +1,7 @@
 package edu.upc.epsevg.prop.hex;
 
 
+import edu.upc.epsevg.prop.hex.utilitats.MovimentCerca;
 import java.awt.*;
 import java.awt.RadialGradientPaint;
 import java.awt.RenderingHints;
@@ -11,7 +12,6 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
@@ -51,6 +51,7 @@ public class Board extends MouseAdapter {
     private IPlayer players[];
     private HexGameStatus status;
     private boolean pauseInAutomatic=true;
+    private PoliticaGC politicaGC = PoliticaGC.SEMPRE;
     private Point lastPostAuto;
     private PlayerType curPlayer = PlayerType.PLAYER1;
     private UIStates gameEstatus;
@@ -277,12 +278,15 @@ public class Board extends MouseAdapter {
      * <code>{@link System#gc()}</code>
      */
     public static void gc() {
-        Object obj = new Object();
-        WeakReference ref = new WeakReference<Object>(obj);
-        obj = null;
-        while (ref.get() != null) {
-            System.gc();
-        }
+        PoliticaGC.forca();
+    }
+
+    /**
+     * @param politica Quan s'ha de forçar la recollida de memòria abans i
+     * després de cada moviment. Per defecte, sempre.
+     */
+    public void setPoliticaGC(PoliticaGC politica) {
+        this.politicaGC = politica;
     }
     /**
      * Fil per realitzar el moviment
@@ -305,13 +309,16 @@ public class Board extends MouseAdapter {
         @Override
         public PlayerMove doInBackground() {
             try {
-                gc();
+                politicaGC.aplica();
                 PlayerMove m = getCurrentPlayer().move(new HexGameStatus(status));//, curPlayer); 
                 String info = "Profunditat màxima:" + m.getMaxDepthReached() + "\n";
                 info += "Node explorats:    " + m.getNumerOfNodesExplored();
+                if (m instanceof MovimentCerca) {
+                    info += "\n" + ((MovimentCerca) m).getEstadistiques();
+                }
                 Board.this.controlPanel.setInfo(info);
                 hasMoved = true;
-                gc();
+                politicaGC.aplica();
                 
                 return m;
             } catch (Exception e) {
@@ -0,0 +1,149 @@
+package edu.upc.epsevg.prop.hex;
+
+/**
+ * Estadístiques d'un enfrontament entre dos jugadors que s'actualitzen a
+ * cada partida: victòries, empats i derrotes del jugador 1, la diferència
+ * d'Elo estimada i el seu interval de confiança.
+ *
+ * La diferència d'Elo surt de la puntuació mitjana {@code s} del jugador 1
+ * (1 per victòria, 0.5 per empat) amb el model logístic,
+ * {@code -400 log10(1 / s - 1)}. L'interval es calcula sobre la puntuació
+ * amb la variància observada de les partides (aproximació normal) i es
+ * transforma a Elo, de manera que no és simètric.
+ */
+public class EstadistiquesElo {
+
+    /** Quantil de la normal per a un interval del 95%. */
+    public static final double Z_95 = 1.959964;
+
+    private long victories;
+    private long empats;
+    private long derrotes;
+
+    /**
+     * Afegeix el resultat d'una partida.
+     *
+     * @param guanyador El guanyador, o null si és un empat.
+     */
+    public void afegeix(PlayerType guanyador) {
+        if (guanyador == null) {
+            empats++;
+        } else if (guanyador == PlayerType.PLAYER1) {
+            victories++;
+        } else {
+            derrotes++;
+        }
+    }
+
+    /**
+     * @return Les partides jugades.
+     */
+    public long getPartides() {
+        return victories + empats + derrotes;
+    }
+
+    /**
+     * @return Les victòries del jugador 1.
+     */
+    public long getVictories() {
+        return victories;
+    }
+
+    /**
+     * @return Els empats.
+     */
+    public long getEmpats() {
+        return empats;
+    }
+
+    /**
+     * @return Les derrotes del jugador 1.
+     */
+    public long getDerrotes() {
+        return derrotes;
+    }
+
+    /**
+     * @return La puntuació mitjana del jugador 1, entre 0 i 1, o 0.5 sense
+     * partides.
+     */
+    public double getPuntuacio() {
+        long n = getPartides();
+        return n == 0 ? 0.5 : (victories + 0.5 * empats) / n;
+    }
+
+    /**
+     * Variància de la puntuació d'una partida. Si encara no hi ha cap
+     * victòria o cap derrota, la variància observada és zero (o gairebé) i
+     * donaria intervals i tests massa segurs; es calcula afegint mitja
+     * victòria i mitja derrota.
+     *
+     * @return La variància per partida.
+     */
+    public double getVariancia() {
+        double w = victories;
+        double d = empats;
+        double l = derrotes;
+        if (victories == 0 || derrotes == 0) {
+            w += 0.5;
+            l += 0.5;
+        }
+        double n = w + d + l;
+        double s = (w + 0.5 * d) / n;
+        return (w * (1 - s) * (1 - s) + d * (0.5 - s) * (0.5 - s) + l * s * s) / n;
+    }
+
+    /**
+     * @return La diferència d'Elo estimada del jugador 1 respecte del 2.
+     * És infinita si un jugador ho ha guanyat tot.
+     */
+    public double getElo() {
+        return elo(getPuntuacio());
+    }
+
+    /**
+     * @param z El quantil de la normal (per exemple {@link #Z_95}).
+     * @return L'extrem inferior de l'interval de confiança de la diferència
+     * d'Elo.
+     */
+    public double getEloMinim(double z) {
+        return elo(getPuntuacio() - z * getErrorEstandard());
+    }
+
+    /**
+     * @param z El quantil de la normal (per exemple {@link #Z_95}).
+     * @return L'extrem superior de l'interval de confiança de la diferència
+     * d'Elo.
+     */
+    public double getEloMaxim(double z) {
+        return elo(getPuntuacio() + z * getErrorEstandard());
+    }
+
+    private double getErrorEstandard() {
+        long n = getPartides();
+        return n == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(getVariancia() / n);
+    }
+
+    /**
+     * @param puntuacio Una puntuació mitjana.
+     * @return La diferència d'Elo corresponent amb el model logístic.
+     */
+    public static double elo(double puntuacio) {
+        if (puntuacio <= 0) return Double.NEGATIVE_INFINITY;
+        if (puntuacio >= 1) return Double.POSITIVE_INFINITY;
+        return -400 * Math.log10(1 / puntuacio - 1);
+    }
+
+    /**
+     * @param elo Una diferència d'Elo.
+     * @return La puntuació mitjana esperada amb el model logístic.
+     */
+    public static double puntuacio(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Elo %+.1f [%+.1f, %+.1f] (95%%)", getElo(), getEloMinim(Z_95), getEloMaxim(Z_95));
+    }
+}
@@ -0,0 +1,203 @@
+package edu.upc.epsevg.prop.hex;
+
+import edu.upc.epsevg.prop.hex.players.HEXercici;
+import edu.upc.epsevg.prop.hex.utilitats.RegistrePosicions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Genera posicions etiquetades per ajustar l'heurística amb
+ * {@link edu.upc.epsevg.prop.hex.utilitats.AjustadorPesos}: juga partides
+ * de {@link HEXercici} contra {@link HEXercici} en paral·lel i les guarda en
+ * un {@link RegistrePosicions}, que descarta les posicions repetides.
+ *
+ * Cada partida comença amb un nombre aleatori de jugades aleatòries (d'1 fins
+ * al màxim indicat) perquè no es juguin sempre les mateixes partides.
+ * Després els dos jugadors fan una cerca iterativa d'un sol fil limitada
+ * per nodes, de manera que una partida només depèn de la seva llavor i no
+ * de la càrrega de la màquina. De cada posició cercada es guarda, amb la
+ * probabilitat de mostreig, la puntuació de la cerca i si el jugador que
+ * mou acaba guanyant; les posicions on la cerca ja ha demostrat la victòria
+ * o la derrota no es guarden, perquè no aporten res a l'heurística.
+ *
+ * Es juga una partida per fil, amb tants fils com processadors per defecte.
+ * Els jugadors avaluen amb el perfil de pesos de
+ * {@code -Dheuristica.pesos=<fitxer>} si n'hi ha. Si el fitxer de sortida ja
+ * existeix, les posicions s'hi afegeixen.
+ *
+ * Ús: {@code GeneradorPosicions [partides] [mida] [nodes per moviment]
+ * [fitxer] [fils] [jugades aleatòries] [mostreig] [llavor]}
+ */
+public class GeneradorPosicions {
+
+    /** Profunditat màxima de la cerca, que a la pràctica limiten els nodes. */
+    private static final int PROFUNDITAT_MAXIMA = 64;
+    private static final int MEGABYTES_TAULA = 8;
+    /**
+     * Les puntuacions a partir d'aquest valor són victòries o derrotes
+     * demostrades, com a {@link edu.upc.epsevg.prop.hex.utilitats.MinimaxIteratiu}.
+     */
+    private static final int DECIDIDA = Integer.MAX_VALUE / 2;
+
+    private final int size;
+    private final long nodesPerMoviment;
+    private final int jugadesAleatories;
+    private final double mostreig;
+    private final long llavor;
+
+    private final AtomicLong partidesJugades = new AtomicLong();
+    private final AtomicLong moviments = new AtomicLong();
+    private final AtomicLong nodes = new AtomicLong();
+
+    /**
+     * @param size La mida del tauler.
+     * @param nodesPerMoviment Nodes màxims de cada cerca.
+     * @param jugadesAleatories Jugades aleatòries màximes al principi de
+     * cada partida.
+     * @param mostreig Probabilitat de guardar cada posició cercada.
+     * @param llavor Llavor de la primera partida; la resta en surten.
+     */
+    public GeneradorPosicions(int size, long nodesPerMoviment, int jugadesAleatories, double mostreig, long llavor) {
+        this.size = size;
+        this.nodesPerMoviment = nodesPerMoviment;
+        this.jugadesAleatories = jugadesAleatories;
+        this.mostreig = mostreig;
+        this.llavor = llavor;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int partides = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 11;
+        long nodesPerMoviment = args.length > 2 ? Long.parseLong(args[2]) : 20000;
+        Path fitxer = Paths.get(args.length > 3 ? args[3] : "posicions" + size + ".bin");
+        int fils = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        int jugadesAleatories = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+        double mostreig = args.length > 6 ? Double.parseDouble(args[6]) : 0.25;
+        long llavor = args.length > 7 ? Long.parseLong(args[7]) : 1;
+
+        GeneradorPosicions generador = new GeneradorPosicions(size, nodesPerMoviment, jugadesAleatories, mostreig, llavor);
+        try (RegistrePosicions registre = new RegistrePosicions(fitxer, size)) {
+            long abans = registre.getNumPosicions();
+            long inici = System.nanoTime();
+            generador.genera(partides, fils, registre);
+            double segons = (System.nanoTime() - inici) / 1e9;
+            System.out.printf("%d partides, %d moviments en %.1f s (%.0f nodes/s)%n",
+                    generador.partidesJugades.get(), generador.moviments.get(), segons, generador.nodes.get() / segons);
+            System.out.printf("%d posicions noves (%d duplicades) a %s, que en té %d%n",
+                    registre.getNumPosicions() - abans, registre.getDuplicades(), fitxer, registre.getNumPosicions());
+        }
+    }
+
+    /**
+     * Juga les partides i n'afegeix les posicions al registre.
+     *
+     * @param partides Nombre de partides.
+     * @param fils Nombre de partides alhora.
+     * @param registre On es guarden les posicions.
+     * @throws IOException Si no es pot escriure al registre.
+     */
+    public void genera(int partides, int fils, RegistrePosicions registre) throws IOException {
+        // Les llavors es trien abans de començar perquè no depenguin de l'ordre d'execució
+        SplittableRandom random = new SplittableRandom(llavor);
+        long[] llavors = new long[partides];
+        for (int i = 0; i < partides; i++) {
+            llavors[i] = random.nextLong();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, fils), r -> {
+            Thread t = new Thread(r, "GeneradorPosicions-partida");
+            t.setDaemon(true);
+            return t;
+        });
+        int informe = Math.max(1, partides / 20);
+        try {
+            List<Future<?>> resultats = new ArrayList<>();
+            for (int i = 0; i < partides; i++) {
+                long llavorPartida = llavors[i];
+                resultats.add(executor.submit(() -> {
+                    try {
+                        juga(llavorPartida, registre);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }));
+            }
+            for (int i = 0; i < partides; i++) {
+                resultats.get(i).get();
+                if ((i + 1) % informe == 0) {
+                    System.out.printf("%d/%d partides, %d posicions (%d duplicades)%n",
+                            i + 1, partides, registre.getNumPosicions(), registre.getDuplicades());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generació interrompuda", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw new IllegalStateException("Error en una partida", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Juga una partida i n'afegeix les posicions mostrejades al registre.
+     *
+     * @param llavorPartida La llavor de la partida.
+     * @param registre On es guarden les posicions.
+     * @throws IOException Si no es pot escriure al registre.
+     */
+    private void juga(long llavorPartida, RegistrePosicions registre) throws IOException {
+        SplittableRandom random = new SplittableRandom(llavorPartida);
+        HEXercici[] jugadors = new HEXercici[2];
+        for (int j = 0; j < 2; j++) {
+            jugadors[j] = new HEXercici(SearchType.MINIMAX_IDS, PROFUNDITAT_MAXIMA, MEGABYTES_TAULA, 1, 0);
+            jugadors[j].setNodesPerMoviment(nodesPerMoviment);
+        }
+
+        HexGameStatus status = new HexGameStatus(size);
+        int aleatories = jugadesAleatories <= 0 ? 0 : 1 + random.nextInt(jugadesAleatories);
+        for (int i = 0; i < aleatories && !status.isGameOver(); i++) {
+            List<MoveNode> moves = status.getMoves();
+            status.placeStone(moves.get(random.nextInt(moves.size())).getPoint());
+        }
+
+        List<HexGameStatus> estats = new ArrayList<>();
+        List<Integer> puntuacions = new ArrayList<>();
+        long movimentsPartida = 0;
+        long nodesPartida = 0;
+        while (!status.isGameOver()) {
+            HEXercici jugador = jugadors[status.getCurrentPlayer() == PlayerType.PLAYER1 ? 0 : 1];
+            PlayerMove move = jugador.move(new HexGameStatus(status));
+            int puntuacio = jugador.getPuntuacio();
+            if (Math.abs((long) puntuacio) < DECIDIDA && random.nextDouble() < mostreig) {
+                estats.add(new HexGameStatus(status));
+                puntuacions.add(puntuacio);
+            }
+            status.placeStone(move.getPoint());
+            movimentsPartida++;
+            nodesPartida += move.getNumerOfNodesExplored();
+        }
+
+        PlayerType guanyador = status.GetWinner();
+        for (int i = 0; i < estats.size(); i++) {
+            HexGameStatus estat = estats.get(i);
+            registre.afegeix(estat, puntuacions.get(i), estat.getCurrentPlayer() == guanyador);
+        }
+        partidesJugades.incrementAndGet();
+        moviments.addAndGet(movimentsPartida);
+        nodes.addAndGet(nodesPartida);
+    }
+}
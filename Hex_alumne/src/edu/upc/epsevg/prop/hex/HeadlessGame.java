@@ -5,25 +5,46 @@ package edu.upc.epsevg.prop.hex;
 import edu.upc.epsevg.prop.hex.players.H_E_X_Player;
 import edu.upc.epsevg.prop.hex.players.HumanPlayer;
 import edu.upc.epsevg.prop.hex.players.RandomPlayer;
-import java.lang.ref.WeakReference;
+import edu.upc.epsevg.prop.hex.utilitats.EstadistiquesCerca;
+import edu.upc.epsevg.prop.hex.utilitats.MovimentCerca;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
 
 /**
+ * Juga partides sense interfície entre dos jugadors. Amb els jugadors
+ * passats al constructor, el jugador 1 sempre juga amb
+ * {@link PlayerType#PLAYER1} i comença. Als tornejos amb fàbriques de
+ * jugadors, en canvi, els jugadors canvien de color a cada partida: el
+ * jugador 1 comença a les partides parelles i el 2 a les senars. Els
+ * resultats, l'Elo i el {@link SPRT} són sempre del jugador 1 respecte del
+ * 2, sigui quin sigui el color amb què han jugat, de manera que en aquests
+ * tornejos no mesuren l'avantatge de començar.
  *
  * @author bernat
  */
 public class HeadlessGame {
 
     private IPlayer players[];
-    private HexGameStatus status;
+    private LongFunction<IPlayer> fabrica1;
+    private LongFunction<IPlayer> fabrica2;
+    private long llavor;
     private int gameCount;
     private int timeout;
     private int size;
+    private PoliticaGC politicaGC;
+    private boolean telemetria;
+    private RegistrePartides registre;
+    private SPRT sprt;
     
     public static void main(String[] args) {
 
@@ -35,6 +56,8 @@ public class HeadlessGame {
         GameResult gr = game.start();
         System.out.println(gr);
 
+        // Torneig reproduïble amb 4 partides alhora i jugadors nous a cada partida:
+        // new HeadlessGame(llavor -> new RandomPlayer("Paco", llavor), llavor -> new H_E_X_Player(2), 9, 5, 10, 42).start(4);
     }
 
     //=====================================================================================0
@@ -45,92 +68,337 @@ public class HeadlessGame {
         players[1] = p2;
         this.gameCount = gameCount;
         this.timeout = timeout;
+        this.politicaGC = PoliticaGC.SEMPRE;
+    }
+
+    /**
+     * Crea un torneig on cada partida juga amb jugadors nous, per poder jugar
+     * partides alhora amb {@link #start(int)}.
+     *
+     * @param p1 Crea el jugador 1 d'una partida a partir de la llavor de la
+     * partida.
+     * @param p2 Crea el jugador 2 d'una partida a partir de la llavor de la
+     * partida.
+     * @param size Mida del tauler.
+     * @param timeout Segons per moviment.
+     * @param gameCount Nombre de partides.
+     * @param llavor Llavor de la qual surten les llavors de les partides: amb
+     * la mateixa llavor i jugadors deterministes el resultat és el mateix.
+     * Aquests tornejos no forcen la recollida de memòria entre moviments si
+     * no es canvia amb {@link #setPoliticaGC(PoliticaGC)}.
+     */
+    public HeadlessGame(LongFunction<IPlayer> p1, LongFunction<IPlayer> p2, int size, int timeout, int gameCount, long llavor) {
+        this.size = size;
+        this.fabrica1 = p1;
+        this.fabrica2 = p2;
+        this.gameCount = gameCount;
+        this.timeout = timeout;
+        this.llavor = llavor;
+        this.politicaGC = PoliticaGC.MAI;
+    }
+
+    /**
+     * @param politica Quan s'ha de forçar la recollida de memòria després de
+     * cada moviment.
+     */
+    public void setPoliticaGC(PoliticaGC politica) {
+        this.politicaGC = politica;
+    }
+
+    /**
+     * Activa o desactiva la telemetria: els resultats inclouen, per a cada
+     * jugador, el temps per moviment, els bytes assignats i les recollides
+     * de memòria (vegeu {@link ServeiMoviments}).
+     *
+     * @param activa Si s'ha de recollir.
+     */
+    public void setTelemetria(boolean activa) {
+        this.telemetria = activa;
+    }
+
+    /**
+     * Guarda totes les partides al registre a mesura que acaben, amb la
+     * casella, el temps, els nodes i la profunditat de cada moviment. El
+     * registre es pot compartir entre diversos tornejos i no es tanca en
+     * acabar.
+     *
+     * @param registre El registre, o null per no guardar-les.
+     */
+    public void setRegistre(RegistrePartides registre) {
+        this.registre = registre;
+    }
+
+    /**
+     * Atura el torneig tan bon punt el test conclou si el jugador 1 és més
+     * fort que el 2 o no. El nombre de partides passa a ser el màxim. Per
+     * comparar la força dels jugadors cal un torneig amb fàbriques, on
+     * alternen el color, i convé que el nombre de partides sigui parell:
+     * amb els jugadors del constructor el jugador 1 sempre comença i la
+     * diferència inclou l'avantatge de començar.
+     *
+     * @param sprt El test, o null per jugar sempre totes les partides.
+     */
+    public void setSPRT(SPRT sprt) {
+        this.sprt = sprt;
     }
 
     public GameResult start() {
-        GameResult gr = new GameResult();
-        for (int i = 0; i < gameCount; i++) {
+        if (players == null) {
+            return start(1);
+        }
+        GameResult gr = new GameResult(players[0].getName(), players[1].getName());
+        for (int i = 0; i < gameCount && !gr.concluded(); i++) {
             //System.out.println(">" + i);
-            gr.update(play(players[0], players[1]));
+            gr.add(play(players, false, true));
         }
         return gr;
     }
 
-    private class Result {
-        public boolean ok;
+    /**
+     * Juga el torneig amb diverses partides alhora. Cada partida té els seus
+     * jugadors, creats amb la seva llavor, i el seu propi control de temps.
+     * Les partides van per parelles amb la mateixa llavor i els colors
+     * canviats, perquè cada jugador jugui les mateixes obertures amb tots
+     * dos colors;
+     * els resultats s'afegeixen en l'ordre de les partides, de manera que no
+     * depenen de quina acaba abans. Amb un {@link SPRT}, el torneig s'atura
+     * a la primera partida, en aquest ordre, després de la qual el test
+     * conclou, i s'interrompen les partides posteriors que s'estiguin jugant.
+     *
+     * Les partides simultànies es reparteixen els processadors: perquè el
+     * temps per moviment sigui el mateix que jugant-les d'una en una,
+     * {@code concurrencia} no ha de passar del nombre de processadors lliures
+     * dividit pels fils de cada jugador. Tampoc convé forçar la recollida de
+     * memòria amb la política {@link PoliticaGC#SEMPRE}, perquè cada
+     * recollida atura totes les partides.
+     *
+     * Amb una sola partida alhora es mostra el progrés de cada moviment com
+     * amb {@link #start()}; amb més, una línia per partida acabada.
+     *
+     * @param concurrencia Nombre màxim de partides alhora.
+     * @return Els resultats de totes les partides.
+     */
+    public GameResult start(int concurrencia) {
+        if (fabrica1 == null) {
+            throw new IllegalStateException("Per jugar partides alhora cal crear el joc amb fàbriques de jugadors");
+        }
+        // Les llavors es trien abans de començar perquè no depenguin de l'ordre d'execució
+        SplittableRandom random = new SplittableRandom(llavor);
+        long[] llavors = new long[(gameCount + 1) / 2];
+        for (int i = 0; i < llavors.length; i++) {
+            llavors[i] = random.nextLong();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrencia), r -> {
+            Thread t = new Thread(r, "HeadlessGame-partida");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<GameResult>> partides = new ArrayList<>();
+            for (int i = 0; i < gameCount; i++) {
+                long llavorPartida = llavors[i / 2];
+                boolean intercanviats = i % 2 == 1;
+                partides.add(executor.submit(() -> {
+                    // Cada jugador té la seva llavor perquè no segueixin la mateixa seqüència
+                    IPlayer jugador1 = fabrica1.apply(llavorPartida);
+                    IPlayer jugador2 = fabrica2.apply(~llavorPartida);
+                    IPlayer[] jugadors = intercanviats ? new IPlayer[]{jugador2, jugador1} : new IPlayer[]{jugador1, jugador2};
+                    try {
+                        return play(jugadors, intercanviats, concurrencia <= 1);
+                    } finally {
+                        tanca(jugadors);
+                    }
+                }));
+            }
+            GameResult gr = null;
+            for (int i = 0; i < gameCount; i++) {
+                GameResult resultat = partides.get(i).get();
+                if (gr == null) {
+                    gr = new GameResult(resultat.name1, resultat.name2);
+                }
+                gr.add(resultat);
+                if (concurrencia > 1) {
+                    PlayerType guanyador = resultat.results.get(0);
+                    System.out.println("Partida " + (i + 1) + "/" + gameCount + ": "
+                            + (guanyador == null ? "empat" : "guanya " + (guanyador == PlayerType.PLAYER1 ? resultat.name1 : resultat.name2)));
+                }
+                if (gr.concluded()) break;
+            }
+            return gr;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Torneig interromput", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Error en una partida del torneig", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private PlayerType play(IPlayer player, IPlayer player0) {
-        this.status = new HexGameStatus(size);
-
-        while (!this.status.isGameOver()) {
+    /**
+     * Juga una partida.
+     *
+     * @param players Els dos jugadors de la partida, en l'ordre dels colors:
+     * el primer juga amb {@link PlayerType#PLAYER1}.
+     * @param intercanviats Si el primer és el jugador 2 del torneig.
+     * @param progres Si s'escriu el color de cada moviment a mesura que es
+     * juga, cosa que només té sentit si no hi ha altres partides alhora.
+     * @return El resultat de la partida per al jugador 1 i el 2 del torneig.
+     */
+    private GameResult play(IPlayer[] players, boolean intercanviats, boolean progres) {
+        final HexGameStatus status = new HexGameStatus(size);
+        int primer = intercanviats ? 1 : 0;
+        GameResult gr = new GameResult(players[primer].getName(), players[1 - primer].getName());
+        // El registre guarda la partida tal com s'ha jugat, per colors
+        PartidaRegistrada partida = registre == null ? null
+                : new PartidaRegistrada(size, players[0].getName(), players[1].getName());
 
-            final Semaphore semaphore = new Semaphore(1);
-            semaphore.tryAcquire();
-            //System.out.println("." + new Date());
-            final Result r = new Result();
-            PlayerType cp = status.getCurrentPlayer();
-            Thread t1 = new Thread(() -> {
-                PlayerMove m = null;
-                try {
-                    m = players[cp == PlayerType.PLAYER1 ? 0 : 1].move(new HexGameStatus(status));
-                } catch(Exception ex) {
+        try (ServeiMoviments servei = new ServeiMoviments(players, timeout, telemetria)) {
+            while (!status.isGameOver()) {
+                PlayerType cp = status.getCurrentPlayer();
+                int jugador = cp == PlayerType.PLAYER1 ? 0 : 1;
+                ServeiMoviments.Resultat r = servei.mou(jugador, status);
+                if (Thread.currentThread().isInterrupted()) {
+                    // El torneig s'ha aturat: la partida no compta
+                    throw new CancellationException("Torneig aturat");
+                }
+                if (r.getError() != null) {
                     System.out.println("Excepció descontrolada al player:"+cp.name());
-                    ex.printStackTrace();
+                    r.getError().printStackTrace();
                 }
+                PlayerMove m = r.getMoviment();
                 if (m != null) {
                     status.placeStone(m.getPoint());
                 } else {
                     status.forceLoser();
                 }
-                System.out.print(cp==PlayerType.PLAYER1?"1":"2");
-                r.ok = true;
-                semaphore.release();
-            });
-
-            Thread t2 = new Thread(() -> {
-                try {
-                    Thread.sleep(HeadlessGame.this.timeout * 1000);
-                } catch (InterruptedException ex) {
+                if (progres) {
+                    System.out.print(cp==PlayerType.PLAYER1?"1":"2");
                 }
-                if (!r.ok) {
-                    players[cp == PlayerType.PLAYER1 ? 0 : 1].timeout();
+                gr.measure(jugador ^ primer, r);
+                if (partida != null) {
+                    partida.afegeix(m, r.getNanos());
                 }
-            });
-
-            t1.start();
-            t2.start();
-            long WAIT_EXTRA_TIME = 2000;
+                // Netegem la memòria (for free!)
+                politicaGC.aplica();
+            }
+        }
+        PlayerType guanyador = status.winnerPlayer;
+        if (intercanviats && guanyador != null) {
+            guanyador = guanyador == PlayerType.PLAYER1 ? PlayerType.PLAYER2 : PlayerType.PLAYER1;
+        }
+        gr.update(guanyador);
+        if (partida != null) {
+            partida.setGuanyador(status.winnerPlayer);
             try {
-                if (!semaphore.tryAcquire(1, timeout * 1000 + WAIT_EXTRA_TIME, TimeUnit.MILLISECONDS)) {
+                registre.afegeix(partida);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("No s'ha pogut guardar la partida", ex);
+            }
+        }
+        return gr;
+    }
 
-                    System.out.println("Espera il·legal ! Player trampós:"+cp.name());
-                    //throw new RuntimeException("Jugador trampós ! Espera il·legal !");
-                    // Som millors persones deixant que el jugador il·legal continui jugant...
-                    semaphore.acquire();
+    /**
+     * Tanca els jugadors que tenen recursos propis, com els fils de cerca
+     * de {@link edu.upc.epsevg.prop.hex.players.HEXercici}. Només es tanquen
+     * els jugadors creats per les fàbriques: els que es passen al
+     * constructor són de qui els ha creat.
+     *
+     * @param players Els jugadors d'una partida acabada.
+     */
+    private static void tanca(IPlayer[] players) {
+        for (IPlayer player : players) {
+            if (player instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) player).close();
+                } catch (Exception ex) {
+                    System.out.println("Error en tancar el jugador " + player.getName());
+                    ex.printStackTrace();
                 }
-
-            } catch (InterruptedException ex) {
-                Logger.getLogger(HeadlessGame.class.getName()).log(Level.SEVERE, null, ex);
             }
-            // Netegem la memòria (for free!)
-            gc();
-            
         }
-        return status.winnerPlayer;
     }
 
     private class GameResult {
 
         java.util.List<PlayerType> results;
+        String name1;
+        String name2;
+        // Telemetria de cada jugador
+        long[] moves = new long[2];
+        long[] nanos = new long[2];
+        long[] maxNanos = new long[2];
+        long[] bytes = new long[2];
+        long[] collections = new long[2];
+        long[] collectionMillis = new long[2];
+        EstadistiquesElo elo = new EstadistiquesElo();
+        // Estadístiques de cerca acumulades, si els moviments en porten
+        EstadistiquesCerca[] search = new EstadistiquesCerca[2];
 
-        public GameResult() {
+        public GameResult(String name1, String name2) {
             results = new ArrayList<PlayerType>();
-
+            this.name1 = name1;
+            this.name2 = name2;
         }
 
         public void update(PlayerType res) {
             results.add(res);
+            elo.afegeix(res);
+        }
+
+        /**
+         * @return Si el SPRT del torneig ja ha conclòs.
+         */
+        public boolean concluded() {
+            return sprt != null && sprt.decisio(elo) != SPRT.Decisio.CONTINUA;
+        }
+
+        /**
+         * Afegeix la mesura d'un moviment.
+         *
+         * @param player Índex del jugador, 0 o 1.
+         * @param r El resultat del moviment.
+         */
+        public void measure(int player, ServeiMoviments.Resultat r) {
+            moves[player]++;
+            nanos[player] += r.getNanos();
+            maxNanos[player] = Math.max(maxNanos[player], r.getNanos());
+            bytes[player] += Math.max(0, r.getBytes());
+            collections[player] += Math.max(0, r.getRecollides());
+            collectionMillis[player] += Math.max(0, r.getMilisRecollides());
+            if (r.getMoviment() instanceof MovimentCerca) {
+                addSearch(player, ((MovimentCerca) r.getMoviment()).getEstadistiques());
+            }
+        }
+
+        private void addSearch(int player, EstadistiquesCerca estadistiques) {
+            if (search[player] == null) {
+                search[player] = new EstadistiquesCerca();
+            }
+            search[player].acumula(estadistiques);
+        }
+
+        /**
+         * Afegeix els resultats i la telemetria d'altres partides.
+         *
+         * @param altre Els resultats que s'afegeixen.
+         */
+        public void add(GameResult altre) {
+            for (PlayerType res : altre.results) {
+                update(res);
+            }
+            for (int i = 0; i < 2; i++) {
+                moves[i] += altre.moves[i];
+                nanos[i] += altre.nanos[i];
+                maxNanos[i] = Math.max(maxNanos[i], altre.maxNanos[i]);
+                bytes[i] += altre.bytes[i];
+                collections[i] += altre.collections[i];
+                collectionMillis[i] += altre.collectionMillis[i];
+                if (altre.search[i] != null) {
+                    addSearch(i, altre.search[i]);
+                }
+            }
         }
 
         @Override
@@ -154,11 +422,31 @@ public class HeadlessGame {
                 }
             }
 
-            res += "PLAYER 1 (" + pad(players[0].getName(), 40) + "):\t wins " + wins1 + "\t ties:" + ties1 + "\t looses:" + loose1 + "\n";
-            res += "PLAYER 2 (" + pad(players[1].getName(), 40) + "):\t wins " + loose1 + "\t ties:" + ties1 + "\t looses:" + wins1 + "\n";
+            res += "PLAYER 1 (" + pad(name1, 40) + "):\t wins " + wins1 + "\t ties:" + ties1 + "\t looses:" + loose1 + "\n";
+            res += "PLAYER 2 (" + pad(name2, 40) + "):\t wins " + loose1 + "\t ties:" + ties1 + "\t looses:" + wins1 + "\n";
+            res += "PLAYER 1 - PLAYER 2: " + elo + "\n";
+            if (sprt != null) {
+                res += sprt.resum(elo) + " after " + results.size() + " games\n";
+            }
+            if (telemetria) {
+                res += telemetry(1, name1) + telemetry(2, name2);
+            }
+            for (int i = 0; i < 2; i++) {
+                if (search[i] != null) {
+                    res += "PLAYER " + (i + 1) + " (" + pad(i == 0 ? name1 : name2, 40) + "):\t " + search[i].resum() + "\n";
+                }
+            }
             return res;
         }
 
+        private String telemetry(int player, String name) {
+            int i = player - 1;
+            long n = Math.max(1, moves[i]);
+            return String.format("PLAYER %d (%s):\t %d moves\t %.1f ms/move (max %.1f)\t %.1f MB/move\t GC: %d (%d ms)%n",
+                    player, pad(name, 40), moves[i], nanos[i] / 1e6 / n, maxNanos[i] / 1e6,
+                    bytes[i] / 1048576.0 / n, collections[i], collectionMillis[i]);
+        }
+
         public String pad(String inputString, int length) {
             if (inputString.length() >= length) {
                 return inputString;
@@ -179,12 +467,6 @@ public class HeadlessGame {
      * <code>{@link System#gc()}</code>
      */
     public static void gc() {
-        Object obj = new Object();
-        WeakReference ref = new WeakReference<Object>(obj);
-        obj = null;
-        while (ref.get() != null) {
-            System.gc();
-        }
+        PoliticaGC.forca();
     }
 }
-    
\ No newline at end of file
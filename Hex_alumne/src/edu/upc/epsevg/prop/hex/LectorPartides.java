@@ -0,0 +1,287 @@
+package edu.upc.epsevg.prop.hex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Lector d'un registre de partides escrit amb {@link RegistrePartides}.
+ *
+ * L'índex es projecta a memòria, de manera que llegir la partida
+ * {@code n} és una sola lectura del fitxer de partides, sigui quina sigui la
+ * mida del registre. Per analitzar totes les partides,
+ * {@link #recorre(Consumer)} llegeix el fitxer seqüencialment en blocs
+ * grans sense passar per l'índex. Les lectures són posicionals i es poden
+ * fer des de diversos fils alhora.
+ *
+ * Si l'índex no existeix o no correspon a les dades (per exemple, perquè el
+ * procés que escrivia s'ha aturat), es refà en memòria recorrent el fitxer
+ * de partides. El lector veu les partides que hi havia en obrir-lo.
+ */
+public class LectorPartides implements AutoCloseable {
+
+    // Mida dels blocs de la lectura seqüencial
+    private static final int BLOC = 1 << 20;
+
+    private final FileChannel dades;
+    private final LongBuffer index;
+    private final int numPartides;
+    private final long fi;
+
+    private LectorPartides(FileChannel dades, LongBuffer index) throws IOException {
+        this.dades = dades;
+        this.index = index;
+        this.numPartides = index.limit();
+        this.fi = numPartides == 0 ? RegistrePartides.CAPCALERA : fiPartida(dades, index.get(numPartides - 1));
+    }
+
+    /**
+     * Obre un registre de partides per llegir-lo.
+     *
+     * @param fitxer El fitxer de partides.
+     * @return El lector.
+     * @throws IOException Si no es pot llegir o no té el format correcte.
+     */
+    public static LectorPartides obre(Path fitxer) throws IOException {
+        FileChannel dades = FileChannel.open(fitxer, StandardOpenOption.READ);
+        try {
+            comprovaCapcalera(dades, RegistrePartides.MAGIC);
+            Path fitxerIndex = RegistrePartides.fitxerIndex(fitxer);
+            if (Files.exists(fitxerIndex)) {
+                try (FileChannel index = FileChannel.open(fitxerIndex, StandardOpenOption.READ)) {
+                    if (indexCorrecte(dades, index, false)) {
+                        // La projecció continua vàlida després de tancar el canal
+                        ByteBuffer posicions = index.map(FileChannel.MapMode.READ_ONLY, RegistrePartides.CAPCALERA,
+                                index.size() - RegistrePartides.CAPCALERA);
+                        return new LectorPartides(dades, posicions.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+                    }
+                }
+            }
+            return new LectorPartides(dades, LongBuffer.wrap(escaneja(dades)));
+        } catch (IOException ex) {
+            dades.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Mostra un resum d'un registre: partides, victòries i, per a cada
+     * jugador, el temps, els nodes i la profunditat mitjans per moviment.
+     *
+     * Ús: {@code LectorPartides fitxer}
+     */
+    public static void main(String[] args) throws IOException {
+        try (LectorPartides lector = obre(Paths.get(args[0]))) {
+            long[] victories = new long[3];
+            long[] moviments = new long[2];
+            long[] micros = new long[2];
+            long[] nodes = new long[2];
+            long[] profunditat = new long[2];
+            lector.recorre(p -> {
+                PlayerType guanyador = p.getGuanyador();
+                victories[guanyador == null ? 0 : guanyador == PlayerType.PLAYER1 ? 1 : 2]++;
+                for (int i = 0; i < p.getNumMoviments(); i++) {
+                    int j = i % 2;
+                    moviments[j]++;
+                    micros[j] += p.getMicros(i);
+                    nodes[j] += p.getNodes(i);
+                    profunditat[j] += p.getProfunditat(i);
+                }
+            });
+            System.out.println("Partides: " + lector.getNumPartides() + "\t guanya 1: " + victories[1]
+                    + "\t guanya 2: " + victories[2] + "\t sense guanyador: " + victories[0]);
+            for (int j = 0; j < 2; j++) {
+                long n = Math.max(1, moviments[j]);
+                System.out.printf("Jugador %d: %d moviments\t %.1f ms/moviment\t %.0f nodes/moviment\t profunditat %.1f%n",
+                        j + 1, moviments[j], micros[j] / 1e3 / n, (double) nodes[j] / n, (double) profunditat[j] / n);
+            }
+        }
+    }
+
+    /**
+     * @return El nombre de partides.
+     */
+    public int getNumPartides() {
+        return numPartides;
+    }
+
+    /**
+     * Llegeix una partida.
+     *
+     * @param n Índex de la partida, entre 0 i {@link #getNumPartides()} - 1.
+     * @return La partida.
+     * @throws IOException Si no es pot llegir.
+     */
+    public PartidaRegistrada partida(int n) throws IOException {
+        if (n < 0 || n >= numPartides) {
+            throw new IndexOutOfBoundsException("Partida " + n + " de " + numPartides);
+        }
+        long posicio = index.get(n);
+        ByteBuffer registre = ByteBuffer.allocate((int) (fiPartida(dades, posicio) - posicio - 4));
+        llegeix(dades, registre, posicio + 4);
+        registre.flip();
+        return RegistrePartides.descodifica(registre);
+    }
+
+    /**
+     * Recorre totes les partides en ordre.
+     *
+     * @param visitant Rep cada partida.
+     * @throws IOException Si no es pot llegir.
+     */
+    public void recorre(Consumer<PartidaRegistrada> visitant) throws IOException {
+        ByteBuffer bloc = ByteBuffer.allocate(BLOC).order(ByteOrder.LITTLE_ENDIAN);
+        bloc.limit(0);
+        long posicio = RegistrePartides.CAPCALERA;
+        for (int n = 0; n < numPartides; n++) {
+            bloc = assegura(bloc, 4, posicio);
+            posicio += 4;
+            int longitud = bloc.getInt();
+            bloc = assegura(bloc, longitud, posicio);
+            posicio += longitud;
+            ByteBuffer registre = bloc.slice();
+            registre.limit(longitud);
+            bloc.position(bloc.position() + longitud);
+            visitant.accept(RegistrePartides.descodifica(registre));
+        }
+    }
+
+    /**
+     * Fa que el bloc tingui almenys {@code bytes} bytes per llegir, llegint
+     * del fitxer a partir de {@code posicio}, la posició del fitxer que
+     * correspon a la posició del bloc.
+     *
+     * @return El bloc, que pot ser un de nou més gran.
+     */
+    private ByteBuffer assegura(ByteBuffer bloc, int bytes, long posicio) throws IOException {
+        if (bloc.remaining() >= bytes) return bloc;
+        long pendents = bloc.remaining();
+        if (bloc.capacity() < bytes) {
+            ByteBuffer gran = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            gran.put(bloc);
+            bloc = gran;
+        } else {
+            bloc.compact();
+        }
+        int aLlegir = (int) Math.min(bloc.remaining(), fi - posicio - pendents);
+        bloc.limit(bloc.position() + aLlegir);
+        llegeix(dades, bloc, posicio + pendents);
+        bloc.flip();
+        return bloc;
+    }
+
+    @Override
+    public void close() throws IOException {
+        dades.close();
+    }
+
+    static void comprovaCapcalera(FileChannel canal, int magic) throws IOException {
+        ByteBuffer capcalera = ByteBuffer.allocate(RegistrePartides.CAPCALERA).order(ByteOrder.LITTLE_ENDIAN);
+        if (canal.size() < RegistrePartides.CAPCALERA) {
+            throw new IOException("No és un registre de partides vàlid");
+        }
+        llegeix(canal, capcalera, 0);
+        if (capcalera.getInt(0) != magic || capcalera.getInt(4) != RegistrePartides.VERSIO) {
+            throw new IOException("No és un registre de partides vàlid");
+        }
+    }
+
+    /**
+     * Comprova que l'índex tingui la capçalera correcta i que la darrera
+     * partida que indexa sigui sencera dins les dades.
+     *
+     * @param exacte Si la darrera partida indexada ha de ser la darrera de
+     * les dades.
+     */
+    static boolean indexCorrecte(FileChannel dades, FileChannel index, boolean exacte) throws IOException {
+        long mida = index.size();
+        if (mida < RegistrePartides.CAPCALERA || (mida - RegistrePartides.CAPCALERA) % 8 != 0) return false;
+        try {
+            comprovaCapcalera(index, RegistrePartides.MAGIC_INDEX);
+        } catch (IOException ex) {
+            return false;
+        }
+        long fiIndexat = RegistrePartides.CAPCALERA;
+        if (mida > RegistrePartides.CAPCALERA) {
+            ByteBuffer posicio = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            llegeix(index, posicio, mida - 8);
+            long darrera = posicio.getLong(0);
+            if (darrera < RegistrePartides.CAPCALERA || darrera + 4 > dades.size()) return false;
+            fiIndexat = fiPartida(dades, darrera);
+        }
+        return exacte ? fiIndexat == escanejaFi(dades, fiIndexat) : fiIndexat <= dades.size();
+    }
+
+    /**
+     * Recorre les longituds de les partides del fitxer.
+     *
+     * @return La posició de cada partida sencera.
+     */
+    static long[] escaneja(FileChannel dades) throws IOException {
+        long[] posicions = new long[1024];
+        int n = 0;
+        long posicio = RegistrePartides.CAPCALERA;
+        long mida = dades.size();
+        ByteBuffer longitud = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        while (posicio + 4 <= mida) {
+            longitud.clear();
+            llegeix(dades, longitud, posicio);
+            long seguent = posicio + 4 + longitud.getInt(0);
+            if (seguent > mida) break;
+            if (n == posicions.length) {
+                posicions = Arrays.copyOf(posicions, n * 2);
+            }
+            posicions[n++] = posicio;
+            posicio = seguent;
+        }
+        return Arrays.copyOf(posicions, n);
+    }
+
+    /**
+     * @return El final de la darrera partida sencera a partir d'una posició
+     * on comença una partida.
+     */
+    private static long escanejaFi(FileChannel dades, long posicio) throws IOException {
+        long mida = dades.size();
+        ByteBuffer longitud = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        while (posicio + 4 <= mida) {
+            longitud.clear();
+            llegeix(dades, longitud, posicio);
+            long seguent = posicio + 4 + longitud.getInt(0);
+            if (seguent > mida) break;
+            posicio = seguent;
+        }
+        return posicio;
+    }
+
+    /**
+     * @return La posició on acaba la partida que comença a {@code posicio}.
+     */
+    static long fiPartida(FileChannel dades, long posicio) throws IOException {
+        ByteBuffer longitud = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        llegeix(dades, longitud, posicio);
+        return posicio + 4 + longitud.getInt(0);
+    }
+
+    /**
+     * Omple el buffer fins al límit llegint a partir d'una posició.
+     */
+    static void llegeix(FileChannel canal, ByteBuffer buffer, long posicio) throws IOException {
+        while (buffer.hasRemaining()) {
+            int llegits = canal.read(buffer, posicio);
+            if (llegits < 0) {
+                throw new EOFException("El registre de partides està truncat");
+            }
+            posicio += llegits;
+        }
+    }
+}
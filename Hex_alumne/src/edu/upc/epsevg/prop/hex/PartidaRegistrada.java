@@ -0,0 +1,187 @@
+package edu.upc.epsevg.prop.hex;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * Una partida guardada en un registre de partides: la mida del tauler, els
+ * noms dels jugadors, el guanyador i, per a cada moviment, la casella, el
+ * temps que hi ha dedicat el jugador i els nodes i la profunditat que
+ * informa el seu {@link PlayerMove}.
+ *
+ * Les caselles s'indexen com a {@code x * size + y}. Un moviment sense
+ * casella ({@link #SENSE_CASELLA}) és un jugador que no ha retornat cap
+ * moviment i ha perdut la partida.
+ *
+ * @see RegistrePartides
+ * @see LectorPartides
+ */
+public class PartidaRegistrada {
+
+    /** Casella d'un moviment que el jugador no ha fet. */
+    public static final int SENSE_CASELLA = -1;
+
+    private final int size;
+    private final String nom1;
+    private final String nom2;
+    private PlayerType guanyador;
+    private int numMoviments;
+    private int[] caselles;
+    private long[] micros;
+    private long[] nodes;
+    private int[] profunditats;
+
+    /**
+     * Crea una partida sense moviments.
+     *
+     * @param size Mida del tauler.
+     * @param nom1 Nom del jugador 1.
+     * @param nom2 Nom del jugador 2.
+     */
+    public PartidaRegistrada(int size, String nom1, String nom2) {
+        this(size, nom1, nom2, size * size);
+    }
+
+    PartidaRegistrada(int size, String nom1, String nom2, int capacitat) {
+        this.size = size;
+        this.nom1 = nom1;
+        this.nom2 = nom2;
+        capacitat = Math.max(1, capacitat);
+        caselles = new int[capacitat];
+        micros = new long[capacitat];
+        nodes = new long[capacitat];
+        profunditats = new int[capacitat];
+    }
+
+    /**
+     * Afegeix un moviment.
+     *
+     * @param moviment El moviment del jugador, o null si no n'ha fet cap.
+     * @param nanos El temps que ha trigat el jugador, en nanosegons.
+     */
+    public void afegeix(PlayerMove moviment, long nanos) {
+        if (moviment == null) {
+            afegeix(SENSE_CASELLA, nanos / 1000, 0, 0);
+        } else {
+            Point p = moviment.getPoint();
+            afegeix(p.x * size + p.y, nanos / 1000, moviment.getNumerOfNodesExplored(), moviment.getMaxDepthReached());
+        }
+    }
+
+    void afegeix(int casella, long micros, long nodes, int profunditat) {
+        if (numMoviments == caselles.length) {
+            int capacitat = numMoviments * 2;
+            caselles = Arrays.copyOf(caselles, capacitat);
+            this.micros = Arrays.copyOf(this.micros, capacitat);
+            this.nodes = Arrays.copyOf(this.nodes, capacitat);
+            profunditats = Arrays.copyOf(profunditats, capacitat);
+        }
+        caselles[numMoviments] = casella;
+        this.micros[numMoviments] = micros;
+        this.nodes[numMoviments] = nodes;
+        profunditats[numMoviments] = profunditat;
+        numMoviments++;
+    }
+
+    /**
+     * @param guanyador El guanyador de la partida, o null si no n'hi ha.
+     */
+    public void setGuanyador(PlayerType guanyador) {
+        this.guanyador = guanyador;
+    }
+
+    /**
+     * @return La mida del tauler.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return El nom del jugador 1.
+     */
+    public String getNom1() {
+        return nom1;
+    }
+
+    /**
+     * @return El nom del jugador 2.
+     */
+    public String getNom2() {
+        return nom2;
+    }
+
+    /**
+     * @return El guanyador de la partida, o null si no n'hi ha.
+     */
+    public PlayerType getGuanyador() {
+        return guanyador;
+    }
+
+    /**
+     * @return El nombre de moviments.
+     */
+    public int getNumMoviments() {
+        return numMoviments;
+    }
+
+    /**
+     * @param i Índex del moviment. El jugador 1 fa els parells.
+     * @return La casella del moviment, o {@link #SENSE_CASELLA}.
+     */
+    public int getCasella(int i) {
+        return caselles[i];
+    }
+
+    /**
+     * @param i Índex del moviment.
+     * @return El punt del moviment, o null si el jugador no n'ha fet cap.
+     */
+    public Point getPunt(int i) {
+        int c = caselles[i];
+        return c == SENSE_CASELLA ? null : new Point(c / size, c % size);
+    }
+
+    /**
+     * @param i Índex del moviment.
+     * @return El temps que ha trigat el jugador, en microsegons.
+     */
+    public long getMicros(int i) {
+        return micros[i];
+    }
+
+    /**
+     * @param i Índex del moviment.
+     * @return Els nodes explorats que informa el jugador.
+     */
+    public long getNodes(int i) {
+        return nodes[i];
+    }
+
+    /**
+     * @param i Índex del moviment.
+     * @return La profunditat màxima que informa el jugador.
+     */
+    public int getProfunditat(int i) {
+        return profunditats[i];
+    }
+
+    /**
+     * Reprodueix la partida fins a un moviment.
+     *
+     * @param moviments El nombre de moviments a jugar.
+     * @return L'estat del joc després dels moviments.
+     */
+    public HexGameStatus reprodueix(int moviments) {
+        HexGameStatus status = new HexGameStatus(size);
+        for (int i = 0; i < moviments && i < numMoviments; i++) {
+            Point p = getPunt(i);
+            if (p == null) {
+                status.forceLoser();
+                break;
+            }
+            status.placeStone(p);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,78 @@
+package edu.upc.epsevg.prop.hex;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Política de recollida de memòria forçada entre moviments.
+ *
+ * Forçar la recollida abans i després de cada moviment fa que cap jugador
+ * pagui les escombraries de l'altre, però afegeix una pausa a cada torn i
+ * amaga quanta memòria fa servir cada motor. Les partides de torneig es
+ * poden jugar sense ({@link #MAI}) o forçant-la només quan el heap s'omple
+ * ({@link #llindar(double)}).
+ */
+public final class PoliticaGC {
+
+    /** Força la recollida sempre, com feien originalment els taulers. */
+    public static final PoliticaGC SEMPRE = new PoliticaGC(0);
+    /** No força mai la recollida. */
+    public static final PoliticaGC MAI = new PoliticaGC(Double.POSITIVE_INFINITY);
+
+    private final double llindar;
+
+    private PoliticaGC(double llindar) {
+        this.llindar = llindar;
+    }
+
+    /**
+     * @param fraccio Fracció del heap màxim ocupada a partir de la qual es
+     * força la recollida, entre 0 i 1.
+     * @return La política.
+     */
+    public static PoliticaGC llindar(double fraccio) {
+        if (fraccio < 0 || fraccio > 1) {
+            throw new IllegalArgumentException("El llindar ha d'estar entre 0 i 1");
+        }
+        return new PoliticaGC(fraccio);
+    }
+
+    /**
+     * Força la recollida si la política ho demana.
+     *
+     * @return Si s'ha forçat.
+     */
+    public boolean aplica() {
+        if (llindar == Double.POSITIVE_INFINITY) return false;
+        if (llindar > 0 && ocupacio() < llindar) return false;
+        forca();
+        return true;
+    }
+
+    /**
+     * @return La fracció del heap màxim ocupada ara mateix.
+     */
+    public static double ocupacio() {
+        Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+
+    /**
+     * This method guarantees that garbage collection is done unlike
+     * <code>{@link System#gc()}</code>
+     */
+    public static void forca() {
+        Object obj = new Object();
+        WeakReference ref = new WeakReference<Object>(obj);
+        obj = null;
+        while (ref.get() != null) {
+            System.gc();
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (llindar == 0) return "sempre";
+        if (llindar == Double.POSITIVE_INFINITY) return "mai";
+        return "llindar " + llindar;
+    }
+}
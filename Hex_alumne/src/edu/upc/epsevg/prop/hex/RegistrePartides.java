@@ -0,0 +1,247 @@
+package edu.upc.epsevg.prop.hex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Registre de partides: afegeix partides al final d'un fitxer binari
+ * compacte i n'actualitza l'índex. Es pot compartir entre partides que es
+ * juguen alhora: cada partida es codifica al fil que la crida i només
+ * l'escriptura es fa en exclusió mútua. Les partides queden en l'ordre en
+ * què acaben. Es llegeixen amb {@link LectorPartides}.
+ *
+ * Format del fitxer de partides (little-endian):
+ * <ul>
+ * <li>capçalera de 8 bytes: {@link #MAGIC} i {@link #VERSIO};</li>
+ * <li>per a cada partida, la longitud del registre (4 bytes) i el registre:
+ * la mida del tauler, els noms dels dos jugadors (longitud i UTF-8), el
+ * guanyador (1 byte: 0 cap, 1 o 2), el nombre de moviments i, per a cada
+ * moviment, la casella més 1 (0 si no n'hi ha), els microsegons, els nodes
+ * i la profunditat.</li>
+ * </ul>
+ * Tots els enters del registre són varints sense signe (7 bits per byte),
+ * de manera que un moviment d'una partida de 11x11 ocupa uns 8 bytes.
+ *
+ * El fitxer d'índex ({@link #fitxerIndex(Path)}) té una capçalera de 8
+ * bytes ({@link #MAGIC_INDEX} i {@link #VERSIO}) i la posició de cada
+ * partida al fitxer de partides (8 bytes). L'índex s'escriu després de la
+ * partida, de manera que mai apunta més enllà de les dades. Si un procés
+ * s'atura a mitja escriptura, en tornar a obrir el registre es descarta la
+ * partida incompleta i es refà l'índex.
+ */
+public class RegistrePartides implements AutoCloseable {
+
+    /** Identificador del fitxer de partides, "HEXP" en ASCII. */
+    public static final int MAGIC = 0x50584548;
+    /** Identificador del fitxer d'índex, "HEXI" en ASCII. */
+    public static final int MAGIC_INDEX = 0x49584548;
+    /** Versió del format. */
+    public static final int VERSIO = 1;
+    static final int CAPCALERA = 8;
+
+    private final FileChannel dades;
+    private final FileChannel index;
+    private long fi;
+    private long numPartides;
+
+    /**
+     * Obre un registre per afegir-hi partides. Si el fitxer no existeix es
+     * crea.
+     *
+     * @param fitxer El fitxer de partides.
+     * @throws IOException Si no es pot obrir o no té el format correcte.
+     */
+    public RegistrePartides(Path fitxer) throws IOException {
+        dades = FileChannel.open(fitxer, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(fitxerIndex(fitxer), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (dades.size() == 0) {
+                escriuCapcalera(dades, MAGIC);
+                escriuCapcalera(index, MAGIC_INDEX);
+                index.truncate(CAPCALERA);
+                fi = CAPCALERA;
+            } else {
+                LectorPartides.comprovaCapcalera(dades, MAGIC);
+                if (!LectorPartides.indexCorrecte(dades, index, true)) {
+                    // L'índex no correspon a les dades: es refà
+                    long[] posicions = LectorPartides.escaneja(dades);
+                    escriuCapcalera(index, MAGIC_INDEX);
+                    index.truncate(CAPCALERA);
+                    ByteBuffer buffer = ByteBuffer.allocate(posicions.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+                    for (long posicio : posicions) {
+                        buffer.putLong(posicio);
+                    }
+                    buffer.flip();
+                    escriu(index, buffer, CAPCALERA);
+                }
+                numPartides = (index.size() - CAPCALERA) / 8;
+                fi = numPartides == 0 ? CAPCALERA : LectorPartides.fiPartida(dades, llegeixPosicio(numPartides - 1));
+                // Descarta una partida escrita a mitges
+                dades.truncate(fi);
+            }
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param fitxer Un fitxer de partides.
+     * @return El fitxer d'índex corresponent, amb l'extensió ".idx"
+     * afegida.
+     */
+    public static Path fitxerIndex(Path fitxer) {
+        Path absolut = fitxer.toAbsolutePath();
+        return Paths.get(absolut.toString() + ".idx");
+    }
+
+    /**
+     * Afegeix una partida al final del registre.
+     *
+     * @param partida La partida.
+     * @throws IOException Si no es pot escriure.
+     */
+    public void afegeix(PartidaRegistrada partida) throws IOException {
+        ByteBuffer registre = codifica(partida);
+        ByteBuffer posicio = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        synchronized (this) {
+            posicio.putLong(0, fi);
+            escriu(dades, registre, fi);
+            escriu(index, posicio, CAPCALERA + numPartides * 8);
+            fi += registre.limit();
+            numPartides++;
+        }
+    }
+
+    /**
+     * @return El nombre de partides del registre.
+     */
+    public synchronized long getNumPartides() {
+        return numPartides;
+    }
+
+    /**
+     * Força que les partides escrites arribin al disc.
+     *
+     * @throws IOException Si no es pot escriure.
+     */
+    public void sincronitza() throws IOException {
+        dades.force(false);
+        index.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            dades.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    private long llegeixPosicio(long n) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        LectorPartides.llegeix(index, buffer, CAPCALERA + n * 8);
+        return buffer.getLong(0);
+    }
+
+    private static void escriuCapcalera(FileChannel canal, int magic) throws IOException {
+        ByteBuffer capcalera = ByteBuffer.allocate(CAPCALERA).order(ByteOrder.LITTLE_ENDIAN);
+        capcalera.putInt(magic).putInt(VERSIO).flip();
+        escriu(canal, capcalera, 0);
+    }
+
+    private static void escriu(FileChannel canal, ByteBuffer buffer, long posicio) throws IOException {
+        while (buffer.hasRemaining()) {
+            posicio += canal.write(buffer, posicio);
+        }
+    }
+
+    /**
+     * Codifica una partida amb la longitud al davant.
+     *
+     * @return El buffer llest per escriure.
+     */
+    static ByteBuffer codifica(PartidaRegistrada partida) {
+        byte[] nom1 = partida.getNom1().getBytes(StandardCharsets.UTF_8);
+        byte[] nom2 = partida.getNom2().getBytes(StandardCharsets.UTF_8);
+        int n = partida.getNumMoviments();
+        // Cota: 10 bytes per varint de 64 bits, 5 per varint de 32 bits
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 5 * 4 + 1 + nom1.length + nom2.length + n * 30)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(4);
+        escriuVarint(buffer, partida.getSize());
+        escriuVarint(buffer, nom1.length);
+        buffer.put(nom1);
+        escriuVarint(buffer, nom2.length);
+        buffer.put(nom2);
+        PlayerType guanyador = partida.getGuanyador();
+        buffer.put((byte) (guanyador == null ? 0 : guanyador == PlayerType.PLAYER1 ? 1 : 2));
+        escriuVarint(buffer, n);
+        for (int i = 0; i < n; i++) {
+            escriuVarint(buffer, partida.getCasella(i) + 1);
+            escriuVarint(buffer, Math.max(0, partida.getMicros(i)));
+            escriuVarint(buffer, Math.max(0, partida.getNodes(i)));
+            escriuVarint(buffer, Math.max(0, partida.getProfunditat(i)));
+        }
+        buffer.putInt(0, buffer.position() - 4);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Descodifica un registre, sense la longitud del davant.
+     *
+     * @param buffer El registre, entre la posició i el límit del buffer.
+     * @return La partida.
+     */
+    static PartidaRegistrada descodifica(ByteBuffer buffer) {
+        int size = (int) llegeixVarint(buffer);
+        String nom1 = llegeixText(buffer);
+        String nom2 = llegeixText(buffer);
+        int guanyador = buffer.get();
+        int n = (int) llegeixVarint(buffer);
+        PartidaRegistrada partida = new PartidaRegistrada(size, nom1, nom2, n);
+        partida.setGuanyador(guanyador == 0 ? null : guanyador == 1 ? PlayerType.PLAYER1 : PlayerType.PLAYER2);
+        for (int i = 0; i < n; i++) {
+            int casella = (int) llegeixVarint(buffer) - 1;
+            long micros = llegeixVarint(buffer);
+            long nodes = llegeixVarint(buffer);
+            int profunditat = (int) llegeixVarint(buffer);
+            partida.afegeix(casella, micros, nodes, profunditat);
+        }
+        return partida;
+    }
+
+    private static String llegeixText(ByteBuffer buffer) {
+        byte[] text = new byte[(int) llegeixVarint(buffer)];
+        buffer.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    private static void escriuVarint(ByteBuffer buffer, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            buffer.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        buffer.put((byte) valor);
+    }
+
+    private static long llegeixVarint(ByteBuffer buffer) {
+        long valor = 0;
+        int desplacament = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            valor |= (long) (b & 0x7F) << desplacament;
+            desplacament += 7;
+        } while (b < 0);
+        return valor;
+    }
+}
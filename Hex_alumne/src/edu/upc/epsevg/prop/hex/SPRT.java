@@ -0,0 +1,96 @@
+package edu.upc.epsevg.prop.hex;
+
+/**
+ * Test seqüencial de raó de versemblança (SPRT) per decidir si el jugador 1
+ * és més fort que el 2 jugant només les partides necessàries.
+ *
+ * Compara la hipòtesi H0, que la diferència d'Elo és {@code elo0}, amb H1,
+ * que és {@code elo1}. Després de cada partida es calcula el logaritme de
+ * la raó de versemblança (LLR) amb l'aproximació normal de la puntuació de
+ * les partides, {@code n (s1 - s0) (2 s - s0 - s1) / (2 var)}, on {@code s}
+ * i {@code var} són la puntuació mitjana i la variància observades i
+ * {@code s0}, {@code s1} les puntuacions esperades amb cada hipòtesi. El
+ * test acaba quan el LLR surt de l'interval
+ * {@code [log(beta / (1 - alpha)), log((1 - beta) / alpha)]}: per sota
+ * s'accepta H0 i per sobre H1, amb probabilitats d'error {@code alpha} i
+ * {@code beta}.
+ *
+ * Per comprovar que un canvi no empitjora, per exemple, {@code elo0 = 0} i
+ * {@code elo1 = 10}; com més a prop són les hipòtesis, més partides calen.
+ */
+public class SPRT {
+
+    /**
+     * Resultat del test.
+     */
+    public enum Decisio {
+        /** Cal jugar més partides. */
+        CONTINUA,
+        /** S'accepta H0: la diferència és {@code elo0} o menys. */
+        ACCEPTA_H0,
+        /** S'accepta H1: la diferència és {@code elo1} o més. */
+        ACCEPTA_H1
+    }
+
+    private final double elo0;
+    private final double elo1;
+    private final double alpha;
+    private final double beta;
+    private final double limitInferior;
+    private final double limitSuperior;
+
+    /**
+     * @param elo0 Diferència d'Elo de la hipòtesi H0.
+     * @param elo1 Diferència d'Elo de la hipòtesi H1, més gran que
+     * {@code elo0}.
+     * @param alpha Probabilitat d'acceptar H1 si és certa H0.
+     * @param beta Probabilitat d'acceptar H0 si és certa H1.
+     */
+    public SPRT(double elo0, double elo1, double alpha, double beta) {
+        if (elo1 <= elo0) {
+            throw new IllegalArgumentException("elo1 ha de ser més gran que elo0");
+        }
+        if (alpha <= 0 || alpha >= 1 || beta <= 0 || beta >= 1) {
+            throw new IllegalArgumentException("alpha i beta han d'estar entre 0 i 1");
+        }
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.limitInferior = Math.log(beta / (1 - alpha));
+        this.limitSuperior = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * @param estadistiques Les partides jugades.
+     * @return El logaritme de la raó de versemblança entre H1 i H0.
+     */
+    public double llr(EstadistiquesElo estadistiques) {
+        long n = estadistiques.getPartides();
+        if (n == 0) return 0;
+        double s0 = EstadistiquesElo.puntuacio(elo0);
+        double s1 = EstadistiquesElo.puntuacio(elo1);
+        double s = estadistiques.getPuntuacio();
+        return n * (s1 - s0) * (2 * s - s0 - s1) / (2 * estadistiques.getVariancia());
+    }
+
+    /**
+     * @param estadistiques Les partides jugades.
+     * @return Si el test ha acabat i quina hipòtesi accepta.
+     */
+    public Decisio decisio(EstadistiquesElo estadistiques) {
+        double llr = llr(estadistiques);
+        if (llr <= limitInferior) return Decisio.ACCEPTA_H0;
+        if (llr >= limitSuperior) return Decisio.ACCEPTA_H1;
+        return Decisio.CONTINUA;
+    }
+
+    /**
+     * @param estadistiques Les partides jugades.
+     * @return Una línia amb el LLR, els límits i la decisió.
+     */
+    public String resum(EstadistiquesElo estadistiques) {
+        return String.format("SPRT elo0=%.1f elo1=%.1f alpha=%.3f beta=%.3f: LLR %.2f [%.2f, %.2f] %s",
+                elo0, elo1, alpha, beta, llr(estadistiques), limitInferior, limitSuperior, decisio(estadistiques));
+    }
+}
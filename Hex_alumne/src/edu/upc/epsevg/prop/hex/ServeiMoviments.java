@@ -0,0 +1,246 @@
+package edu.upc.epsevg.prop.hex;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Servei que demana els moviments als jugadors d'una partida.
+ *
+ * Cada jugador té un fil treballador propi que es reutilitza en tots els
+ * seus moviments, i l'avís de timeout es programa en un temporitzador
+ * compartit per totes les partides que es cancel·la tan bon punt el
+ * moviment torna. Cada moviment es mesura amb {@link System#nanoTime()} i,
+ * amb la telemetria activada, també es compten els bytes que ha assignat
+ * el fil treballador i les recollides de memòria durant el moviment.
+ *
+ * Els bytes només són els del fil treballador: no inclouen els fils propis
+ * del jugador (cerca paral·lela, ponderació). Les recollides són de tota la
+ * màquina virtual i, si hi ha partides simultànies, inclouen les que han
+ * provocat les altres.
+ */
+public class ServeiMoviments implements AutoCloseable {
+
+    // Temps de gràcia després del timeout abans de considerar il·legal l'espera
+    private static final long TEMPS_EXTRA_MS = 2000;
+
+    private static final ScheduledExecutorService TEMPORITZADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ServeiMoviments-temporitzador");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final IPlayer[] jugadors;
+    private final ExecutorService[] treballadors;
+    private final long timeoutMs;
+    private final boolean telemetria;
+
+    /**
+     * Resultat d'un moviment.
+     */
+    public static class Resultat {
+
+        private final PlayerMove moviment;
+        private final Throwable error;
+        private final long nanos;
+        private final long bytes;
+        private final long recollides;
+        private final long milisRecollides;
+
+        Resultat(PlayerMove moviment, Throwable error, long nanos, long bytes, long recollides, long milisRecollides) {
+            this.moviment = moviment;
+            this.error = error;
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.recollides = recollides;
+            this.milisRecollides = milisRecollides;
+        }
+
+        /**
+         * @return El moviment, o null si el jugador no n'ha retornat cap o ha
+         * llançat una excepció.
+         */
+        public PlayerMove getMoviment() {
+            return moviment;
+        }
+
+        /**
+         * @return L'excepció que ha llançat el jugador, o null.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return El temps que ha trigat el jugador, en nanosegons.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return Els bytes assignats pel fil treballador durant el
+         * moviment, o -1 sense telemetria.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return El nombre de recollides de memòria durant el moviment, o -1
+         * sense telemetria.
+         */
+        public long getRecollides() {
+            return recollides;
+        }
+
+        /**
+         * @return El temps acumulat de les recollides de memòria durant el
+         * moviment, en mil·lisegons, o -1 sense telemetria.
+         */
+        public long getMilisRecollides() {
+            return milisRecollides;
+        }
+    }
+
+    /**
+     * Crea el servei d'una partida.
+     *
+     * @param jugadors Els dos jugadors.
+     * @param timeoutSegons Segons per moviment abans d'avisar el jugador.
+     * @param telemetria Si s'han de mesurar la memòria assignada i les
+     * recollides de cada moviment.
+     */
+    public ServeiMoviments(IPlayer[] jugadors, int timeoutSegons, boolean telemetria) {
+        this.jugadors = jugadors;
+        this.timeoutMs = timeoutSegons * 1000L;
+        this.telemetria = telemetria && mesuraBytes();
+        this.treballadors = new ExecutorService[jugadors.length];
+        for (int i = 0; i < jugadors.length; i++) {
+            String nom = "ServeiMoviments-jugador" + (i + 1);
+            treballadors[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, nom);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Demana un moviment a un jugador i espera que torni. Si el jugador no
+     * torna passat el timeout se l'avisa, i si tampoc torna amb el temps de
+     * gràcia es continua esperant però s'informa de l'espera il·legal.
+     *
+     * @param jugador Índex del jugador, 0 o 1.
+     * @param status L'estat de la partida. El jugador en rep una còpia.
+     * @return El resultat del moviment.
+     */
+    public Resultat mou(int jugador, HexGameStatus status) {
+        IPlayer player = jugadors[jugador];
+        HexGameStatus copia = new HexGameStatus(status);
+        Future<Resultat> futur = treballadors[jugador].submit(() -> mesura(player, copia));
+        ScheduledFuture<?> avis = TEMPORITZADOR.schedule(() -> {
+            if (!futur.isDone()) {
+                player.timeout();
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            try {
+                return futur.get(timeoutMs + TEMPS_EXTRA_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                System.out.println("Espera il·legal ! Player trampós:" + player.getName());
+                // Som millors persones deixant que el jugador il·legal continui jugant...
+                return futur.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            futur.cancel(true);
+            return new Resultat(null, ex, 0, -1, -1, -1);
+        } catch (ExecutionException ex) {
+            return new Resultat(null, ex.getCause(), 0, -1, -1, -1);
+        } finally {
+            avis.cancel(false);
+        }
+    }
+
+    /**
+     * Fa el moviment al fil treballador i el mesura.
+     */
+    private Resultat mesura(IPlayer player, HexGameStatus status) {
+        long bytesInici = telemetria ? bytesFil() : -1;
+        long recollidesInici = telemetria ? recollides() : -1;
+        long milisInici = telemetria ? milisRecollides() : -1;
+        long inici = System.nanoTime();
+        PlayerMove moviment = null;
+        Throwable error = null;
+        try {
+            moviment = player.move(status);
+        } catch (Exception ex) {
+            error = ex;
+        }
+        long nanos = System.nanoTime() - inici;
+        if (!telemetria) {
+            return new Resultat(moviment, error, nanos, -1, -1, -1);
+        }
+        return new Resultat(moviment, error, nanos, bytesFil() - bytesInici,
+                recollides() - recollidesInici, milisRecollides() - milisInici);
+    }
+
+    /**
+     * Atura els fils treballadors.
+     */
+    @Override
+    public void close() {
+        for (ExecutorService treballador : treballadors) {
+            treballador.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Si la màquina virtual sap comptar els bytes assignats per fil.
+     */
+    private static boolean mesuraBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return false;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        if (!bean.isThreadAllocatedMemorySupported()) return false;
+        if (!bean.isThreadAllocatedMemoryEnabled()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return true;
+    }
+
+    private static long bytesFil() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long recollides() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : recollidors()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long milisRecollides() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : recollidors()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static List<GarbageCollectorMXBean> recollidors() {
+        return ManagementFactory.getGarbageCollectorMXBeans();
+    }
+}
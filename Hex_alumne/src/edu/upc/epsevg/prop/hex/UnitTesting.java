@@ -5,39 +5,441 @@
  */
 package edu.upc.epsevg.prop.hex;
 
-import edu.upc.epsevg.prop.hex.HexGameStatus;
-import edu.upc.epsevg.prop.hex.PlayerType;
-import edu.upc.epsevg.prop.hex.players.ProfeGameStatus2;
-import edu.upc.epsevg.prop.hex.players.ProfeGameStatus3;
-import edu.upc.epsevg.prop.hex.players.ProfeGameStatus3.Result;
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 /**
+ * Comprova la representació del tauler del motor ({@link TaulerCerca})
+ * contra {@link HexGameStatus} sobre un corpus de posicions i en mesura el
+ * rendiment.
+ *
+ * Les posicions es llegeixen de {@code /resources/posicions.txt} o dels
+ * fitxers que es passen com a arguments (el format s'explica a la capçalera
+ * del corpus). Per a cada posició es comprova:
+ * <ul>
+ * <li>que {@link HexGameStatus} dona el guanyador i el nombre de moviments
+ * legals esperats;</li>
+ * <li>que {@link TaulerCerca} té les mateixes pedres, torn, nombre de
+ * pedres, guanyador i moviments legals;</li>
+ * <li>per a cada moviment legal, que {@link TaulerCerca#guanyaAmb(int)}
+ * encerta si guanya, que després de {@link TaulerCerca#play(int)} els dos
+ * taulers coincideixen i el hash incremental és el d'un tauler nou, i que
+ * {@link TaulerCerca#undo()} deixa el tauler, les pedres i el hash com
+ * eren;</li>
+ * <li>que una partida aleatòria fins al final coincideix jugada a jugada i
+ * que desfer-la tota torna a la posició inicial.</li>
+ * </ul>
+ *
+ * Després mesura les jugades per segon de play/undo, {@code guanyaAmb}, les
+ * partides aleatòries de {@link TaulerCerca} i la còpia amb
+ * {@code placeStone} de {@link HexGameStatus}. Acaba amb codi 1 si hi ha
+ * algun error.
+ *
+ * Amb {@code UnitTesting genera <mida> <posicions> [llavor]} escriu a la
+ * sortida posicions noves en el format del corpus, amb els valors esperats
+ * de {@link HexGameStatus}.
  *
  * @author bernat
  */
 public class UnitTesting {
-    
-    
-    
-    public static void main(String[] args) {
-    
-        
-        byte[][] board = {
-        //X   0  1  2  3  4  5  6  7  8
-            { 0, 0, 0, 0,  0, 0, 0, 0, 0},                     // 0   Y
-              { 0, 0, 0, 0, 0, 0, 0, 0, 0},                    // 1
-                { 0, 0, 0, 0, 0, 0, 0, 0, 0},                  // 2
-                  { 0, 0, 0, 0, 0, 0, 0, 0, 0},                // 3
-                    { 0, 0, 0, 0,-1, 0, 0, 0, 0},              // 4  
-                      { 0, 0, 0, 0, 0, 1, 0, 0, 0},            // 5    
-                        { 0, 0, 0,-1,-1,-1, 1,-1, 0},          // 6      
-                          { 0, 0, 1, 1, 1, 1,-1, 1, 0},        // 7       
-                            { 0, 0, 0, 0, 0, 0,-1, 0, 1}       // 8    Y         
-        };
-
-
-        HexGameStatus gs = new HexGameStatus(board, PlayerType.PLAYER1);        
-        
- 
-    }
-    
+
+    private static final String CORPUS = "/resources/posicions.txt";
+    private static final long MILIS_RENDIMENT = 1000;
+    private static final int MAX_ERRORS_MOSTRATS = 20;
+
+    private static int errors;
+
+    // Evita que el JIT elimini els càlculs que no es fan servir
+    private static volatile long resultat;
+
+    /**
+     * Una posició del corpus amb els valors esperats.
+     */
+    static class Posicio {
+
+        final String nom;
+        final HexGameStatus estat;
+        final int guanyador;
+        final int moviments;
+
+        Posicio(String nom, HexGameStatus estat, int guanyador, int moviments) {
+            this.nom = nom;
+            this.estat = estat;
+            this.guanyador = guanyador;
+            this.moviments = moviments;
+        }
+    }
+
+    /**
+     * Una operació del mesurament de rendiment.
+     */
+    private interface Operacio {
+
+        /**
+         * @param p La posició.
+         * @param t Un tauler de cerca de la posició, que s'ha de deixar com
+         * estava.
+         * @return El nombre de jugades fetes.
+         */
+        long executa(Posicio p, TaulerCerca t);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("genera")) {
+            int size = Integer.parseInt(args[1]);
+            int quantes = Integer.parseInt(args[2]);
+            long llavor = args.length > 3 ? Long.parseLong(args[3]) : 42;
+            genera(size, quantes, llavor);
+            return;
+        }
+
+        List<Posicio> corpus = new ArrayList<>();
+        if (args.length == 0) {
+            InputStream in = UnitTesting.class.getResourceAsStream(CORPUS);
+            if (in == null) {
+                throw new IOException("No es troba " + CORPUS);
+            }
+            try (BufferedReader lector = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                corpus.addAll(llegeix(lector, CORPUS));
+            }
+        } else {
+            for (String fitxer : args) {
+                try (BufferedReader lector = Files.newBufferedReader(Paths.get(fitxer), StandardCharsets.UTF_8)) {
+                    corpus.addAll(llegeix(lector, fitxer));
+                }
+            }
+        }
+
+        long inici = System.nanoTime();
+        for (Posicio p : corpus) {
+            comprova(p);
+        }
+        System.out.printf("%d posicions comprovades en %.1f s: %d errors%n",
+                corpus.size(), (System.nanoTime() - inici) / 1e9, errors);
+
+        rendiment(corpus);
+        if (errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Llegeix les posicions d'un corpus.
+     *
+     * @param lector El corpus.
+     * @param nomFitxer El nom del corpus, per als missatges d'error.
+     * @return Les posicions, en l'ordre del corpus.
+     */
+    static List<Posicio> llegeix(BufferedReader lector, String nomFitxer) throws IOException {
+        List<Posicio> posicions = new ArrayList<>();
+        String nom = null;
+        int torn = 0;
+        int guanyador = -1;
+        int moviments = -1;
+        List<String> files = new ArrayList<>();
+        int numLinia = 0;
+        String linia;
+        do {
+            linia = lector.readLine();
+            numLinia++;
+            String text = linia == null ? "" : linia.trim();
+            if (text.startsWith("#")) continue;
+            if (text.isEmpty() || text.startsWith("posicio ")) {
+                if (nom != null) {
+                    posicions.add(posicio(nom, torn, guanyador, moviments, files, nomFitxer + ":" + numLinia));
+                    nom = null;
+                    files.clear();
+                }
+                if (!text.isEmpty()) {
+                    nom = text.substring("posicio ".length()).trim();
+                    torn = 0;
+                    guanyador = -1;
+                    moviments = -1;
+                }
+            } else if (nom == null) {
+                throw new IOException(nomFitxer + ":" + numLinia + ": falta \"posicio\"");
+            } else if (text.startsWith("torn ")) {
+                torn = Integer.parseInt(text.substring(5).trim());
+            } else if (text.startsWith("guanyador ")) {
+                guanyador = Integer.parseInt(text.substring(10).trim());
+            } else if (text.startsWith("moviments ")) {
+                moviments = Integer.parseInt(text.substring(10).trim());
+            } else {
+                files.add(text.replaceAll("\\s", ""));
+            }
+        } while (linia != null);
+        return posicions;
+    }
+
+    private static Posicio posicio(String nom, int torn, int guanyador, int moviments, List<String> files,
+            String lloc) throws IOException {
+        int size = files.size();
+        if (size == 0 || (torn != 1 && torn != 2) || guanyador < 0 || guanyador > 2 || moviments < 0) {
+            throw new IOException(lloc + ": la posició " + nom + " no és completa");
+        }
+        byte[][] board = new byte[size][size];
+        for (int y = 0; y < size; y++) {
+            String fila = files.get(y);
+            if (fila.length() != size) {
+                throw new IOException(lloc + ": la fila " + y + " de " + nom + " no té " + size + " caselles");
+            }
+            for (int x = 0; x < size; x++) {
+                char c = fila.charAt(x);
+                if (c == 'X') {
+                    board[y][x] = 1;
+                } else if (c == 'O') {
+                    board[y][x] = -1;
+                } else if (c != '.') {
+                    throw new IOException(lloc + ": casella desconeguda '" + c + "' a " + nom);
+                }
+            }
+        }
+        HexGameStatus estat = new HexGameStatus(board, torn == 1 ? PlayerType.PLAYER1 : PlayerType.PLAYER2);
+        return new Posicio(nom, estat, guanyador, moviments);
+    }
+
+    /**
+     * Comprova una posició i hi juga tots els moviments legals i una partida
+     * aleatòria.
+     */
+    private static void comprova(Posicio p) {
+        HexGameStatus s = p.estat;
+        if (guanyador(s) != p.guanyador) {
+            error(p, "HexGameStatus dona guanyador " + guanyador(s) + " i s'esperava " + p.guanyador);
+        }
+        if (s.getMoves().size() != p.moviments) {
+            error(p, "HexGameStatus dona " + s.getMoves().size() + " moviments i se n'esperaven " + p.moviments);
+        }
+
+        TaulerCerca t = new TaulerCerca(s);
+        compara(p, "inicial", t, s);
+        if (s.isGameOver()) return;
+
+        int[] moviments = new int[t.getNumCaselles()];
+        int n = t.getMoviments(moviments);
+        long hash = t.getHash();
+        int pedres = t.getNumPedres();
+        for (int i = 0; i < n; i++) {
+            int c = moviments[i];
+            HexGameStatus copia = new HexGameStatus(s);
+            copia.placeStone(t.toPoint(c));
+            boolean guanya = t.guanyaAmb(c);
+            if (guanya != (copia.GetWinner() == s.getCurrentPlayer())) {
+                error(p, "guanyaAmb(" + t.toPoint(c) + ") dona " + guanya);
+            }
+            t.play(c);
+            compara(p, "després de " + t.toPoint(c), t, copia);
+            if (t.getNumPedres() != pedres + 1 || t.getNumJugades() != 1 || t.getUltimaJugada() != c) {
+                error(p, "play(" + t.toPoint(c) + ") no compta la jugada");
+            }
+            if (t.getHash() != new TaulerCerca(copia, t.getZobrist()).getHash()) {
+                error(p, "el hash incremental després de " + t.toPoint(c) + " no és el d'un tauler nou");
+            }
+            t.undo();
+            if (t.getHash() != hash || t.getNumPedres() != pedres || t.getNumJugades() != 0) {
+                error(p, "undo() després de " + t.toPoint(c) + " no restaura el hash o les pedres");
+            }
+            compara(p, "després de desfer " + t.toPoint(c), t, s);
+        }
+
+        Random random = new Random(p.nom.hashCode());
+        HexGameStatus copia = new HexGameStatus(s);
+        while (!copia.isGameOver()) {
+            n = t.getMoviments(moviments);
+            int c = moviments[random.nextInt(n)];
+            copia.placeStone(t.toPoint(c));
+            t.play(c);
+            compara(p, "a la partida aleatòria, després de " + t.toPoint(c), t, copia);
+        }
+        while (t.getNumJugades() > 0) {
+            t.undo();
+        }
+        if (t.getHash() != hash) {
+            error(p, "desfer la partida aleatòria no restaura el hash");
+        }
+        compara(p, "després de desfer la partida aleatòria", t, s);
+    }
+
+    /**
+     * Comprova que un tauler de cerca representa un estat del joc.
+     */
+    private static void compara(Posicio p, String moment, TaulerCerca t, HexGameStatus s) {
+        int size = s.getSize();
+        if (t.getSize() != size) {
+            error(p, moment + ": mida " + t.getSize());
+            return;
+        }
+        int pedres = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (t.getPos(x, y) != s.getPos(x, y)) {
+                    error(p, moment + ": la casella (" + x + ", " + y + ") val " + t.getPos(x, y)
+                            + " i hauria de valer " + s.getPos(x, y));
+                    return;
+                }
+                if (s.getPos(x, y) != 0) pedres++;
+            }
+        }
+        if (t.getNumPedres() != pedres) {
+            error(p, moment + ": " + t.getNumPedres() + " pedres i n'hi ha " + pedres);
+        }
+        if (t.getCurrentPlayer() != s.getCurrentPlayer()) {
+            error(p, moment + ": mou " + t.getCurrentPlayer() + " i hauria de moure " + s.getCurrentPlayer());
+        }
+        int guanyador = t.getGuanyador() == 0 ? 0 : t.getGuanyador() == 1 ? 1 : 2;
+        if (t.isGameOver() != s.isGameOver() || guanyador != guanyador(s)) {
+            error(p, moment + ": guanyador " + guanyador + " i hauria de ser " + guanyador(s));
+        }
+        int[] moviments = new int[t.getNumCaselles()];
+        int n = t.getMoviments(moviments);
+        List<MoveNode> legals = s.getMoves();
+        boolean iguals = n == legals.size();
+        for (int i = 0; iguals && i < n; i++) {
+            iguals = s.getPos(t.toPoint(moviments[i])) == 0;
+        }
+        if (!iguals) {
+            error(p, moment + ": " + n + " moviments i n'hi ha " + legals.size());
+        }
+    }
+
+    /**
+     * @return El guanyador de l'estat: 0 si no n'hi ha, 1 o 2.
+     */
+    private static int guanyador(HexGameStatus s) {
+        PlayerType guanyador = s.GetWinner();
+        return guanyador == null ? 0 : guanyador == PlayerType.PLAYER1 ? 1 : 2;
+    }
+
+    private static void error(Posicio p, String missatge) {
+        if (++errors <= MAX_ERRORS_MOSTRATS) {
+            System.out.println("ERROR " + p.nom + ": " + missatge);
+        }
+    }
+
+    /**
+     * Mesura les jugades per segon de les operacions sobre les posicions que
+     * no han acabat.
+     */
+    private static void rendiment(List<Posicio> corpus) {
+        List<Posicio> obertes = new ArrayList<>();
+        List<TaulerCerca> taulers = new ArrayList<>();
+        for (Posicio p : corpus) {
+            if (!p.estat.isGameOver()) {
+                obertes.add(p);
+                taulers.add(new TaulerCerca(p.estat));
+            }
+        }
+        if (obertes.isEmpty()) return;
+        int[] moviments = new int[taulers.get(0).getNumCaselles()];
+        for (TaulerCerca t : taulers) {
+            if (t.getNumCaselles() > moviments.length) moviments = new int[t.getNumCaselles()];
+        }
+        final int[] buides = moviments;
+        Random random = new Random(42);
+
+        mesura("tauler.play+undo", obertes, taulers, (p, t) -> {
+            int n = t.getMoviments(buides);
+            for (int i = 0; i < n; i++) {
+                t.play(buides[i]);
+                t.undo();
+            }
+            return n;
+        });
+        mesura("tauler.guanyaAmb", obertes, taulers, (p, t) -> {
+            int n = t.getMoviments(buides);
+            long guanyadores = 0;
+            for (int i = 0; i < n; i++) {
+                if (t.guanyaAmb(buides[i])) guanyadores++;
+            }
+            resultat += guanyadores;
+            return n;
+        });
+        mesura("tauler.partida", obertes, taulers, (p, t) -> {
+            long jugades = 0;
+            while (!t.isGameOver()) {
+                int n = t.getMoviments(buides);
+                t.play(buides[random.nextInt(n)]);
+                jugades++;
+            }
+            while (t.getNumJugades() > 0) {
+                t.undo();
+            }
+            return jugades;
+        });
+        mesura("status.copia+placeStone", obertes, taulers, (p, t) -> {
+            int n = t.getMoviments(buides);
+            long guanyadores = 0;
+            for (int i = 0; i < n; i++) {
+                HexGameStatus copia = new HexGameStatus(p.estat);
+                copia.placeStone(t.toPoint(buides[i]));
+                if (copia.isGameOver()) guanyadores++;
+            }
+            resultat += guanyadores;
+            return n;
+        });
+    }
+
+    /**
+     * Escalfa una operació recorrent el corpus un cop i després la repeteix
+     * sobre tot el corpus durant {@link #MILIS_RENDIMENT} mil·lisegons.
+     */
+    private static void mesura(String nom, List<Posicio> posicions, List<TaulerCerca> taulers, Operacio operacio) {
+        for (int i = 0; i < posicions.size(); i++) {
+            operacio.executa(posicions.get(i), taulers.get(i));
+        }
+        long jugades = 0;
+        long inici = System.nanoTime();
+        long limit = inici + MILIS_RENDIMENT * 1_000_000L;
+        long ara;
+        do {
+            for (int i = 0; i < posicions.size(); i++) {
+                jugades += operacio.executa(posicions.get(i), taulers.get(i));
+            }
+            ara = System.nanoTime();
+        } while (ara - limit < 0);
+        System.out.printf("%-24s %14.0f jugades/s%n", nom, jugades / ((ara - inici) / 1e9));
+    }
+
+    /**
+     * Escriu posicions de partides aleatòries, de totes les fases, amb els
+     * valors esperats de {@link HexGameStatus}.
+     */
+    private static void genera(int size, int quantes, long llavor) {
+        Random random = new Random(llavor);
+        for (int k = 0; k < quantes; k++) {
+            HexGameStatus s = new HexGameStatus(size);
+            int pedres = random.nextInt(size * size + 1);
+            for (int i = 0; i < pedres && !s.isGameOver(); i++) {
+                List<MoveNode> moves = s.getMoves();
+                s.placeStone(moves.get(random.nextInt(moves.size())).getPoint());
+            }
+            System.out.printf("posicio aleatoria-%d-%d-%d%n", size, llavor, k);
+            System.out.printf("torn %d%n", s.getCurrentPlayer() == PlayerType.PLAYER1 ? 1 : 2);
+            System.out.printf("guanyador %d%n", guanyador(s));
+            System.out.printf("moviments %d%n", s.getMoves().size());
+            for (int y = 0; y < size; y++) {
+                StringBuilder fila = new StringBuilder();
+                for (int i = 0; i < y; i++) {
+                    fila.append(' ');
+                }
+                for (int x = 0; x < size; x++) {
+                    int c = s.getPos(new Point(x, y));
+                    fila.append(c == 1 ? 'X' : c == -1 ? 'O' : '.').append(x < size - 1 ? " " : "");
+                }
+                System.out.println(fila);
+            }
+            System.out.println();
+        }
+    }
 }
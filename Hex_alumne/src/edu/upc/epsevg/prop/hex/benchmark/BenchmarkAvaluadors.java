@@ -0,0 +1,120 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.IPlayer;
+import edu.upc.epsevg.prop.hex.MoveNode;
+import edu.upc.epsevg.prop.hex.PlayerType;
+import edu.upc.epsevg.prop.hex.SearchType;
+import edu.upc.epsevg.prop.hex.players.HEXercici;
+import edu.upc.epsevg.prop.hex.utilitats.Avaluador;
+import edu.upc.epsevg.prop.hex.utilitats.Heuristica;
+import edu.upc.epsevg.prop.hex.utilitats.Resistencia;
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compara {@link Heuristica} i {@link Resistencia}. Primer mesura les
+ * avaluacions per segon avaluant tots els fills de cada posició seguits, com
+ * fa l'ordenació de moviments, i després juga partides entre dos MiniMax de
+ * profunditat fixa que només es diferencien en la funció d'avaluació.
+ *
+ * Ús: {@code BenchmarkAvaluadors [mida] [profunditat] [partides]}
+ */
+public class BenchmarkAvaluadors {
+
+    // Evita que el JIT elimini els càlculs que no es fan servir
+    private static volatile long resultat;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+        int profunditat = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int partides = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<HexGameStatus> posicions = InformeEscalat.posicions(size, 20, size * size / 4, 77);
+        System.out.println("Tauler " + size + "x" + size + ", " + posicions.size() + " posicions");
+        mesura("Heuristica", new Heuristica(), posicions);
+        Resistencia resistencia = new Resistencia();
+        mesura("Resistencia", resistencia, posicions);
+        long iteracions = resistencia.getIteracions();
+        long avaluacions = avaluaFills(resistencia, posicions);
+        System.out.printf("Resistencia: %.1f iteracions del gradient conjugat per avaluació%n",
+                (double) (resistencia.getIteracions() - iteracions) / avaluacions);
+
+        int victories = 0;
+        for (int i = 0; i < partides; i++) {
+            boolean resistenciaPrimer = i % 2 == 0;
+            IPlayer jugador1 = jugador(profunditat, resistenciaPrimer ? Resistencia::new : Heuristica::new);
+            IPlayer jugador2 = jugador(profunditat, resistenciaPrimer ? Heuristica::new : Resistencia::new);
+            PlayerType guanyador = partida(size, jugador1, jugador2, new Random(i / 2));
+            if ((guanyador == PlayerType.PLAYER1) == resistenciaPrimer) {
+                victories++;
+            }
+        }
+        System.out.println("Partides a profunditat " + profunditat + ": Resistencia guanya " + victories + " de " + partides);
+    }
+
+    /**
+     * Avalua tots els fills de cada posició i mostra les avaluacions per
+     * segon.
+     */
+    private static void mesura(String nom, Avaluador avaluador, List<HexGameStatus> posicions) {
+        for (int i = 0; i < 3; i++) {
+            avaluaFills(avaluador, posicions);
+        }
+        long inici = System.nanoTime();
+        long avaluacions = 0;
+        for (int i = 0; i < 10; i++) {
+            avaluacions += avaluaFills(avaluador, posicions);
+        }
+        double segons = (System.nanoTime() - inici) / 1e9;
+        System.out.printf("%s: %.0f avaluacions/s%n", nom, avaluacions / segons);
+    }
+
+    private static long avaluaFills(Avaluador avaluador, List<HexGameStatus> posicions) {
+        long avaluacions = 0;
+        long suma = 0;
+        int[] moviments = new int[0];
+        for (HexGameStatus posicio : posicions) {
+            TaulerCerca tauler = new TaulerCerca(posicio);
+            if (moviments.length < tauler.getNumCaselles()) {
+                moviments = new int[tauler.getNumCaselles()];
+            }
+            int n = tauler.getMoviments(moviments);
+            PlayerType jugador = tauler.getCurrentPlayer();
+            for (int i = 0; i < n; i++) {
+                tauler.play(moviments[i]);
+                suma += avaluador.eval(tauler, jugador);
+                tauler.undo();
+                avaluacions++;
+            }
+        }
+        resultat = suma;
+        return avaluacions;
+    }
+
+    private static IPlayer jugador(int profunditat, Supplier<? extends Avaluador> avaluador) {
+        return new HEXercici(SearchType.MINIMAX, profunditat, 16, 1, 0, avaluador);
+    }
+
+    /**
+     * Juga una partida començant amb dues pedres a l'atzar perquè les
+     * partides no siguin totes iguals.
+     *
+     * @return El guanyador.
+     */
+    private static PlayerType partida(int size, IPlayer jugador1, IPlayer jugador2, Random random) {
+        HexGameStatus status = new HexGameStatus(size);
+        for (int i = 0; i < 2; i++) {
+            List<MoveNode> moves = status.getMoves();
+            status.placeStone(moves.get(random.nextInt(moves.size())).getPoint());
+        }
+        while (!status.isGameOver()) {
+            IPlayer jugador = status.getCurrentPlayer() == PlayerType.PLAYER1 ? jugador1 : jugador2;
+            status.placeStone(jugador.move(new HexGameStatus(status)).getPoint());
+        }
+        return status.GetWinner();
+    }
+}
@@ -0,0 +1,81 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.utilitats.Heuristica;
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara el càlcul de la distància fins a la victòria de {@link Heuristica}
+ * amb la implementació original amb Dijkstra ({@link DistanciaReferencia}).
+ * Primer comprova que totes dues donen el mateix resultat a totes les
+ * posicions i després mesura el temps per crida de cadascuna.
+ *
+ * Ús: {@code BenchmarkDistancia [mida] [posicions] [repeticions]}
+ */
+public class BenchmarkDistancia {
+
+    private static final int[] JUGADORS = {1, -1, 2};
+
+    // Evita que el JIT elimini els càlculs que no es fan servir
+    private static volatile long resultat;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+        int quantes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int repeticions = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        List<TaulerCerca> taulers = new ArrayList<>();
+        for (int i = 0; i < quantes; i++) {
+            int pedres = i * size * size / (2 * quantes);
+            for (HexGameStatus posicio : InformeEscalat.posicions(size, 1, pedres, 1000 + i)) {
+                taulers.add(new TaulerCerca(posicio));
+            }
+        }
+
+        Heuristica heuristica = new Heuristica();
+        for (TaulerCerca tauler : taulers) {
+            for (int jugador : JUGADORS) {
+                int esperat = DistanciaReferencia.calculateDistanceToVictory(tauler, jugador);
+                int obtingut = heuristica.calculateDistanceToVictory(tauler, jugador);
+                if (esperat != obtingut) {
+                    throw new IllegalStateException("Distància diferent per al jugador " + jugador + ": " + obtingut + " en lloc de " + esperat);
+                }
+            }
+        }
+        System.out.println("Tauler " + size + "x" + size + ", " + taulers.size() + " posicions: resultats idèntics");
+
+        // Escalfament perquè el JIT compili les dues versions
+        mesura(taulers, heuristica, repeticions / 5 + 1, true);
+        mesura(taulers, heuristica, repeticions / 5 + 1, false);
+
+        double referencia = mesura(taulers, heuristica, repeticions, true);
+        double actual = mesura(taulers, heuristica, repeticions, false);
+        System.out.printf("Dijkstra:  %.0f ns/crida%n", referencia);
+        System.out.printf("BFS 0-1:   %.0f ns/crida%n", actual);
+        System.out.printf("Acceleració: %.2fx%n", referencia / actual);
+    }
+
+    /**
+     * @return Els nanosegons per crida, calculant la distància del jugador 1
+     * i del jugador 2 a cada tauler.
+     */
+    private static double mesura(List<TaulerCerca> taulers, Heuristica heuristica, int repeticions, boolean referencia) {
+        long suma = 0;
+        long inici = System.nanoTime();
+        for (int r = 0; r < repeticions; r++) {
+            for (TaulerCerca tauler : taulers) {
+                for (int jugador = 1; jugador <= 2; jugador++) {
+                    suma += referencia
+                            ? DistanciaReferencia.calculateDistanceToVictory(tauler, jugador)
+                            : heuristica.calculateDistanceToVictory(tauler, jugador);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - inici;
+        resultat = suma;
+        return (double) nanos / (repeticions * taulers.size() * 2L);
+    }
+}
@@ -0,0 +1,218 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.MoveNode;
+import edu.upc.epsevg.prop.hex.PlayerType;
+import edu.upc.epsevg.prop.hex.utilitats.GestorTemps;
+import edu.upc.epsevg.prop.hex.utilitats.Heuristica;
+import edu.upc.epsevg.prop.hex.utilitats.Minimax;
+import edu.upc.epsevg.prop.hex.utilitats.OrdenacioMoviments;
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Micro-benchmarks dels camins calents del motor sobre un corpus fix de
+ * posicions d'obertura, de mig joc i de final en taulers de 9x9 i 11x11:
+ * <ul>
+ * <li>{@link Heuristica#eval(TaulerCerca, PlayerType)};</li>
+ * <li>{@link Heuristica#calculateDistanceToVictory(TaulerCerca, int)} dels
+ * dos jugadors;</li>
+ * <li>còpia, {@code placeStone} i {@code getMoves} de
+ * {@link HexGameStatus};</li>
+ * <li>generació i ordenació completa dels moviments d'un node amb
+ * {@link OrdenacioMoviments}, com fa {@code MinimaxBase}, avaluant els fills
+ * sense la cache d'avaluacions;</li>
+ * <li>{@link Minimax#millorMoviment(HexGameStatus)} a profunditat 2 i 3,
+ * amb un Minimax nou (i una taula de transposicions d'1 MB) a cada cerca
+ * perquè no aprofiti les anteriors.</li>
+ * </ul>
+ *
+ * Cada benchmark s'escalfa una iteració i després es mesura durant unes
+ * quantes iteracions de durada fixa; cada operació fa servir la posició
+ * següent del corpus. Es mostren les operacions per segon (mitjana i
+ * desviació entre iteracions) i els bytes assignats per operació pel fil que
+ * mesura.
+ *
+ * Ús: {@code BenchmarkMotor [ms per iteració] [iteracions] [filtre]}; el
+ * filtre és un text que ha de contenir el nom del benchmark.
+ */
+public class BenchmarkMotor {
+
+    private static final int[] MIDES = {9, 11};
+    private static final String[] FASES = {"obertura", "mig", "final"};
+    // Fracció de caselles ocupades de cada fase
+    private static final double[] OCUPACIO = {0.1, 0.3, 0.5};
+    private static final int POSICIONS_PER_FASE = 16;
+
+    // Evita que el JIT elimini els càlculs que no es fan servir
+    private static volatile long resultat;
+
+    /**
+     * Una operació del benchmark.
+     */
+    private interface Operacio {
+
+        /**
+         * @param i Número d'operació, per triar la posició del corpus.
+         * @return Un valor que depèn del càlcul.
+         */
+        long executa(int i);
+    }
+
+    public static void main(String[] args) {
+        long milis = args.length > 0 ? Long.parseLong(args[0]) : 200;
+        int iteracions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String filtre = args.length > 2 ? args[2] : "";
+
+        System.out.printf("%-24s %-5s %-9s %14s %8s %12s%n", "Benchmark", "Mida", "Fase", "ops/s", "error", "bytes/op");
+        for (int size : MIDES) {
+            for (int f = 0; f < FASES.length; f++) {
+                List<HexGameStatus> corpus = corpus(size, f);
+                for (String nom : new String[]{"eval", "distancia", "status.copia", "status.placeStone",
+                    "status.getMoves", "ordenacio", "minimax.profunditat2", "minimax.profunditat3"}) {
+                    if (!nom.contains(filtre)) continue;
+                    double[] r = mesura(operacio(nom, corpus), milis, iteracions);
+                    System.out.printf("%-24s %-5s %-9s %14.1f %7.1f%% %12.0f%n",
+                            nom, size + "x" + size, FASES[f], r[0], r[1], r[2]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Genera el corpus d'una mida i una fase, sempre amb les mateixes
+     * llavors.
+     */
+    static List<HexGameStatus> corpus(int size, int fase) {
+        int pedres = (int) (size * size * OCUPACIO[fase]);
+        List<HexGameStatus> posicions = new ArrayList<>();
+        for (int i = 0; i < POSICIONS_PER_FASE; i++) {
+            posicions.addAll(InformeEscalat.posicions(size, 1, pedres, 100 * size + 10 * fase + i));
+        }
+        return posicions;
+    }
+
+    private static Operacio operacio(String nom, List<HexGameStatus> corpus) {
+        int n = corpus.size();
+        HexGameStatus[] estats = corpus.toArray(new HexGameStatus[0]);
+        TaulerCerca[] taulers = new TaulerCerca[n];
+        MoveNode[] primers = new MoveNode[n];
+        for (int i = 0; i < n; i++) {
+            taulers[i] = new TaulerCerca(estats[i]);
+            primers[i] = estats[i].getMoves().get(0);
+        }
+        Heuristica heuristica = new Heuristica();
+        switch (nom) {
+            case "eval":
+                return i -> {
+                    TaulerCerca t = taulers[i % n];
+                    return heuristica.eval(t, t.getCurrentPlayer());
+                };
+            case "distancia":
+                return i -> {
+                    TaulerCerca t = taulers[i % n];
+                    return heuristica.calculateDistanceToVictory(t, 1) + heuristica.calculateDistanceToVictory(t, -1);
+                };
+            case "status.copia":
+                return i -> new HexGameStatus(estats[i % n]).getSize();
+            case "status.placeStone":
+                return i -> {
+                    HexGameStatus copia = new HexGameStatus(estats[i % n]);
+                    copia.placeStone(primers[i % n].getPoint());
+                    return copia.getPos(primers[i % n].getPoint());
+                };
+            case "status.getMoves":
+                return i -> estats[i % n].getMoves().size();
+            case "ordenacio": {
+                GestorTemps temps = new GestorTemps();
+                OrdenacioMoviments ordenacio = new OrdenacioMoviments(heuristica, temps);
+                ordenacio.prepara(1, taulers[0].getNumCaselles());
+                return i -> {
+                    temps.inicia(0);
+                    int m = ordenacio.genera(taulers[i % n], 0, -1);
+                    ordenacio.ordena(0, m);
+                    temps.finalitza();
+                    return ordenacio.getMoviments(0)[0];
+                };
+            }
+            case "minimax.profunditat2":
+                return i -> new Minimax(2, 1).millorMoviment(estats[i % n]).x;
+            case "minimax.profunditat3":
+                return i -> new Minimax(3, 1).millorMoviment(estats[i % n]).x;
+            default:
+                throw new IllegalArgumentException(nom);
+        }
+    }
+
+    /**
+     * Escalfa i mesura una operació.
+     *
+     * @return Les operacions per segon, la desviació entre iteracions en
+     * percentatge i els bytes assignats per operació (-1 si la màquina
+     * virtual no els sap comptar).
+     */
+    private static double[] mesura(Operacio operacio, long milis, int iteracions) {
+        iteracio(operacio, milis);
+        double[] opsPerSegon = new double[iteracions];
+        long operacions = 0;
+        long bytesInici = bytesAssignats();
+        for (int k = 0; k < iteracions; k++) {
+            long inici = System.nanoTime();
+            long fetes = iteracio(operacio, milis);
+            opsPerSegon[k] = fetes / ((System.nanoTime() - inici) / 1e9);
+            operacions += fetes;
+        }
+        long bytes = bytesAssignats();
+        double mitjana = 0;
+        for (double o : opsPerSegon) {
+            mitjana += o / iteracions;
+        }
+        double variancia = 0;
+        for (double o : opsPerSegon) {
+            variancia += (o - mitjana) * (o - mitjana) / iteracions;
+        }
+        double bytesPerOp = bytesInici < 0 ? -1 : (double) (bytes - bytesInici) / operacions;
+        return new double[]{mitjana, 100 * Math.sqrt(variancia) / mitjana, bytesPerOp};
+    }
+
+    /**
+     * Executa l'operació durant el temps donat. El rellotge es consulta
+     * cada lot de crides perquè no pesi en les operacions curtes.
+     *
+     * @return El nombre d'operacions fetes.
+     */
+    private static long iteracio(Operacio operacio, long milis) {
+        long limit = System.nanoTime() + milis * 1_000_000L;
+        long suma = 0;
+        int fetes = 0;
+        int lot = 1;
+        while (true) {
+            long inici = System.nanoTime();
+            for (int i = 0; i < lot; i++) {
+                suma += operacio.executa(fetes++);
+            }
+            long ara = System.nanoTime();
+            if (ara - limit >= 0) break;
+            // Lots d'uns 10 ms com a màxim
+            if (ara - inici < 10_000_000L) lot *= 2;
+        }
+        resultat = suma;
+        return fetes;
+    }
+
+    /**
+     * @return Els bytes assignats pel fil actual fins ara, o -1 si la
+     * màquina virtual no els sap comptar.
+     */
+    private static long bytesAssignats() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) return -1;
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,198 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.PlayerType;
+import edu.upc.epsevg.prop.hex.utilitats.Heuristica;
+import edu.upc.epsevg.prop.hex.utilitats.PatronsHeuristica;
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara les taules de {@link PatronsHeuristica} amb la implementació
+ * original dels patrons ({@link PatronsReferencia}). Primer comprova que
+ * totes dues donen els mateixos patrons per a totes les pedres de totes les
+ * posicions, després mesura el temps d'actualitzar els patrons després de
+ * cada jugada, com fa l'avaluació incremental de {@link Heuristica}, i
+ * finalment les avaluacions per segon de l'heurística.
+ *
+ * Ús: {@code BenchmarkPatrons [mida] [posicions] [repeticions]}
+ */
+public class BenchmarkPatrons {
+
+    // Evita que el JIT elimini els càlculs que no es fan servir
+    private static volatile long resultat;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+        int quantes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int repeticions = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        PatronsHeuristica patrons = PatronsHeuristica.per(size);
+
+        List<TaulerCerca> taulers = new ArrayList<>();
+        for (int i = 0; i < quantes; i++) {
+            int pedres = i * size * size / (2 * quantes);
+            for (HexGameStatus posicio : InformeEscalat.posicions(size, 1, pedres, 2000 + i)) {
+                taulers.add(new TaulerCerca(posicio));
+            }
+        }
+
+        long pedres = 0;
+        for (TaulerCerca tauler : taulers) {
+            for (int c = 0; c < tauler.getNumCaselles(); c++) {
+                int color = tauler.getPos(c);
+                if (color == 0) continue;
+                int codi = patrons.codi(tauler, c, color);
+                if (PatronsHeuristica.trets(codi) != PatronsReferencia.trets(tauler, c)
+                        || PatronsHeuristica.desalineats(codi, color) != PatronsReferencia.desalineats(tauler, c)) {
+                    throw new IllegalStateException("Patrons diferents a la casella " + c);
+                }
+                pedres++;
+            }
+        }
+        System.out.println("Tauler " + size + "x" + size + ", " + taulers.size() + " posicions, "
+                + pedres + " pedres: patrons idèntics");
+
+        // Escalfament perquè el JIT compili les dues versions
+        actualitza(taulers, patrons, repeticions / 5 + 1, true);
+        actualitza(taulers, patrons, repeticions / 5 + 1, false);
+
+        double referencia = actualitza(taulers, patrons, repeticions, true);
+        double taules = actualitza(taulers, patrons, repeticions, false);
+        System.out.printf("Plantilles: %.0f ns/jugada%n", referencia);
+        System.out.printf("Taules:     %.0f ns/jugada%n", taules);
+        System.out.printf("Acceleració: %.2fx%n", referencia / taules);
+
+        Heuristica heuristica = new Heuristica();
+        avalua(taulers, heuristica, repeticions / 5 + 1);
+        System.out.printf("Heuristica: %.0f avaluacions/s%n", avalua(taulers, heuristica, repeticions));
+    }
+
+    /**
+     * Fa cada jugada de cada tauler i recalcula els patrons de les pedres
+     * afectades, com {@link edu.upc.epsevg.prop.hex.utilitats.TermesHeuristica}.
+     * La referència recorre les plantilles de les pedres de l'entorn de radi
+     * 2 de la jugada; les taules actualitzen el codi de les caselles que
+     * tenen la jugada a l'entorn i en consulten els patrons.
+     *
+     * @return Els nanosegons per jugada.
+     */
+    private static double actualitza(List<TaulerCerca> taulers, PatronsHeuristica patrons, int repeticions, boolean referencia) {
+        long suma = 0;
+        long jugades = 0;
+        int[] moviments = new int[0];
+        List<int[][]> codisTaulers = new ArrayList<>();
+        for (TaulerCerca tauler : taulers) {
+            int[][] codis = new int[2][tauler.getNumCaselles()];
+            for (int c = 0; c < tauler.getNumCaselles(); c++) {
+                codis[0][c] = patrons.codi(tauler, c, 1);
+                codis[1][c] = patrons.codi(tauler, c, -1);
+            }
+            codisTaulers.add(codis);
+        }
+        long inici = System.nanoTime();
+        for (int r = 0; r < repeticions; r++) {
+            for (int t = 0; t < taulers.size(); t++) {
+                TaulerCerca tauler = taulers.get(t);
+                int[][] codis = codisTaulers.get(t);
+                int size = tauler.getSize();
+                if (moviments.length < tauler.getNumCaselles()) {
+                    moviments = new int[tauler.getNumCaselles()];
+                }
+                int n = tauler.getMoviments(moviments);
+                int color = tauler.getCurrentPlayerColor();
+                for (int i = 0; i < n; i++) {
+                    int m = moviments[i];
+                    tauler.play(m);
+                    if (referencia) {
+                        int x = m / size;
+                        int y = m % size;
+                        for (int dx = -2; dx <= 2; dx++) {
+                            for (int dy = -2; dy <= 2; dy++) {
+                                int nx = x + dx;
+                                int ny = y + dy;
+                                if (Math.abs(dx + dy) > 2 || nx < 0 || nx >= size || ny < 0 || ny >= size) continue;
+                                int c = nx * size + ny;
+                                if (tauler.getPos(c) == 0) continue;
+                                suma += PatronsReferencia.trets(tauler, c) + PatronsReferencia.desalineats(tauler, c);
+                            }
+                        }
+                    } else {
+                        suma += canvia(tauler, patrons, codis, m, color);
+                        suma += canvia(tauler, patrons, codis, m, -color);
+                    }
+                    tauler.undo();
+                    jugades++;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - inici;
+        resultat = suma;
+        return (double) nanos / jugades;
+    }
+
+    /**
+     * Actualitza els codis de les caselles afectades per la jugada i en
+     * consulta els patrons. Amb {@code color} igual al de la jugada la posa i
+     * amb el contrari la treu, perquè els codis tornin a quedar com eren.
+     *
+     * @return La suma dels patrons consultats.
+     */
+    private static long canvia(TaulerCerca tauler, PatronsHeuristica patrons, int[][] codis, int m, int color) {
+        boolean posa = color == tauler.getPos(m);
+        int abans = posa ? 0 : tauler.getPos(m);
+        int despres = posa ? color : 0;
+        int canvi1 = PatronsHeuristica.xifra(despres, 1) - PatronsHeuristica.xifra(abans, 1);
+        int canvi2 = PatronsHeuristica.xifra(despres, -1) - PatronsHeuristica.xifra(abans, -1);
+        long suma = 0;
+        for (int k = 0; k < patrons.getNumAfectades(m); k++) {
+            int c = patrons.getAfectada(m, k);
+            int pes = patrons.getPes(m, k);
+            codis[0][c] += canvi1 * pes;
+            codis[1][c] += canvi2 * pes;
+            int pos = tauler.getPos(c);
+            if (posa && pos != 0) {
+                int codi = codis[pos == 1 ? 0 : 1][c];
+                suma += PatronsHeuristica.trets(codi) + PatronsHeuristica.desalineats(codi, pos);
+            }
+        }
+        if (posa) {
+            int codi = codis[color == 1 ? 0 : 1][m];
+            suma += PatronsHeuristica.trets(codi) + PatronsHeuristica.desalineats(codi, color);
+        }
+        return suma;
+    }
+
+    /**
+     * Avalua tots els fills de cada tauler seguits, com fa l'ordenació de
+     * moviments.
+     *
+     * @return Les avaluacions per segon.
+     */
+    private static double avalua(List<TaulerCerca> taulers, Heuristica heuristica, int repeticions) {
+        long suma = 0;
+        long avaluacions = 0;
+        int[] moviments = new int[0];
+        long inici = System.nanoTime();
+        for (int r = 0; r < repeticions; r++) {
+            for (TaulerCerca tauler : taulers) {
+                if (moviments.length < tauler.getNumCaselles()) {
+                    moviments = new int[tauler.getNumCaselles()];
+                }
+                int n = tauler.getMoviments(moviments);
+                PlayerType jugador = tauler.getCurrentPlayer();
+                for (int i = 0; i < n; i++) {
+                    tauler.play(moviments[i]);
+                    suma += heuristica.eval(tauler, jugador);
+                    tauler.undo();
+                    avaluacions++;
+                }
+            }
+        }
+        double segons = (System.nanoTime() - inici) / 1e9;
+        resultat = suma;
+        return avaluacions / segons;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Implementació original amb Dijkstra de
+ * {@link edu.upc.epsevg.prop.hex.utilitats.Heuristica#calculateDistanceToVictory(TaulerCerca, int)}.
+ * Es conserva com a referència per comprovar que la versió actual dona
+ * exactament els mateixos resultats i per comparar-ne el rendiment.
+ */
+class DistanciaReferencia {
+
+    /**
+     * Calcula la distància mínima entre els costats del tauler utilitzant
+     * Dijkstra.
+     *
+     * @param player El jugador (1 o 2).
+     * @param board tauler del torn
+     * @return La distància mínima en passos buits entre els extrems del
+     * jugador.
+     */
+    static int calculateDistanceToVictory(TaulerCerca board, int player) {
+        int size = board.getSize();
+        int[][] distances = new int[size][size];
+        for (int[] row : distances) {
+            Arrays.fill(row, Integer.MAX_VALUE);
+        }
+
+        PriorityQueue<Node> priorityQueue = new PriorityQueue<>(Comparator.comparingInt(cell -> cell.distance));
+        Set<Point> visitats = new HashSet<>();
+
+        // Inicialitza les distàncies des del costat inicial del jugador
+        if (player == 1) { // Oest a Est
+            for (int y = 0; y < size; y++) {
+                Point start = new Point(0, y);
+                int cellState = board.getPos(start.x, start.y);
+                if (cellState == player || cellState == 0) {
+                    distances[start.x][start.y] = cellState == 0 ? 1 : 0;
+                    priorityQueue.add(new Node(start, distances[start.x][start.y]));
+                }
+            }
+        } else { // Nord a Sud
+            for (int x = 0; x < size; x++) {
+                Point start = new Point(x, 0);
+                int cellState = board.getPos(start.x, start.y);
+                if (cellState == player || cellState == 0) {
+                    distances[start.x][start.y] = cellState == 0 ? 1 : 0;
+                    priorityQueue.add(new Node(start, distances[start.x][start.y]));
+                }
+            }
+        }
+
+        // Direccions possibles en un tauler hexagonal
+        int[][] direccions = {
+            {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
+        };
+
+        // Dijkstra per calcular les distàncies mínimes
+        while (!priorityQueue.isEmpty()) {
+            Node current = priorityQueue.poll();
+
+            if (visitats.contains(current.point)) {
+                continue;
+            }
+            visitats.add(current.point);
+
+            // Si arribem al costat oposat, podem aturar-nos
+            if ((player == 1 && current.point.x == size - 1)
+                    || (player == 2 && current.point.y == size - 1)) {
+                return distances[current.point.x][current.point.y];
+            }
+
+            // Explorar veïns
+            for (int[] dir : direccions) {
+                int newX = current.point.x + dir[0];
+                int newY = current.point.y + dir[1];
+                Point vei = new Point(newX, newY);
+
+                if (newX >= 0 && newX < size && newY >= 0 && newY < size) {
+                    int cellState = board.getPos(newX, newY);
+                    int newDistance = distances[current.point.x][current.point.y] + (cellState == 0 ? 1 : 0);
+
+                    if (newDistance < distances[newX][newY]) {
+                        distances[newX][newY] = newDistance;
+                        priorityQueue.add(new Node(vei, newDistance));
+                    }
+                }
+            }
+        }
+        // Si no es pot connectar, retornem un valor alt
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Classe auxiliar per emmagatzemar les cel·les del tauler juntament amb les
+     * seves distàncies.
+     */
+    private static class Node {
+
+        Point point;
+        int distance;
+
+        Node(Point point, int distance) {
+            this.point = point;
+            this.distance = distance;
+        }
+    }
+}
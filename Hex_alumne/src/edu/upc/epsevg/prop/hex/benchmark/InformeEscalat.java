@@ -0,0 +1,85 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.MoveNode;
+import edu.upc.epsevg.prop.hex.utilitats.MinimaxIteratiu;
+import edu.upc.epsevg.prop.hex.utilitats.TaulaTransposicio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Informe d'escalat de la cerca paral·lela de {@link MinimaxIteratiu}. Per a
+ * cada nombre de fils cerca un conjunt fix de posicions de mig joc durant un
+ * temps fix i mostra els nodes per segon i la profunditat mitjana assolida.
+ *
+ * Ús: {@code InformeEscalat [mida] [segons per posició] [fils màxims]}
+ */
+public class InformeEscalat {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+        int segons = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxFils = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<HexGameStatus> posicions = posicions(size, 4, size * size / 4, 1234);
+        ScheduledExecutorService rellotge = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "InformeEscalat-rellotge");
+            t.setDaemon(true);
+            return t;
+        });
+
+        System.out.println("Tauler " + size + "x" + size + ", " + posicions.size() + " posicions, " + segons + " s per posició");
+        System.out.println("fils\tnodes/s\t\tprofunditat\tacceleració");
+        double base = 0;
+        for (int fils = 1; fils <= maxFils; fils *= 2) {
+            MinimaxIteratiu cerca = new MinimaxIteratiu(100, TaulaTransposicio.MEGABYTES_PER_DEFECTE, fils);
+            long nodes = 0;
+            long nanos = 0;
+            int profunditat = 0;
+            for (HexGameStatus posicio : posicions) {
+                ScheduledFuture<?> avis = rellotge.schedule(cerca::timeout, segons, TimeUnit.SECONDS);
+                long inici = System.nanoTime();
+                cerca.millorMoviment(new HexGameStatus(posicio));
+                nanos += System.nanoTime() - inici;
+                avis.cancel(false);
+                nodes += cerca.getNodesExplorats();
+                profunditat += cerca.getProfunditatMaxima();
+            }
+            double nps = nodes * 1e9 / nanos;
+            if (fils == 1) base = nps;
+            System.out.printf("%d\t%.0f\t\t%.2f\t\t%.2fx%n", fils, nps, (double) profunditat / posicions.size(), nps / base);
+        }
+        rellotge.shutdownNow();
+    }
+
+    /**
+     * Genera posicions amb pedres col·locades a l'atzar amb una llavor fixa.
+     *
+     * @param size Mida del tauler.
+     * @param quantes Nombre de posicions.
+     * @param pedres Nombre de pedres de cada posició.
+     * @param llavor Llavor del generador aleatori.
+     * @return Les posicions generades, cap d'elles acabada.
+     */
+    static List<HexGameStatus> posicions(int size, int quantes, int pedres, long llavor) {
+        Random random = new Random(llavor);
+        List<HexGameStatus> posicions = new ArrayList<>();
+        while (posicions.size() < quantes) {
+            HexGameStatus status = new HexGameStatus(size);
+            for (int i = 0; i < pedres && !status.isGameOver(); i++) {
+                List<MoveNode> moves = status.getMoves();
+                status.placeStone(moves.get(random.nextInt(moves.size())).getPoint());
+            }
+            if (!status.isGameOver()) {
+                posicions.add(status);
+            }
+        }
+        return posicions;
+    }
+}
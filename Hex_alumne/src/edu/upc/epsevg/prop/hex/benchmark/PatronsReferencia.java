@@ -0,0 +1,167 @@
+package edu.upc.epsevg.prop.hex.benchmark;
+
+import edu.upc.epsevg.prop.hex.utilitats.PatronsHeuristica;
+import edu.upc.epsevg.prop.hex.utilitats.TaulerCerca;
+
+/**
+ * Implementació original dels patrons de
+ * {@link edu.upc.epsevg.prop.hex.utilitats.Heuristica}, que recorre les
+ * plantilles per a cada pedra. Es conserva com a referència per comprovar
+ * que {@link PatronsHeuristica} dona exactament els mateixos resultats i per
+ * comparar-ne el rendiment.
+ */
+class PatronsReferencia {
+
+    private static final int[][] DIRECCIONS = {
+        {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
+    };
+
+    private static final int[][] CONFIGURACIONS_PONT = {
+        {1, -2, 1, -1, 0, -1},
+        {-1, -1, 0, -1, -1, 0},
+        {2, -1, 1, -1, 1, 0},
+        {-2, 1, -1, 0, -1, 1},
+        {1, 1, 1, 0, 0, 1},
+        {-1, 2, -1, 1, 0, 1}
+    };
+
+    private static final int[][] PLANTILLES_VORA = {
+        {-1, 0, 0, 1},
+        {0, -1, 1, 0},
+        {1, -1, 1, 0}
+    };
+
+    private static final int[][][] PLANTILLES_INTERIOR = {
+        {{0, -1}, {1, 0}, {0, 1}},
+        {{-1, 1}, {1, -1}, {0, -2}},
+        {{0, -1}, {-1, 0}, {0, 1}, {1, 0}}
+    };
+
+    /**
+     * @param board El tauler.
+     * @param c Una casella amb una pedra.
+     * @return Els patrons que forma la pedra, amb els bits de
+     * {@link PatronsHeuristica#trets(int)}.
+     */
+    static int trets(TaulerCerca board, int c) {
+        int player = board.getPos(c);
+        int x = c / board.getSize();
+        int y = c % board.getSize();
+        int t = 0;
+        if (isBridge(board, player, x, y)) t |= PatronsHeuristica.PONT;
+        if (isEdgeTemplate(board, player, x, y)) t |= PatronsHeuristica.VORA;
+        if (isInteriorTemplate(board, player, x, y)) t |= PatronsHeuristica.INTERIOR;
+        if (isDoubleThreat(board, x, y)) t |= PatronsHeuristica.DOBLE;
+        if (isLadder(board, player, x, y)) t |= PatronsHeuristica.ESCALA;
+        return t;
+    }
+
+    /**
+     * @param board El tauler.
+     * @param c Una casella amb una pedra.
+     * @return El nombre de veïns buits de la pedra no alineats amb
+     * l'objectiu del seu color.
+     */
+    static int desalineats(TaulerCerca board, int c) {
+        int player = board.getPos(c);
+        int x = c / board.getSize();
+        int d = 0;
+        for (int k = 0; k < board.getNumVeins(c); k++) {
+            int vei = board.getVei(c, k);
+            // Només el jugador 1 té direcció objectiu: el color -1 no
+            // s'alinea mai
+            boolean alineat = player == 1 && vei / board.getSize() > x;
+            if (board.getPos(vei) == 0 && !alineat) {
+                d++;
+            }
+        }
+        return d;
+    }
+
+    private static boolean isBridge(TaulerCerca board, int player, int x, int y) {
+        for (int[] config : CONFIGURACIONS_PONT) {
+            int oppX = x + config[0];
+            int oppY = y + config[1];
+            int c1X = x + config[2];
+            int c1Y = y + config[3];
+            int c2X = x + config[4];
+            int c2Y = y + config[5];
+            if (isValid(board, c1X, c1Y) && isValid(board, c2X, c2Y) && isValid(board, oppX, oppY)) {
+                if (board.getPos(c1X, c1Y) == 0 && board.getPos(c2X, c2Y) == 0
+                        && board.getPos(oppX, oppY) == player) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEdgeTemplate(TaulerCerca board, int player, int x, int y) {
+        for (int[] template : PLANTILLES_VORA) {
+            int x1 = x + template[0];
+            int y1 = y + template[1];
+            int x2 = x + template[2];
+            int y2 = y + template[3];
+            if (isValid(board, x1, y1) && isValid(board, x2, y2)) {
+                if (board.getPos(x1, y1) == player && board.getPos(x2, y2) == player) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInteriorTemplate(TaulerCerca board, int player, int x, int y) {
+        for (int[][] template : PLANTILLES_INTERIOR) {
+            boolean matches = true;
+            for (int[] offset : template) {
+                int nx = x + offset[0];
+                int ny = y + offset[1];
+                if (!isValid(board, nx, ny) || board.getPos(nx, ny) != player) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDoubleThreat(TaulerCerca board, int x, int y) {
+        int threats = 0;
+        for (int[] dir : DIRECCIONS) {
+            int nx = x + dir[0];
+            int ny = y + dir[1];
+            if (isValid(board, nx, ny) && board.getPos(nx, ny) == 0) {
+                threats++;
+                if (threats >= 2) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLadder(TaulerCerca board, int player, int x, int y) {
+        for (int[] dir1 : DIRECCIONS) {
+            int neighborX1 = x + dir1[0];
+            int neighborY1 = y + dir1[1];
+            if (isValid(board, neighborX1, neighborY1) && board.getPos(neighborX1, neighborY1) == player) {
+                for (int[] dir2 : DIRECCIONS) {
+                    if (dir2 != dir1) {
+                        int neighborX2 = neighborX1 + dir2[0];
+                        int neighborY2 = neighborY1 + dir2[1];
+                        if (isValid(board, neighborX2, neighborY2) && board.getPos(neighborX2, neighborY2) == 0) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isValid(TaulerCerca board, int x, int y) {
+        return x >= 0 && x < board.getSize() && y >= 0 && y < board.getSize();
+    }
+}
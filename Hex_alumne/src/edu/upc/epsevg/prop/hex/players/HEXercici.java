@@ -3,14 +3,33 @@ package edu.upc.epsevg.prop.hex.players;
 import edu.upc.epsevg.prop.hex.*;
 import edu.upc.epsevg.prop.hex.utilitats.*;
 
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
 /**
  * Implementació de HEXercici per al joc de Hex. Aquest jugador utilitza
- * un algorisme MiniMax amb o sense IDS.
+ * un algorisme MiniMax amb o sense IDS, o bé una cerca de Monte Carlo.
+ *
+ * Per defecte el MiniMax avalua amb {@link Heuristica} i el perfil de pesos
+ * del fitxer de {@code -Dheuristica.pesos=<fitxer>} si n'hi ha, per exemple
+ * un perfil ajustat amb {@link AjustadorPesos}. També se li pot passar un
+ * perfil concret amb el constructor corresponent.
+ *
+ * Amb més d'un fil de cerca el jugador té fils propis, que s'alliberen amb
+ * {@link #close()} quan ja no ha de jugar més.
  */
-public class HEXercici implements IPlayer, IAuto {
+public class HEXercici implements IPlayer, IAuto, AutoCloseable {
+
+    /**
+     * Marge que es deixa respecte el timeout per retornar el moviment abans
+     * que arribi l'avís.
+     */
+    private static final int MARGE_TIMEOUT_MS = 100;
 
-    private final boolean iteratiu;
-    MinimaxBase MiniMax;
+    Cercador cercador;
+    private final List<LlibreObertures> llibres = new ArrayList<>();
 
     /**
      * Constructor de la classe HEXercici.
@@ -19,27 +38,221 @@ public class HEXercici implements IPlayer, IAuto {
      * @param iteratiu Indica si s'utilitza IDS.
      */
     public HEXercici(int maxDepth, boolean iteratiu) {
-        this.iteratiu = iteratiu;
-        MiniMax = iteratiu ? new MinimaxIteratiu(maxDepth) : new Minimax(maxDepth);
+        this(maxDepth, iteratiu, TaulaTransposicio.MEGABYTES_PER_DEFECTE);
+    }
+
+    /**
+     * Constructor de la classe HEXercici amb una mida de taula de
+     * transposicions concreta.
+     *
+     * @param maxDepth La profunditat màxima de cerca.
+     * @param iteratiu Indica si s'utilitza IDS.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     */
+    public HEXercici(int maxDepth, boolean iteratiu, int megabytesTaula) {
+        this(maxDepth, iteratiu, megabytesTaula, 1);
+    }
+
+    /**
+     * Constructor de la classe HEXercici amb cerca paral·lela.
+     *
+     * @param maxDepth La profunditat màxima de cerca.
+     * @param iteratiu Indica si s'utilitza IDS.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     * @param fils Nombre de fils de cerca. Només té efecte amb IDS.
+     */
+    public HEXercici(int maxDepth, boolean iteratiu, int megabytesTaula, int fils) {
+        this(maxDepth, iteratiu, megabytesTaula, fils, 0);
+    }
+
+    /**
+     * Constructor de la classe HEXercici amb un límit de temps per moviment.
+     * La cerca s'atura sola una mica abans del timeout i, amb IDS, no comença
+     * una iteració nova si no té temps d'aprofitar-la.
+     *
+     * @param maxDepth La profunditat màxima de cerca.
+     * @param iteratiu Indica si s'utilitza IDS.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     * @param fils Nombre de fils de cerca. Només té efecte amb IDS.
+     * @param segonsTimeout El timeout de la partida en segons o 0 si només
+     * s'atura amb l'avís de {@link #timeout()}.
+     */
+    public HEXercici(int maxDepth, boolean iteratiu, int megabytesTaula, int fils, int segonsTimeout) {
+        this(iteratiu ? SearchType.MINIMAX_IDS : SearchType.MINIMAX, maxDepth, megabytesTaula, fils, segonsTimeout);
+    }
+
+    /**
+     * Constructor de la classe HEXercici que permet triar l'algorisme de
+     * cerca.
+     *
+     * @param tipus {@link SearchType#MINIMAX}, {@link SearchType#MINIMAX_IDS}
+     * o {@link SearchType#MONTECARLO}.
+     * @param maxDepth La profunditat màxima de cerca. No té efecte amb Monte
+     * Carlo.
+     * @param megabytes Memòria màxima de la taula de transposicions o, amb
+     * Monte Carlo, de l'arbre.
+     * @param fils Nombre de fils de cerca. No té efecte amb MiniMax sense IDS.
+     * @param segonsTimeout El timeout de la partida en segons o 0 si només
+     * s'atura amb l'avís de {@link #timeout()}.
+     */
+    public HEXercici(SearchType tipus, int maxDepth, int megabytes, int fils, int segonsTimeout) {
+        this(tipus, maxDepth, megabytes, fils, segonsTimeout, Heuristica::new);
+    }
+
+    /**
+     * Constructor de la classe HEXercici que avalua amb {@link Heuristica} i
+     * un perfil de pesos concret, per exemple el d'un fitxer llegit amb
+     * {@link PesosHeuristica#llegeix}.
+     *
+     * @param tipus {@link SearchType#MINIMAX}, {@link SearchType#MINIMAX_IDS}
+     * o {@link SearchType#MONTECARLO}.
+     * @param maxDepth La profunditat màxima de cerca. No té efecte amb Monte
+     * Carlo.
+     * @param megabytes Memòria màxima de la taula de transposicions o, amb
+     * Monte Carlo, de l'arbre.
+     * @param fils Nombre de fils de cerca. No té efecte amb MiniMax sense IDS.
+     * @param segonsTimeout El timeout de la partida en segons o 0 si només
+     * s'atura amb l'avís de {@link #timeout()}.
+     * @param pesos El perfil de pesos de l'heurística.
+     */
+    public HEXercici(SearchType tipus, int maxDepth, int megabytes, int fils, int segonsTimeout, PesosHeuristica pesos) {
+        this(tipus, maxDepth, megabytes, fils, segonsTimeout, () -> new Heuristica(pesos));
+    }
+
+    /**
+     * Constructor de la classe HEXercici que permet triar l'algorisme de
+     * cerca i la funció d'avaluació del MiniMax.
+     *
+     * @param tipus {@link SearchType#MINIMAX}, {@link SearchType#MINIMAX_IDS}
+     * o {@link SearchType#MONTECARLO}.
+     * @param maxDepth La profunditat màxima de cerca. No té efecte amb Monte
+     * Carlo.
+     * @param megabytes Memòria màxima de la taula de transposicions o, amb
+     * Monte Carlo, de l'arbre.
+     * @param fils Nombre de fils de cerca. No té efecte amb MiniMax sense IDS.
+     * @param segonsTimeout El timeout de la partida en segons o 0 si només
+     * s'atura amb l'avís de {@link #timeout()}.
+     * @param avaluadors Crea la funció d'avaluació de cada fil de MiniMax,
+     * per exemple {@code Heuristica::new} o {@code Resistencia::new}. No té
+     * efecte amb Monte Carlo.
+     */
+    public HEXercici(SearchType tipus, int maxDepth, int megabytes, int fils, int segonsTimeout, Supplier<? extends Avaluador> avaluadors) {
+        switch (tipus) {
+            case MINIMAX:
+                cercador = new Minimax(maxDepth, megabytes, avaluadors.get());
+                break;
+            case MINIMAX_IDS:
+                cercador = new MinimaxIteratiu(maxDepth, megabytes, fils, avaluadors);
+                break;
+            case MONTECARLO:
+                cercador = new MonteCarlo(megabytes, fils);
+                break;
+            default:
+                throw new IllegalArgumentException("Tipus de cerca no suportat: " + tipus);
+        }
+        if (segonsTimeout > 0) {
+            cercador.setTempsPerMoviment(Math.max(segonsTimeout * 1000L - MARGE_TIMEOUT_MS, 1));
+        }
+    }
+
+    /**
+     * Activa o desactiva la ponderació: mentre l'oponent pensa, es cerca en
+     * segon pla la posició que resulta de la seva resposta prevista, de
+     * manera que si la juga la cerca següent aprofita tota aquella feina.
+     * Només té efecte amb {@link SearchType#MINIMAX_IDS}. Després de l'últim
+     * moviment de la partida cal cridar {@link #close()} o desactivar-la.
+     *
+     * @param activa Si s'ha de ponderar.
+     */
+    public void setPonderacio(boolean activa) {
+        if (cercador instanceof MinimaxIteratiu) {
+            ((MinimaxIteratiu) cercador).setPonderacio(activa);
+        }
+    }
+
+    /**
+     * Fixa el nombre màxim de nodes de cada cerca de MiniMax. Amb un sol fil
+     * i sense timeout, el jugador fa la mateixa feina a cada moviment sigui
+     * quina sigui la velocitat de la màquina. No té efecte amb Monte Carlo.
+     *
+     * @param nodes Nodes màxims per moviment o 0 si no té límit.
+     */
+    public void setNodesPerMoviment(long nodes) {
+        if (cercador instanceof MinimaxBase) {
+            ((MinimaxBase) cercador).setNodesPerMoviment(nodes);
+        }
+    }
+
+    /**
+     * @return La puntuació de l'última cerca des del punt de vista del
+     * jugador que ha mogut, amb {@link Integer#MAX_VALUE} si ha demostrat la
+     * victòria i {@link Integer#MIN_VALUE} la derrota, o 0 si no és una cerca
+     * iterativa.
+     */
+    public int getPuntuacio() {
+        return cercador instanceof MinimaxIteratiu ? ((MinimaxIteratiu) cercador).getPuntuacio() : 0;
+    }
+
+    /**
+     * Afegeix un llibre d'obertures. Abans de cercar es consulten els
+     * llibres de la mida del tauler i, si la posició hi és, es juga el
+     * moviment del llibre sense cercar.
+     *
+     * @param llibre El llibre, obert amb {@link LlibreObertures#obre}.
+     */
+    public void afegeixLlibre(LlibreObertures llibre) {
+        llibres.add(llibre);
     }
 
     /**
-     * Genera el següent moviment del jugador utilitzant l'algoritme MiniMax.
+     * Genera el següent moviment del jugador utilitzant l'algoritme de cerca
+     * triat.
      *
      * @param hexGameStatus L'estat actual del joc de Hex.
      * @return Un objecte {@link PlayerMove} que conté el moviment calculat , els nodes explorats i la profunditat.
+     * Amb Monte Carlo els nodes són la mida de l'arbre i el valor H són les
+     * simulacions per segon. Si el moviment surt d'un llibre d'obertures, els
+     * nodes i la profunditat són 0. Amb MiniMax el moviment és un
+     * {@link MovimentCerca} amb les estadístiques de la cerca.
      */
     @Override
     public PlayerMove move(HexGameStatus hexGameStatus) {
-        return new PlayerMove(MiniMax.millorMoviment(hexGameStatus), MiniMax.getNodesExplorats(), MiniMax.getProfunditatMaxima(), iteratiu ? SearchType.MINIMAX_IDS : SearchType.MINIMAX);
+        for (LlibreObertures llibre : llibres) {
+            Point moviment = llibre.consulta(hexGameStatus);
+            if (moviment != null) {
+                // La ponderació del moviment anterior ja no serveix de res
+                if (cercador instanceof MinimaxIteratiu) {
+                    ((MinimaxIteratiu) cercador).aturaPonderacio();
+                }
+                return new PlayerMove(moviment, 0, 0, cercador.getTipusCerca());
+            }
+        }
+        Point moviment = cercador.millorMoviment(hexGameStatus);
+        EstadistiquesCerca estadistiques = cercador.getEstadistiques();
+        PlayerMove move = estadistiques == null
+                ? new PlayerMove(moviment, cercador.getNodesExplorats(), cercador.getProfunditatMaxima(), cercador.getTipusCerca())
+                : new MovimentCerca(moviment, cercador.getNodesExplorats(), cercador.getProfunditatMaxima(), cercador.getTipusCerca(), estadistiques);
+        if (cercador instanceof MonteCarlo) {
+            move.setH((float) ((MonteCarlo) cercador).getSimulacionsPerSegon());
+        }
+        return move;
     }
 
     /**
-     * Atura l'algorisme MiniMax si salta el timeout.
+     * Atura la cerca si salta el timeout.
      */
     @Override
     public void timeout() {
-        MiniMax.timeout();
+        cercador.timeout();
+    }
+
+    /**
+     * Atura la ponderació i allibera els fils de la cerca. Després el
+     * jugador ja no pot moure.
+     */
+    @Override
+    public void close() {
+        cercador.close();
     }
 
     /**
@@ -19,10 +19,24 @@ import java.util.Random;
 public class RandomPlayer implements IPlayer, IAuto {
 
     private String name;
+    private final Random rand;
     
 
     public RandomPlayer(String name) {
         this.name = name;
+        this.rand = new Random();
+    }
+
+    /**
+     * Crea un jugador aleatori reproduïble.
+     *
+     * @param name Nom del jugador.
+     * @param seed Llavor dels moviments: amb la mateixa llavor i les mateixes
+     * posicions el jugador fa els mateixos moviments.
+     */
+    public RandomPlayer(String name, long seed) {
+        this.name = name;
+        this.rand = new Random(seed);
     }
 
     @Override
@@ -51,7 +65,6 @@ public class RandomPlayer implements IPlayer, IAuto {
 
         if(freeCells==0) return null;        
         
-        Random rand = new Random();
         int q = rand.nextInt(freeCells);
         freeCells = 0;
         for(  int i=0;i<s.getSize();i++){
@@ -0,0 +1,349 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Ajusta els pesos de {@link Heuristica} amb el mètode de Texel sobre les
+ * posicions d'un {@link RegistrePosicions} i escriu el perfil resultant, que
+ * {@link edu.upc.epsevg.prop.hex.players.HEXercici} pot carregar.
+ *
+ * Cada posició dona dos exemples, un per a cada jugador: l'avaluació
+ * {@code e} del tauler des del punt de vista del jugador es converteix en
+ * una probabilitat de guanyar, {@code 1 / (1 + exp(-(K e + b)))}, i l'error
+ * és la mitjana del quadrat de la diferència amb el resultat (1 si el
+ * jugador va guanyar, 0 si no). L'escala {@code K} i el biaix {@code b} de
+ * cada jugador (l'heurística no puntua igual els dos colors) s'ajusten amb
+ * els pesos inicials, cada {@value #RONDES_ESCALA} rondes i cada vegada que
+ * es redueix el pas; si no, fer créixer tots els pesos alhora equivaldria a
+ * augmentar {@code K} i semblaria una millora. Una de cada deu posicions no
+ * s'ajusta i serveix per validar.
+ *
+ * L'avaluació és la suma dels termes de {@link Heuristica} pels seus
+ * coeficients, així que els termes de cada exemple es calculen una sola
+ * vegada i provar uns pesos només és multiplicar. Cada ronda prova, en
+ * paral·lel, de sumar i restar el pas a cada pes de cada etapa; s'apliquen
+ * alhora tots els canvis que milloren l'error si junts també el milloren, i
+ * si no només el millor. Quan cap canvi no millora, el pas es divideix per
+ * dos: els pesos enters es mouen de 8 en 8 fins d'1 en 1 i el multiplicador
+ * d'alineació de 0.4 en 0.4 fins de 0.05 en 0.05.
+ *
+ * Ús: {@code AjustadorPesos <posicions> [perfil de sortida] [perfil inicial]
+ * [fils] [rondes]}
+ */
+public class AjustadorPesos {
+
+    private static final int PAS_INICIAL = 8;
+    /** Pas del multiplicador d'alineació per cada unitat de pas dels enters. */
+    private static final double PAS_MULTIPLICADOR = 0.05;
+    /** Una de cada tantes posicions es reserva per validar. */
+    private static final int VALIDACIO_CADA = 10;
+    /** Cada quantes rondes amb canvis es torna a ajustar l'escala. */
+    private static final int RONDES_ESCALA = 10;
+    /** Interval de cerca de {@code K}. */
+    private static final double K_MINIMA = 1e-9;
+    private static final double K_MAXIMA = 1;
+
+    /**
+     * Exemples d'ajust: els termes de l'avaluació d'una posició des del punt
+     * de vista d'un jugador i si aquest jugador va guanyar.
+     */
+    static class Exemples {
+
+        final int n;
+        final int[] termes;
+        final byte[] etapes;
+        final byte[] jugadors;
+        final byte[] resultats;
+
+        Exemples(int n) {
+            this.n = n;
+            termes = new int[n * Heuristica.NUM_TERMES];
+            etapes = new byte[n];
+            jugadors = new byte[n];
+            resultats = new byte[n];
+        }
+
+        /**
+         * @param coeficients Coeficients dels termes de cada etapa.
+         * @param k Escala de l'avaluació.
+         * @param biaix Biaix de cada jugador.
+         * @return L'error quadràtic mitjà.
+         */
+        double error(int[][] coeficients, double k, double[] biaix) {
+            return n == 0 ? 0 : suma(coeficients, k, biaix, 0, n) / n;
+        }
+
+        /**
+         * @return La suma dels errors quadràtics dels exemples de l'interval
+         * {@code [inici, fi)}.
+         */
+        double suma(int[][] coeficients, double k, double[] biaix, int inici, int fi) {
+            double suma = 0;
+            int[] t = new int[Heuristica.NUM_TERMES];
+            for (int i = inici; i < fi; i++) {
+                System.arraycopy(termes, i * Heuristica.NUM_TERMES, t, 0, Heuristica.NUM_TERMES);
+                int eval = Heuristica.puntua(t, coeficients[etapes[i]]);
+                double probabilitat = 1 / (1 + Math.exp(-(k * eval + biaix[jugadors[i]])));
+                double diferencia = resultats[i] - probabilitat;
+                suma += diferencia * diferencia;
+            }
+            return suma;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Exemples ajust;
+    private final Exemples validacio;
+    private double k = 1e-3;
+    private final double[] biaix = new double[2];
+
+    /**
+     * Calcula els termes de tots els exemples.
+     *
+     * @param posicions Les posicions.
+     * @param fils Nombre de fils de càlcul.
+     */
+    public AjustadorPesos(ConjuntPosicions posicions, int fils) {
+        this.pool = new ForkJoinPool(Math.max(1, fils));
+        int n = posicions.getNumPosicions();
+        int nValidacio = (n + VALIDACIO_CADA - 1) / VALIDACIO_CADA;
+        ajust = new Exemples(2 * (n - nValidacio));
+        validacio = new Exemples(2 * nValidacio);
+        Zobrist zobrist = new Zobrist(posicions.getSize());
+        ThreadLocal<Heuristica> heuristiques = ThreadLocal.withInitial(() -> new Heuristica(PesosHeuristica.PER_DEFECTE));
+        executa(() -> IntStream.range(0, n).parallel().forEach(i -> {
+            Heuristica heuristica = heuristiques.get();
+            TaulerCerca tauler = new TaulerCerca(posicions.getEstat(i), zobrist);
+            boolean guanya1 = posicions.guanyaQuiMou(i) == (posicions.getTorn(i) == PlayerType.PLAYER1);
+            Exemples exemples = i % VALIDACIO_CADA == 0 ? validacio : ajust;
+            int base = 2 * (i % VALIDACIO_CADA == 0 ? i / VALIDACIO_CADA : i - i / VALIDACIO_CADA - 1);
+            for (int j = 0; j < 2; j++) {
+                int e = base + j;
+                int[] t = new int[Heuristica.NUM_TERMES];
+                exemples.etapes[e] = (byte) heuristica.termes(tauler, j == 0 ? 1 : -1, t);
+                System.arraycopy(t, 0, exemples.termes, e * Heuristica.NUM_TERMES, Heuristica.NUM_TERMES);
+                exemples.jugadors[e] = (byte) j;
+                exemples.resultats[e] = (byte) ((j == 0) == guanya1 ? 1 : 0);
+            }
+        }));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Ús: AjustadorPesos <posicions> [perfil de sortida] [perfil inicial] [fils] [rondes]");
+            return;
+        }
+        Path fitxer = Paths.get(args[0]);
+        Path sortida = Paths.get(args.length > 1 ? args[1] : "pesos.txt");
+        PesosHeuristica inicials = args.length > 2 && !args[2].equals("-")
+                ? PesosHeuristica.llegeix(Paths.get(args[2])) : PesosHeuristica.PER_DEFECTE;
+        int fils = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int rondes = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+        long inici = System.nanoTime();
+        ConjuntPosicions posicions = ConjuntPosicions.llegeix(fitxer);
+        AjustadorPesos ajustador = new AjustadorPesos(posicions, fils);
+        System.out.printf("%d posicions de %dx%d, termes calculats en %.1f s%n", posicions.getNumPosicions(),
+                posicions.getSize(), posicions.getSize(), (System.nanoTime() - inici) / 1e9);
+
+        double errorInicial = ajustador.ajustaEscala(inicials);
+        double validacioInicial = ajustador.errorValidacio(inicials);
+        System.out.printf("Error inicial %.6f (validació %.6f), K=%.3g, biaix %.3f %.3f%n",
+                errorInicial, validacioInicial, ajustador.k, ajustador.biaix[0], ajustador.biaix[1]);
+        PesosHeuristica pesos = ajustador.ajusta(inicials, rondes);
+        double errorFinal = ajustador.error(pesos);
+        double validacioFinal = ajustador.errorValidacio(pesos);
+        System.out.printf("Error final %.6f (validació %.6f) en %.1f s%n",
+                errorFinal, validacioFinal, (System.nanoTime() - inici) / 1e9);
+
+        pesos.escriu(sortida, String.format("Pesos de Heuristica ajustats amb AjustadorPesos sobre %s (%d posicions)\n"
+                + "Error %.6f -> %.6f, validació %.6f -> %.6f, K=%.3g",
+                fitxer.getFileName(), posicions.getNumPosicions(), errorInicial, errorFinal,
+                validacioInicial, validacioFinal, ajustador.k));
+        System.out.println("Perfil escrit a " + sortida);
+    }
+
+    /**
+     * Ajusta els pesos amb la cerca local descrita a la classe.
+     *
+     * @param inicials Els pesos de partida.
+     * @param rondes Nombre màxim de rondes.
+     * @return Els pesos ajustats.
+     */
+    public PesosHeuristica ajusta(PesosHeuristica inicials, int rondes) {
+        PesosHeuristica pesos = inicials;
+        double error = error(pesos);
+        int pas = PAS_INICIAL;
+        int numPesos = PesosHeuristica.NUM_ETAPES * PesosHeuristica.NUM_PESOS;
+        for (int ronda = 1; ronda <= rondes; ronda++) {
+            PesosHeuristica actuals = pesos;
+            int pasActual = pas;
+            double[] errors = new double[2 * numPesos];
+            executa(() -> IntStream.range(0, errors.length).parallel().forEach(c ->
+                    errors[c] = error(candidat(actuals, c, pasActual))));
+
+            // El millor sentit de cada pes que millora l'error
+            PesosHeuristica combinat = pesos;
+            int millor = -1;
+            int canvis = 0;
+            for (int p = 0; p < numPesos; p++) {
+                int c = errors[2 * p] <= errors[2 * p + 1] ? 2 * p : 2 * p + 1;
+                if (errors[c] < error) {
+                    combinat = candidat(combinat, c, pas);
+                    canvis++;
+                    if (millor < 0 || errors[c] < errors[millor]) millor = c;
+                }
+            }
+            if (millor < 0) {
+                pas /= 2;
+                if (pas == 0) break;
+                error = ajustaEscala(pesos);
+                System.out.printf("Ronda %d: cap millora, pas %d, K=%.3g, error %.6f%n", ronda, pas, k, error);
+                continue;
+            }
+            double errorCombinat = canvis > 1 ? error(combinat) : errors[millor];
+            if (errorCombinat < errors[millor]) {
+                pesos = combinat;
+                error = errorCombinat;
+            } else {
+                pesos = candidat(pesos, millor, pas);
+                error = errors[millor];
+                canvis = 1;
+            }
+            if (ronda % RONDES_ESCALA == 0) {
+                error = ajustaEscala(pesos);
+            }
+            System.out.printf("Ronda %d: %d canvis amb pas %d, K=%.3g, error %.6f%n", ronda, canvis, pas, k, error);
+        }
+        return pesos;
+    }
+
+    /**
+     * @param pesos Els pesos actuals.
+     * @param c Índex del candidat: el pes {@code c / 2} (etapa per etapa) més
+     * el pas si {@code c} és parell o menys el pas si és senar.
+     * @param pas El pas dels pesos enters.
+     * @return Els pesos del candidat.
+     */
+    private static PesosHeuristica candidat(PesosHeuristica pesos, int c, int pas) {
+        int etapa = (c / 2) / PesosHeuristica.NUM_PESOS;
+        int pes = (c / 2) % PesosHeuristica.NUM_PESOS;
+        double delta = pes == PesosHeuristica.MULTIPLICADOR_ALINEACIO ? pas * PAS_MULTIPLICADOR : pas;
+        return pesos.amb(etapa, pes, pesos.get(etapa, pes) + (c % 2 == 0 ? delta : -delta));
+    }
+
+    /**
+     * Ajusta l'escala i el biaix de cada jugador per als pesos donats, amb
+     * unes quantes passades de cerca de la secció àuria sobre cada valor.
+     *
+     * @param pesos Els pesos.
+     * @return L'error amb l'escala ajustada.
+     */
+    double ajustaEscala(PesosHeuristica pesos) {
+        int[][] coeficients = coeficients(pesos);
+        for (int passada = 0; passada < 3; passada++) {
+            k = Math.exp(minimitza(Math.log(K_MINIMA), Math.log(K_MAXIMA), x -> errorParallel(coeficients, Math.exp(x), biaix)));
+            for (int j = 0; j < 2; j++) {
+                int jugador = j;
+                double[] prova = biaix.clone();
+                biaix[j] = minimitza(-5, 5, x -> {
+                    prova[jugador] = x;
+                    return errorParallel(coeficients, k, prova);
+                });
+            }
+        }
+        return errorParallel(coeficients, k, biaix);
+    }
+
+    /**
+     * @param pesos Els pesos.
+     * @return L'error dels exemples d'ajust amb l'escala actual.
+     */
+    double error(PesosHeuristica pesos) {
+        return ajust.error(coeficients(pesos), k, biaix);
+    }
+
+    /**
+     * @param pesos Els pesos.
+     * @return L'error dels exemples de validació amb l'escala actual.
+     */
+    double errorValidacio(PesosHeuristica pesos) {
+        return validacio.error(coeficients(pesos), k, biaix);
+    }
+
+    private double errorParallel(int[][] coeficients, double k, double[] biaix) {
+        // Es reparteixen els exemples en blocs consecutius
+        int blocs = pool.getParallelism() * 4;
+        int mida = (ajust.n + blocs - 1) / blocs;
+        double[] sumes = new double[blocs];
+        executa(() -> IntStream.range(0, blocs).parallel().forEach(b -> {
+            int inici = Math.min(ajust.n, b * mida);
+            int fi = Math.min(ajust.n, inici + mida);
+            sumes[b] = ajust.suma(coeficients, k, biaix, inici, fi);
+        }));
+        double suma = 0;
+        for (double s : sumes) {
+            suma += s;
+        }
+        return ajust.n == 0 ? 0 : suma / ajust.n;
+    }
+
+    private static int[][] coeficients(PesosHeuristica pesos) {
+        int[][] coeficients = new int[PesosHeuristica.NUM_ETAPES][];
+        for (int etapa = 0; etapa < coeficients.length; etapa++) {
+            coeficients[etapa] = Heuristica.coeficients(pesos, etapa);
+        }
+        return coeficients;
+    }
+
+    /**
+     * Troba el mínim d'una funció unimodal en un interval amb la cerca de la
+     * secció àuria.
+     */
+    private static double minimitza(double a, double b, DoubleUnaryOperator f) {
+        double r = (Math.sqrt(5) - 1) / 2;
+        double c = b - r * (b - a);
+        double d = a + r * (b - a);
+        double fc = f.applyAsDouble(c);
+        double fd = f.applyAsDouble(d);
+        for (int i = 0; i < 40; i++) {
+            if (fc < fd) {
+                b = d;
+                d = c;
+                fd = fc;
+                c = b - r * (b - a);
+                fc = f.applyAsDouble(c);
+            } else {
+                a = c;
+                c = d;
+                fc = fd;
+                d = a + r * (b - a);
+                fd = f.applyAsDouble(d);
+            }
+        }
+        return (a + b) / 2;
+    }
+
+    /**
+     * Executa una tasca paral·lela al pool de l'ajustador, perquè faci servir
+     * el nombre de fils indicat.
+     */
+    private void executa(Runnable tasca) {
+        try {
+            pool.submit(tasca).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ajust interromput", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Error en l'ajust", ex.getCause());
+        }
+    }
+}
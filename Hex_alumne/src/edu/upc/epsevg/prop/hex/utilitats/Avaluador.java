@@ -0,0 +1,32 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+/**
+ * Funció d'avaluació que fa servir la cerca per puntuar les posicions.
+ *
+ * Les implementacions poden guardar estat entre crides (per exemple
+ * vectors reutilitzables), per això cada fil de cerca ha de tenir la seva
+ * pròpia instància.
+ */
+public interface Avaluador {
+
+    /**
+     * Avalua un tauler de cerca.
+     *
+     * @param board tauler a avaluar
+     * @param player jugador des del punt de vista del qual s'avalua
+     * @return valor pel tauler avaluat, més gran com millor sigui per al
+     * jugador
+     */
+    int eval(TaulerCerca board, PlayerType player);
+
+    /**
+     * @return Si una posició i la seva girada 180 graus tenen la mateixa
+     * avaluació, de manera que l'avaluació es pot guardar amb el hash
+     * canònic ({@link TaulerCerca#getHashCanonic()}).
+     */
+    default boolean isSimetric() {
+        return false;
+    }
+}
@@ -0,0 +1,103 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+/**
+ * Guarda les últimes avaluacions d'una funció d'avaluació en una taula
+ * d'accés directe indexada pel hash de la posició. La cerca avalua cada
+ * fill d'un node de profunditat 1 per ordenar els moviments i el torna a
+ * avaluar quan hi arriba com a fulla, i aquesta segona avaluació surt de la
+ * taula.
+ *
+ * Si la funció d'avaluació és simètrica ({@link Avaluador#isSimetric()}) es
+ * fa servir el hash canònic, i una posició i la seva girada comparteixen
+ * entrada. Com l'avaluador, la taula no es pot compartir entre fils.
+ */
+public class CacheAvaluacions implements Avaluador {
+
+    /** Logaritme en base 2 del nombre d'entrades per defecte. */
+    public static final int BITS_PER_DEFECTE = 16;
+
+    // Claus per distingir el jugador des del punt de vista del qual s'avalua
+    private static final long CLAU_JUGADOR1 = 0x2545F4914F6CDD1DL;
+    private static final long CLAU_JUGADOR2 = 0x6A09E667F3BCC909L;
+
+    private final Avaluador avaluador;
+    private final boolean canonic;
+    private final long[] claus;
+    private final int[] valors;
+    private final int mascara;
+    private long consultes;
+    private long encerts;
+
+    /**
+     * @param avaluador La funció d'avaluació.
+     */
+    public CacheAvaluacions(Avaluador avaluador) {
+        this(avaluador, BITS_PER_DEFECTE);
+    }
+
+    /**
+     * @param avaluador La funció d'avaluació.
+     * @param bits Logaritme en base 2 del nombre d'entrades.
+     */
+    public CacheAvaluacions(Avaluador avaluador, int bits) {
+        this.avaluador = avaluador;
+        this.canonic = avaluador.isSimetric();
+        claus = new long[1 << bits];
+        valors = new int[1 << bits];
+        mascara = (1 << bits) - 1;
+    }
+
+    /**
+     * Retorna l'avaluació guardada de la posició o la calcula i la guarda.
+     *
+     * @param board tauler a avaluar
+     * @param player jugador des del punt de vista del qual s'avalua
+     * @return valor pel tauler avaluat
+     */
+    @Override
+    public int eval(TaulerCerca board, PlayerType player) {
+        long clau = (canonic ? board.getHashCanonic() : board.getHash())
+                ^ (player == PlayerType.PLAYER1 ? CLAU_JUGADOR1 : CLAU_JUGADOR2);
+        int i = (int) (clau ^ (clau >>> 32)) & mascara;
+        consultes++;
+        if (claus[i] == clau) {
+            encerts++;
+            return valors[i];
+        }
+        int valor = avaluador.eval(board, player);
+        claus[i] = clau;
+        valors[i] = valor;
+        return valor;
+    }
+
+    /**
+     * @return Si la funció d'avaluació guardada és simètrica.
+     */
+    @Override
+    public boolean isSimetric() {
+        return canonic;
+    }
+
+    /**
+     * @return La funció d'avaluació guardada.
+     */
+    public Avaluador getAvaluador() {
+        return avaluador;
+    }
+
+    /**
+     * @return El nombre d'avaluacions demanades.
+     */
+    public long getConsultes() {
+        return consultes;
+    }
+
+    /**
+     * @return El nombre d'avaluacions que han sortit de la taula.
+     */
+    public long getEncerts() {
+        return encerts;
+    }
+}
@@ -0,0 +1,336 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.util.Arrays;
+
+/**
+ * Anàlisi de caselles inferiors: treu de la llista de moviments les caselles
+ * mortes, capturades i dominades, que mai són millors que alguna altra
+ * jugada de la llista.
+ *
+ * L'anàlisi només mira els sis veïns de cada casella. Cada veí és buit, una
+ * pedra o vora d'un jugador, o neutre (fora del tauler a les cantonades, o
+ * una casella morta ja omplerta), i el patró dels sis veïns es codifica en
+ * base 4 com un índex de 0 a 4095. Una taula precalculada diu per a cada
+ * patró si la casella és irrellevant per a algun jugador: si la pedra del
+ * jugador a la casella no pot unir dos grups seus que no estiguin ja units
+ * pels veïns, triï l'oponent el que triï de la resta de veïns buits. Una
+ * casella irrellevant per a un jugador és morta: el seu color no canvia mai
+ * el guanyador.
+ *
+ * Les caselles s'omplen en una còpia del tauler fins que no canvia res:
+ * <ul>
+ * <li>les mortes, amb una pedra neutra;</li>
+ * <li>les parelles veïnes capturades per un jugador, amb pedres seves: si
+ * el jugador hi té una pedra, l'altra casella queda morta, i per tant
+ * respon a l'oponent a la parella sense perdre res.</li>
+ * </ul>
+ * Després, al tauler omplert, una casella {@code c} està dominada per una
+ * casella veïna buida {@code d} si una pedra del jugador que mou a {@code d}
+ * deixa {@code c} morta: jugar a {@code d} val almenys com jugar a
+ * {@code c}. Una casella només es poda per una dominadora que encara no
+ * està podada en aquell moment, però la dominadora sí que es pot podar
+ * després per una altra: es permeten cadenes {@code c -> d -> e}. Això és
+ * correcte perquè la dominància és transitiva ({@code e} val almenys com
+ * {@code d}, que val almenys com {@code c}) i les cadenes no poden fer
+ * cicles: la darrera casella podada d'un cicle s'hauria podat per una que
+ * encara no ho estava, i per tant es podaria més tard. Seguint la cadena
+ * des de qualsevol casella podada s'arriba sempre a una casella que no ho
+ * està i que val almenys com ella.
+ *
+ * Les jugades que guanyen immediatament no es poden mai.
+ */
+public class CasellesInferiors {
+
+    private static final int BUIDA = 0;
+    private static final int NEUTRE = 3;
+    /** Nombre màxim de passades d'omplir caselles. */
+    private static final int MAX_PASSADES = 8;
+
+    private static final byte LLIURE = 0;
+    private static final byte MORTA = 1;
+    private static final byte CAPTURADA = 2;
+    private static final byte DOMINADA = 3;
+
+    /**
+     * Per a cada patró de veïns, el bit 1 indica que la casella és
+     * irrellevant per al jugador 1 i el bit 2 per al jugador 2. El veí
+     * {@code k} ocupa els bits {@code 2k} i {@code 2k + 1}.
+     */
+    private static final byte[] IRRELLEVANT = new byte[1 << 12];
+
+    static {
+        for (int patro = 0; patro < IRRELLEVANT.length; patro++) {
+            for (int jugador = 1; jugador <= 2; jugador++) {
+                if (irrellevant(patro, jugador)) {
+                    IRRELLEVANT[patro] |= jugador;
+                }
+            }
+        }
+    }
+
+    private int size = -1;
+    private int numCaselles;
+    // Veí de cada casella en cada direcció, en ordre circular, o -1 fora del tauler
+    private int[] veins;
+    // Patró dels veïns de fora del tauler de cada casella
+    private int[] patroVores;
+    private byte[] caselles;
+    private byte[] estat;
+    private int[] buides;
+
+    private long analisis;
+    private long candidats;
+    private long mortes;
+    private long capturades;
+    private long dominades;
+
+    /**
+     * Treu les caselles inferiors d'una llista de moviments. Si no en
+     * quedaria cap, la llista no es toca.
+     *
+     * @param tauler El tauler. No es modifica.
+     * @param moviments Els moviments, que es compacten al principi del vector
+     * mantenint l'ordre.
+     * @param n El nombre de moviments.
+     * @return El nombre de moviments que queden.
+     */
+    public int filtra(TaulerCerca tauler, int[] moviments, int n) {
+        prepara(tauler.getSize());
+        analisis++;
+        candidats += n;
+
+        int numBuides = 0;
+        for (int c = 0; c < numCaselles; c++) {
+            int color = tauler.getPos(c);
+            caselles[c] = (byte) digit(color);
+            if (color == 0) {
+                buides[numBuides++] = c;
+            }
+        }
+        Arrays.fill(estat, LLIURE);
+        ompleInferiors(numBuides);
+        marcaDominades(numBuides, digit(tauler.getCurrentPlayerColor()));
+
+        int queden = 0;
+        for (int i = 0; i < n; i++) {
+            int c = moviments[i];
+            // Una jugada que guanya ja no es poda encara que n'hi hagi
+            // d'equivalents, perquè la partida acabi
+            if (estat[c] != LLIURE && estat[c] != MORTA && tauler.guanyaAmb(c)) {
+                estat[c] = LLIURE;
+            }
+            if (estat[c] == LLIURE) queden++;
+        }
+        if (queden == 0) return n;
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            int c = moviments[i];
+            switch (estat[c]) {
+                case LLIURE:
+                    moviments[j++] = c;
+                    break;
+                case MORTA:
+                    mortes++;
+                    break;
+                case CAPTURADA:
+                    capturades++;
+                    break;
+                default:
+                    dominades++;
+                    break;
+            }
+        }
+        return j;
+    }
+
+    /**
+     * @return El nombre de llistes de moviments analitzades.
+     */
+    public long getAnalisis() {
+        return analisis;
+    }
+
+    /**
+     * @return El nombre total de moviments rebuts.
+     */
+    public long getCandidats() {
+        return candidats;
+    }
+
+    /**
+     * @return El nombre de moviments podats per ser caselles mortes.
+     */
+    public long getMortes() {
+        return mortes;
+    }
+
+    /**
+     * @return El nombre de moviments podats per ser caselles capturades.
+     */
+    public long getCapturades() {
+        return capturades;
+    }
+
+    /**
+     * @return El nombre de moviments podats per ser caselles dominades.
+     */
+    public long getDominades() {
+        return dominades;
+    }
+
+    /**
+     * Omple les caselles mortes i les parelles capturades fins que no en
+     * surten de noves.
+     */
+    private void ompleInferiors(int numBuides) {
+        boolean canvia = true;
+        for (int passada = 0; canvia && passada < MAX_PASSADES; passada++) {
+            canvia = false;
+            for (int i = 0; i < numBuides; i++) {
+                int c = buides[i];
+                if (caselles[c] == BUIDA && morta(c)) {
+                    caselles[c] = NEUTRE;
+                    estat[c] = MORTA;
+                    canvia = true;
+                }
+            }
+            for (int i = 0; i < numBuides; i++) {
+                int a = buides[i];
+                // Les direccions 0 a 2 recorren cada parella una sola vegada
+                for (int k = 0; k < 3 && caselles[a] == BUIDA; k++) {
+                    int b = veins[a * 6 + k];
+                    if (b < 0 || caselles[b] != BUIDA) continue;
+                    for (int jugador = 1; jugador <= 2; jugador++) {
+                        if (capturada(a, b, jugador)) {
+                            caselles[a] = (byte) jugador;
+                            caselles[b] = (byte) jugador;
+                            estat[a] = CAPTURADA;
+                            estat[b] = CAPTURADA;
+                            canvia = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Marca les caselles buides dominades per una casella veïna buida per al
+     * jugador que mou.
+     */
+    private void marcaDominades(int numBuides, int jugador) {
+        for (int i = 0; i < numBuides; i++) {
+            int c = buides[i];
+            if (caselles[c] != BUIDA) continue;
+            int patro = patro(c);
+            for (int k = 0; k < 6; k++) {
+                int d = veins[c * 6 + k];
+                if (d < 0 || caselles[d] != BUIDA || estat[d] == DOMINADA) continue;
+                if (IRRELLEVANT[patro | jugador << (2 * k)] != 0) {
+                    estat[c] = DOMINADA;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Si la parella de caselles buides veïnes és capturada pel
+     * jugador: amb una pedra seva a qualsevol de les dues, l'altra és morta.
+     */
+    private boolean capturada(int a, int b, int jugador) {
+        caselles[b] = (byte) jugador;
+        boolean mortaA = morta(a);
+        caselles[b] = BUIDA;
+        if (!mortaA) return false;
+        caselles[a] = (byte) jugador;
+        boolean mortaB = morta(b);
+        caselles[a] = BUIDA;
+        return mortaB;
+    }
+
+    private boolean morta(int c) {
+        return IRRELLEVANT[patro(c)] != 0;
+    }
+
+    private int patro(int c) {
+        int patro = patroVores[c];
+        for (int k = 0; k < 6; k++) {
+            int v = veins[c * 6 + k];
+            if (v >= 0) {
+                patro |= caselles[v] << (2 * k);
+            }
+        }
+        return patro;
+    }
+
+    private static int digit(int color) {
+        return color == 0 ? BUIDA : color == 1 ? 1 : 2;
+    }
+
+    /**
+     * Calcula els veïns de cada casella per a una mida de tauler. Les
+     * direccions van en ordre circular, de manera que els veïns {@code k} i
+     * {@code k + 1} són veïns entre ells. Fora del tauler, les columnes
+     * {@code x < 0} i {@code x >= size} són vora del jugador 1, les files
+     * {@code y < 0} i {@code y >= size} del jugador 2, i les dues cantonades
+     * on no es compleix cap de les dues coses són neutres.
+     */
+    private void prepara(int size) {
+        if (this.size == size) return;
+        int[][] direccions = {{1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}};
+        this.size = size;
+        numCaselles = size * size;
+        veins = new int[numCaselles * 6];
+        patroVores = new int[numCaselles];
+        caselles = new byte[numCaselles];
+        estat = new byte[numCaselles];
+        buides = new int[numCaselles];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int c = x * size + y;
+                for (int k = 0; k < 6; k++) {
+                    int nx = x + direccions[k][0];
+                    int ny = y + direccions[k][1];
+                    boolean foraX = nx < 0 || nx >= size;
+                    boolean foraY = ny < 0 || ny >= size;
+                    veins[c * 6 + k] = foraX || foraY ? -1 : nx * size + ny;
+                    int vora = foraX && foraY ? NEUTRE : foraX ? 1 : foraY ? 2 : BUIDA;
+                    patroVores[c] |= vora << (2 * k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decideix si una casella amb un patró de veïns és irrellevant per a un
+     * jugador provant totes les maneres d'omplir els veïns buids: si en
+     * alguna les pedres del jugador al voltant queden en dos grups o més,
+     * la casella els podria unir.
+     */
+    private static boolean irrellevant(int patro, int jugador) {
+        int propis = 0;
+        int buits = 0;
+        for (int k = 0; k < 6; k++) {
+            int d = (patro >> (2 * k)) & 3;
+            if (d == jugador) propis |= 1 << k;
+            else if (d == BUIDA) buits |= 1 << k;
+        }
+        // Recorre tots els subconjunts dels veïns buits
+        for (int s = buits; ; s = (s - 1) & buits) {
+            if (grups(propis | s) >= 2) return false;
+            if (s == 0) return true;
+        }
+    }
+
+    /**
+     * @return El nombre de grups d'un conjunt de veïns, on cada veí toca
+     * l'anterior i el següent.
+     */
+    private static int grups(int conjunt) {
+        if (conjunt == 0x3F) return 1;
+        int anteriors = ((conjunt << 1) | (conjunt >> 5)) & 0x3F;
+        return Integer.bitCount(conjunt & ~anteriors);
+    }
+}
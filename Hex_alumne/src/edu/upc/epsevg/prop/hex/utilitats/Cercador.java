@@ -0,0 +1,64 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.SearchType;
+
+import java.awt.*;
+
+/**
+ * Algorisme de cerca que tria el moviment de {@link edu.upc.epsevg.prop.hex.players.HEXercici}.
+ * Les cerques que fan servir fils propis els alliberen a {@link #close()}.
+ */
+public interface Cercador extends AutoCloseable {
+
+    /**
+     * Troba la millor jugada per a l'estat donat.
+     *
+     * @param status L'estat actual del joc de Hex.
+     * @return El punt del tauler corresponent a la millor jugada trobada.
+     */
+    Point millorMoviment(HexGameStatus status);
+
+    /**
+     * Demana que la cerca en curs s'aturi i retorni la millor jugada que
+     * tingui.
+     */
+    void timeout();
+
+    /**
+     * Fixa el temps màxim de cada cerca.
+     *
+     * @param milisegons Temps màxim per moviment o 0 si no té límit.
+     */
+    void setTempsPerMoviment(long milisegons);
+
+    /**
+     * @return El nombre de nodes explorats a l'última cerca.
+     */
+    long getNodesExplorats();
+
+    /**
+     * @return La profunditat màxima assolida a l'última cerca.
+     */
+    int getProfunditatMaxima();
+
+    /**
+     * @return El tipus de cerca que es publica a {@link edu.upc.epsevg.prop.hex.PlayerMove}.
+     */
+    SearchType getTipusCerca();
+
+    /**
+     * @return Les estadístiques de l'última cerca, o null si l'algorisme no
+     * en recull.
+     */
+    default EstadistiquesCerca getEstadistiques() {
+        return null;
+    }
+
+    /**
+     * Allibera els fils de la cerca. Després no es pot tornar a cercar.
+     */
+    @Override
+    default void close() {
+    }
+}
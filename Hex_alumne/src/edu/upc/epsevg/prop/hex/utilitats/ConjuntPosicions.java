@@ -0,0 +1,180 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Conjunt de posicions etiquetades llegit d'un fitxer de
+ * {@link RegistrePosicions}, tot en memòria: per a cada posició, les
+ * caselles, el jugador que mou, la puntuació de la cerca i si el jugador que
+ * mou va guanyar la partida. Un registre incomplet al final del fitxer no
+ * es llegeix.
+ */
+public class ConjuntPosicions {
+
+    private final int size;
+    private final int numPosicions;
+    private final long[] hashes;
+    private final int[] puntuacions;
+    private final byte[] torns;
+    private final byte[] resultats;
+    // Caselles de cada posició, en l'ordre de TaulerCerca: 0, 1 o -1
+    private final byte[] caselles;
+
+    private ConjuntPosicions(int size, int numPosicions) {
+        this.size = size;
+        this.numPosicions = numPosicions;
+        hashes = new long[numPosicions];
+        puntuacions = new int[numPosicions];
+        torns = new byte[numPosicions];
+        resultats = new byte[numPosicions];
+        caselles = new byte[numPosicions * size * size];
+    }
+
+    /**
+     * Llegeix totes les posicions d'un fitxer.
+     *
+     * @param fitxer El fitxer de posicions.
+     * @return El conjunt de posicions.
+     * @throws IOException Si no es pot llegir o no té el format correcte.
+     */
+    public static ConjuntPosicions llegeix(Path fitxer) throws IOException {
+        try (FileChannel canal = FileChannel.open(fitxer, StandardOpenOption.READ)) {
+            int size = llegeixCapcalera(canal);
+            int midaRegistre = RegistrePosicions.midaRegistre(size);
+            long n = (canal.size() - RegistrePosicions.CAPCALERA) / midaRegistre;
+            if (n * size * size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Massa posicions per llegir-les totes: " + n);
+            }
+            ConjuntPosicions conjunt = new ConjuntPosicions(size, (int) n);
+            int numCaselles = size * size;
+            // Es mapeja per blocs de registres sencers de com a molt 1 GB
+            int perBloc = (1 << 30) / midaRegistre;
+            for (int primer = 0; primer < n; primer += perBloc) {
+                int quants = (int) Math.min(perBloc, n - primer);
+                MappedByteBuffer bloc = canal.map(FileChannel.MapMode.READ_ONLY,
+                        RegistrePosicions.CAPCALERA + (long) primer * midaRegistre, (long) quants * midaRegistre);
+                bloc.order(ByteOrder.LITTLE_ENDIAN);
+                for (int k = 0; k < quants; k++) {
+                    int i = primer + k;
+                    int base = k * midaRegistre;
+                    conjunt.hashes[i] = bloc.getLong(base);
+                    conjunt.puntuacions[i] = bloc.getInt(base + 8);
+                    conjunt.torns[i] = bloc.get(base + 12);
+                    conjunt.resultats[i] = bloc.get(base + 13);
+                    for (int c = 0; c < numCaselles; c++) {
+                        int valor = (bloc.get(base + 14 + (c >> 2)) >> ((c & 3) * 2)) & 3;
+                        conjunt.caselles[i * numCaselles + c] = (byte) (valor == 1 ? 1 : valor == 2 ? -1 : 0);
+                    }
+                }
+            }
+            return conjunt;
+        }
+    }
+
+    /**
+     * Comprova la capçalera d'un fitxer de posicions.
+     *
+     * @param canal El fitxer.
+     * @return La mida del tauler de les posicions.
+     * @throws IOException Si la capçalera no és correcta.
+     */
+    static int llegeixCapcalera(FileChannel canal) throws IOException {
+        ByteBuffer capcalera = ByteBuffer.allocate(RegistrePosicions.CAPCALERA).order(ByteOrder.LITTLE_ENDIAN);
+        while (capcalera.hasRemaining()) {
+            if (canal.read(capcalera, capcalera.position()) < 0) {
+                throw new IOException("Fitxer de posicions sense capçalera");
+            }
+        }
+        if (capcalera.getInt(0) != RegistrePosicions.MAGIC) {
+            throw new IOException("No és un fitxer de posicions");
+        }
+        if (capcalera.getInt(4) != RegistrePosicions.VERSIO) {
+            throw new IOException("Versió de fitxer de posicions no suportada: " + capcalera.getInt(4));
+        }
+        int size = capcalera.getInt(8);
+        if (size <= 0 || capcalera.getInt(12) != RegistrePosicions.midaRegistre(size)) {
+            throw new IOException("Capçalera de fitxer de posicions incorrecta");
+        }
+        return size;
+    }
+
+    /**
+     * @return La mida del tauler.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return El nombre de posicions.
+     */
+    public int getNumPosicions() {
+        return numPosicions;
+    }
+
+    /**
+     * @param i Índex de la posició.
+     * @return El hash canònic de la posició.
+     */
+    public long getHash(int i) {
+        return hashes[i];
+    }
+
+    /**
+     * @param i Índex de la posició.
+     * @return La puntuació de la cerca des del punt de vista del jugador que
+     * mou.
+     */
+    public int getPuntuacio(int i) {
+        return puntuacions[i];
+    }
+
+    /**
+     * @param i Índex de la posició.
+     * @return El jugador que mou.
+     */
+    public PlayerType getTorn(int i) {
+        return torns[i] == 1 ? PlayerType.PLAYER1 : PlayerType.PLAYER2;
+    }
+
+    /**
+     * @param i Índex de la posició.
+     * @return Si el jugador que mou va guanyar la partida.
+     */
+    public boolean guanyaQuiMou(int i) {
+        return resultats[i] == 1;
+    }
+
+    /**
+     * @param i Índex de la posició.
+     * @param x Coordenada x.
+     * @param y Coordenada y.
+     * @return El color de la casella: 0, 1 o -1.
+     */
+    public int getPos(int i, int x, int y) {
+        return caselles[i * size * size + x * size + y];
+    }
+
+    /**
+     * @param i Índex de la posició.
+     * @return Un estat del joc nou amb la posició.
+     */
+    public HexGameStatus getEstat(int i) {
+        byte[][] board = new byte[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                board[y][x] = caselles[i * size * size + x * size + y];
+            }
+        }
+        return new HexGameStatus(board, getTorn(i));
+    }
+}
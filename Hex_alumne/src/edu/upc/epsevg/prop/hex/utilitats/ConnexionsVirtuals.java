@@ -0,0 +1,642 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.util.Arrays;
+
+/**
+ * Connexions virtuals entre els grups d'un jugador i les seves vores
+ * (H-search, Anshelevich), per demostrar victòries abans d'arribar al final
+ * de la partida.
+ *
+ * Els punts són les caselles buides, els grups de pedres del jugador i les
+ * dues vores. Un grup que toca una vora es tracta com la mateixa vora. Una
+ * connexió virtual (VC) entre dos punts vol dir que el jugador els pot
+ * connectar encara que l'oponent mogui primer, i una semiconnexió (SC) que
+ * els pot connectar si mou ell, jugant a la clau. El portador és el conjunt
+ * de caselles buides que necessita la connexió, guardat en un bitset.
+ *
+ * Es parteix de les VC de portador buit entre punts veïns i s'apliquen dues
+ * regles fins que no surt cap connexió nova:
+ * <ul>
+ * <li>AND: VC(x,z,A) i VC(z,y,B) amb A i B disjunts donen VC(x,y,A∪B) si z
+ * és un grup, o SC(x,y,A∪B∪{z}) amb clau z si z és buida;</li>
+ * <li>OR: SC(x,y) amb portadors d'intersecció buida donen VC(x,y) amb la
+ * unió dels portadors.</li>
+ * </ul>
+ *
+ * Entre dues caselles buides només es guarda l'adjacència: la resta de
+ * connexions d'aquest tipus són moltíssimes i omplen la memòria sense
+ * ajudar gaire a connectar les vores.
+ *
+ * La memòria està fitada: cada parell de punts guarda com a molt
+ * {@link #MAX_VC_PARELL} VC i {@link #MAX_SC_PARELL} SC, i cada posició
+ * {@link #MAX_CONNEXIONS} connexions. Quan no hi caben més el càlcul
+ * s'atura. El que es demostra continua sent correcte, però es poden trobar
+ * menys connexions.
+ *
+ * Les connexions es guarden per nivell de la cerca. Quan es demana una
+ * posició filla de l'última calculada al nivell anterior, es parteix
+ * d'aquelles connexions. Les del jugador que no ha mogut només es filtren,
+ * descartant les que feien servir la casella jugada. Les del jugador que ha
+ * mogut es reanomenen, perquè la casella i els grups veïns passen a ser un
+ * sol punt, i només es tornen a combinar les que han canviat.
+ */
+public class ConnexionsVirtuals {
+
+    private static final int MAX_CONNEXIONS = 4096;
+    private static final int MAX_VC_PARELL = 4;
+    private static final int MAX_SC_PARELL = 6;
+    /** Nombre màxim de SC que es combinen amb la regla OR. */
+    private static final int MAX_OR = 4;
+
+    /** Resultat: no s'ha trobat cap connexió entre les vores. */
+    private static final int CAP = -2;
+    /** Resultat: les vores tenen una VC. Altrament el resultat és la clau d'una SC. */
+    private static final int VC = -1;
+
+    private int size = -1;
+    private int numCaselles;
+    private int paraules;
+    private int font;
+    private int pou;
+
+    // Posició que s'està calculant
+    private TaulerCerca tauler;
+    private int color;
+    private boolean nomesVC;
+    private int resultat;
+    private int jugada;
+
+    // Connexions de la posició: extrems (e1 < e2), clau (VC per a les VC) i portador
+    private int num;
+    private int[] e1;
+    private int[] e2;
+    private int[] clau;
+    private long[] portador;
+    // Llistes de VC de cada punt (per a la regla AND) i de cada parell
+    private int[] capPunt;
+    private int[] seguent1;
+    private int[] seguent2;
+    private int[] seguentParell;
+    private int[] cua;
+    private int iniciCua;
+    private int fiCua;
+
+    // Taula de parells amb adreçament obert, buidada amb un comptador de generació
+    private int mascaraParells;
+    private long[] clauParell;
+    private int[] generacioParell;
+    private int[] capVC;
+    private int[] capSC;
+    private int[] numVC;
+    private int[] numSC;
+    private int generacio;
+
+    private int[] punt;
+    private int[] pila;
+    private int[] visitat;
+    private int marca;
+    private long[] unio;
+    private long[] buit;
+    private long[] nivellsOr;
+    private final int[] llistaOr = new int[MAX_SC_PARELL];
+
+    private final Estat[][] estats = {new Estat[0], new Estat[0]};
+    private long calculs;
+    private long incrementals;
+
+    /**
+     * Busca una victòria demostrada per connexions virtuals: el jugador que
+     * mou té una SC o una VC entre les seves vores, o l'oponent en té una VC.
+     *
+     * @param tauler El tauler.
+     * @return El color del jugador que té la partida guanyada o 0 si no
+     * se'n pot demostrar cap.
+     */
+    public int guanyador(TaulerCerca tauler) {
+        int jugador = tauler.getCurrentPlayerColor();
+        if (estat(tauler, jugador).resultat != CAP) return jugador;
+        if (estat(tauler, -jugador).resultat == VC) return -jugador;
+        return 0;
+    }
+
+    /**
+     * Retorna la jugada que manté la victòria demostrada del jugador que
+     * mou: la clau de la SC entre les vores o, si ja tenen una VC, una
+     * casella del seu portador.
+     *
+     * @param tauler El tauler.
+     * @return La casella o -1 si el jugador que mou no té la victòria
+     * demostrada.
+     */
+    public int jugadaGuanyadora(TaulerCerca tauler) {
+        Estat estat = estat(tauler, tauler.getCurrentPlayerColor());
+        return estat.resultat == CAP ? -1 : estat.jugada;
+    }
+
+    /**
+     * @return El nombre de posicions calculades des de zero.
+     */
+    public long getCalculs() {
+        return calculs;
+    }
+
+    /**
+     * @return El nombre de posicions calculades a partir de la posició
+     * pare.
+     */
+    public long getIncrementals() {
+        return incrementals;
+    }
+
+    private Estat estat(TaulerCerca t, int c) {
+        prepara(t.getSize());
+        int nivell = t.getNumJugades();
+        Estat estat = obte(c, nivell);
+        long hash = t.getHash();
+        if (estat.valid && estat.hash == hash) return estat;
+
+        boolean soloVC = t.getCurrentPlayerColor() != c;
+        int m = t.getUltimaJugada();
+        Estat pare = nivell > 0 ? obte(c, nivell - 1) : null;
+        if (pare != null && pare.valid && m >= 0
+                && pare.hash == (hash ^ t.getZobrist().clau(m / size, m % size, t.getPos(m)))) {
+            deriva(t, c, soloVC, pare, m);
+            incrementals++;
+        } else {
+            calcula(t, c, soloVC);
+            calculs++;
+        }
+        estat.guarda(this, hash);
+        return estat;
+    }
+
+    private Estat obte(int c, int nivell) {
+        int i = c == 1 ? 0 : 1;
+        if (nivell >= estats[i].length) {
+            int anterior = estats[i].length;
+            estats[i] = Arrays.copyOf(estats[i], Math.max(nivell + 1, anterior * 2));
+            for (int k = anterior; k < estats[i].length; k++) {
+                estats[i][k] = new Estat();
+            }
+        }
+        return estats[i][nivell];
+    }
+
+    private void prepara(int mida) {
+        if (mida == size) return;
+        size = mida;
+        numCaselles = mida * mida;
+        paraules = (numCaselles + 63) >>> 6;
+        font = numCaselles;
+        pou = numCaselles + 1;
+
+        e1 = new int[MAX_CONNEXIONS];
+        e2 = new int[MAX_CONNEXIONS];
+        clau = new int[MAX_CONNEXIONS];
+        portador = new long[MAX_CONNEXIONS * paraules];
+        seguent1 = new int[MAX_CONNEXIONS];
+        seguent2 = new int[MAX_CONNEXIONS];
+        seguentParell = new int[MAX_CONNEXIONS];
+        cua = new int[MAX_CONNEXIONS];
+        capPunt = new int[numCaselles + 2];
+
+        int parells = Integer.highestOneBit(MAX_CONNEXIONS) * 4;
+        mascaraParells = parells - 1;
+        clauParell = new long[parells];
+        generacioParell = new int[parells];
+        capVC = new int[parells];
+        capSC = new int[parells];
+        numVC = new int[parells];
+        numSC = new int[parells];
+
+        punt = new int[numCaselles];
+        pila = new int[numCaselles];
+        visitat = new int[numCaselles];
+        unio = new long[paraules];
+        buit = new long[paraules];
+        nivellsOr = new long[(MAX_OR + 1) * 2 * paraules];
+        for (Estat[] perColor : estats) {
+            for (Estat estat : perColor) {
+                estat.valid = false;
+            }
+        }
+    }
+
+    private boolean esFont(int casella) {
+        return color == 1 ? casella / size == 0 : casella % size == 0;
+    }
+
+    private boolean esPou(int casella) {
+        return color == 1 ? casella / size == size - 1 : casella % size == size - 1;
+    }
+
+    /**
+     * Buida les connexions i etiqueta els grups del jugador: cada grup és el
+     * punt de la vora que toca o, si no en toca cap, la seva casella menor.
+     */
+    private void reinicia(TaulerCerca t, int c, boolean soloVC) {
+        tauler = t;
+        color = c;
+        nomesVC = soloVC;
+        resultat = CAP;
+        jugada = -1;
+        num = 0;
+        iniciCua = 0;
+        fiCua = 0;
+        Arrays.fill(capPunt, -1);
+        if (++generacio == 0) {
+            Arrays.fill(generacioParell, 0);
+            generacio = 1;
+        }
+
+        Arrays.fill(punt, -1);
+        for (int cas = 0; cas < numCaselles; cas++) {
+            if (t.getPos(cas) == color && punt[cas] < 0) {
+                int mida = grup(cas, -1);
+                int etiqueta = etiqueta(mida);
+                for (int i = 0; i < mida; i++) {
+                    punt[pila[i]] = etiqueta;
+                }
+            } else if (t.getPos(cas) == 0) {
+                punt[cas] = cas;
+            }
+        }
+    }
+
+    /**
+     * Recorre el grup de pedres del jugador que conté una casella sense
+     * passar per la casella exclosa. Les caselles queden a {@link #pila}.
+     *
+     * @return La mida del grup.
+     */
+    private int grup(int inici, int exclosa) {
+        if (++marca == 0) {
+            Arrays.fill(visitat, 0);
+            marca = 1;
+        }
+        int mida = 0;
+        pila[mida++] = inici;
+        visitat[inici] = marca;
+        for (int i = 0; i < mida; i++) {
+            int g = pila[i];
+            for (int k = 0; k < tauler.getNumVeins(g); k++) {
+                int vei = tauler.getVei(g, k);
+                if (vei != exclosa && visitat[vei] != marca && tauler.getPos(vei) == color) {
+                    visitat[vei] = marca;
+                    pila[mida++] = vei;
+                }
+            }
+        }
+        return mida;
+    }
+
+    private int etiqueta(int mida) {
+        int menor = Integer.MAX_VALUE;
+        for (int i = 0; i < mida; i++) {
+            if (esFont(pila[i])) return font;
+            if (esPou(pila[i])) return pou;
+            menor = Math.min(menor, pila[i]);
+        }
+        return menor;
+    }
+
+    /**
+     * Calcula les connexions d'una posició des de zero.
+     */
+    private void calcula(TaulerCerca t, int c, boolean soloVC) {
+        reinicia(t, c, soloVC);
+        for (int cas = 0; cas < numCaselles; cas++) {
+            if (t.getPos(cas) != 0) continue;
+            if (esFont(cas)) afegeix(cas, font, VC, buit, 0, true);
+            if (esPou(cas)) afegeix(cas, pou, VC, buit, 0, true);
+            for (int k = 0; k < t.getNumVeins(cas); k++) {
+                int vei = t.getVei(cas, k);
+                int pv = t.getPos(vei);
+                if ((pv == 0 && vei > cas) || pv == color) {
+                    afegeix(cas, punt[vei], VC, buit, 0, true);
+                }
+            }
+        }
+        tanca();
+    }
+
+    /**
+     * Calcula les connexions a partir de les de la posició pare, de la qual
+     * la posició actual només es diferencia per la pedra de la casella m.
+     */
+    private void deriva(TaulerCerca t, int c, boolean soloVC, Estat pare, int m) {
+        reinicia(t, c, soloVC);
+        int w = paraules;
+        long bitM = 1L << m;
+        int paraulaM = m >> 6;
+
+        if (t.getPos(m) != color) {
+            // Pedra de l'oponent: només cal descartar les connexions que la feien servir
+            for (int i = 0; i < pare.num; i++) {
+                if (pare.e1[i] == m || pare.e2[i] == m || (pare.portador[i * w + paraulaM] & bitM) != 0) continue;
+                afegeix(pare.e1[i], pare.e2[i], pare.clau[i], pare.portador, i * w, false);
+            }
+            return;
+        }
+
+        // Pedra pròpia: la casella i els grups veïns passen a ser el punt nou
+        int nou = punt[m];
+        int[] antics = new int[7];
+        int numAntics = 0;
+        antics[numAntics++] = m;
+        for (int k = 0; k < t.getNumVeins(m); k++) {
+            int vei = t.getVei(m, k);
+            if (t.getPos(vei) == color) {
+                antics[numAntics++] = etiqueta(grup(vei, m));
+            }
+        }
+
+        int[] canviades = new int[pare.num];
+        int numCanviades = 0;
+        for (int i = 0; i < pare.num; i++) {
+            int a = pare.e1[i];
+            int b = pare.e2[i];
+            boolean canvia = false;
+            for (int j = 0; j < numAntics; j++) {
+                if (a == antics[j]) {
+                    a = nou;
+                    canvia = true;
+                }
+                if (b == antics[j]) {
+                    b = nou;
+                    canvia = true;
+                }
+            }
+            if (a == b) continue;
+            System.arraycopy(pare.portador, i * w, unio, 0, w);
+            int k = pare.clau[i];
+            if ((unio[paraulaM] & bitM) != 0) {
+                unio[paraulaM] &= ~bitM;
+                canvia = true;
+                // Si la clau era la casella jugada, la SC ja és una VC
+                if (k == m) k = VC;
+            }
+            int index = afegeix(a, b, k, unio, 0, false);
+            if (canvia && index >= 0) {
+                canviades[numCanviades++] = index;
+            }
+        }
+
+        // Només es tornen a combinar les connexions que han canviat
+        for (int i = 0; i < numCanviades && !acabat(); i++) {
+            int index = canviades[i];
+            if (clau[index] == VC) {
+                cua[fiCua++] = index;
+            } else {
+                or(index);
+            }
+        }
+        tanca();
+    }
+
+    private boolean acabat() {
+        return resultat == VC || (!nomesVC && resultat != CAP) || num == MAX_CONNEXIONS;
+    }
+
+    /**
+     * Aplica la regla AND a les VC de la cua fins que es buida o ja s'ha
+     * trobat el que calia.
+     */
+    private void tanca() {
+        while (iniciCua < fiCua && !acabat()) {
+            and(cua[iniciCua++]);
+        }
+    }
+
+    private void and(int v) {
+        int w = paraules;
+        for (int costat = 0; costat < 2; costat++) {
+            int mig = costat == 0 ? e1[v] : e2[v];
+            int altre = costat == 0 ? e2[v] : e1[v];
+            // Les vores no fan de punt mig: no calen per connectar una vora amb l'altra
+            if (mig >= numCaselles) continue;
+            boolean buida = tauler.getPos(mig) == 0;
+            int u = capPunt[mig];
+            while (u >= 0) {
+                int seguent = e1[u] == mig ? seguent1[u] : seguent2[u];
+                int extrem = e1[u] == mig ? e2[u] : e1[u];
+                if (u != v && extrem != altre
+                        && !conte(u, altre) && !conte(v, extrem)) {
+                    boolean disjunts = true;
+                    for (int p = 0; p < w; p++) {
+                        long a = portador[v * w + p];
+                        long b = portador[u * w + p];
+                        if ((a & b) != 0) {
+                            disjunts = false;
+                            break;
+                        }
+                        unio[p] = a | b;
+                    }
+                    if (disjunts) {
+                        if (buida) {
+                            unio[mig >> 6] |= 1L << mig;
+                        }
+                        afegeix(altre, extrem, buida ? mig : VC, unio, 0, true);
+                        if (acabat()) return;
+                    }
+                }
+                u = seguent;
+            }
+        }
+    }
+
+    private boolean conte(int connexio, int p) {
+        return p < numCaselles && (portador[connexio * paraules + (p >> 6)] & (1L << p)) != 0;
+    }
+
+    /**
+     * Regla OR: busca conjunts de fins a {@link #MAX_OR} SC del mateix
+     * parell que incloguin la SC nova i amb intersecció buida.
+     */
+    private void or(int sc) {
+        int slot = slot(e1[sc], e2[sc]);
+        int n = 0;
+        for (int i = capSC[slot]; i >= 0; i = seguentParell[i]) {
+            if (i != sc) llistaOr[n++] = i;
+        }
+        if (n == 0) return;
+        System.arraycopy(portador, sc * paraules, nivellsOr, 0, paraules);
+        System.arraycopy(portador, sc * paraules, nivellsOr, paraules, paraules);
+        or(sc, n, 0, 0);
+    }
+
+    private void or(int sc, int n, int inici, int nivell) {
+        int w = paraules;
+        int interseccio = nivell * 2 * w;
+        int seguent = interseccio + 2 * w;
+        for (int j = inici; j < n && !acabat(); j++) {
+            int t = llistaOr[j];
+            boolean redueix = false;
+            boolean buida = true;
+            for (int p = 0; p < w; p++) {
+                long i = nivellsOr[interseccio + p] & portador[t * w + p];
+                redueix |= i != nivellsOr[interseccio + p];
+                buida &= i == 0;
+                nivellsOr[seguent + p] = i;
+                nivellsOr[seguent + w + p] = nivellsOr[interseccio + w + p] | portador[t * w + p];
+            }
+            if (!redueix) continue;
+            if (buida) {
+                afegeix(e1[sc], e2[sc], VC, nivellsOr, seguent + w, true);
+            } else if (nivell + 2 < MAX_OR) {
+                or(sc, n, j + 1, nivell + 1);
+            }
+        }
+    }
+
+    private int slot(int a, int b) {
+        long k = (long) a * (numCaselles + 2) + b;
+        int i = (int) (k * 0x9E3779B97F4A7C15L >>> 40) & mascaraParells;
+        while (true) {
+            if (generacioParell[i] != generacio) {
+                generacioParell[i] = generacio;
+                clauParell[i] = k;
+                capVC[i] = -1;
+                capSC[i] = -1;
+                numVC[i] = 0;
+                numSC[i] = 0;
+                return i;
+            }
+            if (clauParell[i] == k) return i;
+            i = (i + 1) & mascaraParells;
+        }
+    }
+
+    /**
+     * Afegeix una connexió si no n'hi ha cap d'igual o millor i hi ha lloc.
+     *
+     * @param a Un extrem.
+     * @param b L'altre extrem.
+     * @param k {@link #VC} o la clau de la SC.
+     * @param origen Vector d'on es copia el portador.
+     * @param desde Posició del portador dins del vector.
+     * @param nova Si s'ha de combinar amb les altres: les VC es posen a la
+     * cua de la regla AND i les SC passen per la regla OR.
+     * @return L'índex de la connexió o -1 si no s'ha afegit.
+     */
+    private int afegeix(int a, int b, int k, long[] origen, int desde, boolean nova) {
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        if (num == MAX_CONNEXIONS) return -1;
+        // Entre dues caselles buides només es guarda l'adjacència
+        if (b < numCaselles && tauler.getPos(a) == 0 && tauler.getPos(b) == 0 && !esBuit(origen, desde)) return -1;
+        int slot = slot(a, b);
+        if (conteSubconjunt(capVC[slot], origen, desde)) return -1;
+        if (k == VC) {
+            if (numVC[slot] == MAX_VC_PARELL) return -1;
+        } else if (numSC[slot] == MAX_SC_PARELL || conteSubconjunt(capSC[slot], origen, desde)) {
+            return -1;
+        }
+
+        int i = num++;
+        e1[i] = a;
+        e2[i] = b;
+        clau[i] = k;
+        System.arraycopy(origen, desde, portador, i * paraules, paraules);
+        if (k == VC) {
+            seguentParell[i] = capVC[slot];
+            capVC[slot] = i;
+            numVC[slot]++;
+            seguent1[i] = capPunt[a];
+            capPunt[a] = i;
+            seguent2[i] = capPunt[b];
+            capPunt[b] = i;
+        } else {
+            seguentParell[i] = capSC[slot];
+            capSC[slot] = i;
+            numSC[slot]++;
+        }
+
+        if (a == font && b == pou) {
+            if (k == VC) {
+                resultat = VC;
+                jugada = primeraCasella(i);
+            } else if (resultat == CAP) {
+                resultat = k;
+                jugada = k;
+            }
+        }
+        if (nova) {
+            if (k == VC) {
+                cua[fiCua++] = i;
+            } else {
+                or(i);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return Si alguna connexió de la llista té el portador inclòs en el
+     * portador donat.
+     */
+    private boolean conteSubconjunt(int llista, long[] origen, int desde) {
+        for (int i = llista; i >= 0; i = seguentParell[i]) {
+            boolean inclos = true;
+            for (int p = 0; p < paraules && inclos; p++) {
+                inclos = (portador[i * paraules + p] & ~origen[desde + p]) == 0;
+            }
+            if (inclos) return true;
+        }
+        return false;
+    }
+
+    private boolean esBuit(long[] f, int desde) {
+        for (int p = 0; p < paraules; p++) {
+            if (f[desde + p] != 0) return false;
+        }
+        return true;
+    }
+
+    private int primeraCasella(int connexio) {
+        for (int p = 0; p < paraules; p++) {
+            long bits = portador[connexio * paraules + p];
+            if (bits != 0) return (p << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        return -1;
+    }
+
+    /**
+     * Connexions d'un jugador en una posició, guardades per poder-ne
+     * derivar les de les posicions filles.
+     */
+    private static class Estat {
+
+        long hash;
+        boolean valid;
+        int num;
+        int resultat;
+        int jugada;
+        int[] e1 = new int[0];
+        int[] e2 = new int[0];
+        int[] clau = new int[0];
+        long[] portador = new long[0];
+
+        void guarda(ConnexionsVirtuals cv, long hashPosicio) {
+            if (e1.length < cv.num) {
+                int mida = Math.max(cv.num, e1.length * 2);
+                e1 = new int[mida];
+                e2 = new int[mida];
+                clau = new int[mida];
+                portador = new long[mida * cv.paraules];
+            }
+            System.arraycopy(cv.e1, 0, e1, 0, cv.num);
+            System.arraycopy(cv.e2, 0, e2, 0, cv.num);
+            System.arraycopy(cv.clau, 0, clau, 0, cv.num);
+            System.arraycopy(cv.portador, 0, portador, 0, cv.num * cv.paraules);
+            num = cv.num;
+            resultat = cv.resultat;
+            jugada = cv.jugada;
+            hash = hashPosicio;
+            valid = true;
+        }
+    }
+}
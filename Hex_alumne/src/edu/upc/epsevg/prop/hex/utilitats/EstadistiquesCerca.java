@@ -0,0 +1,282 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.util.Arrays;
+
+/**
+ * Estadístiques d'una cerca de {@link MinimaxBase}, que s'omplen durant la
+ * cerca: els nodes de cada nivell (jugades des de l'arrel), els nodes
+ * interiors (els que generen moviments) i les fulles (la resta: horitzó,
+ * taula de transposicions, connexions virtuals, podes), els talls beta i
+ * quants es produeixen al primer moviment, i els nodes i el temps de cada
+ * iteració completa.
+ *
+ * El factor de ramificació efectiu es calcula amb els nodes de les
+ * iteracions completes: l'arrel quadrada del quocient entre l'última i la
+ * de dos nivells menys, perquè les profunditats parells i senars no es
+ * comporten igual; amb dues iteracions, el quocient entre totes dues; i amb
+ * una, l'arrel {@code d}-èsima dels nodes a profunditat {@code d}.
+ *
+ * També serveixen per acumular les estadístiques de diverses cerques
+ * ({@link #acumula(EstadistiquesCerca)}): se sumen els comptadors i el
+ * factor de ramificació passa a ser la mitjana del de cada cerca.
+ */
+public class EstadistiquesCerca {
+
+    private long[] nodesNivell = new long[16];
+    private long interiors;
+    private long talls;
+    private long tallsPrimer;
+    private long[] nodesIteracio = new long[16];
+    private long[] nanosIteracio = new long[16];
+    private int iteracions;
+    private int profunditat;
+    private long inici;
+    private long nanos;
+    // Nodes i temps al final de l'última iteració completa
+    private long nodesFiIteracio;
+    private long nanosFiIteracio;
+    // Cerques acumulades i suma dels seus factors de ramificació
+    private int acumulades;
+    private int ambFactor;
+    private double sumaFactors;
+
+    /**
+     * Comença el rellotge de la cerca.
+     */
+    void inicia() {
+        inici = System.nanoTime();
+    }
+
+    /**
+     * Atura el rellotge de la cerca.
+     */
+    void finalitza() {
+        nanos = System.nanoTime() - inici;
+    }
+
+    /**
+     * Compta un node.
+     *
+     * @param nivell Jugades des de l'arrel.
+     */
+    void node(int nivell) {
+        if (nivell >= nodesNivell.length) {
+            nodesNivell = Arrays.copyOf(nodesNivell, Math.max(nivell + 1, 2 * nodesNivell.length));
+        }
+        nodesNivell[nivell]++;
+    }
+
+    /**
+     * Compta un node que genera els seus moviments.
+     */
+    void interior() {
+        interiors++;
+    }
+
+    /**
+     * Compta un tall beta.
+     *
+     * @param primer Si el tall el produeix el primer moviment.
+     */
+    void tall(boolean primer) {
+        talls++;
+        if (primer) tallsPrimer++;
+    }
+
+    /**
+     * Registra el final d'una iteració completa.
+     *
+     * @param profunditat La profunditat de la iteració.
+     */
+    void fiIteracio(int profunditat) {
+        if (iteracions == nodesIteracio.length) {
+            nodesIteracio = Arrays.copyOf(nodesIteracio, 2 * iteracions);
+            nanosIteracio = Arrays.copyOf(nanosIteracio, 2 * iteracions);
+        }
+        long nodes = getNodes();
+        long ara = System.nanoTime() - inici;
+        nodesIteracio[iteracions] = nodes - nodesFiIteracio;
+        nanosIteracio[iteracions] = ara - nanosFiIteracio;
+        nodesFiIteracio = nodes;
+        nanosFiIteracio = ara;
+        iteracions++;
+        this.profunditat = profunditat;
+    }
+
+    /**
+     * Afegeix les estadístiques d'una altra cerca.
+     *
+     * @param altra Les estadístiques que s'afegeixen.
+     */
+    public void acumula(EstadistiquesCerca altra) {
+        for (int i = altra.nodesNivell.length - 1; i >= 0; i--) {
+            if (altra.nodesNivell[i] == 0) continue;
+            if (i >= nodesNivell.length) {
+                nodesNivell = Arrays.copyOf(nodesNivell, i + 1);
+            }
+            nodesNivell[i] += altra.nodesNivell[i];
+        }
+        interiors += altra.interiors;
+        talls += altra.talls;
+        tallsPrimer += altra.tallsPrimer;
+        nanos += altra.nanos;
+        profunditat = Math.max(profunditat, altra.profunditat);
+        double factor = altra.getFactorRamificacio();
+        if (!Double.isNaN(factor)) {
+            sumaFactors += factor;
+            ambFactor++;
+        }
+        acumulades++;
+    }
+
+    /**
+     * @return El nombre total de nodes.
+     */
+    public long getNodes() {
+        long total = 0;
+        for (long n : nodesNivell) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * @param nivell Jugades des de l'arrel.
+     * @return Els nodes del nivell.
+     */
+    public long getNodes(int nivell) {
+        return nivell < nodesNivell.length ? nodesNivell[nivell] : 0;
+    }
+
+    /**
+     * @return El nombre de nivells amb algun node.
+     */
+    public int getNumNivells() {
+        int n = nodesNivell.length;
+        while (n > 0 && nodesNivell[n - 1] == 0) n--;
+        return n;
+    }
+
+    /**
+     * @return Els nodes que han generat els seus moviments.
+     */
+    public long getInteriors() {
+        return interiors;
+    }
+
+    /**
+     * @return Els nodes que han retornat sense generar moviments.
+     */
+    public long getFulles() {
+        return getNodes() - interiors;
+    }
+
+    /**
+     * @return La fracció de nodes interiors amb un tall beta.
+     */
+    public double getTaxaTalls() {
+        return interiors == 0 ? 0 : (double) talls / interiors;
+    }
+
+    /**
+     * @return La fracció dels talls beta que produeix el primer moviment, una
+     * mesura de la qualitat de l'ordenació.
+     */
+    public double getTaxaTallsPrimer() {
+        return talls == 0 ? 0 : (double) tallsPrimer / talls;
+    }
+
+    /**
+     * @return El factor de ramificació efectiu, o NaN si no hi ha cap
+     * iteració completa.
+     */
+    public double getFactorRamificacio() {
+        if (acumulades > 0) {
+            return ambFactor == 0 ? Double.NaN : sumaFactors / ambFactor;
+        }
+        if (iteracions >= 3 && nodesIteracio[iteracions - 3] > 0) {
+            return Math.sqrt((double) nodesIteracio[iteracions - 1] / nodesIteracio[iteracions - 3]);
+        }
+        if (iteracions == 2 && nodesIteracio[0] > 0) {
+            return (double) nodesIteracio[iteracions - 1] / nodesIteracio[iteracions - 2];
+        }
+        if (iteracions == 1 && profunditat > 0) {
+            return Math.pow(nodesIteracio[0], 1.0 / profunditat);
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return El nombre d'iteracions completes.
+     */
+    public int getNumIteracions() {
+        return iteracions;
+    }
+
+    /**
+     * @param i Índex de la iteració.
+     * @return Els nodes de la iteració.
+     */
+    public long getNodesIteracio(int i) {
+        return nodesIteracio[i];
+    }
+
+    /**
+     * @param i Índex de la iteració.
+     * @return El temps de la iteració, en nanosegons.
+     */
+    public long getNanosIteracio(int i) {
+        return nanosIteracio[i];
+    }
+
+    /**
+     * @return La profunditat de l'última iteració completa.
+     */
+    public int getProfunditat() {
+        return profunditat;
+    }
+
+    /**
+     * @return El temps de la cerca, en nanosegons.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return Els nodes per segon.
+     */
+    public double getNodesPerSegon() {
+        return nanos == 0 ? 0 : getNodes() * 1e9 / nanos;
+    }
+
+    /**
+     * @return Una línia amb els valors principals.
+     */
+    public String resum() {
+        return String.format("%d nodes (%d interiors)\t %.0f nodes/s\t talls %.1f%% (primer %.1f%%)\t ramificació %.2f",
+                getNodes(), interiors, getNodesPerSegon(), 100 * getTaxaTalls(), 100 * getTaxaTallsPrimer(),
+                getFactorRamificacio());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Nodes:      %d (interiors %d, fulles %d)%n", getNodes(), interiors, getFulles()));
+        sb.append(String.format("Nodes/s:    %.0f%n", getNodesPerSegon()));
+        sb.append(String.format("Talls beta: %.1f%% (primer moviment %.1f%%)%n", 100 * getTaxaTalls(), 100 * getTaxaTallsPrimer()));
+        sb.append(String.format("Ramificació efectiva: %.2f%n", getFactorRamificacio()));
+        sb.append("Nodes per nivell:");
+        for (int i = 0; i < getNumNivells(); i++) {
+            sb.append(' ').append(nodesNivell[i]);
+        }
+        if (iteracions > 0) {
+            sb.append("\nIteracions:");
+            int primera = profunditat - iteracions + 1;
+            for (int i = 0; i < iteracions; i++) {
+                sb.append(String.format(" p%d %.1f ms", primera + i, nanosIteracio[i] / 1e6));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,127 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.MoveNode;
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Genera un {@link LlibreObertures} amb cerques iteratives llargues.
+ *
+ * Per a cada jugador es recorre l'arbre d'obertures en què aquest jugador
+ * segueix el llibre i l'oponent pot jugar qualsevol moviment: a les
+ * posicions on li toca al jugador es cerca el millor moviment i es guarda, i
+ * a les de l'oponent es proven totes les respostes. Només es guarden les
+ * posicions amb menys pedres que les indicades, i les posicions simètriques
+ * es cerquen una sola vegada.
+ *
+ * Ús: {@code GeneradorLlibre [mida] [pedres] [segons per posició] [fitxer] [fils]}
+ */
+public class GeneradorLlibre {
+
+    private final int size;
+    private final int pedres;
+    private final MinimaxIteratiu cerca;
+    private final Zobrist zobrist;
+    private final Set<Long> visitades = new HashSet<>();
+
+    private long[] claus = new long[256];
+    private int[] moviments = new int[256];
+    private int[] puntuacions = new int[256];
+    private int numEntrades;
+
+    /**
+     * @param size La mida del tauler.
+     * @param pedres Es guarden les posicions amb menys pedres que aquestes.
+     * @param segons Temps de cerca de cada posició.
+     * @param fils Nombre de fils de la cerca.
+     */
+    public GeneradorLlibre(int size, int pedres, int segons, int fils) {
+        this.size = size;
+        this.pedres = pedres;
+        this.cerca = new MinimaxIteratiu(100, TaulaTransposicio.MEGABYTES_PER_DEFECTE, fils);
+        cerca.setTempsPerMoviment(segons * 1000L);
+        this.zobrist = new Zobrist(size);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+        int pedres = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int segons = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Path fitxer = Paths.get(args.length > 3 ? args[3] : "llibre" + size + ".bin");
+        int fils = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        GeneradorLlibre generador = new GeneradorLlibre(size, pedres, segons, fils);
+        generador.genera();
+        generador.escriu(fitxer);
+        System.out.println(generador.numEntrades + " posicions escrites a " + fitxer);
+    }
+
+    /**
+     * Recorre l'arbre d'obertures de cada jugador.
+     */
+    public void genera() {
+        visitades.clear();
+        recorre(new HexGameStatus(size), PlayerType.PLAYER1);
+        // Les posicions de l'oponent d'un arbre són les del llibre de l'altre
+        visitades.clear();
+        recorre(new HexGameStatus(size), PlayerType.PLAYER2);
+    }
+
+    /**
+     * Escriu les posicions generades.
+     *
+     * @param fitxer El fitxer del llibre.
+     * @throws IOException Si no es pot escriure.
+     */
+    public void escriu(Path fitxer) throws IOException {
+        LlibreObertures.escriu(fitxer, size, claus, moviments, puntuacions, numEntrades);
+    }
+
+    private void recorre(HexGameStatus status, PlayerType jugadorLlibre) {
+        if (status.isGameOver()) return;
+        TaulerCerca tauler = new TaulerCerca(status, zobrist);
+        if (tauler.getNumPedres() >= pedres) return;
+        long clau = LlibreObertures.clauCanonica(tauler);
+        if (!visitades.add(clau)) return;
+
+        if (status.getCurrentPlayer() != jugadorLlibre) {
+            for (MoveNode mn : status.getMoves()) {
+                HexGameStatus fill = new HexGameStatus(status);
+                fill.placeStone(mn.getPoint());
+                recorre(fill, jugadorLlibre);
+            }
+            return;
+        }
+
+        Point millor = cerca.millorMoviment(new HexGameStatus(status));
+        int moviment = tauler.orientaCanonica(tauler.toCasella(millor));
+        afegeix(clau, moviment, cerca.getPuntuacio());
+        System.out.println(numEntrades + ": " + tauler.getNumPedres() + " pedres, moviment ("
+                + millor.x + ", " + millor.y + "), puntuació " + cerca.getPuntuacio()
+                + ", profunditat " + cerca.getProfunditatMaxima());
+
+        HexGameStatus fill = new HexGameStatus(status);
+        fill.placeStone(millor);
+        recorre(fill, jugadorLlibre);
+    }
+
+    private void afegeix(long clau, int moviment, int puntuacio) {
+        if (numEntrades == claus.length) {
+            claus = Arrays.copyOf(claus, numEntrades * 2);
+            moviments = Arrays.copyOf(moviments, numEntrades * 2);
+            puntuacions = Arrays.copyOf(puntuacions, numEntrades * 2);
+        }
+        claus[numEntrades] = clau;
+        moviments[numEntrades] = moviment;
+        puntuacions[numEntrades] = puntuacio;
+        numEntrades++;
+    }
+}
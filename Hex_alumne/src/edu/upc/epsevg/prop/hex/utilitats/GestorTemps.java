@@ -0,0 +1,202 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+/**
+ * Gestor del temps d'una cerca. Combina tres maneres d'aturar-la:
+ * l'avís de timeout que arriba des d'un altre fil ({@link #atura()}), un
+ * límit de temps per moviment que la mateixa cerca comprova i un límit de
+ * nodes ({@link #setLimitNodes(long)}).
+ *
+ * Per no llegir el rellotge a cada node, {@link #esgotat()} només el consulta
+ * cada {@link #COMPROVACIO_CADA} crides. El mateix comptador serveix per
+ * estimar quant costarà la iteració següent de la cerca iterativa.
+ */
+public class GestorTemps {
+
+    /** Cada quantes crides a {@link #esgotat()} es consulta el rellotge. */
+    public static final int COMPROVACIO_CADA = 64;
+
+    /**
+     * Fracció estimada del cost d'una iteració que es dedica al primer
+     * moviment de l'arrel. Si no hi ha temps ni per a aquesta part, no val la
+     * pena començar la iteració.
+     */
+    private static final double FRACCIO_PRIMER_MOVIMENT = 0.4;
+
+    private volatile boolean aturat;
+    private volatile boolean actiu;
+    private long inici;
+    private long limit;
+    private boolean ambLimit;
+    private long nodes;
+    private long limitNodes;
+
+    private long nodesIteracio;
+    private long iniciIteracio;
+    private int iteracions;
+    private long nodesUltimaIteracio;
+    private long nodesPenultimaIteracio;
+    private long nodesAvantpenultimaIteracio;
+    private long nanosUltimaIteracio;
+
+    /**
+     * Comença el comptatge d'una cerca nova.
+     *
+     * @param milisegons Temps màxim de la cerca o 0 si no té límit i només
+     * s'atura amb {@link #atura()}.
+     */
+    public void inicia(long milisegons) {
+        aturat = false;
+        actiu = true;
+        inici = System.nanoTime();
+        ambLimit = milisegons > 0;
+        limit = inici + milisegons * 1_000_000L;
+        nodes = 0;
+        nodesIteracio = 0;
+        iniciIteracio = inici;
+        iteracions = 0;
+        nodesUltimaIteracio = 0;
+        nodesPenultimaIteracio = 0;
+        nodesAvantpenultimaIteracio = 0;
+        nanosUltimaIteracio = 0;
+    }
+
+    /**
+     * Fixa el nombre màxim de nodes de cada cerca, comptats amb
+     * {@link #esgotat()}. Es manté entre cerques. Amb un límit de nodes una
+     * cerca d'un sol fil fa la mateixa feina sigui quina sigui la velocitat
+     * de la màquina o la càrrega dels altres fils.
+     *
+     * @param nodes Nodes màxims de cada cerca o 0 si no té límit.
+     */
+    public void setLimitNodes(long nodes) {
+        this.limitNodes = Math.max(0, nodes);
+    }
+
+    /**
+     * @return Els nodes màxims de cada cerca o 0 si no té límit.
+     */
+    public long getLimitNodes() {
+        return limitNodes;
+    }
+
+    /**
+     * Marca el final de la cerca. Un avís de {@link #atura()} que arribi tard,
+     * quan la cerca ja ha acabat, s'ignora i no afecta la cerca següent.
+     */
+    public void finalitza() {
+        actiu = false;
+        aturat = false;
+    }
+
+    /**
+     * Demana que la cerca en curs s'aturi tan aviat com pugui. Es pot cridar
+     * des de qualsevol fil.
+     */
+    public void atura() {
+        if (actiu) {
+            aturat = true;
+        }
+    }
+
+    /**
+     * @return Si s'ha demanat aturar la cerca, sense consultar el rellotge.
+     */
+    public boolean isAturat() {
+        return aturat;
+    }
+
+    /**
+     * Compta un node i indica si la cerca s'ha d'aturar. El rellotge només es
+     * consulta cada {@link #COMPROVACIO_CADA} crides; el límit de nodes, a
+     * cada crida.
+     *
+     * @return Si la cerca s'ha d'aturar.
+     */
+    public boolean esgotat() {
+        if (aturat) return true;
+        if (++nodes > limitNodes && limitNodes > 0) {
+            aturat = true;
+        } else if ((nodes & (COMPROVACIO_CADA - 1)) == 0 && ambLimit && System.nanoTime() - limit >= 0) {
+            aturat = true;
+        }
+        return aturat;
+    }
+
+    /**
+     * Marca l'inici d'una iteració de la cerca iterativa.
+     */
+    public void iniciIteracio() {
+        nodesIteracio = nodes;
+        iniciIteracio = System.nanoTime();
+    }
+
+    /**
+     * Marca el final d'una iteració completa i en guarda els nodes.
+     */
+    public void fiIteracio() {
+        iteracions++;
+        nodesAvantpenultimaIteracio = nodesPenultimaIteracio;
+        nodesPenultimaIteracio = nodesUltimaIteracio;
+        nodesUltimaIteracio = nodes - nodesIteracio;
+        nanosUltimaIteracio = System.nanoTime() - iniciIteracio;
+    }
+
+    /**
+     * Decideix si val la pena començar la iteració següent. Estima els nodes
+     * que farà amb el factor de ramificació efectiu i el temps amb els nodes
+     * per segon de la cerca, i només la comença si queda temps com a mínim
+     * per cercar el primer moviment de l'arrel. Amb un límit de nodes, la
+     * iteració només es comença si els nodes que queden arriben per a la
+     * mateixa part.
+     *
+     * Amb poda alfa-beta el cost creix de manera molt diferent en passar a
+     * una profunditat parell o senar, per això el factor de ramificació es
+     * mesura entre dues iteracions de la mateixa paritat i s'aplica sobre la
+     * iteració anterior a l'última.
+     *
+     * @return Si s'ha de començar la iteració següent.
+     */
+    public boolean potIniciarIteracio() {
+        if (aturat) return false;
+        // Les primeres iteracions són barates i la primera no compta
+        // l'ordenació de l'arrel, per això no serveix per estimar
+        if (iteracions < 4 || nodesAvantpenultimaIteracio == 0) return true;
+        double nodesEstimats = nodesPenultimaIteracio * getRamificacio() * getRamificacio();
+        if (limitNodes > 0 && nodes + nodesEstimats * FRACCIO_PRIMER_MOVIMENT > limitNodes) return false;
+        if (!ambLimit) return true;
+        double nodesPerNano = (double) nodes / Math.max(1, System.nanoTime() - inici);
+        double estimacio = nodesEstimats / Math.max(nodesPerNano, 1e-9);
+        return System.nanoTime() + estimacio * FRACCIO_PRIMER_MOVIMENT < limit;
+    }
+
+    /**
+     * @return Els nodes comptats des de l'inici de la cerca.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return El factor de ramificació efectiu per jugada, mesurat entre les
+     * dues últimes iteracions de la mateixa paritat, o 0 si encara no es
+     * coneix.
+     */
+    public double getRamificacio() {
+        if (nodesAvantpenultimaIteracio == 0) return 0;
+        return Math.sqrt((double) nodesUltimaIteracio / nodesAvantpenultimaIteracio);
+    }
+
+    /**
+     * @return La durada de l'última iteració completa en nanosegons.
+     */
+    public long getNanosUltimaIteracio() {
+        return nanosUltimaIteracio;
+    }
+
+    /**
+     * @return Els milisegons transcorreguts des de l'inici de la cerca.
+     */
+    public long getTempsTranscorregut() {
+        return (System.nanoTime() - inici) / 1_000_000L;
+    }
+}
@@ -2,19 +2,58 @@ package edu.upc.epsevg.prop.hex.utilitats;
 
 import edu.upc.epsevg.prop.hex.HexGameStatus;
 import edu.upc.epsevg.prop.hex.PlayerType;
-import java.awt.Point;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.PriorityQueue;
-import java.util.Set;
 
 /**
  * Implementació de l'heurística pel joc Hex
  */
-public class Heuristica {
+public class Heuristica implements Avaluador {
 
-// Pesos inicials
+    /**
+     * Si és cert, cada avaluació incremental es compara amb el recompte
+     * complet del tauler. Es pot activar amb {@code -Dheuristica.comprova=true}.
+     */
+    private static final boolean COMPROVA = Boolean.getBoolean("heuristica.comprova");
+
+    // Vectors del càlcul de distàncies, un joc per fil
+    private static final ThreadLocal<BufferDistancia> BUFFERS = ThreadLocal.withInitial(BufferDistancia::new);
+
+    // Direccions possibles en un tauler hexagonal
+    static final int[][] DIRECCIONS = {
+        {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
+    };
+
+    // Configuracions de ponts (pedres oposades i espais candidats)
+    static final int[][] CONFIGURACIONS_PONT = {
+        {1, -2, 1, -1, 0, -1}, // Configuració 1
+        {-1, -1, 0, -1, -1, 0}, // Configuració 2
+        {2, -1, 1, -1, 1, 0}, // Configuració 3
+        {-2, 1, -1, 0, -1, 1}, // Configuració 4
+        {1, 1, 1, 0, 0, 1}, // Configuració 5
+        {-1, 2, -1, 1, 0, 1} // Configuració 6
+    };
+
+    // Patrons de la vora específics per a un tauler hexagonal
+    static final int[][] PLANTILLES_VORA = {
+        {-1, 0, 0, 1}, // Dues caselles en línia horitzontal cap a la dreta
+        {0, -1, 1, 0}, // Dues caselles en línia diagonal superior dreta
+        {1, -1, 1, 0} // Dues caselles en línia diagonal inferior dreta
+    };
+
+    // Patrons d'interior específics per a un tauler hexagonal
+    static final int[][][] PLANTILLES_INTERIOR = {
+        { // Trapezoid: Casella central envoltada per tres veïnes
+            {0, -1}, {1, 0}, {0, 1}
+        },
+        { // Crescent: Dos veïnes en diagonal superior i inferior
+            {-1, 1}, {1, -1}, {0, -2}
+        },
+        { // Diamond: Casella envoltada per quatre veïnes en forma de rombe
+            {0, -1}, {-1, 0}, {0, 1}, {1, 0}
+        }
+    };
+
+    // Pesos de l'etapa actual, que es fan servir a evalComplet
     private int weightBridge = 0;
     private int weightBlockOpponent = 0;
     private int weightEdgeTemplate = 0;
@@ -30,11 +69,50 @@ public class Heuristica {
 
     private double progres; // Progrés del joc
 
+    // Termes de l'avaluació: eval és la suma de cada terme pel seu coeficient
+    static final int NUM_TERMES = 12;
+    static final int TERME_PONTS = 0;
+    static final int TERME_PONTS_EST = 1;
+    static final int TERME_VORES = 2;
+    static final int TERME_INTERIORS = 3;
+    static final int TERME_DESALINEATS = 4;
+    static final int TERME_DOBLES = 5;
+    static final int TERME_ESCALES = 6;
+    static final int TERME_PONTS_OPONENT = 7;
+    static final int TERME_DIAGONALS = 8;
+    static final int TERME_DISTANCIA = 9;
+    static final int TERME_CENTRALS = 10;
+    static final int TERME_CANTONADES = 11;
+
+    private final PesosHeuristica pesos;
+    // Coeficients dels termes de cada etapa
+    private final int[][] coeficients = new int[PesosHeuristica.NUM_ETAPES][];
+    private final int[] termes = new int[NUM_TERMES];
+
     /**
-     * Constructora
+     * Constructora amb el perfil de pesos per defecte
+     * ({@link PesosHeuristica#getPerfil()}).
      */
     public Heuristica() {
+        this(PesosHeuristica.getPerfil());
+    }
 
+    /**
+     * Constructora amb un perfil de pesos concret.
+     * @param pesos els pesos de cada etapa
+     */
+    public Heuristica(PesosHeuristica pesos) {
+        this.pesos = pesos;
+        for (int etapa = 0; etapa < coeficients.length; etapa++) {
+            coeficients[etapa] = coeficients(pesos, etapa);
+        }
+    }
+
+    /**
+     * @return el perfil de pesos
+     */
+    public PesosHeuristica getPesos() {
+        return pesos;
     }
 
     /**
@@ -44,7 +122,119 @@ public class Heuristica {
      * @return valor pel tauler avaluat
      */
     public int eval(HexGameStatus board, PlayerType player) {
-        // Actualitzar els pesos segons el progrés de la partida
+        return eval(new TaulerCerca(board), player);
+    }
+
+    /**
+     * Funció que avalua un tauler de cerca. Els termes de patrons es
+     * llegeixen dels recomptes incrementals del tauler
+     * ({@link TaulerCerca#getTermes()}), que s'actualitzen a cada jugada, i
+     * només la distància fins a la victòria es calcula de nou.
+     * @param board tauler a avaluar
+     * @param player jugador que toca que posi fitxa
+     * @return valor pel tauler avaluat
+     */
+    @Override
+    public int eval(TaulerCerca board, PlayerType player) {
+        int etapa = termes(board, PlayerType.getColor(player), termes);
+        int puntuacio = puntua(termes, coeficients[etapa]);
+
+        if (COMPROVA) {
+            int completa = evalComplet(board, player);
+            if (completa != puntuacio) {
+                throw new IllegalStateException("Avaluació incremental incoherent: " + puntuacio + " en lloc de " + completa);
+            }
+        }
+        return puntuacio;
+    }
+
+    /**
+     * Omple els termes de l'avaluació d'un tauler de cerca, que
+     * {@link #puntua(int[], int[])} combina amb els coeficients de l'etapa.
+     * Els termes de patrons es llegeixen dels recomptes incrementals del
+     * tauler i només la distància fins a la victòria es calcula de nou.
+     * @param board tauler a avaluar
+     * @param color color del jugador des del punt de vista del qual s'avalua
+     * @param sortida vector de {@link #NUM_TERMES} on es deixen els termes
+     * @return l'etapa de la partida
+     */
+    int termes(TaulerCerca board, int color, int[] sortida) {
+        progres = (double) board.getNumPedres() / (board.getSize() * board.getSize());
+        TermesHeuristica termes = board.getTermes();
+
+        // Connexions pròpies: cada pedra amb pont compta una vegada per veí
+        sortida[TERME_PONTS] = termes.getPontVeins(color);
+        sortida[TERME_PONTS_EST] = color == 1 ? termes.getPontEst(color) : 0;
+        sortida[TERME_VORES] = progres >= 0.33 ? termes.getVores(color) : 0;
+        sortida[TERME_INTERIORS] = progres >= 0.33 ? termes.getInteriors(color) : 0;
+
+        // Moviments no alineats
+        sortida[TERME_DESALINEATS] = termes.getDesalineats(color);
+
+        // Amenaces. L'oponent es calcula com a 2 o 1, de manera que només
+        // el jugador -1 veu les pedres de l'oponent (el color 1)
+        sortida[TERME_DOBLES] = termes.getDobles(color);
+        sortida[TERME_ESCALES] = termes.getEscales(color);
+        sortida[TERME_PONTS_OPONENT] = color == -1 ? termes.getPonts(1) : 0;
+        sortida[TERME_DIAGONALS] = (isDiagonalThreat(termes, color, true) ? 1 : 0) // Diagonal principal
+                + (isDiagonalThreat(termes, color, false) ? 1 : 0); // Diagonal secundària
+
+        sortida[TERME_DISTANCIA] = calculateDistanceToVictory(board, color);
+
+        // Influència en àrees estratègiques
+        sortida[TERME_CENTRALS] = termes.getCentrals(color);
+        sortida[TERME_CANTONADES] = termes.getCantonades(color);
+        return PesosHeuristica.etapa(progres);
+    }
+
+    /**
+     * Calcula els coeficients dels termes d'una etapa a partir dels pesos.
+     * Els termes que resten de la puntuació tenen el coeficient negatiu.
+     * @param pesos perfil de pesos
+     * @param etapa etapa de la partida
+     * @return un vector de {@link #NUM_TERMES} coeficients
+     */
+    static int[] coeficients(PesosHeuristica pesos, int etapa) {
+        int bridge = (int) pesos.get(etapa, PesosHeuristica.PONT);
+        double multiplier = pesos.get(etapa, PesosHeuristica.MULTIPLICADOR_ALINEACIO);
+        int[] c = new int[NUM_TERMES];
+        c[TERME_PONTS] = bridge;
+        c[TERME_PONTS_EST] = (int) (bridge * multiplier);
+        c[TERME_VORES] = (int) pesos.get(etapa, PesosHeuristica.VORA);
+        c[TERME_INTERIORS] = (int) pesos.get(etapa, PesosHeuristica.INTERIOR);
+        c[TERME_DESALINEATS] = (int) pesos.get(etapa, PesosHeuristica.PENALITZACIO_DESALINEACIO);
+        c[TERME_DOBLES] = (int) pesos.get(etapa, PesosHeuristica.DOBLE_AMENACA);
+        c[TERME_ESCALES] = (int) pesos.get(etapa, PesosHeuristica.ESCALA);
+        c[TERME_PONTS_OPONENT] = -(int) pesos.get(etapa, PesosHeuristica.BLOQUEIG);
+        c[TERME_DIAGONALS] = -(int) pesos.get(etapa, PesosHeuristica.AMENACA_DIAGONAL);
+        c[TERME_DISTANCIA] = -(int) pesos.get(etapa, PesosHeuristica.ESPAIS_LLIURES);
+        c[TERME_CENTRALS] = (int) pesos.get(etapa, PesosHeuristica.AREA_CENTRAL);
+        c[TERME_CANTONADES] = (int) pesos.get(etapa, PesosHeuristica.CANTONADA);
+        return c;
+    }
+
+    /**
+     * @param termes termes d'un tauler, de {@link #termes(TaulerCerca, int, int[])}
+     * @param coeficients coeficients de l'etapa del tauler
+     * @return la puntuació del tauler
+     */
+    static int puntua(int[] termes, int[] coeficients) {
+        int puntuacio = 0;
+        for (int i = 0; i < NUM_TERMES; i++) {
+            puntuacio += termes[i] * coeficients[i];
+        }
+        return puntuacio;
+    }
+
+    /**
+     * Avalua un tauler recorrent totes les caselles. Dona el mateix resultat
+     * que {@link #eval(TaulerCerca, PlayerType)} i només es fa servir per
+     * comprovar els recomptes incrementals.
+     * @param board tauler a avaluar
+     * @param player jugador que toca que posi fitxa
+     * @return valor pel tauler avaluat
+     */
+    private int evalComplet(TaulerCerca board, PlayerType player) {
         updateWeights(board);
 
         int opponent = (PlayerType.getColor(player) == 1) ? 2 : 1;
@@ -70,72 +260,27 @@ public class Heuristica {
     }
 
     /**
-     * Actualitza els pesos de l'heurística segons el progrés del joc.
+     * Actualitza els pesos de l'heurística segons l'etapa del joc.
      * @param board tauler actual
      */
-    private void updateWeights(HexGameStatus board) {
+    private void updateWeights(TaulerCerca board) {
         int totalSpaces = board.getSize() * board.getSize();
-        int occupiedSpaces = countOccupiedSpaces(board);
+        int occupiedSpaces = board.getNumPedres();
         progres = (double) occupiedSpaces / totalSpaces;
 
-        if (progres < 0.33) { // Etapa inicial
-            weightBridge = 50;
-            weightBlockOpponent = 20;
-            weightEdgeTemplate = 10;
-            weightInteriorTemplate = 20;
-            weightFreeSpaces = 40;
-            weightDoubleThreat = 10;
-            weightLadder = 15;
-            weightCentralArea = 60;
-            weightCornerArea = 10;
-            weightDiagonalThreat = 20;
-            alignmentMultiplier = 1.5;
-            misalignmentPenalty = -10;
-        } else if (progres < 0.66) { // Etapa intermèdia
-            weightBridge = 60;
-            weightBlockOpponent = 50;
-            weightEdgeTemplate = 30;
-            weightInteriorTemplate = 50;
-            weightFreeSpaces = 30;
-            weightDoubleThreat = 40;
-            weightLadder = 25;
-            weightCentralArea = 40;
-            weightCornerArea = 15;
-            weightDiagonalThreat = 40;
-            alignmentMultiplier = 2.0;
-            misalignmentPenalty = -20;
-        } else { // Etapa final
-            weightBridge = 70;
-            weightBlockOpponent = 80;
-            weightEdgeTemplate = 50;
-            weightInteriorTemplate = 30;
-            weightFreeSpaces = 20;
-            weightDoubleThreat = 60;
-            weightLadder = 30;
-            weightCentralArea = 20;
-            weightCornerArea = 20;
-            weightDiagonalThreat = 50;
-            alignmentMultiplier = 2.5;
-            misalignmentPenalty = -30;
-        }
-    }
-
-    /**
-     * Compta el nombre de caselles ocupades.
-     *
-     * @param board tauler actual
-     * @return nombre de caselles ocupades
-     */
-    private int countOccupiedSpaces(HexGameStatus board) {
-        int occupied = 0;
-        for (int x = 0; x < board.getSize(); x++) {
-            for (int y = 0; y < board.getSize(); y++) {
-                if (board.getPos(x, y) != 0) {
-                    occupied++;
-                }
-            }
-        }
-        return occupied;
+        int etapa = PesosHeuristica.etapa(progres);
+        weightBridge = (int) pesos.get(etapa, PesosHeuristica.PONT);
+        weightBlockOpponent = (int) pesos.get(etapa, PesosHeuristica.BLOQUEIG);
+        weightEdgeTemplate = (int) pesos.get(etapa, PesosHeuristica.VORA);
+        weightInteriorTemplate = (int) pesos.get(etapa, PesosHeuristica.INTERIOR);
+        weightFreeSpaces = (int) pesos.get(etapa, PesosHeuristica.ESPAIS_LLIURES);
+        weightDoubleThreat = (int) pesos.get(etapa, PesosHeuristica.DOBLE_AMENACA);
+        weightLadder = (int) pesos.get(etapa, PesosHeuristica.ESCALA);
+        weightCentralArea = (int) pesos.get(etapa, PesosHeuristica.AREA_CENTRAL);
+        weightCornerArea = (int) pesos.get(etapa, PesosHeuristica.CANTONADA);
+        weightDiagonalThreat = (int) pesos.get(etapa, PesosHeuristica.AMENACA_DIAGONAL);
+        alignmentMultiplier = pesos.get(etapa, PesosHeuristica.MULTIPLICADOR_ALINEACIO);
+        misalignmentPenalty = (int) pesos.get(etapa, PesosHeuristica.PENALITZACIO_DESALINEACIO);
     }
 
     /**
@@ -144,19 +289,21 @@ public class Heuristica {
      * @param player color del jugador que ha de col·locar fitxa
      * @return valor segons les plantilles que es troben al tauler
      */
-    private int evaluateConnections(HexGameStatus board, int player) {
+    private int evaluateConnections(TaulerCerca board, int player) {
         int connectionScore = 0;
 
         for (int x = 0; x < board.getSize(); x++) {
             for (int y = 0; y < board.getSize(); y++) {
                 if (board.getPos(x, y) == player) {
                     // Detectar ponts sempre
-                    for (Point neighbor : board.getNeigh(new Point(x, y))) {
+                    int casella = x * board.getSize() + y;
+                    for (int k = 0; k < board.getNumVeins(casella); k++) {
+                        int neighbor = board.getVei(casella, k);
                         if (isBridge(board, player, x, y)) {
                             int bridgeScore = weightBridge;
 
                             // Si el pont està alineat, multiplica el pes
-                            if (isAlignedWithGoal(player, x, y, neighbor.x, neighbor.y)) {
+                            if (isAlignedWithGoal(player, x, y, neighbor / board.getSize(), neighbor % board.getSize())) {
                                 connectionScore += weightBridge * alignmentMultiplier;
                             }
 
@@ -205,18 +352,8 @@ public class Heuristica {
      * @param y coordenada y de la casella
      * @return si segueix la configuració pont
      */
-    private boolean isBridge(HexGameStatus board, int player, int x, int y) {
-        // Configuracions de ponts (pedres oposades i espais candidats)
-        int[][] bridgeConfigs = {
-            {1, -2, 1, -1, 0, -1}, // Configuració 1
-            {-1, -1, 0, -1, -1, 0}, // Configuració 2
-            {2, -1, 1, -1, 1, 0}, // Configuració 3
-            {-2, 1, -1, 0, -1, 1}, // Configuració 4
-            {1, 1, 1, 0, 0, 1}, // Configuració 5
-            {-1, 2, -1, 1, 0, 1} // Configuració 6
-        };
-
-        for (int[] config : bridgeConfigs) {
+    static boolean isBridge(TaulerCerca board, int player, int x, int y) {
+        for (int[] config : CONFIGURACIONS_PONT) {
             // Pedra oposada
             int oppX = x + config[0];
             int oppY = y + config[1];
@@ -247,16 +384,9 @@ public class Heuristica {
      * @param y coordenada y de la casella
      * @return si una casella forma part d'un patró d'un extrem del tauler
      */
-    private boolean isEdgeTemplate(HexGameStatus board, int player, int x, int y) {
-        // Definir patrons de la vora específics per a un tauler hexagonal
-        int[][] edgeTemplates = {
-            {-1, 0, 0, 1}, // Dues caselles en línia horitzontal cap a la dreta
-            {0, -1, 1, 0}, // Dues caselles en línia diagonal superior dreta
-            {1, -1, 1, 0} // Dues caselles en línia diagonal inferior dreta
-        };
-
+    static boolean isEdgeTemplate(TaulerCerca board, int player, int x, int y) {
         // Verificar cada plantilla
-        for (int[] template : edgeTemplates) {
+        for (int[] template : PLANTILLES_VORA) {
             int x1 = x + template[0];
             int y1 = y + template[1];
             int x2 = x + template[2];
@@ -281,22 +411,9 @@ public class Heuristica {
      * @param y coordenada y de la casella
      * @return si la casella segueix un patró intern
      */
-    private boolean isInteriorTemplate(HexGameStatus board, int player, int x, int y) {
-        // Definir patrons d'interior específics per a un tauler hexagonal
-        int[][][] interiorTemplates = {
-            { // Trapezoid: Casella central envoltada per tres veïnes
-                {0, -1}, {1, 0}, {0, 1}
-            },
-            { // Crescent: Dos veïnes en diagonal superior i inferior
-                {-1, 1}, {1, -1}, {0, -2}
-            },
-            { // Diamond: Casella envoltada per quatre veïnes en forma de rombe
-                {0, -1}, {-1, 0}, {0, 1}, {1, 0}
-            }
-        };
-
+    static boolean isInteriorTemplate(TaulerCerca board, int player, int x, int y) {
         // Verificar cada plantilla
-        for (int[][] template : interiorTemplates) {
+        for (int[][] template : PLANTILLES_INTERIOR) {
             boolean matches = true;
 
             for (int[] offset : template) {
@@ -327,7 +444,7 @@ public class Heuristica {
      * @return true si la posició està dins dels límits del tauler, false en cas
      * contrari.
      */
-    private boolean isValid(HexGameStatus board, int x, int y) {
+    private static boolean isValid(TaulerCerca board, int x, int y) {
         return x >= 0 && x < board.getSize() && y >= 0 && y < board.getSize();
     }
 
@@ -337,7 +454,7 @@ public class Heuristica {
      * @param player color del jugador
      * @return resultat de les amenaçes del tauler
      */
-    private int evaluateThreats(HexGameStatus board, int player) {
+    private int evaluateThreats(TaulerCerca board, int player) {
         int threatScore = 0;
         int opponent = (player == 1) ? 2 : 1;
 
@@ -389,17 +506,12 @@ public class Heuristica {
      * @param y coordenada y de la casella
      * @return si una casella genera dues amenaçes mínim
      */
-    private boolean isDoubleThreat(HexGameStatus board, int player, int x, int y) {
+    static boolean isDoubleThreat(TaulerCerca board, int player, int x, int y) {
         // Comptador per a les amenaces
         int threats = 0;
 
-        // Direccions possibles en un tauler hexagonal
-        int[][] directions = {
-            {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
-        };
-
         // Recórrer les direccions des de la casella (x, y)
-        for (int[] dir : directions) {
+        for (int[] dir : DIRECCIONS) {
             int nx = x + dir[0];
             int ny = y + dir[1];
 
@@ -415,7 +527,7 @@ public class Heuristica {
         return false;
     }
 
-    private int evaluateDiagonalThreats(HexGameStatus board, int opponent) {
+    private int evaluateDiagonalThreats(TaulerCerca board, int opponent) {
         int threatScore = 0;
 
         if (isDiagonalThreat(board, opponent, true)) { // Diagonal principal
@@ -440,7 +552,7 @@ public class Heuristica {
      * @return true si la diagonal representa una amenaça, false en cas
      * contrari.
      */
-    private boolean isDiagonalThreat(HexGameStatus board, int opponent, boolean isMainDiagonal) {
+    private boolean isDiagonalThreat(TaulerCerca board, int opponent, boolean isMainDiagonal) {
         int size = board.getSize();
 
         for (int i = 0; i < size; i++) {
@@ -458,6 +570,25 @@ public class Heuristica {
         return true; // Totes les caselles compleixen la condició d'amenaça
     }
 
+    /**
+     * Versió de {@link #isDiagonalThreat(TaulerCerca, int, boolean)} que fa
+     * servir els recomptes incrementals. L'oponent del jugador 1 és el 2, que
+     * no apareix mai al tauler, i per tant la diagonal ha d'estar buida. Per
+     * al jugador -1 l'oponent és l'1 i la diagonal no pot tenir pedres -1.
+     *
+     * @param termes recomptes del tauler
+     * @param color color del jugador que ha de tirar (1 o -1)
+     * @param isMainDiagonal true per la diagonal principal, false per la
+     * diagonal secundària.
+     * @return true si la diagonal representa una amenaça
+     */
+    private static boolean isDiagonalThreat(TermesHeuristica termes, int color, boolean isMainDiagonal) {
+        if (color == 1) {
+            return termes.getDiagonal(1, isMainDiagonal) + termes.getDiagonal(-1, isMainDiagonal) == 0;
+        }
+        return termes.getDiagonal(-1, isMainDiagonal) == 0;
+    }
+
     /**
      * Verifica si existeix un patró de "escala" (zig-zag) a partir d'una
      * posició donada.
@@ -467,19 +598,14 @@ public class Heuristica {
      * @param y Coordenada Y de la posició inicial.
      * @return true si existeix una escala, false en cas contrari.
      */
-    private boolean isLadder(HexGameStatus board, int player, int x, int y) {
-        // Direccions possibles en un tauler hexagonal
-        int[][] directions = {
-            {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
-        };
-
+    static boolean isLadder(TaulerCerca board, int player, int x, int y) {
         // Verificar si hi ha un patró d'escala
-        for (int[] dir1 : directions) {
+        for (int[] dir1 : DIRECCIONS) {
             int neighborX1 = x + dir1[0];
             int neighborY1 = y + dir1[1];
 
             if (isValid(board, neighborX1, neighborY1) && board.getPos(neighborX1, neighborY1) == player) {
-                for (int[] dir2 : directions) {
+                for (int[] dir2 : DIRECCIONS) {
                     if (dir2 != dir1) { // Evitar tornar a la mateixa direcció
                         int neighborX2 = neighborX1 + dir2[0];
                         int neighborY2 = neighborY1 + dir2[1];
@@ -501,19 +627,19 @@ public class Heuristica {
      * @param player color del jugador que ha de tirar
      * @return puntuació d'influencia (segons si l'area és central o no)
      */
-    private int evaluateInfluence(HexGameStatus board, int player) {
+    private int evaluateInfluence(TaulerCerca board, int player) {
         int influenceScore = 0;
 
         for (int x = 0; x < board.getSize(); x++) {
             for (int y = 0; y < board.getSize(); y++) {
                 if (board.getPos(x, y) == player) {
                     // Ponderar si la posició està a l'àrea central
-                    if (isCentralArea(board, x, y)) {
+                    if (isCentralArea(board.getSize(), x, y)) {
                         influenceScore += weightCentralArea;
                     }
 
                     // Ponderar si la posició està a l'àrea de cantonada
-                    if (isCornerArea(board, x, y)) {
+                    if (isCornerArea(board.getSize(), x, y)) {
                         influenceScore += weightCornerArea;
                     }
                 }
@@ -524,14 +650,12 @@ public class Heuristica {
 
     /**
      * Verifica si una posició està a l'àrea central del tauler.
-     * @param board tauler del torn
+     * @param size mida del tauler
      * @param x Coordenada X de la posició.
      * @param y Coordenada Y de la posició.
      * @return true si la posició està a l'àrea central, false en cas contrari.
      */
-    private boolean isCentralArea(HexGameStatus board, int x, int y) {
-        int size = board.getSize();
-
+    static boolean isCentralArea(int size, int x, int y) {
         // Definir els límits de l'àrea central
         int centralStart = size / 3;        // Inici de l'àrea central
         int centralEnd = (2 * size) / 3;   // Fi de l'àrea central
@@ -542,14 +666,13 @@ public class Heuristica {
 
     /**
      * Verifica si una posició està a l'àrea de les cantonades del tauler.
-     * @param board tauler del torn
+     * @param size mida del tauler
      * @param x Coordenada X de la posició.
      * @param y Coordenada Y de la posició.
      * @return true si la posició està a l'àrea de les cantonades, false en cas
      * contrari.
      */
-    private boolean isCornerArea(HexGameStatus board, int x, int y) {
-        int size = board.getSize();
+    static boolean isCornerArea(int size, int x, int y) {
         int cornerRange = size / 4; // Distància des de les cantonades per definir l'àrea
 
         // Verificar si (x, y) està dins del rang de les cantonades
@@ -574,7 +697,7 @@ public class Heuristica {
      * @return true si la jugada avança cap als extrems objectiu del jugador,
      * false en cas contrari.
      */
-    private boolean isAlignedWithGoal(int player, int startX, int startY, int endX, int endY) {
+    static boolean isAlignedWithGoal(int player, int startX, int startY, int endX, int endY) {
         if (player == 1) {
             // Jugador 1: Avança cap a l'est
             return endX > startX; // Moviment en direcció positiva X
@@ -592,7 +715,7 @@ public class Heuristica {
      * @param player El jugador (1 o 2).
      * @return La penalització total per moviments no alineats.
      */
-    private int evaluateMisalignedMoves(HexGameStatus board, int player) {
+    private int evaluateMisalignedMoves(TaulerCerca board, int player) {
         int misalignmentPenaltyScore = 0;
 
         for (int x = 0; x < board.getSize(); x++) {
@@ -633,8 +756,7 @@ public class Heuristica {
     }
 
     /**
-     * Calcula la distància mínima entre els costats del tauler utilitzant
-     * Dijkstra.
+     * Calcula la distància mínima entre els costats del tauler.
      *
      * @param player El jugador (1 o 2).
      * @param board tauler del torn
@@ -642,89 +764,104 @@ public class Heuristica {
      * jugador.
      */
     public int calculateDistanceToVictory(HexGameStatus board, int player) {
-        int size = board.getSize();
-        int[][] distances = new int[size][size];
-        for (int[] row : distances) {
-            Arrays.fill(row, Integer.MAX_VALUE);
-        }
+        return calculateDistanceToVictory(new TaulerCerca(board), player);
+    }
 
-        PriorityQueue<Node> priorityQueue = new PriorityQueue<>(Comparator.comparingInt(cell -> cell.distance));
-        Set<Point> visitats = new HashSet<>();
+    /**
+     * Calcula la distància mínima entre els costats del tauler sobre un
+     * tauler de cerca. Com que entrar a una casella costa 1 si és buida i 0
+     * si és ocupada, es fa un recorregut en amplada 0-1: les caselles de
+     * cost 0 s'afegeixen pel davant de la cua i les de cost 1 pel darrere,
+     * de manera que surten en ordre de distància igual que amb Dijkstra.
+     * Els vectors es reutilitzen entre crides del mateix fil.
+     *
+     * @param player El jugador (1 o 2).
+     * @param board tauler del torn
+     * @return La distància mínima en passos buits entre els extrems del
+     * jugador.
+     */
+    public int calculateDistanceToVictory(TaulerCerca board, int player) {
+        return BUFFERS.get().distancia(board, player);
+    }
 
-        // Inicialitza les distàncies des del costat inicial del jugador
-        if (player == 1) { // Oest a Est
-            for (int y = 0; y < size; y++) {
-                Point start = new Point(0, y);
-                int cellState = board.getPos(start);
-                if (cellState == player || cellState == 0) {
-                    distances[start.x][start.y] = cellState == 0 ? 1 : 0;
-                    priorityQueue.add(new Node(start, distances[start.x][start.y]));
-                }
+    /**
+     * Vectors del recorregut en amplada 0-1 d'un fil.
+     */
+    private static class BufferDistancia {
+
+        private int[] distancies = new int[0];
+        private int[] visitades = new int[0];
+        private int[] cua = new int[0];
+        private int generacio;
+
+        int distancia(TaulerCerca board, int player) {
+            // L'algorisme original només reconeixia la vora d'arribada per
+            // als jugadors 1 i 2. Amb el color -1 recorria tot el tauler i
+            // acabava retornant Integer.MAX_VALUE, i es manté igual perquè
+            // l'avaluació no canviï.
+            if (player != 1 && player != 2) {
+                return Integer.MAX_VALUE;
             }
-        } else { // Nord a Sud
-            for (int x = 0; x < size; x++) {
-                Point start = new Point(x, 0);
-                int cellState = board.getPos(start);
-                if (cellState == player || cellState == 0) {
-                    distances[start.x][start.y] = cellState == 0 ? 1 : 0;
-                    priorityQueue.add(new Node(start, distances[start.x][start.y]));
-                }
+            int size = board.getSize();
+            int numCaselles = board.getNumCaselles();
+            if (distancies.length < numCaselles) {
+                distancies = new int[numCaselles];
+                visitades = new int[numCaselles];
+                // Cada casella entra com a molt una vegada per veí i una com a origen
+                cua = new int[2 * 7 * numCaselles];
             }
-        }
-
-        // Direccions possibles en un tauler hexagonal
-        int[][] direccions = {
-            {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
-        };
-
-        // Dijkstra per calcular les distàncies mínimes
-        while (!priorityQueue.isEmpty()) {
-            Node current = priorityQueue.poll();
-
-            if (visitats.contains(current.point)) {
-                continue;
+            if (++generacio == 0) {
+                Arrays.fill(visitades, 0);
+                generacio = 1;
             }
-            visitats.add(current.point);
-
-            // Si arribem al costat oposat, podem aturar-nos
-            if ((player == 1 && current.point.x == size - 1)
-                    || (player == 2 && current.point.y == size - 1)) {
-                return distances[current.point.x][current.point.y];
+            Arrays.fill(distancies, 0, numCaselles, Integer.MAX_VALUE);
+            int cap = cua.length / 2;
+            int fi = cua.length / 2;
+
+            // Inicialitza les distàncies des del costat inicial del jugador:
+            // oest a est per al jugador 1, nord a sud per a l'altre
+            for (int i = 0; i < size; i++) {
+                int inici = player == 1 ? i : i * size;
+                int cellState = board.getPos(inici);
+                if (cellState == player || cellState == 0) {
+                    if (cellState == 0) {
+                        distancies[inici] = 1;
+                        cua[fi++] = inici;
+                    } else {
+                        distancies[inici] = 0;
+                        cua[--cap] = inici;
+                    }
+                }
             }
 
-            // Explorar veïns
-            for (int[] dir : direccions) {
-                int newX = current.point.x + dir[0];
-                int newY = current.point.y + dir[1];
-                Point vei = new Point(newX, newY);
+            while (cap < fi) {
+                int actual = cua[cap++];
+                if (visitades[actual] == generacio) {
+                    continue;
+                }
+                visitades[actual] = generacio;
+                int distancia = distancies[actual];
 
-                if (isValid(board, newX, newY)) {
-                    int cellState = board.getPos(vei);
-                    int newDistance = distances[current.point.x][current.point.y] + (cellState == 0 ? 1 : 0);
+                // Si arribem al costat oposat, podem aturar-nos
+                if (player == 1 ? actual / size == size - 1 : actual % size == size - 1) {
+                    return distancia;
+                }
 
-                    if (newDistance < distances[newX][newY]) {
-                        distances[newX][newY] = newDistance;
-                        priorityQueue.add(new Node(vei, newDistance));
+                for (int k = 0; k < board.getNumVeins(actual); k++) {
+                    int vei = board.getVei(actual, k);
+                    int cost = board.getPos(vei) == 0 ? 1 : 0;
+                    if (distancia + cost < distancies[vei]) {
+                        distancies[vei] = distancia + cost;
+                        if (cost == 0) {
+                            cua[--cap] = vei;
+                        } else {
+                            cua[fi++] = vei;
+                        }
                     }
                 }
             }
-        }
-        // Si no es pot connectar, retornem un valor alt
-        return Integer.MAX_VALUE;
-    }
-
-    /**
-     * Classe auxiliar per emmagatzemar les cel·les del tauler juntament amb les
-     * seves distàncies.
-     */
-    private static class Node {
-
-        Point point;
-        int distance;
-
-        Node(Point point, int distance) {
-            this.point = point;
-            this.distance = distance;
+            // Si no es pot connectar, retornem un valor alt
+            return Integer.MAX_VALUE;
         }
     }
 }
@@ -0,0 +1,188 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Llibre d'obertures per a una mida de tauler, llegit d'un fitxer projectat
+ * a memòria només de lectura. Obrir-lo no llegeix el fitxer: el sistema
+ * operatiu carrega les pàgines a mesura que les consultes hi accedeixen.
+ *
+ * Format del fitxer (little-endian):
+ * <ul>
+ * <li>capçalera de 16 bytes: {@link #MAGIC}, {@link #VERSIO}, la mida del
+ * tauler i el nombre d'entrades;</li>
+ * <li>entrades de 16 bytes ordenades per clau: la clau canònica de la
+ * posició (8 bytes), la casella del millor moviment (4 bytes) i la seva
+ * puntuació des del punt de vista del jugador que mou (4 bytes).</li>
+ * </ul>
+ *
+ * La clau canònica és el mínim entre el hash de Zobrist de la posició i el
+ * de la posició girada 180 graus, que és l'única simetria del tauler que
+ * conserva les vores de cada jugador. El moviment es guarda per a la
+ * posició amb el hash menor i es gira en consultar si cal. Les claus
+ * depenen de les claus fixes de {@link Zobrist}: si canvien, cal tornar a
+ * generar els llibres.
+ */
+public class LlibreObertures {
+
+    /** Identificador del format, "HEXL" en ASCII. */
+    public static final int MAGIC = 0x4C584548;
+    /** Versió del format. */
+    public static final int VERSIO = 1;
+    private static final int CAPCALERA = 16;
+    private static final int MIDA_ENTRADA = 16;
+
+    private final MappedByteBuffer dades;
+    private final int size;
+    private final int numEntrades;
+    private final Zobrist zobrist;
+
+    private LlibreObertures(MappedByteBuffer dades) throws IOException {
+        this.dades = dades;
+        dades.order(ByteOrder.LITTLE_ENDIAN);
+        if (dades.capacity() < CAPCALERA || dades.getInt(0) != MAGIC || dades.getInt(4) != VERSIO) {
+            throw new IOException("No és un llibre d'obertures vàlid");
+        }
+        size = dades.getInt(8);
+        numEntrades = dades.getInt(12);
+        if ((long) CAPCALERA + (long) numEntrades * MIDA_ENTRADA != dades.capacity()) {
+            throw new IOException("El llibre d'obertures està truncat");
+        }
+        zobrist = new Zobrist(size);
+    }
+
+    /**
+     * Obre un llibre d'obertures projectant-lo a memòria.
+     *
+     * @param fitxer El fitxer del llibre.
+     * @return El llibre.
+     * @throws IOException Si no es pot llegir o no té el format correcte.
+     */
+    public static LlibreObertures obre(Path fitxer) throws IOException {
+        try (FileChannel canal = FileChannel.open(fitxer, StandardOpenOption.READ)) {
+            // La projecció continua vàlida després de tancar el canal
+            return new LlibreObertures(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        }
+    }
+
+    /**
+     * @return La mida del tauler del llibre.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return El nombre de posicions del llibre.
+     */
+    public int getNumEntrades() {
+        return numEntrades;
+    }
+
+    /**
+     * Busca el millor moviment d'una posició.
+     *
+     * @param status L'estat del joc.
+     * @return El moviment del llibre o null si la posició no hi és o el
+     * tauler és d'una altra mida.
+     */
+    public Point consulta(HexGameStatus status) {
+        if (status.getSize() != size) return null;
+        TaulerCerca tauler = new TaulerCerca(status, zobrist);
+        int i = busca(tauler);
+        if (i < 0) return null;
+        int moviment = tauler.orientaCanonica(dades.getInt(CAPCALERA + i * MIDA_ENTRADA + 8));
+        return tauler.getPos(moviment) == 0 ? tauler.toPoint(moviment) : null;
+    }
+
+    /**
+     * Busca la puntuació d'una posició.
+     *
+     * @param status L'estat del joc.
+     * @return La puntuació guardada des del punt de vista del jugador que
+     * mou o {@link Integer#MIN_VALUE} si la posició no hi és.
+     */
+    public int puntuacio(HexGameStatus status) {
+        if (status.getSize() != size) return Integer.MIN_VALUE;
+        int i = busca(new TaulerCerca(status, zobrist));
+        return i < 0 ? Integer.MIN_VALUE : dades.getInt(CAPCALERA + i * MIDA_ENTRADA + 12);
+    }
+
+    /**
+     * Cerca binària de la clau canònica entre les entrades.
+     *
+     * @return L'índex de l'entrada o -1 si no hi és.
+     */
+    private int busca(TaulerCerca tauler) {
+        long clau = clauCanonica(tauler);
+        int baix = 0;
+        int alt = numEntrades - 1;
+        while (baix <= alt) {
+            int mig = (baix + alt) >>> 1;
+            long valor = dades.getLong(CAPCALERA + mig * MIDA_ENTRADA);
+            if (valor < clau) {
+                baix = mig + 1;
+            } else if (valor > clau) {
+                alt = mig - 1;
+            } else {
+                return mig;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calcula la clau canònica d'una posició: el mínim entre el seu hash i
+     * el de la posició girada 180 graus.
+     *
+     * @param tauler El tauler.
+     * @return La clau canònica.
+     * @see TaulerCerca#getHashCanonic()
+     */
+    public static long clauCanonica(TaulerCerca tauler) {
+        return tauler.getHashCanonic();
+    }
+
+    /**
+     * Escriu un llibre d'obertures. Les entrades es reben en tres vectors
+     * paral·lels i s'ordenen per clau abans d'escriure-les.
+     *
+     * @param fitxer El fitxer on s'escriu, que se sobreescriu si existeix.
+     * @param size La mida del tauler.
+     * @param claus Les claus canòniques, sense repeticions.
+     * @param moviments El millor moviment de cada posició, per a la posició
+     * amb el hash igual a la clau.
+     * @param puntuacions La puntuació de cada posició.
+     * @param n El nombre d'entrades.
+     * @throws IOException Si no es pot escriure el fitxer.
+     */
+    public static void escriu(Path fitxer, int size, long[] claus, int[] moviments, int[] puntuacions, int n) throws IOException {
+        Integer[] ordre = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ordre[i] = i;
+        }
+        Arrays.sort(ordre, (a, b) -> Long.compare(claus[a], claus[b]));
+
+        ByteBuffer buffer = ByteBuffer.allocate(CAPCALERA + n * MIDA_ENTRADA).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSIO).putInt(size).putInt(n);
+        for (int i : ordre) {
+            buffer.putLong(claus[i]).putInt(moviments[i]).putInt(puntuacions[i]);
+        }
+        buffer.flip();
+        try (RandomAccessFile sortida = new RandomAccessFile(fitxer.toFile(), "rw")) {
+            sortida.setLength(0);
+            sortida.getChannel().write(buffer);
+        }
+    }
+}
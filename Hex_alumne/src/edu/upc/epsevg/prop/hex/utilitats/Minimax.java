@@ -1,11 +1,10 @@
 package edu.upc.epsevg.prop.hex.utilitats;
 
 import edu.upc.epsevg.prop.hex.HexGameStatus;
-import edu.upc.epsevg.prop.hex.MoveNode;
 import edu.upc.epsevg.prop.hex.PlayerType;
+import edu.upc.epsevg.prop.hex.SearchType;
 
 import java.awt.*;
-import java.util.List;
 
 /**
  * Implementació bàsica de l'algorisme Minimax per trobar la millor jugada.
@@ -22,50 +21,71 @@ public class Minimax extends MinimaxBase {
     }
 
     /**
-     * Troba la millor jugada utilitzant l'algorisme Minimax.
+     * Constructor de la classe Minimax amb una mida de taula de transposicions
+     * concreta.
      *
-     * @param tauler L'estat actual de la partida.
+     * @param maxDepth La profunditat màxima per a l'algorisme MiniMax.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     */
+    public Minimax(int maxDepth, int megabytesTaula) {
+        super(maxDepth, megabytesTaula);
+    }
+
+    /**
+     * Constructor de la classe Minimax amb una funció d'avaluació concreta.
+     *
+     * @param maxDepth La profunditat màxima per a l'algorisme MiniMax.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     * @param avaluador La funció d'avaluació.
+     */
+    public Minimax(int maxDepth, int megabytesTaula, Avaluador avaluador) {
+        super(maxDepth, new TaulaTransposicio(megabytesTaula), avaluador);
+    }
+
+    /**
+     * Troba la millor jugada utilitzant l'algorisme Minimax. Si la cerca
+     * s'atura abans d'acabar, es retorna el millor dels moviments de l'arrel
+     * que s'han pogut cercar del tot, o el primer segons l'ordenació.
+     *
+     * @param status L'estat actual de la partida.
      * @return El punt del tauler corresponent a la millor jugada calculada.
      */
     @Override
-    public Point millorMoviment(HexGameStatus tauler) {
+    public Point millorMoviment(HexGameStatus status) {
         exploredNodes = 0;
-        PlayerType player = tauler.getCurrentPlayer();
-        List<MoveNode> moveList = tauler.getMoves();
-        int bestScore = Integer.MIN_VALUE;
+        temps.inicia(tempsPerMoviment);
+        PlayerType player = status.getCurrentPlayer();
+        TaulerCerca tauler = preparaArrel(status, player);
+        long hash = hash(tauler);
 
-        moveList.sort((a, b) -> {
-            HexGameStatus tauler1 = new HexGameStatus(tauler);
-            tauler1.placeStone(a.getPoint());
-            HexGameStatus tauler2 = new HexGameStatus(tauler);
-            tauler2.placeStone(b.getPoint());
-            PlayerType currentplayer = tauler.getCurrentPlayer();
-            int valor1 = heuristica.eval(tauler1, currentplayer);
-            int valor2 = heuristica.eval(tauler2, currentplayer);
-            return Integer.compare(valor1, valor2);
-        });
-        Point moviment = moveList.get(0).getPoint();
-
-        for (int i = 0; i < moveList.size() && i < 30; ++i) {
-            MoveNode mn = moveList.get(i);
-            HexGameStatus nouTauler = new HexGameStatus(tauler);
-            nouTauler.placeStone(mn.getPoint());
-
-            if (nouTauler.isGameOver()) return mn.getPoint();
+        int demostrada = jugadaDemostrada(tauler);
+        if (demostrada >= 0) {
+            temps.finalitza();
+            estadistiques.finalitza();
+            return tauler.toPoint(demostrada);
+        }
 
-            int score = getMillorResultat(nouTauler, maxDepth - 1, bestScore, Integer.MAX_VALUE, false, player);
+        long entrada = taula.consulta(hash);
+        int n = ordenacio.genera(tauler, 0, entrada != 0 ? movimentTaula(tauler, entrada) : -1);
+        ordenacio.ordena(0, n);
 
-            if (score > bestScore) {
-                bestScore = score;
-                moviment = mn.getPoint();
-            }
+        int bestScore = cercaArrel(tauler, maxDepth, Integer.MIN_VALUE, Integer.MAX_VALUE, player, ordenacio.getMoviments(0), n, new int[n]);
+        int moviment = millorArrel;
+        if (!temps.isAturat()) {
+            guarda(tauler, hash, maxDepth, TaulaTransposicio.EXACTE, bestScore, moviment);
+            estadistiques.fiIteracio(maxDepth);
         }
-        return moviment;
+        temps.finalitza();
+        estadistiques.finalitza();
+        return tauler.toPoint(moviment);
     }
 
+    /**
+     * Atura la cerca en curs.
+     */
     @Override
     public void timeout() {
-        // Si no és iteratiu, no s'ha de fer cap cosa quan salta el timeout 
+        temps.atura();
     }
 
     /**
@@ -87,4 +107,12 @@ public class Minimax extends MinimaxBase {
     public int getProfunditatMaxima() {
         return maxDepth;
     }
+
+    /**
+     * @return {@link SearchType#MINIMAX}.
+     */
+    @Override
+    public SearchType getTipusCerca() {
+        return SearchType.MINIMAX;
+    }
 }
@@ -1,23 +1,62 @@
 package edu.upc.epsevg.prop.hex.utilitats;
 
 import edu.upc.epsevg.prop.hex.HexGameStatus;
-import edu.upc.epsevg.prop.hex.MoveNode;
 import edu.upc.epsevg.prop.hex.PlayerType;
 
-import java.awt.*;
-import java.util.List;
-
 /**
  * Classe que implementa l'algorisme Minimax.
  * Proporciona funcionalitats bàsiques de MiniMax amb poda alfa-beta i ordenació
  * de moviments basada en la heurística dissenyada.
  */
-public abstract class MinimaxBase {
+public abstract class MinimaxBase implements Cercador {
 
-    protected boolean timeout;
+    /**
+     * Profunditat restant mínima d'un node per buscar-hi connexions
+     * virtuals. Als nodes de sota la cerca ja és més barata que la prova.
+     */
+    private static final int PROFUNDITAT_CONNEXIONS = 2;
+    /**
+     * Fracció de caselles ocupades a partir de la qual es busquen connexions
+     * virtuals. Abans gairebé mai demostren res.
+     */
+    private static final double OCUPACIO_CONNEXIONS = 0.25;
+    /**
+     * Profunditat restant mínima d'un node per reduir-ne els moviments
+     * tardans. Més avall la reducció deixaria el fill sense cerca.
+     */
+    private static final int PROFUNDITAT_REDUCCIO = 3;
+    /**
+     * Profunditat restant màxima dels nodes on es fa la poda de futilitat i
+     * el razoring: prop de l'horitzó l'avaluació estàtica encara és una
+     * bona estimació del resultat de la cerca.
+     */
+    private static final int PROFUNDITAT_FUTILITAT = 2;
+
+    protected final GestorTemps temps = new GestorTemps();
+    protected long tempsPerMoviment;
     protected int maxDepth;
     protected long exploredNodes;
-    protected final Heuristica heuristica = new Heuristica();
+    protected final Avaluador avaluador;
+    protected final TaulaTransposicio taula;
+    protected Zobrist zobrist;
+    protected long perspectiva;
+    protected final OrdenacioMoviments ordenacio;
+    protected int millorArrel;
+    protected boolean victoriaArrel;
+    protected int completatsArrel;
+    protected final ConnexionsVirtuals connexions = new ConnexionsVirtuals();
+    protected boolean usaConnexions = true;
+    protected PoliticaFeix feix = new PoliticaFeix();
+    protected boolean reduccions = true;
+    protected int rangReduccio = 4;
+    protected boolean futilitat = true;
+    protected boolean razoring = false;
+    protected int margeFutilitat = 150;
+    protected long reduits;
+    protected long recercats;
+    protected long podatsFutilitat;
+    protected long podatsRazoring;
+    protected EstadistiquesCerca estadistiques = new EstadistiquesCerca();
 
     /**
      * Constructor de la classe MinimaxBase.
@@ -25,23 +64,388 @@ public abstract class MinimaxBase {
      * @param maxDepth La profunditat màxima de cerca.
      */
     public MinimaxBase(int maxDepth) {
-        timeout = false;
+        this(maxDepth, TaulaTransposicio.MEGABYTES_PER_DEFECTE);
+    }
+
+    /**
+     * Constructor de la classe MinimaxBase amb una mida de taula de
+     * transposicions concreta.
+     *
+     * @param maxDepth La profunditat màxima de cerca.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     */
+    public MinimaxBase(int maxDepth, int megabytesTaula) {
+        this(maxDepth, new TaulaTransposicio(megabytesTaula));
+    }
+
+    /**
+     * Constructor de la classe MinimaxBase amb una taula de transposicions
+     * que es pot compartir amb altres cerques.
+     *
+     * @param maxDepth La profunditat màxima de cerca.
+     * @param taula La taula de transposicions.
+     */
+    public MinimaxBase(int maxDepth, TaulaTransposicio taula) {
+        this(maxDepth, taula, new Heuristica());
+    }
+
+    /**
+     * Constructor de la classe MinimaxBase amb una funció d'avaluació
+     * concreta.
+     *
+     * @param maxDepth La profunditat màxima de cerca.
+     * @param taula La taula de transposicions.
+     * @param avaluador La funció d'avaluació de les fulles i de l'ordenació
+     * de moviments, que es consulta a través d'una {@link CacheAvaluacions}.
+     * No es pot compartir amb cap altra cerca.
+     */
+    public MinimaxBase(int maxDepth, TaulaTransposicio taula, Avaluador avaluador) {
         this.maxDepth = maxDepth;
+        this.taula = taula;
+        this.avaluador = new CacheAvaluacions(avaluador);
+        this.ordenacio = new OrdenacioMoviments(this.avaluador, temps);
+    }
+
+    /**
+     * Fixa el temps màxim de cada cerca. La cerca s'atura sola quan s'esgota,
+     * encara que no arribi l'avís de {@link #timeout()}.
+     *
+     * @param milisegons Temps màxim per moviment o 0 si no té límit.
+     */
+    @Override
+    public void setTempsPerMoviment(long milisegons) {
+        this.tempsPerMoviment = Math.max(0, milisegons);
+    }
+
+    /**
+     * Fixa el nombre màxim de nodes de cada cerca. La cerca s'atura sola
+     * quan els ha explorat, com si s'hagués esgotat el temps. Amb un sol fil
+     * i sense límit de temps, la mateixa posició dona sempre el mateix
+     * moviment. Els fils ajudants no en tenen: s'aturen quan acaba la cerca
+     * principal.
+     *
+     * @param nodes Nodes màxims per moviment o 0 si no té límit.
+     */
+    public void setNodesPerMoviment(long nodes) {
+        temps.setLimitNodes(nodes);
+    }
+
+    /**
+     * Activa o desactiva la demostració de victòries amb connexions
+     * virtuals.
+     *
+     * @param activa Si s'han de fer servir.
+     */
+    public void setConnexionsVirtuals(boolean activa) {
+        this.usaConnexions = activa;
+    }
+
+    /**
+     * Activa o desactiva la reducció de moviments tardans (LMR): als nodes
+     * amb prou profunditat, els moviments a partir de la posició
+     * {@link #setRangReduccio(int)} de l'ordre es cerquen primer amb un
+     * nivell menys i una finestra nul·la, i només si superen la finestra es
+     * tornen a cercar a la profunditat completa.
+     *
+     * @param activa Si s'han de reduir.
+     */
+    public void setReduccions(boolean activa) {
+        this.reduccions = activa;
+    }
+
+    /**
+     * @param rang Posició de l'ordre a partir de la qual es redueixen els
+     * moviments. El moviment de la taula i l'assassí no es redueixen mai.
+     */
+    public void setRangReduccio(int rang) {
+        this.rangReduccio = Math.max(1, rang);
+    }
+
+    /**
+     * Activa o desactiva la poda de futilitat: prop de l'horitzó no es
+     * cerquen els fills que, segons l'avaluació estàtica i amb un marge de
+     * {@link #setMargeFutilitat(int)} per nivell restant, no poden millorar
+     * la finestra.
+     *
+     * @param activa Si s'han de podar.
+     */
+    public void setFutilitat(boolean activa) {
+        this.futilitat = activa;
+    }
+
+    /**
+     * Activa o desactiva el razoring: prop de l'horitzó, un node on
+     * l'avaluació estàtica queda fora de la finestra per més del doble del
+     * marge per nivell restant es retorna sense cercar.
+     *
+     * @param activa Si s'ha de fer.
+     */
+    public void setRazoring(boolean activa) {
+        this.razoring = activa;
+    }
+
+    /**
+     * @param marge Marge per nivell restant de la poda de futilitat i del
+     * razoring, en les unitats de la funció d'avaluació.
+     */
+    public void setMargeFutilitat(int marge) {
+        this.margeFutilitat = Math.max(0, marge);
+    }
+
+    /**
+     * @return El nombre de moviments cercats amb un nivell menys per la
+     * reducció de moviments tardans.
+     */
+    public long getReduits() {
+        return reduits;
+    }
+
+    /**
+     * @return El nombre de moviments reduïts que s'han hagut de tornar a
+     * cercar a la profunditat completa.
+     */
+    public long getRecercats() {
+        return recercats;
+    }
+
+    /**
+     * @return El nombre de moviments no cercats per la poda de futilitat.
+     */
+    public long getPodatsFutilitat() {
+        return podatsFutilitat;
+    }
+
+    /**
+     * @return El nombre de nodes retornats sense cercar pel razoring.
+     */
+    public long getPodatsRazoring() {
+        return podatsRazoring;
     }
 
-    public abstract Point millorMoviment(HexGameStatus status);
+    /**
+     * Copia la configuració de les reduccions i les podes d'una altra cerca.
+     *
+     * @param origen La cerca d'on es copia.
+     */
+    protected void copiaPodes(MinimaxBase origen) {
+        reduccions = origen.reduccions;
+        rangReduccio = origen.rangReduccio;
+        futilitat = origen.futilitat;
+        razoring = origen.razoring;
+        margeFutilitat = origen.margeFutilitat;
+    }
+
+    /**
+     * Canvia la política que decideix quants moviments de cada node es
+     * cerquen.
+     *
+     * @param feix La política, que recull les estadístiques d'aquesta cerca.
+     */
+    public void setPoliticaFeix(PoliticaFeix feix) {
+        this.feix = feix;
+    }
+
+    /**
+     * @return La política d'amplada del feix, amb les estadístiques de la
+     * posició del millor moviment de cada node.
+     */
+    public PoliticaFeix getPoliticaFeix() {
+        return feix;
+    }
+
+    /**
+     * Activa o desactiva la poda de caselles mortes, capturades i dominades
+     * abans de generar els moviments.
+     *
+     * @param activa Si s'han de podar.
+     */
+    public void setCasellesInferiors(boolean activa) {
+        ordenacio.setPodaInferiors(activa);
+    }
+
+    /**
+     * @return L'anàlisi de caselles inferiors de la cerca, amb les seves
+     * estadístiques.
+     */
+    public CasellesInferiors getCasellesInferiors() {
+        return ordenacio.getInferiors();
+    }
+
+    /**
+     * Busca una victòria demostrada per connexions virtuals per al jugador
+     * que mou a l'arrel. Si n'hi ha, la jugada retornada la manté i no cal
+     * cercar.
+     *
+     * @param tauler El tauler de cerca a l'arrel.
+     * @return La casella de la jugada o -1 si no hi ha victòria demostrada.
+     */
+    protected int jugadaDemostrada(TaulerCerca tauler) {
+        if (!usaConnexions || connexions.guanyador(tauler) != tauler.getCurrentPlayerColor()) {
+            return -1;
+        }
+        return connexions.jugadaGuanyadora(tauler);
+    }
+
+    /**
+     * @return Les estadístiques de l'última cerca. Cada cerca en crea unes
+     * de noves, de manera que les retornades no canvien després.
+     */
+    @Override
+    public EstadistiquesCerca getEstadistiques() {
+        return estadistiques;
+    }
+
+    /**
+     * Prepara una cerca nova: crea el tauler de cerca a partir de l'estat del
+     * joc i fixa la clau del jugador des del punt de vista del qual s'avalua,
+     * perquè les puntuacions de la taula en depenen. També comença les
+     * estadístiques de la cerca.
+     *
+     * @param status L'estat actual del joc.
+     * @param player El jugador.
+     * @return El tauler de cerca de l'arrel.
+     */
+    protected TaulerCerca preparaArrel(HexGameStatus status, PlayerType player) {
+        if (zobrist == null || zobrist.getSize() != status.getSize()) {
+            zobrist = new Zobrist(status.getSize());
+        }
+        perspectiva = zobrist.clauJugador(player);
+        ordenacio.prepara(maxDepth + 1, status.getSize() * status.getSize());
+        estadistiques = new EstadistiquesCerca();
+        estadistiques.inicia();
+        return new TaulerCerca(status, zobrist);
+    }
+
+    /**
+     * Calcula el hash de la taula de transposicions a partir del hash
+     * canònic, de manera que una posició i la seva girada 180 graus
+     * comparteixen entrada. Per això els moviments de la taula es guarden
+     * en l'orientació canònica: vegeu {@link #guarda} i
+     * {@link #movimentTaula}.
+     *
+     * @param tauler El tauler de cerca.
+     * @return El hash de la posició per a la taula de transposicions.
+     */
+    protected long hash(TaulerCerca tauler) {
+        return tauler.getHashCanonic() ^ perspectiva;
+    }
 
-    public abstract void timeout();
+    /**
+     * Guarda una posició a la taula de transposicions passant el moviment a
+     * l'orientació canònica.
+     *
+     * @param tauler El tauler de cerca a la posició.
+     * @param hash El hash de la posició, de {@link #hash(TaulerCerca)}.
+     * @param profunditat La profunditat restant de la cerca.
+     * @param tipus El tipus de puntuació.
+     * @param valor La puntuació.
+     * @param moviment El millor moviment o -1.
+     */
+    protected void guarda(TaulerCerca tauler, long hash, int profunditat, int tipus, int valor, int moviment) {
+        taula.guarda(hash, profunditat, tipus, valor, tauler.orientaCanonica(moviment));
+    }
 
-    public abstract long getNodesExplorats();
+    /**
+     * @param tauler El tauler de cerca a la posició.
+     * @param entrada L'entrada de la taula de la posició.
+     * @return El moviment de l'entrada en l'orientació del tauler, o -1 si
+     * no en té.
+     */
+    protected int movimentTaula(TaulerCerca tauler, long entrada) {
+        return tauler.orientaCanonica(TaulaTransposicio.moviment(entrada));
+    }
 
-    public abstract int getProfunditatMaxima();
+    /**
+     * Cerca els moviments de l'arrel amb PVS. El primer moviment es cerca amb
+     * la finestra (alfa, beta) i la resta amb una finestra nul·la que només
+     * es torna a obrir si el moviment pot millorar el millor resultat.
+     * El millor moviment queda a {@link #millorArrel}, i
+     * {@link #victoriaArrel} indica si guanya la partida immediatament.
+     * {@link #completatsArrel} compta els moviments cercats del tot, de manera
+     * que si la cerca s'atura a mitges se sap si el resultat és aprofitable.
+     * Només es cerquen els moviments que deixa la política del feix.
+     *
+     * @param tauler El tauler de cerca a l'arrel.
+     * @param profunditat La profunditat de la cerca.
+     * @param alfa El valor alfa inicial.
+     * @param beta El valor beta inicial.
+     * @param player El jugador maximitzador.
+     * @param moviments Els moviments de l'arrel ja ordenats.
+     * @param n El nombre de moviments.
+     * @param punts Vector on es deixa la puntuació obtinguda per cada
+     * moviment, en el mateix ordre que {@code moviments}.
+     * @return La puntuació del millor moviment. Si és menor o igual que alfa
+     * o major o igual que beta només és una cota.
+     */
+    protected int cercaArrel(TaulerCerca tauler, int profunditat, int alfa, int beta, PlayerType player, int[] moviments, int n, int[] punts) {
+        int bestScore = Integer.MIN_VALUE;
+        millorArrel = moviments[0];
+        victoriaArrel = false;
+        completatsArrel = 0;
+        int rangMillor = 0;
+        int amplada = feix.amplada(0, n, tauler);
+        for (int i = 0; i < amplada; ++i) {
+            punts[i] = Integer.MIN_VALUE;
+        }
+        estadistiques.node(0);
+        estadistiques.interior();
+        for (int i = 0; i < amplada; ++i) {
+            if (temps.isAturat()) break;
+            int mn = moviments[i];
+            tauler.play(mn);
+
+            if (tauler.isGameOver()) {
+                tauler.undo();
+                punts[i] = Integer.MAX_VALUE;
+                millorArrel = mn;
+                victoriaArrel = true;
+                return Integer.MAX_VALUE;
+            }
+
+            int a = Math.max(alfa, bestScore);
+            int score;
+            if (i == 0) {
+                score = getMillorResultat(tauler, profunditat - 1, a, beta, false, player);
+            } else {
+                score = getMillorResultat(tauler, profunditat - 1, a, a + 1, false, player);
+                if (score > a && score < beta) {
+                    score = getMillorResultat(tauler, profunditat - 1, a, beta, false, player);
+                }
+            }
+            tauler.undo();
+            if (temps.isAturat()) break;
+
+            completatsArrel++;
+            punts[i] = score;
+            if (score > bestScore) {
+                bestScore = score;
+                millorArrel = mn;
+                rangMillor = i;
+            }
+            if (bestScore >= beta) {
+                estadistiques.tall(i == 0);
+                break;
+            }
+        }
+        if (!temps.isAturat() && bestScore > alfa && bestScore < beta) {
+            feix.registra(0, rangMillor);
+        }
+        return bestScore;
+    }
 
     /**
      * Calcula la millor puntuació per a un estat donat del joc utilitzant
-     * l'algorisme Minimax amb poda alfa-beta.
+     * l'algorisme Minimax amb poda alfa-beta. Després del primer fill, la
+     * resta es cerquen amb una finestra nul·la (Principal Variation Search) i
+     * només es tornen a cercar amb la finestra completa si poden millorar el
+     * resultat. Només es cerquen els moviments que deixa la política del
+     * feix. Si estan activats, els moviments tardans es cerquen primer amb un
+     * nivell menys, i prop de l'horitzó es poden els nodes (razoring) i els
+     * fills (futilitat) que l'avaluació estàtica deixa clarament fora de la
+     * finestra.
      *
-     * @param tauler L'estat actual del joc.
+     * @param tauler L'estat actual del joc. Es modifica durant la cerca però
+     * es retorna en el mateix estat.
      * @param profunditat La profunditat restant de la cerca.
      * @param alfa El valor alfa per a la poda alfa-beta.
      * @param beta El valor beta per a la poda alfa-beta.
@@ -50,45 +454,193 @@ public abstract class MinimaxBase {
      *
      * @return La millor puntuació calculada per a l'estat donat.
      */
-    protected int getMillorResultat(HexGameStatus tauler, int profunditat, int alfa, int beta, boolean maximitzant, PlayerType player) {
-        if (timeout) return 0;
+    protected int getMillorResultat(TaulerCerca tauler, int profunditat, int alfa, int beta, boolean maximitzant, PlayerType player) {
+        if (temps.esgotat()) return 0;
+        int nivell = tauler.getNumJugades();
+        estadistiques.node(nivell);
 
         if (profunditat == 0) {
             exploredNodes++;
-            return heuristica.eval(tauler, player);
+            return avaluador.eval(tauler, player);
         }
 
+        long hash = hash(tauler);
+        int movimentTaula = -1;
+        long entrada = taula.consulta(hash);
+        if (entrada != 0) {
+            movimentTaula = movimentTaula(tauler, entrada);
+            if (TaulaTransposicio.profunditat(entrada) >= profunditat) {
+                int valor = TaulaTransposicio.puntuacio(entrada);
+                switch (TaulaTransposicio.tipus(entrada)) {
+                    case TaulaTransposicio.EXACTE:
+                        return valor;
+                    case TaulaTransposicio.COTA_INFERIOR:
+                        alfa = Math.max(alfa, valor);
+                        break;
+                    default:
+                        beta = Math.min(beta, valor);
+                        break;
+                }
+                if (beta <= alfa) return valor;
+            }
+        }
+
+        if (usaConnexions && profunditat >= PROFUNDITAT_CONNEXIONS
+                && tauler.getNumPedres() >= OCUPACIO_CONNEXIONS * tauler.getNumCaselles()) {
+            int guanyador = connexions.guanyador(tauler);
+            if (guanyador != 0) {
+                int valor = guanyador == PlayerType.getColor(player) ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+                int jugada = guanyador == tauler.getCurrentPlayerColor() ? connexions.jugadaGuanyadora(tauler) : -1;
+                guarda(tauler, hash, profunditat, TaulaTransposicio.EXACTE, valor, jugada);
+                return valor;
+            }
+        }
+
+        if (razoring && profunditat <= PROFUNDITAT_FUTILITAT) {
+            // Als nodes minimitzadors l'avaluació ja és a la cache de
+            // l'ordenació del pare
+            int estatic = avaluador.eval(tauler, player);
+            long marge = 2L * margeFutilitat * profunditat;
+            if (maximitzant ? estatic + marge <= alfa : estatic - marge >= beta) {
+                podatsRazoring++;
+                return (int) (maximitzant ? estatic + marge : estatic - marge);
+            }
+        }
+
+        int alfaInicial = alfa;
+        int betaInicial = beta;
         int millorRes = maximitzant ? Integer.MIN_VALUE : Integer.MAX_VALUE;
-        
-        List<MoveNode> moveList = tauler.getMoves();
-        moveList.sort((a, b) -> {
-            HexGameStatus tauler1 = new HexGameStatus(tauler);
-            tauler1.placeStone(a.getPoint());
-            HexGameStatus tauler2 = new HexGameStatus(tauler);
-            tauler2.placeStone(b.getPoint());
-            PlayerType currentplayer = tauler.getCurrentPlayer();
-            int valor1 = heuristica.eval(tauler1, currentplayer);
-            int valor2 = heuristica.eval(tauler2, currentplayer);
-            return Integer.compare(valor1, valor2);
-        });
-
-        for (int i = 0; i < 30 && i < moveList.size(); ++i) {
-            if (timeout) return 0;
-            MoveNode mn = moveList.get(i);
-            HexGameStatus nouTauler = new HexGameStatus(tauler);
-            nouTauler.placeStone(mn.getPoint());
-            if (nouTauler.isGameOver()) return maximitzant ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-
-            int res = getMillorResultat(nouTauler, profunditat - 1, alfa, beta, !maximitzant, player);
-
-            if (timeout) return 0;
-
-            millorRes = maximitzant ? Math.max(millorRes, res) : Math.min(millorRes, res);
+        int millorMoviment = -1;
+        int rangMillor = 0;
+
+        estadistiques.interior();
+        int n = ordenacio.genera(tauler, nivell, movimentTaula);
+        int amplada = feix.amplada(nivell, n, tauler);
+        int millorValor = ordenacio.getMillorValor(nivell);
+        int pitjorValor = ordenacio.getPitjorValor(nivell);
+
+        for (int i = 0; i < amplada; ++i) {
+            if (temps.isAturat()) return 0;
+            int moviment = ordenacio.seguent(nivell, i, n);
+            int valor = ordenacio.getValor(nivell, i);
+            if (feix.talla(i, valor, millorValor, pitjorValor)) break;
+            // El moviment de la taula i l'assassí no es poden ni es redueixen
+            boolean secundari = i > 0 && valor != Integer.MAX_VALUE;
+            long marge = (long) margeFutilitat * (profunditat - 1);
+            if (futilitat && secundari && maximitzant && profunditat >= 2 && profunditat <= PROFUNDITAT_FUTILITAT
+                    && valor + marge <= alfa) {
+                // Al node maximitzador la puntuació de l'ordenació és
+                // l'avaluació del fill pel jugador, i els moviments que
+                // queden encara són pitjors
+                podatsFutilitat += amplada - i;
+                if (valor + marge > millorRes) {
+                    millorRes = (int) (valor + marge);
+                    millorMoviment = moviment;
+                    rangMillor = i;
+                }
+                break;
+            }
+            tauler.play(moviment);
+            if (tauler.isGameOver()) {
+                tauler.undo();
+                int guanya = maximitzant ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+                guarda(tauler, hash, profunditat, TaulaTransposicio.EXACTE, guanya, moviment);
+                return guanya;
+            }
+
+            int res;
+            boolean futil = false;
+            long estatic = 0;
+            if (futilitat && secundari && !maximitzant && profunditat >= 2 && profunditat <= PROFUNDITAT_FUTILITAT) {
+                // Al node minimitzador cal avaluar el fill pel jugador
+                estatic = avaluador.eval(tauler, player);
+                futil = estatic - marge >= beta;
+            }
+            if (futil) {
+                podatsFutilitat++;
+                res = (int) (estatic - marge);
+            } else {
+                boolean redueix = reduccions && secundari && i >= rangReduccio && profunditat >= PROFUNDITAT_REDUCCIO;
+                res = cercaFill(tauler, profunditat, alfa, beta, maximitzant, player, i == 0, redueix);
+            }
+            tauler.undo();
+
+            if (temps.isAturat()) return 0;
+
+            if (millorMoviment < 0 || (maximitzant ? res > millorRes : res < millorRes)) {
+                millorRes = res;
+                millorMoviment = moviment;
+                rangMillor = i;
+            }
             if (maximitzant) alfa = Math.max(alfa, millorRes);
             else beta = Math.min(beta, millorRes);
 
-            if (beta <= alfa) break;
+            if (beta <= alfa) {
+                estadistiques.tall(i == 0);
+                ordenacio.tall(nivell, moviment, profunditat, tauler.getCurrentPlayer());
+                break;
+            }
+        }
+
+        int tipus = millorRes <= alfaInicial ? TaulaTransposicio.COTA_SUPERIOR
+                : millorRes >= betaInicial ? TaulaTransposicio.COTA_INFERIOR
+                : TaulaTransposicio.EXACTE;
+        if (maximitzant ? tipus != TaulaTransposicio.COTA_SUPERIOR : tipus != TaulaTransposicio.COTA_INFERIOR) {
+            feix.registra(nivell, rangMillor);
         }
+        guarda(tauler, hash, profunditat, tipus, millorRes, millorMoviment);
         return millorRes;
     }
+
+    /**
+     * Cerca un fill amb PVS. El primer fill es cerca amb la finestra
+     * (alfa, beta) i la resta amb una finestra nul·la que només es torna a
+     * obrir si el fill pot millorar el resultat. Un fill reduït es cerca
+     * primer amb un nivell menys, i només si supera la finestra nul·la es
+     * torna a cercar a la profunditat completa.
+     *
+     * @param tauler El tauler, ja amb el moviment del fill fet.
+     * @param profunditat La profunditat restant del pare.
+     * @param alfa El valor alfa del pare.
+     * @param beta El valor beta del pare.
+     * @param maximitzant Si el pare és del jugador maximitzador.
+     * @param player El jugador maximitzador.
+     * @param primer Si és el primer fill.
+     * @param redueix Si el fill es pot reduir.
+     * @return La puntuació del fill.
+     */
+    private int cercaFill(TaulerCerca tauler, int profunditat, int alfa, int beta, boolean maximitzant, PlayerType player, boolean primer, boolean redueix) {
+        if (primer) {
+            return getMillorResultat(tauler, profunditat - 1, alfa, beta, !maximitzant, player);
+        }
+        int res;
+        if (maximitzant) {
+            res = alfa + 1;
+            if (redueix) {
+                reduits++;
+                res = getMillorResultat(tauler, profunditat - 2, alfa, alfa + 1, false, player);
+                if (res > alfa) recercats++;
+            }
+            if (res > alfa) {
+                res = getMillorResultat(tauler, profunditat - 1, alfa, alfa + 1, false, player);
+            }
+            if (res > alfa && res < beta) {
+                res = getMillorResultat(tauler, profunditat - 1, alfa, beta, false, player);
+            }
+        } else {
+            res = beta - 1;
+            if (redueix) {
+                reduits++;
+                res = getMillorResultat(tauler, profunditat - 2, beta - 1, beta, true, player);
+                if (res < beta) recercats++;
+            }
+            if (res < beta) {
+                res = getMillorResultat(tauler, profunditat - 1, beta - 1, beta, true, player);
+            }
+            if (res < beta && res > alfa) {
+                res = getMillorResultat(tauler, profunditat - 1, alfa, beta, true, player);
+            }
+        }
+        return res;
+    }
 }
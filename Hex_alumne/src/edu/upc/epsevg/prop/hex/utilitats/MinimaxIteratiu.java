@@ -1,11 +1,19 @@
 package edu.upc.epsevg.prop.hex.utilitats;
 
 import edu.upc.epsevg.prop.hex.HexGameStatus;
-import edu.upc.epsevg.prop.hex.MoveNode;
 import edu.upc.epsevg.prop.hex.PlayerType;
+import edu.upc.epsevg.prop.hex.SearchType;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Implementació de l'algorisme Minimax amb cerca iterativa per trobar la
@@ -13,7 +21,25 @@ import java.util.List;
  */
 public class MinimaxIteratiu extends MinimaxBase {
 
+    /** Amplada inicial de la finestra d'aspiració a cada costat. */
+    private static final int FINESTRA_ASPIRACIO = 250;
+    /** Les puntuacions a partir d'aquest valor es tracten com a victòria. */
+    private static final int GUANY = Integer.MAX_VALUE / 2;
+
     private int profActual;
+    private int puntuacioArrel;
+    private final MinimaxIteratiu[] ajudants;
+    private final ExecutorService executor;
+
+    // Ponderació: cerca la posició després de la resposta prevista de
+    // l'oponent mentre aquest pensa, amb una cerca que comparteix la taula
+    private final Supplier<? extends Avaluador> avaluadors;
+    private MinimaxIteratiu ponderador;
+    private ExecutorService executorPonderacio;
+    private Future<Point> ponderacio;
+    private long hashPonderat;
+    private int encertsPonderacio;
+    private int ponderacions;
 
     /**
      * Constructor de la classe Iterative.
@@ -21,60 +47,421 @@ public class MinimaxIteratiu extends MinimaxBase {
      * @param maxDepth La profunditat màxima de cerca per l'algoritme.
      */
     public MinimaxIteratiu(int maxDepth) {
-        super(maxDepth);
+        this(maxDepth, TaulaTransposicio.MEGABYTES_PER_DEFECTE);
+    }
+
+    /**
+     * Constructor de la classe Iterative amb una mida de taula de
+     * transposicions concreta.
+     *
+     * @param maxDepth La profunditat màxima de cerca per l'algoritme.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions.
+     */
+    public MinimaxIteratiu(int maxDepth, int megabytesTaula) {
+        this(maxDepth, megabytesTaula, 1);
+    }
+
+    /**
+     * Constructor de la classe Iterative amb cerca paral·lela.
+     *
+     * @param maxDepth La profunditat màxima de cerca per l'algoritme.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions, que
+     * comparteixen tots els fils.
+     * @param fils Nombre de fils de cerca, comptant el fil principal.
+     */
+    public MinimaxIteratiu(int maxDepth, int megabytesTaula, int fils) {
+        this(maxDepth, megabytesTaula, fils, Heuristica::new);
+    }
+
+    /**
+     * Constructor de la classe Iterative amb cerca paral·lela i una funció
+     * d'avaluació concreta.
+     *
+     * @param maxDepth La profunditat màxima de cerca per l'algoritme.
+     * @param megabytesTaula Memòria màxima de la taula de transposicions, que
+     * comparteixen tots els fils.
+     * @param fils Nombre de fils de cerca, comptant el fil principal.
+     * @param avaluadors Crea la funció d'avaluació de cada fil.
+     */
+    public MinimaxIteratiu(int maxDepth, int megabytesTaula, int fils, Supplier<? extends Avaluador> avaluadors) {
+        super(maxDepth, new TaulaTransposicio(megabytesTaula), avaluadors.get());
+        this.avaluadors = avaluadors;
+        ajudants = new MinimaxIteratiu[Math.max(0, fils - 1)];
+        for (int i = 0; i < ajudants.length; i++) {
+            ajudants[i] = new MinimaxIteratiu(maxDepth, taula, avaluadors.get());
+        }
+        executor = ajudants.length == 0 ? null : Executors.newFixedThreadPool(ajudants.length, r -> {
+            Thread t = new Thread(r, "MinimaxIteratiu-ajudant");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Constructor d'un fil ajudant que comparteix la taula de transposicions.
+     *
+     * @param maxDepth La profunditat màxima de cerca per l'algoritme.
+     * @param taula La taula de transposicions compartida.
+     * @param avaluador La funció d'avaluació del fil.
+     */
+    private MinimaxIteratiu(int maxDepth, TaulaTransposicio taula, Avaluador avaluador) {
+        super(maxDepth, taula, avaluador);
+        ajudants = new MinimaxIteratiu[0];
+        executor = null;
+        avaluadors = null;
+    }
+
+    /**
+     * Canvia la política del feix. Els ajudants i la ponderació en fan
+     * servir una còpia, perquè les estadístiques no es comparteixen entre
+     * fils: les de {@link #getPoliticaFeix()} són només de la cerca
+     * principal.
+     *
+     * @param feix La política.
+     */
+    @Override
+    public void setPoliticaFeix(PoliticaFeix feix) {
+        super.setPoliticaFeix(feix);
+        for (MinimaxIteratiu ajudant : ajudants) {
+            ajudant.setPoliticaFeix(new PoliticaFeix(feix));
+        }
+        if (ponderador != null) {
+            aturaPonderacio();
+            ponderador.setPoliticaFeix(new PoliticaFeix(feix));
+        }
+    }
+
+    /**
+     * Activa o desactiva la ponderació. Amb la ponderació activada, després
+     * de cada moviment es preveu la resposta de l'oponent amb la taula de
+     * transposicions i es cerca en segon pla la posició resultant mentre
+     * l'oponent pensa. Si l'oponent juga la resposta prevista, la cerca
+     * següent troba la taula ja plena per a aquella posició, i si la
+     * ponderació ha arribat a la profunditat màxima en fa servir el resultat
+     * directament.
+     *
+     * @param activa Si s'ha de ponderar.
+     */
+    public void setPonderacio(boolean activa) {
+        aturaPonderacio();
+        if (activa && ponderador == null) {
+            ponderador = new MinimaxIteratiu(maxDepth, taula, avaluadors.get());
+            ponderador.setPoliticaFeix(new PoliticaFeix(feix));
+            executorPonderacio = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "MinimaxIteratiu-ponderacio");
+                t.setDaemon(true);
+                return t;
+            });
+        } else if (!activa && ponderador != null) {
+            executorPonderacio.shutdown();
+            ponderador = null;
+            executorPonderacio = null;
+        }
     }
 
     /**
      * Troba la millor jugada utilitzant una aproximació iterativa del Minimax
      * amb poda alpha-beta.
      *
+     * Si hi ha fils ajudants, cada ajudant fa la mateixa cerca iterativa des
+     * de l'arrel compartint la taula de transposicions (Lazy SMP). Els
+     * ajudants comencen a profunditats diferents i amb l'ordre de l'arrel
+     * alterat perquè no facin exactament la mateixa feina. Quan la cerca
+     * principal acaba s'aturen els ajudants i es retorna el resultat de la
+     * iteració completa més profunda. Les estadístiques
+     * ({@link #getEstadistiques()}) són només de la cerca principal, o de la
+     * ponderació si se n'aprofita el resultat.
+     *
      * @param status L'estat actual del joc de Hex.
      * @return El punt del tauler corresponent a la millor jugada calculada.
      */
     @Override
     public Point millorMoviment(HexGameStatus status) {
+        Point ponderat = aturaPonderacio(status);
+        if (ponderat != null) {
+            // La ponderació ja ha fet tota la cerca d'aquesta posició
+            iniciaPonderacio(status, ponderat);
+            return ponderat;
+        }
+        Point res = cerca(status);
+        iniciaPonderacio(status, res);
+        return res;
+    }
+
+    /**
+     * Fa la cerca iterativa de la posició, amb els ajudants si n'hi ha.
+     *
+     * @param status L'estat actual del joc de Hex.
+     * @return El punt del tauler corresponent a la millor jugada calculada.
+     */
+    private Point cerca(HexGameStatus status) {
+        temps.inicia(tempsPerMoviment);
+        if (ajudants.length == 0) {
+            Point res = cercaIterativa(status, 1, 0);
+            temps.finalitza();
+            estadistiques.finalitza();
+            return res;
+        }
+
+        List<Future<Point>> resultats = new ArrayList<>();
+        for (int i = 0; i < ajudants.length; i++) {
+            MinimaxIteratiu ajudant = ajudants[i];
+            int variant = i + 1;
+            ajudant.copiaPodes(this);
+            // Els ajudants no tenen límit propi: s'aturen quan acaba la cerca principal
+            ajudant.temps.inicia(0);
+            resultats.add(executor.submit(() -> ajudant.cercaIterativa(status, 1 + variant % 2, variant)));
+        }
+
+        Point res = cercaIterativa(status, 1, 0);
+        estadistiques.finalitza();
+        for (MinimaxIteratiu ajudant : ajudants) {
+            ajudant.timeout();
+        }
+
+        for (int i = 0; i < ajudants.length; i++) {
+            MinimaxIteratiu ajudant = ajudants[i];
+            try {
+                Point resAjudant = resultats.get(i).get();
+                if (ajudant.profActual > profActual && resAjudant != null) {
+                    profActual = ajudant.profActual;
+                    res = resAjudant;
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(MinimaxIteratiu.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            exploredNodes += ajudant.exploredNodes;
+            ajudant.temps.finalitza();
+        }
+        temps.finalitza();
+        return res;
+    }
+
+    /**
+     * Comença a ponderar la posició que resulta de jugar el moviment triat i
+     * la resposta que la taula de transposicions dona com a millor per a
+     * l'oponent. No fa res si la ponderació no està activada, si la partida
+     * s'acaba o si la taula no té cap resposta per a la posició.
+     *
+     * @param status L'estat en què s'ha triat el moviment.
+     * @param moviment El moviment triat.
+     */
+    private void iniciaPonderacio(HexGameStatus status, Point moviment) {
+        if (ponderador == null || moviment == null) return;
+        HexGameStatus prevista = new HexGameStatus(status);
+        prevista.placeStone(moviment);
+        if (prevista.isGameOver()) return;
+
+        TaulerCerca tauler = new TaulerCerca(prevista, zobrist);
+        long entrada = taula.consulta(hash(tauler));
+        if (entrada == 0) return;
+        int resposta = movimentTaula(tauler, entrada);
+        if (resposta < 0 || tauler.getPos(resposta) != 0) return;
+        prevista.placeStone(tauler.toPoint(resposta));
+        if (prevista.isGameOver()) return;
+
+        tauler.play(resposta);
+        hashPonderat = tauler.getHash();
+        ponderacions++;
+        ponderador.copiaPodes(this);
+        // El temps de l'oponent és el mateix que el nostre: la ponderació
+        // no ha de continuar quan ja no pot ser útil
+        ponderador.temps.inicia(tempsPerMoviment);
+        ponderador.temps.setLimitNodes(temps.getLimitNodes());
+        ponderacio = executorPonderacio.submit(() -> ponderador.cercaIterativa(prevista, 1, 0));
+    }
+
+    /**
+     * Atura la ponderació en curs i espera que acabi.
+     *
+     * @param status L'estat real del joc o null si només cal aturar-la.
+     * @return El moviment de la ponderació si l'estat és el que s'havia
+     * previst i la ponderació ha arribat a la profunditat màxima o ha trobat
+     * una victòria, o null altrament.
+     */
+    private Point aturaPonderacio(HexGameStatus status) {
+        if (ponderacio == null) return null;
+        ponderador.timeout();
+        Point res = null;
+        try {
+            res = ponderacio.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            Logger.getLogger(MinimaxIteratiu.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        ponderacio = null;
+        ponderador.temps.finalitza();
+        ponderador.estadistiques.finalitza();
+        if (status == null || zobrist == null || zobrist.getSize() != status.getSize()
+                || new TaulerCerca(status, zobrist).getHash() != hashPonderat) {
+            return null;
+        }
+        encertsPonderacio++;
+        if (res == null || (ponderador.profActual < maxDepth && !ponderador.victoriaArrel)) {
+            return null;
+        }
+        exploredNodes = ponderador.exploredNodes;
+        estadistiques = ponderador.estadistiques;
+        profActual = ponderador.profActual;
+        puntuacioArrel = ponderador.puntuacioArrel;
+        return res;
+    }
+
+    /**
+     * Atura la ponderació en curs, per exemple quan s'acaba la partida.
+     */
+    public void aturaPonderacio() {
+        aturaPonderacio(null);
+    }
+
+    /**
+     * Atura la ponderació i els fils ajudants. Després no es pot tornar a
+     * cercar. Sense temps per moviment ni límit de nodes, la ponderació
+     * posterior a l'últim moviment de la partida només s'atura així.
+     */
+    @Override
+    public void close() {
+        setPonderacio(false);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return El nombre de vegades que l'oponent ha jugat la resposta
+     * prevista per la ponderació.
+     */
+    public int getEncertsPonderacio() {
+        return encertsPonderacio;
+    }
+
+    /**
+     * @return El nombre de ponderacions que s'han començat.
+     */
+    public int getPonderacions() {
+        return ponderacions;
+    }
+
+    /**
+     * Cerca iterativa des de l'arrel fins a la profunditat màxima o fins que
+     * salta el timeout. Abans de cada iteració el gestor del temps estima si
+     * hi ha temps per acabar-ne com a mínim el primer moviment. Si una
+     * iteració s'atura a mitges, el seu millor moviment s'aprofita quan ja
+     * s'ha cercat del tot i supera la cota inferior de la finestra.
+     *
+     * @param status L'estat actual del joc de Hex.
+     * @param profunditatInicial Profunditat de la primera iteració.
+     * @param variant 0 per a la cerca principal. Els ajudants hi posen el seu
+     * número per començar per un moviment diferent de l'arrel.
+     * @return El punt corresponent al millor moviment de l'última iteració
+     * completa.
+     */
+    private Point cercaIterativa(HexGameStatus status, int profunditatInicial, int variant) {
         exploredNodes = 0;
+        profActual = 0;
+        puntuacioArrel = 0;
         PlayerType player = status.getCurrentPlayer();
-        List<MoveNode> moveList = status.getMoves();
-
-        moveList.sort((a, b) -> {
-            HexGameStatus tauler1 = new HexGameStatus(status);
-            tauler1.placeStone(a.getPoint());
-            HexGameStatus tauler2 = new HexGameStatus(status);
-            tauler2.placeStone(b.getPoint());
-            PlayerType currentplayer = status.getCurrentPlayer();
-            int valor1 = heuristica.eval(tauler1, currentplayer);
-            int valor2 = heuristica.eval(tauler2, currentplayer);
-            return Integer.compare(valor1, valor2);
-        });
-        
-        Point moviment = moveList.get(0).getPoint();
-        Point res = moviment;
-        for (int profunditat = 1; profunditat <= maxDepth && !timeout; profunditat++) {
-            int bestScore = Integer.MIN_VALUE;
-            for (int i = 0; i < 30 && i < moveList.size(); ++i) {
-                if (timeout) break;
-                MoveNode mn = moveList.get(i);
-                HexGameStatus newStatus = new HexGameStatus(status);
-                newStatus.placeStone(mn.getPoint());
-
-                if (newStatus.isGameOver()) return mn.getPoint();
-
-                int score = getMillorResultat(newStatus, profunditat - 1, bestScore, Integer.MAX_VALUE, false, player);
-                if (score > bestScore) {
-                    bestScore = score;
-                    moviment = mn.getPoint();
+        TaulerCerca tauler = preparaArrel(status, player);
+        long hash = hash(tauler);
+
+        int demostrada = jugadaDemostrada(tauler);
+        if (demostrada >= 0) {
+            // Victòria demostrada: es juga la línia de la prova sense cercar
+            victoriaArrel = true;
+            puntuacioArrel = Integer.MAX_VALUE;
+            return tauler.toPoint(demostrada);
+        }
+
+        int n = ordenacio.genera(tauler, 0, -1);
+        ordenacio.ordena(0, n);
+        int[] moviments = ordenacio.getMoviments(0);
+        if (variant > 0) {
+            ordenacio.posaPrimer(0, n, moviments[variant % Math.min(n, 4)]);
+        }
+
+        int[] punts = new int[n];
+        int res = moviments[0];
+        // L'heurística oscil·la molt entre profunditats parells i senars, per
+        // això la finestra es centra en la iteració de la mateixa paritat.
+        int[] puntuacions = new int[maxDepth + 1];
+        for (int profunditat = profunditatInicial; profunditat <= maxDepth; profunditat++) {
+            if (profunditat > profunditatInicial && !temps.potIniciarIteracio()) break;
+            temps.iniciIteracio();
+            long entrada = taula.consulta(hash);
+            if (entrada != 0 && (variant == 0 || profunditat > profunditatInicial)) {
+                ordenacio.posaPrimer(0, n, movimentTaula(tauler, entrada));
+            }
+
+            // Finestra d'aspiració centrada en la puntuació de dues iteracions enrere
+            int delta = FINESTRA_ASPIRACIO;
+            int puntuacioAnterior = profunditat >= 2 ? puntuacions[profunditat - 2] : 0;
+            boolean aspiracio = profunditat >= profunditatInicial + 2 && puntuacioAnterior > -GUANY && puntuacioAnterior < GUANY;
+            int alfa = aspiracio ? puntuacioAnterior - delta : Integer.MIN_VALUE;
+            int beta = aspiracio ? puntuacioAnterior + delta : Integer.MAX_VALUE;
+            int bestScore;
+            while (true) {
+                bestScore = cercaArrel(tauler, profunditat, alfa, beta, player, moviments, n, punts);
+                if (temps.isAturat() || bestScore == Integer.MAX_VALUE) break;
+                // Quan la finestra ja arriba a les puntuacions de victòria
+                // s'obre del tot: una derrota demostrada val MIN_VALUE
+                if (bestScore <= alfa && alfa != Integer.MIN_VALUE) {
+                    delta = (int) Math.min(4L * delta, GUANY);
+                    alfa = delta == GUANY ? Integer.MIN_VALUE : puntuacioAnterior - delta;
+                } else if (bestScore >= beta && beta != Integer.MAX_VALUE) {
+                    delta = (int) Math.min(4L * delta, GUANY);
+                    beta = delta == GUANY ? Integer.MAX_VALUE : puntuacioAnterior + delta;
+                } else {
+                    break;
                 }
             }
 
-            if (!timeout) {
-                profActual = profunditat;
-                res = moviment;
+            if (victoriaArrel) {
+                profActual = Math.max(profActual, profunditat);
+                puntuacioArrel = Integer.MAX_VALUE;
+                return tauler.toPoint(millorArrel);
+            }
+
+            if (temps.isAturat()) {
+                if (completatsArrel > 0 && bestScore > alfa) {
+                    res = millorArrel;
+                }
+                break;
             }
+
+            temps.fiIteracio();
+            estadistiques.fiIteracio(profunditat);
+            profActual = profunditat;
+            res = millorArrel;
+            puntuacions[profunditat] = bestScore;
+            puntuacioArrel = bestScore;
+            guarda(tauler, hash, profunditat, TaulaTransposicio.EXACTE, bestScore, res);
+            reordenaArrel(moviments, punts, feix.amplada(0, n, tauler));
         }
 
-        timeout = false;
-        return res;
+        return tauler.toPoint(res);
+    }
+
+    /**
+     * Ordena els moviments cercats a l'arrel segons la puntuació que han
+     * obtingut a l'última iteració. L'ordenació és estable perquè els
+     * moviments amb la mateixa cota conservin l'ordre anterior.
+     *
+     * @param moviments Els moviments de l'arrel.
+     * @param punts La puntuació de cada moviment.
+     * @param n Nombre de moviments cercats.
+     */
+    private static void reordenaArrel(int[] moviments, int[] punts, int n) {
+        for (int i = 1; i < n; ++i) {
+            int moviment = moviments[i];
+            int punt = punts[i];
+            int j = i - 1;
+            while (j >= 0 && punts[j] < punt) {
+                moviments[j + 1] = moviments[j];
+                punts[j + 1] = punts[j];
+                j--;
+            }
+            moviments[j + 1] = moviment;
+            punts[j + 1] = punt;
+        }
     }
 
     /**
@@ -82,7 +469,10 @@ public class MinimaxIteratiu extends MinimaxBase {
      */
     @Override
     public void timeout() {
-        this.timeout = true;
+        temps.atura();
+        for (MinimaxIteratiu ajudant : ajudants) {
+            ajudant.timeout();
+        }
     }
 
     /**
@@ -104,4 +494,20 @@ public class MinimaxIteratiu extends MinimaxBase {
     public int getProfunditatMaxima() {
         return profActual;
     }
+
+    /**
+     * @return La puntuació de l'última iteració completa de la cerca
+     * principal, des del punt de vista del jugador que mou.
+     */
+    public int getPuntuacio() {
+        return puntuacioArrel;
+    }
+
+    /**
+     * @return {@link SearchType#MINIMAX_IDS}.
+     */
+    @Override
+    public SearchType getTipusCerca() {
+        return SearchType.MINIMAX_IDS;
+    }
 }
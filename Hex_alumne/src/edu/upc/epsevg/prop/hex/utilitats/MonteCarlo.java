@@ -0,0 +1,430 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.SearchType;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cerca d'arbre de Monte Carlo (UCT) per triar la millor jugada.
+ *
+ * Els nodes de l'arbre no són objectes: es guarden en vectors d'enters
+ * (arena) i els fills d'un node formen una llista enllaçada de germans.
+ * Cada visita a un node que encara té moviments sense provar li afegeix un
+ * sol fill, amb un moviment a l'atzar d'entre els que falten, de manera que
+ * l'arbre només ocupa els nodes que s'han visitat. Si l'arena s'omple,
+ * l'arbre deixa de créixer fins al moviment següent i les simulacions
+ * comencen a les fulles on s'arriba; {@link #isArbrePle()} ho indica i la
+ * primera vegada s'avisa al registre. Les simulacions omplen el tauler a
+ * l'atzar des del node fulla fins que algun jugador connecta les seves
+ * vores.
+ *
+ * Amb més d'un fil cada fil construeix el seu propi arbre des de l'arrel
+ * (paral·lelisme d'arrel) i al final se sumen les visites de cada moviment.
+ * La cerca continua fins que s'esgota el temps o arriba el timeout, i
+ * aleshores es tria el moviment més visitat.
+ */
+public class MonteCarlo implements Cercador {
+
+    /** Constant d'exploració de la fórmula UCT. */
+    private static final double EXPLORACIO = 0.7;
+    /** Memòria que ocupa cada node de l'arena. */
+    private static final int BYTES_PER_NODE = 6 * Integer.BYTES;
+    private static final long LLAVOR = 0x5EED_4E58L;
+
+    private final Arbre[] arbres;
+    private final ExecutorService executor;
+    private long tempsPerMoviment;
+    private Zobrist zobrist;
+
+    private long simulacions;
+    private long nodesArbre;
+    private int profunditatMaxima;
+    private double simulacionsPerSegon;
+    private boolean arbrePle;
+    private boolean avisatPle;
+
+    /**
+     * Constructor de la classe MonteCarlo amb un sol fil.
+     *
+     * @param megabytes Memòria màxima de l'arbre.
+     */
+    public MonteCarlo(int megabytes) {
+        this(megabytes, 1);
+    }
+
+    /**
+     * Constructor de la classe MonteCarlo amb paral·lelisme d'arrel.
+     *
+     * @param megabytes Memòria màxima de l'arbre, repartida entre els fils.
+     * @param fils Nombre de fils de cerca, comptant el fil principal.
+     */
+    public MonteCarlo(int megabytes, int fils) {
+        fils = Math.max(1, fils);
+        int capacitat = (int) Math.min(Integer.MAX_VALUE - 8, (long) megabytes * 1024 * 1024 / BYTES_PER_NODE / fils);
+        arbres = new Arbre[fils];
+        for (int i = 0; i < fils; i++) {
+            arbres[i] = new Arbre(Math.max(capacitat, 1), LLAVOR + i);
+        }
+        executor = fils == 1 ? null : Executors.newFixedThreadPool(fils - 1, r -> {
+            Thread t = new Thread(r, "MonteCarlo-ajudant");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Fa simulacions des de l'estat donat fins que s'esgota el temps o arriba
+     * el timeout, i retorna el moviment de l'arrel amb més visites.
+     *
+     * @param status L'estat actual del joc de Hex.
+     * @return El punt del tauler corresponent a la jugada més visitada.
+     */
+    @Override
+    public Point millorMoviment(HexGameStatus status) {
+        if (zobrist == null || zobrist.getSize() != status.getSize()) {
+            zobrist = new Zobrist(status.getSize());
+        }
+        long inici = System.nanoTime();
+        arbres[0].temps.inicia(tempsPerMoviment);
+        List<Future<?>> resultats = new ArrayList<>();
+        for (int i = 1; i < arbres.length; i++) {
+            Arbre arbre = arbres[i];
+            // Els ajudants no tenen límit propi: s'aturen quan acaba el fil principal
+            arbre.temps.inicia(0);
+            resultats.add(executor.submit(() -> arbre.cerca(new TaulerCerca(status, zobrist))));
+        }
+
+        TaulerCerca tauler = new TaulerCerca(status, zobrist);
+        arbres[0].cerca(tauler);
+        for (int i = 1; i < arbres.length; i++) {
+            arbres[i].temps.atura();
+        }
+        for (Future<?> resultat : resultats) {
+            try {
+                resultat.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(MonteCarlo.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        long[] visites = new long[tauler.getNumCaselles()];
+        simulacions = 0;
+        nodesArbre = 0;
+        profunditatMaxima = 0;
+        arbrePle = false;
+        for (Arbre arbre : arbres) {
+            arbre.sumaVisites(visites);
+            simulacions += arbre.simulacions;
+            nodesArbre += arbre.numNodes;
+            profunditatMaxima = Math.max(profunditatMaxima, arbre.profunditatMaxima);
+            arbrePle |= arbre.ple;
+            arbre.temps.finalitza();
+        }
+        simulacionsPerSegon = simulacions * 1e9 / Math.max(1, System.nanoTime() - inici);
+        if (arbrePle && !avisatPle) {
+            avisatPle = true;
+            Logger.getLogger(MonteCarlo.class.getName()).log(Level.WARNING,
+                    "L''arbre de Monte Carlo s''ha omplert ({0} nodes): cal més memòria perquè continuï creixent",
+                    nodesArbre);
+        }
+
+        int millor = -1;
+        for (int c = 0; c < visites.length; c++) {
+            if (tauler.getPos(c) == 0 && (millor < 0 || visites[c] > visites[millor])) {
+                millor = c;
+            }
+        }
+        return tauler.toPoint(millor);
+    }
+
+    /**
+     * Atura la cerca de tots els fils.
+     */
+    @Override
+    public void timeout() {
+        for (Arbre arbre : arbres) {
+            arbre.temps.atura();
+        }
+    }
+
+    /**
+     * Atura els fils ajudants. Després no es pot tornar a cercar.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param milisegons Temps màxim per moviment o 0 si només s'atura amb
+     * {@link #timeout()}.
+     */
+    @Override
+    public void setTempsPerMoviment(long milisegons) {
+        this.tempsPerMoviment = Math.max(0, milisegons);
+    }
+
+    /**
+     * Obté la mida dels arbres construïts a l'última cerca.
+     *
+     * @return El nombre total de nodes dels arbres.
+     */
+    @Override
+    public long getNodesExplorats() {
+        return nodesArbre;
+    }
+
+    /**
+     * @return La profunditat màxima que ha assolit l'arbre.
+     */
+    @Override
+    public int getProfunditatMaxima() {
+        return profunditatMaxima;
+    }
+
+    /**
+     * @return {@link SearchType#MONTECARLO}.
+     */
+    @Override
+    public SearchType getTipusCerca() {
+        return SearchType.MONTECARLO;
+    }
+
+    /**
+     * @return El nombre de simulacions de l'última cerca, sumant tots els fils.
+     */
+    public long getSimulacions() {
+        return simulacions;
+    }
+
+    /**
+     * @return Les simulacions per segon de l'última cerca.
+     */
+    public double getSimulacionsPerSegon() {
+        return simulacionsPerSegon;
+    }
+
+    /**
+     * @return Si algun arbre s'ha omplert durant l'última cerca i ha deixat
+     * de créixer.
+     */
+    public boolean isArbrePle() {
+        return arbrePle;
+    }
+
+    /**
+     * Arbre de cerca d'un fil. Cada node té el moviment que hi porta, el
+     * primer fill i el germà següent (0 si no n'hi ha, perquè l'arrel no és
+     * fill de ningú), el nombre de fills, les visites i les victòries del
+     * jugador que ha fet el moviment.
+     */
+    private static class Arbre {
+
+        private final GestorTemps temps = new GestorTemps();
+        private final SplittableRandom random;
+        private final int capacitat;
+        private final int[] moviment;
+        private final int[] primerFill;
+        private final int[] germa;
+        private final int[] numFills;
+        private final int[] visites;
+        private final int[] victories;
+        private int numNodes;
+        private boolean ple;
+
+        private int[] cami = new int[0];
+        private int[] buides = new int[0];
+        // Marca les caselles que ja són fills del node que s'expandeix
+        private int[] marques = new int[0];
+        private int marca;
+        private long simulacions;
+        private int profunditatMaxima;
+
+        Arbre(int capacitat, long llavor) {
+            this.capacitat = capacitat;
+            this.random = new SplittableRandom(llavor);
+            moviment = new int[capacitat];
+            primerFill = new int[capacitat];
+            germa = new int[capacitat];
+            numFills = new int[capacitat];
+            visites = new int[capacitat];
+            victories = new int[capacitat];
+        }
+
+        /**
+         * Fa iteracions de l'UCT fins que el gestor del temps atura la cerca.
+         *
+         * @param tauler El tauler de l'arrel. Es retorna sense modificar.
+         */
+        void cerca(TaulerCerca tauler) {
+            if (cami.length < tauler.getNumCaselles() + 1) {
+                cami = new int[tauler.getNumCaselles() + 1];
+                buides = new int[tauler.getNumCaselles()];
+                marques = new int[tauler.getNumCaselles()];
+            }
+            numNodes = 0;
+            ple = false;
+            nouNode(-1);
+            simulacions = 0;
+            profunditatMaxima = 0;
+            int colorArrel = tauler.getCurrentPlayerColor();
+            while (!temps.esgotat()) {
+                iteracio(tauler, colorArrel);
+                simulacions++;
+            }
+        }
+
+        /**
+         * Una iteració de l'UCT: selecció, expansió, simulació i
+         * retropropagació.
+         */
+        private void iteracio(TaulerCerca tauler, int colorArrel) {
+            int node = 0;
+            int llarg = 1;
+            cami[0] = 0;
+            int guanyador = 0;
+            while (guanyador == 0) {
+                // Un node nou primer es simula i s'expandeix a la visita següent
+                if (node != 0 && visites[node] == 0) break;
+                if (numFills[node] < tauler.getNumCaselles() - tauler.getNumPedres()) {
+                    int fill = expandeix(node, tauler);
+                    if (fill < 0) break;
+                    node = fill;
+                } else {
+                    node = selecciona(node);
+                }
+                tauler.play(moviment[node]);
+                cami[llarg++] = node;
+                guanyador = tauler.getGuanyador();
+            }
+            profunditatMaxima = Math.max(profunditatMaxima, llarg - 1);
+
+            if (guanyador == 0) {
+                guanyador = simula(tauler);
+            }
+
+            // El node a profunditat k l'ha triat el jugador de l'arrel si k és senar
+            for (int k = llarg - 1; k >= 0; k--) {
+                int n = cami[k];
+                visites[n]++;
+                int color = (k & 1) == 1 ? colorArrel : -colorArrel;
+                if (guanyador == color) victories[n]++;
+            }
+            for (int k = 1; k < llarg; k++) {
+                tauler.undo();
+            }
+        }
+
+        /**
+         * Tria el fill amb més valor UCT d'un node que ja té un fill per a
+         * cada moviment.
+         */
+        private int selecciona(int node) {
+            double logN = Math.log(visites[node]);
+            int millor = primerFill[node];
+            double millorValor = Double.NEGATIVE_INFINITY;
+            for (int f = primerFill[node]; f != 0; f = germa[f]) {
+                int v = visites[f];
+                if (v == 0) return f;
+                double valor = (double) victories[f] / v + EXPLORACIO * Math.sqrt(logN / v);
+                if (valor > millorValor) {
+                    millorValor = valor;
+                    millor = f;
+                }
+            }
+            return millor;
+        }
+
+        /**
+         * Afegeix a un node un fill amb un moviment a l'atzar d'entre els
+         * que encara no en tenen.
+         *
+         * @return El fill nou, o -1 si l'arena és plena.
+         */
+        private int expandeix(int node, TaulerCerca tauler) {
+            if (numNodes == capacitat) {
+                ple = true;
+                return -1;
+            }
+            if (++marca == 0) {
+                Arrays.fill(marques, 0);
+                marca = 1;
+            }
+            for (int f = primerFill[node]; f != 0; f = germa[f]) {
+                marques[moviment[f]] = marca;
+            }
+            int n = tauler.getMoviments(buides);
+            int tria = random.nextInt(n - numFills[node]);
+            int mov = -1;
+            for (int i = 0; i < n; i++) {
+                if (marques[buides[i]] != marca && tria-- == 0) {
+                    mov = buides[i];
+                    break;
+                }
+            }
+            int fill = numNodes;
+            nouNode(mov);
+            germa[fill] = primerFill[node];
+            primerFill[node] = fill;
+            numFills[node]++;
+            return fill;
+        }
+
+        private void nouNode(int mov) {
+            moviment[numNodes] = mov;
+            primerFill[numNodes] = 0;
+            germa[numNodes] = 0;
+            numFills[numNodes] = 0;
+            visites[numNodes] = 0;
+            victories[numNodes] = 0;
+            numNodes++;
+        }
+
+        /**
+         * Omple el tauler amb jugades aleatòries fins que algun jugador
+         * guanya i les desfà.
+         *
+         * @return El color del guanyador.
+         */
+        private int simula(TaulerCerca tauler) {
+            int n = tauler.getMoviments(buides);
+            int jugades = 0;
+            while (!tauler.isGameOver() && jugades < n) {
+                int j = jugades + random.nextInt(n - jugades);
+                int t = buides[j];
+                buides[j] = buides[jugades];
+                buides[jugades] = t;
+                tauler.play(t);
+                jugades++;
+            }
+            int guanyador = tauler.getGuanyador();
+            for (int i = 0; i < jugades; i++) {
+                tauler.undo();
+            }
+            return guanyador;
+        }
+
+        /**
+         * Suma les visites dels fills de l'arrel a un vector indexat per
+         * casella.
+         */
+        void sumaVisites(long[] total) {
+            for (int f = primerFill[0]; f != 0; f = germa[f]) {
+                total[moviment[f]] += visites[f];
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.PlayerMove;
+import edu.upc.epsevg.prop.hex.SearchType;
+
+import java.awt.Point;
+
+/**
+ * Moviment retornat per un jugador amb les estadístiques de la cerca que
+ * l'ha triat. El tauler i {@link edu.upc.epsevg.prop.hex.HeadlessGame} les
+ * mostren si el moviment és d'aquest tipus.
+ */
+public class MovimentCerca extends PlayerMove {
+
+    private final EstadistiquesCerca estadistiques;
+
+    /**
+     * @param punt El moviment.
+     * @param nodes Els nodes explorats.
+     * @param profunditat La profunditat màxima.
+     * @param tipus El tipus de cerca.
+     * @param estadistiques Les estadístiques de la cerca.
+     */
+    public MovimentCerca(Point punt, long nodes, int profunditat, SearchType tipus, EstadistiquesCerca estadistiques) {
+        super(punt, nodes, profunditat, tipus);
+        this.estadistiques = estadistiques;
+    }
+
+    /**
+     * @return Les estadístiques de la cerca.
+     */
+    public EstadistiquesCerca getEstadistiques() {
+        return estadistiques;
+    }
+}
@@ -0,0 +1,290 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+import java.util.Arrays;
+
+/**
+ * Ordenació de moviments per a la cerca alfa-beta. Per a cada node es calcula
+ * una sola vegada la puntuació de cada fill i després els moviments es
+ * trien amb una ordenació per selecció parcial: només s'ordenen les
+ * posicions que el bucle de cerca arriba a visitar.
+ *
+ * L'ordre és: primer el moviment de la taula de transposicions, després el
+ * moviment assassí (killer) del nivell i finalment la resta segons
+ * l'heurística del jugador que mou, desempatant amb la taula d'historial.
+ * Abans de puntuar-los es treuen les caselles inferiors
+ * ({@link CasellesInferiors}), que no cal cercar, i, si la posició és igual
+ * a la seva girada 180 graus, un moviment de cada parella de moviments
+ * simètrics, que porten a posicions equivalents.
+ */
+public class OrdenacioMoviments {
+
+    private static final long CLAU_TAULA = Long.MAX_VALUE;
+    private static final long CLAU_KILLER = Long.MAX_VALUE - 1;
+    private static final int BITS_HISTORIAL = 20;
+    private static final int MAX_HISTORIAL = (1 << BITS_HISTORIAL) - 1;
+
+    private final Avaluador avaluador;
+    private final GestorTemps temps;
+    private int[][] moviments = new int[0][];
+    private long[][] claus = new long[0][];
+    private int[] killers = new int[0];
+    private int[] millorValor = new int[0];
+    private int[] pitjorValor = new int[0];
+    private int[][] historial = new int[2][0];
+    private final CasellesInferiors inferiors = new CasellesInferiors();
+    private boolean[] presents = new boolean[0];
+    private long simetrics;
+    private boolean podaInferiors = true;
+
+    /**
+     * Constructor de la classe OrdenacioMoviments.
+     *
+     * @param avaluador La funció d'avaluació que puntua els fills.
+     * @param temps El gestor del temps de la cerca. Cada avaluació compta
+     * com un node, perquè un node amb molts fills no endarrereixi l'aturada.
+     */
+    public OrdenacioMoviments(Avaluador avaluador, GestorTemps temps) {
+        this.avaluador = avaluador;
+        this.temps = temps;
+    }
+
+    /**
+     * Activa o desactiva la poda de caselles inferiors.
+     *
+     * @param activa Si s'han de podar.
+     */
+    public void setPodaInferiors(boolean activa) {
+        this.podaInferiors = activa;
+    }
+
+    /**
+     * @return L'anàlisi de caselles inferiors, amb les seves estadístiques.
+     */
+    public CasellesInferiors getInferiors() {
+        return inferiors;
+    }
+
+    /**
+     * Prepara els vectors per a una cerca nova. L'historial de la cerca
+     * anterior es conserva però es divideix per dos perquè pesin més les
+     * dades recents.
+     *
+     * @param nivells Nombre màxim de nivells (jugades des de l'arrel) + 1.
+     * @param caselles Nombre de caselles del tauler.
+     */
+    public void prepara(int nivells, int caselles) {
+        if (moviments.length < nivells || (nivells > 0 && moviments[0].length < caselles)) {
+            moviments = new int[nivells][caselles];
+            claus = new long[nivells][caselles];
+            killers = new int[nivells];
+            millorValor = new int[nivells];
+            pitjorValor = new int[nivells];
+        }
+        if (historial[0].length != caselles) {
+            historial = new int[2][caselles];
+            presents = new boolean[caselles];
+        }
+        Arrays.fill(killers, -1);
+        for (int[] h : historial) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Genera els moviments d'un node i en calcula la clau d'ordenació.
+     *
+     * @param tauler El tauler de cerca. Es retorna sense modificar.
+     * @param nivell Jugades fetes des de l'arrel.
+     * @param movimentTaula Moviment de la taula de transposicions o -1.
+     * @return El nombre de moviments generats. Si la cerca s'atura a mitges,
+     * els moviments que falten de puntuar conserven una clau qualsevol.
+     */
+    public int genera(TaulerCerca tauler, int nivell, int movimentTaula) {
+        int[] m = moviments[nivell];
+        long[] c = claus[nivell];
+        int n = tauler.getMoviments(m);
+        if (podaInferiors) {
+            n = inferiors.filtra(tauler, m, n);
+        }
+        if (tauler.isSimetric()) {
+            n = treuSimetrics(tauler, m, n);
+        }
+        PlayerType currentplayer = tauler.getCurrentPlayer();
+        int[] h = historial[PlayerType.to_01(currentplayer)];
+        int killer = killers[nivell];
+        int millor = Integer.MIN_VALUE;
+        int pitjor = Integer.MAX_VALUE;
+        for (int i = 0; i < n; ++i) {
+            int moviment = m[i];
+            if (moviment == movimentTaula) {
+                c[i] = CLAU_TAULA;
+            } else if (moviment == killer) {
+                c[i] = CLAU_KILLER;
+            } else if (temps.esgotat()) {
+                break;
+            } else {
+                tauler.play(moviment);
+                int valor = avaluador.eval(tauler, currentplayer);
+                tauler.undo();
+                c[i] = ((long) valor << BITS_HISTORIAL) | Math.min(h[moviment], MAX_HISTORIAL);
+                millor = Math.max(millor, valor);
+                pitjor = Math.min(pitjor, valor);
+            }
+        }
+        millorValor[nivell] = millor;
+        pitjorValor[nivell] = pitjor;
+        return n;
+    }
+
+    /**
+     * Treu de cada parella de moviments simètrics el de més índex, si hi
+     * són tots dos.
+     *
+     * @return El nombre de moviments que queden.
+     */
+    private int treuSimetrics(TaulerCerca tauler, int[] m, int n) {
+        for (int i = 0; i < n; ++i) {
+            presents[m[i]] = true;
+        }
+        int j = 0;
+        for (int i = 0; i < n; ++i) {
+            int moviment = m[i];
+            int girat = tauler.gira(moviment);
+            if (girat < moviment && presents[girat]) continue;
+            m[j++] = moviment;
+        }
+        // Els moviments trets són els girats dels que queden
+        for (int i = 0; i < j; ++i) {
+            presents[m[i]] = false;
+            presents[tauler.gira(m[i])] = false;
+        }
+        simetrics += n - j;
+        return j;
+    }
+
+    /**
+     * @return El nombre de moviments descartats per ser simètrics d'un altre.
+     */
+    public long getSimetrics() {
+        return simetrics;
+    }
+
+    /**
+     * Porta a la posició {@code i} el millor moviment encara no visitat
+     * (un pas de l'ordenació per selecció).
+     *
+     * @param nivell Jugades fetes des de l'arrel.
+     * @param i Posició que es vol omplir.
+     * @param n Nombre de moviments del node.
+     * @return El moviment que queda a la posició {@code i}.
+     */
+    public int seguent(int nivell, int i, int n) {
+        int[] m = moviments[nivell];
+        long[] c = claus[nivell];
+        int millor = i;
+        for (int j = i + 1; j < n; ++j) {
+            if (c[j] > c[millor]) millor = j;
+        }
+        if (millor != i) {
+            int t = m[i];
+            m[i] = m[millor];
+            m[millor] = t;
+            long tc = c[i];
+            c[i] = c[millor];
+            c[millor] = tc;
+        }
+        return m[i];
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel.
+     * @param i Posició ja ordenada amb {@link #seguent(int, int, int)}.
+     * @return La puntuació de l'heurística del moviment, o
+     * {@link Integer#MAX_VALUE} si és el de la taula o l'assassí, que no es
+     * puntuen.
+     */
+    public int getValor(int nivell, int i) {
+        long clau = claus[nivell][i];
+        return clau >= CLAU_KILLER ? Integer.MAX_VALUE : (int) (clau >> BITS_HISTORIAL);
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel.
+     * @return La millor puntuació de l'heurística entre els moviments
+     * generats a l'última crida a {@link #genera}.
+     */
+    public int getMillorValor(int nivell) {
+        return millorValor[nivell];
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel.
+     * @return La pitjor puntuació de l'heurística entre els moviments
+     * generats a l'última crida a {@link #genera}.
+     */
+    public int getPitjorValor(int nivell) {
+        return pitjorValor[nivell];
+    }
+
+    /**
+     * Ordena completament els moviments d'un nivell.
+     *
+     * @param nivell Jugades fetes des de l'arrel.
+     * @param n Nombre de moviments del node.
+     */
+    public void ordena(int nivell, int n) {
+        for (int i = 0; i < n; ++i) {
+            seguent(nivell, i, n);
+        }
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel.
+     * @return El vector de moviments del nivell.
+     */
+    public int[] getMoviments(int nivell) {
+        return moviments[nivell];
+    }
+
+    /**
+     * Mou un moviment al principi del nivell mantenint l'ordre de la resta.
+     *
+     * @param nivell Jugades fetes des de l'arrel.
+     * @param n Nombre de moviments del node.
+     * @param moviment El moviment o -1 si no n'hi ha.
+     */
+    public void posaPrimer(int nivell, int n, int moviment) {
+        if (moviment < 0) return;
+        int[] m = moviments[nivell];
+        long[] c = claus[nivell];
+        for (int i = 0; i < n; ++i) {
+            if (m[i] == moviment) {
+                long clau = c[i];
+                System.arraycopy(m, 0, m, 1, i);
+                System.arraycopy(c, 0, c, 1, i);
+                m[0] = moviment;
+                c[0] = clau;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registra un moviment que ha provocat un tall beta: passa a ser el
+     * moviment assassí del nivell i suma a l'historial del jugador.
+     *
+     * @param nivell Jugades fetes des de l'arrel.
+     * @param moviment El moviment que ha provocat el tall.
+     * @param profunditat La profunditat restant del node.
+     * @param player El jugador que ha fet el moviment.
+     */
+    public void tall(int nivell, int moviment, int profunditat, PlayerType player) {
+        killers[nivell] = moviment;
+        int[] h = historial[PlayerType.to_01(player)];
+        h[moviment] = Math.min(h[moviment] + profunditat * profunditat, MAX_HISTORIAL);
+    }
+}
@@ -0,0 +1,305 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Motor de patrons de {@link Heuristica}: respon totes les consultes de
+ * patrons d'una pedra (pont, plantilles de vora i d'interior, amenaça doble,
+ * escala i veïns buits no alineats) amb una sola consulta a una taula.
+ *
+ * Tots aquests patrons depenen de 13 caselles de l'entorn de radi 2 de la
+ * pedra: els sis veïns, les sis caselles de pont i la casella {@code (0, -2)}
+ * de la plantilla crescent. Des del punt de vista d'un color, cada una és
+ * buida, del color o bloquejada (de l'altre color o fora del tauler), i
+ * l'entorn es codifica en base 3 com un enter de 0 a 3^13 - 1, amb els veïns
+ * a les xifres més baixes. Quan una casella canvia, el codi de les 13
+ * caselles que la tenen a l'entorn canvia en una xifra, i es pot actualitzar
+ * amb una suma ({@link #getAfectada(int, int)} i {@link #getPes(int, int)}).
+ *
+ * La taula de trets s'omple la primera vegada que es consulta cada codi,
+ * amb les mateixes plantilles de {@link Heuristica}, de manera que dona
+ * exactament els mateixos resultats que els mètodes {@code isBridge},
+ * {@code isLadder}, etc. Les partides només fan servir una part petita dels
+ * 3^13 codis, i omplir-la sencera d'entrada costaria mig segon. Els veïns no
+ * alineats només depenen dels sis veïns i es guarden en una taula a part
+ * indexada per les xifres baixes del codi.
+ *
+ * Les caselles de l'entorn de cada casella depenen de la mida del tauler i
+ * es precalculen una vegada per mida ({@link #per(int)}).
+ */
+public class PatronsHeuristica {
+
+    /** La pedra forma un pont. */
+    public static final int PONT = 1;
+    /** La pedra forma una plantilla de vora. */
+    public static final int VORA = 2;
+    /** La pedra forma una plantilla d'interior. */
+    public static final int INTERIOR = 4;
+    /** La pedra té almenys dos veïns buits. */
+    public static final int DOBLE = 8;
+    /** La pedra forma una escala. */
+    public static final int ESCALA = 16;
+
+    private static final int BUIDA = 0;
+    private static final int PROPIA = 1;
+    private static final int BLOQUEJADA = 2;
+
+    /** Nombre de caselles de l'entorn que formen el codi. */
+    private static final int MIDA_ENTORN = 13;
+    private static final int CODIS_VEINS = 729;
+
+    /**
+     * Desplaçament de cada xifra del codi: els veïns en l'ordre de
+     * {@link Heuristica#DIRECCIONS}, les caselles de pont entre els veïns
+     * {@code k} i {@code k + 1}, i la casella de la plantilla crescent.
+     */
+    private static final int[][] DESPLACAMENTS = new int[MIDA_ENTORN][];
+    // Xifra del codi de cada desplaçament (dx + 2, dy + 2), o -1
+    private static final int[][] XIFRA = new int[5][5];
+
+    // Trets de cada codi, o PENDENT si encara no s'ha consultat
+    private static final byte[] TRETS;
+    private static final byte PENDENT = -1;
+    // Veïns buits no alineats: índex 0 per al color 1 i índex 1 per al color -1
+    private static final byte[][] DESALINEATS = new byte[2][CODIS_VEINS];
+
+    private static final ConcurrentHashMap<Integer, PatronsHeuristica> PER_MIDA = new ConcurrentHashMap<>();
+
+    static {
+        int[][] d = Heuristica.DIRECCIONS;
+        for (int k = 0; k < 6; k++) {
+            int[] seguent = d[(k + 1) % 6];
+            DESPLACAMENTS[k] = d[k];
+            DESPLACAMENTS[6 + k] = new int[]{d[k][0] + seguent[0], d[k][1] + seguent[1]};
+        }
+        DESPLACAMENTS[12] = new int[]{0, -2};
+        for (int[] fila : XIFRA) {
+            Arrays.fill(fila, -1);
+        }
+        for (int i = 0; i < MIDA_ENTORN; i++) {
+            XIFRA[DESPLACAMENTS[i][0] + 2][DESPLACAMENTS[i][1] + 2] = i;
+        }
+
+        int codis = 1;
+        for (int i = 0; i < MIDA_ENTORN; i++) {
+            codis *= 3;
+        }
+        TRETS = new byte[codis];
+        Arrays.fill(TRETS, PENDENT);
+        int[] xifres = new int[MIDA_ENTORN];
+        for (int codi = 0; codi < CODIS_VEINS; codi++) {
+            descodifica(codi, xifres);
+            DESALINEATS[0][codi] = (byte) calculaDesalineats(xifres, 1);
+            DESALINEATS[1][codi] = (byte) calculaDesalineats(xifres, -1);
+        }
+    }
+
+    private final int[] entorn;
+    // Caselles que tenen cada casella a l'entorn, i pes de la seva xifra
+    private final int[] iniciAfectades;
+    private final int[] afectades;
+    private final int[] pesos;
+
+    private PatronsHeuristica(int size) {
+        int numCaselles = size * size;
+        entorn = new int[numCaselles * MIDA_ENTORN];
+        int[] numAfectades = new int[numCaselles];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int c = x * size + y;
+                for (int i = 0; i < MIDA_ENTORN; i++) {
+                    int nx = x + DESPLACAMENTS[i][0];
+                    int ny = y + DESPLACAMENTS[i][1];
+                    boolean dins = nx >= 0 && nx < size && ny >= 0 && ny < size;
+                    int v = dins ? nx * size + ny : -1;
+                    entorn[c * MIDA_ENTORN + i] = v;
+                    if (dins) numAfectades[v]++;
+                }
+            }
+        }
+        iniciAfectades = new int[numCaselles + 1];
+        for (int v = 0; v < numCaselles; v++) {
+            iniciAfectades[v + 1] = iniciAfectades[v] + numAfectades[v];
+        }
+        afectades = new int[iniciAfectades[numCaselles]];
+        pesos = new int[afectades.length];
+        int[] seguent = Arrays.copyOf(iniciAfectades, numCaselles);
+        for (int c = 0; c < numCaselles; c++) {
+            int pes = 1;
+            for (int i = 0; i < MIDA_ENTORN; i++) {
+                int v = entorn[c * MIDA_ENTORN + i];
+                if (v >= 0) {
+                    afectades[seguent[v]] = c;
+                    pesos[seguent[v]++] = pes;
+                }
+                pes *= 3;
+            }
+        }
+    }
+
+    /**
+     * @param size Mida del tauler.
+     * @return El motor de patrons per a la mida, compartit entre fils.
+     */
+    public static PatronsHeuristica per(int size) {
+        return PER_MIDA.computeIfAbsent(size, PatronsHeuristica::new);
+    }
+
+    /**
+     * Codifica l'entorn d'una casella.
+     *
+     * @param board El tauler.
+     * @param casella La casella.
+     * @param color El color des del punt de vista del qual es codifica (1 o
+     * -1).
+     * @return El codi de l'entorn, per a {@link #trets(int)} i
+     * {@link #desalineats(int, int)}.
+     */
+    public int codi(TaulerCerca board, int casella, int color) {
+        int base = casella * MIDA_ENTORN;
+        int codi = 0;
+        for (int i = MIDA_ENTORN - 1; i >= 0; i--) {
+            int v = entorn[base + i];
+            codi = codi * 3 + (v < 0 ? BLOQUEJADA : xifra(board.getPos(v), color));
+        }
+        return codi;
+    }
+
+    /**
+     * @param casella Una casella.
+     * @return El nombre de caselles que tenen la casella a l'entorn.
+     */
+    public int getNumAfectades(int casella) {
+        return iniciAfectades[casella + 1] - iniciAfectades[casella];
+    }
+
+    /**
+     * @param casella Una casella.
+     * @param k Posició entre 0 i {@link #getNumAfectades(int)} - 1.
+     * @return Una casella que té {@code casella} a l'entorn.
+     */
+    public int getAfectada(int casella, int k) {
+        return afectades[iniciAfectades[casella] + k];
+    }
+
+    /**
+     * @param casella Una casella.
+     * @param k Posició entre 0 i {@link #getNumAfectades(int)} - 1.
+     * @return El pes de {@code casella} al codi de la casella
+     * {@link #getAfectada(int, int)}: el codi canvia en
+     * {@code pes * (xifra nova - xifra antiga)}.
+     */
+    public int getPes(int casella, int k) {
+        return pesos[iniciAfectades[casella] + k];
+    }
+
+    /**
+     * @param pos El contingut d'una casella del tauler (0, 1 o -1).
+     * @param color El color des del punt de vista del qual es codifica.
+     * @return La xifra de la casella al codi: 0 buida, 1 del color i 2
+     * bloquejada.
+     */
+    public static int xifra(int pos, int color) {
+        return pos == 0 ? BUIDA : pos == color ? PROPIA : BLOQUEJADA;
+    }
+
+    /**
+     * @param codi El codi de l'entorn d'una pedra des del punt de vista del
+     * seu color.
+     * @return Els patrons que forma la pedra, com a combinació de
+     * {@link #PONT}, {@link #VORA}, {@link #INTERIOR}, {@link #DOBLE} i
+     * {@link #ESCALA}.
+     */
+    public static int trets(int codi) {
+        int t = TRETS[codi];
+        if (t == PENDENT) {
+            // Si dos fils l'omplen alhora escriuen el mateix valor
+            int[] xifres = new int[MIDA_ENTORN];
+            descodifica(codi, xifres);
+            t = calculaTrets(xifres);
+            TRETS[codi] = (byte) t;
+        }
+        return t;
+    }
+
+    /**
+     * @param codi El codi de l'entorn d'una pedra des del punt de vista del
+     * seu color.
+     * @param color El color de la pedra (1 o -1).
+     * @return El nombre de veïns buits no alineats amb l'objectiu del color.
+     */
+    public static int desalineats(int codi, int color) {
+        return DESALINEATS[color == 1 ? 0 : 1][codi % CODIS_VEINS];
+    }
+
+    private static void descodifica(int codi, int[] xifres) {
+        for (int i = 0; i < MIDA_ENTORN; i++) {
+            xifres[i] = codi % 3;
+            codi /= 3;
+        }
+    }
+
+    /**
+     * Aplica les plantilles de {@link Heuristica} a un entorn descodificat.
+     */
+    private static int calculaTrets(int[] xifres) {
+        int t = 0;
+        for (int[] config : Heuristica.CONFIGURACIONS_PONT) {
+            if (estat(xifres, config[2], config[3]) == BUIDA && estat(xifres, config[4], config[5]) == BUIDA
+                    && estat(xifres, config[0], config[1]) == PROPIA) {
+                t |= PONT;
+                break;
+            }
+        }
+        for (int[] template : Heuristica.PLANTILLES_VORA) {
+            if (estat(xifres, template[0], template[1]) == PROPIA && estat(xifres, template[2], template[3]) == PROPIA) {
+                t |= VORA;
+                break;
+            }
+        }
+        for (int[][] template : Heuristica.PLANTILLES_INTERIOR) {
+            boolean matches = true;
+            for (int[] offset : template) {
+                matches &= estat(xifres, offset[0], offset[1]) == PROPIA;
+            }
+            if (matches) {
+                t |= INTERIOR;
+                break;
+            }
+        }
+        int buits = 0;
+        for (int[] dir : Heuristica.DIRECCIONS) {
+            if (estat(xifres, dir[0], dir[1]) == BUIDA) buits++;
+        }
+        if (buits >= 2) t |= DOBLE;
+        for (int[] dir1 : Heuristica.DIRECCIONS) {
+            if (estat(xifres, dir1[0], dir1[1]) != PROPIA) continue;
+            for (int[] dir2 : Heuristica.DIRECCIONS) {
+                if (dir2 != dir1 && estat(xifres, dir1[0] + dir2[0], dir1[1] + dir2[1]) == BUIDA) {
+                    t |= ESCALA;
+                }
+            }
+        }
+        return t;
+    }
+
+    private static int calculaDesalineats(int[] xifres, int color) {
+        int d = 0;
+        for (int[] dir : Heuristica.DIRECCIONS) {
+            if (estat(xifres, dir[0], dir[1]) == BUIDA && !Heuristica.isAlignedWithGoal(color, 0, 0, dir[0], dir[1])) {
+                d++;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * @return L'estat de la casella a un desplaçament de la pedra. La pedra
+     * mateixa és del seu color.
+     */
+    private static int estat(int[] xifres, int dx, int dy) {
+        if (dx == 0 && dy == 0) return PROPIA;
+        return xifres[XIFRA[dx + 2][dy + 2]];
+    }
+}
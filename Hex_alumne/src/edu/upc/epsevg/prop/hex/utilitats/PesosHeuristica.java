@@ -0,0 +1,211 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Perfil de pesos de {@link Heuristica}: els dotze pesos de cadascuna de les
+ * tres etapes de la partida, que es trien segons la fracció de caselles
+ * ocupades (menys de 0.33, menys de 0.66 i la resta). Un perfil no es
+ * modifica: {@link #amb(int, int, double)} en crea un de nou.
+ *
+ * Es guarda en un fitxer de text amb una línia {@code etapa.pes=valor} per
+ * pes, per exemple {@code inicial.weightBridge=50}. Les línies buides i les
+ * que comencen amb '#' no compten, i els pesos que no hi surten prenen el
+ * valor per defecte. Tots els pesos són enters excepte
+ * {@code alignmentMultiplier}.
+ *
+ * {@link Heuristica#Heuristica()} fa servir el perfil del fitxer indicat amb
+ * {@code -Dheuristica.pesos=<fitxer>} ({@link #getPerfil()}), o els pesos per
+ * defecte si no n'hi ha cap.
+ */
+public class PesosHeuristica {
+
+    /** Propietat del sistema amb el fitxer del perfil per defecte. */
+    public static final String PROPIETAT = "heuristica.pesos";
+    /** Nom de cada etapa al fitxer. */
+    public static final String[] ETAPES = {"inicial", "intermedia", "final"};
+    /** Nom de cada pes al fitxer, el mateix que el camp de {@link Heuristica}. */
+    public static final String[] NOMS = {
+        "weightBridge", "weightBlockOpponent", "weightEdgeTemplate", "weightInteriorTemplate",
+        "weightFreeSpaces", "weightDoubleThreat", "weightLadder", "weightCentralArea",
+        "weightCornerArea", "weightDiagonalThreat", "alignmentMultiplier", "misalignmentPenalty"
+    };
+    public static final int NUM_ETAPES = ETAPES.length;
+    public static final int NUM_PESOS = NOMS.length;
+
+    // Índex de cada pes
+    static final int PONT = 0;
+    static final int BLOQUEIG = 1;
+    static final int VORA = 2;
+    static final int INTERIOR = 3;
+    static final int ESPAIS_LLIURES = 4;
+    static final int DOBLE_AMENACA = 5;
+    static final int ESCALA = 6;
+    static final int AREA_CENTRAL = 7;
+    static final int CANTONADA = 8;
+    static final int AMENACA_DIAGONAL = 9;
+    /** Índex de l'únic pes que no és enter. */
+    public static final int MULTIPLICADOR_ALINEACIO = 10;
+    static final int PENALITZACIO_DESALINEACIO = 11;
+
+    /** Els pesos originals de l'heurística. */
+    public static final PesosHeuristica PER_DEFECTE = new PesosHeuristica(new double[][]{
+        // Etapa inicial
+        {50, 20, 10, 20, 40, 10, 15, 60, 10, 20, 1.5, -10},
+        // Etapa intermèdia
+        {60, 50, 30, 50, 30, 40, 25, 40, 15, 40, 2.0, -20},
+        // Etapa final
+        {70, 80, 50, 30, 20, 60, 30, 20, 20, 50, 2.5, -30}
+    });
+
+    private static volatile PesosHeuristica perfil;
+
+    private final double[][] pesos;
+
+    private PesosHeuristica(double[][] pesos) {
+        this.pesos = pesos;
+    }
+
+    /**
+     * Retorna el perfil del fitxer de la propietat {@link #PROPIETAT}, que es
+     * llegeix la primera vegada, o {@link #PER_DEFECTE} si la propietat no
+     * hi és.
+     *
+     * @return El perfil per defecte de {@link Heuristica}.
+     * @throws UncheckedIOException Si no es pot llegir el fitxer.
+     */
+    public static PesosHeuristica getPerfil() {
+        PesosHeuristica res = perfil;
+        if (res == null) {
+            synchronized (PesosHeuristica.class) {
+                res = perfil;
+                if (res == null) {
+                    String fitxer = System.getProperty(PROPIETAT);
+                    try {
+                        res = fitxer == null ? PER_DEFECTE : llegeix(Paths.get(fitxer));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException("No es pot llegir el perfil " + fitxer, ex);
+                    }
+                    perfil = res;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param progres Fracció de caselles ocupades.
+     * @return L'etapa de la partida: 0, 1 o 2.
+     */
+    public static int etapa(double progres) {
+        return progres < 0.33 ? 0 : progres < 0.66 ? 1 : 2;
+    }
+
+    /**
+     * @param etapa L'etapa.
+     * @param pes L'índex del pes a {@link #NOMS}.
+     * @return El valor del pes.
+     */
+    public double get(int etapa, int pes) {
+        return pesos[etapa][pes];
+    }
+
+    /**
+     * @param etapa L'etapa.
+     * @param pes L'índex del pes a {@link #NOMS}.
+     * @param valor El nou valor, que s'arrodoneix a un enter, o a sis
+     * decimals si és el multiplicador.
+     * @return Un perfil igual que aquest amb el pes canviat.
+     */
+    public PesosHeuristica amb(int etapa, int pes, double valor) {
+        double[][] nous = new double[NUM_ETAPES][];
+        for (int e = 0; e < NUM_ETAPES; e++) {
+            nous[e] = pesos[e].clone();
+        }
+        // El multiplicador es guarda amb sis decimals perquè el fitxer sigui llegible
+        nous[etapa][pes] = pes == MULTIPLICADOR_ALINEACIO ? Math.rint(valor * 1e6) / 1e6 : Math.rint(valor);
+        return new PesosHeuristica(nous);
+    }
+
+    /**
+     * Llegeix un perfil.
+     *
+     * @param fitxer El fitxer del perfil.
+     * @return El perfil, amb els pesos per defecte on el fitxer no en diu res.
+     * @throws IOException Si no es pot llegir o té una línia incorrecta.
+     */
+    public static PesosHeuristica llegeix(Path fitxer) throws IOException {
+        PesosHeuristica res = PER_DEFECTE;
+        try (BufferedReader lector = Files.newBufferedReader(fitxer, StandardCharsets.UTF_8)) {
+            String linia;
+            int numLinia = 0;
+            while ((linia = lector.readLine()) != null) {
+                numLinia++;
+                linia = linia.trim();
+                if (linia.isEmpty() || linia.startsWith("#")) continue;
+                int igual = linia.indexOf('=');
+                int punt = linia.indexOf('.');
+                int etapa = punt < 0 ? -1 : Arrays.asList(ETAPES).indexOf(linia.substring(0, punt).trim());
+                int pes = igual < punt ? -1 : Arrays.asList(NOMS).indexOf(linia.substring(punt + 1, igual).trim());
+                if (etapa < 0 || pes < 0) {
+                    throw new IOException(fitxer + ":" + numLinia + ": pes desconegut");
+                }
+                double valor;
+                try {
+                    valor = Double.parseDouble(linia.substring(igual + 1).trim());
+                } catch (NumberFormatException ex) {
+                    throw new IOException(fitxer + ":" + numLinia + ": valor incorrecte", ex);
+                }
+                if (pes != MULTIPLICADOR_ALINEACIO && valor != Math.rint(valor)) {
+                    throw new IOException(fitxer + ":" + numLinia + ": " + NOMS[pes] + " ha de ser enter");
+                }
+                res = res.amb(etapa, pes, valor);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Escriu el perfil.
+     *
+     * @param fitxer El fitxer.
+     * @param comentari Text que s'escriu al principi com a comentari, o null.
+     * @throws IOException Si no es pot escriure.
+     */
+    public void escriu(Path fitxer, String comentari) throws IOException {
+        try (BufferedWriter escriptor = Files.newBufferedWriter(fitxer, StandardCharsets.UTF_8)) {
+            if (comentari != null) {
+                for (String linia : comentari.split("\n")) {
+                    escriptor.write("# " + linia);
+                    escriptor.newLine();
+                }
+            }
+            escriptor.write(toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int e = 0; e < NUM_ETAPES; e++) {
+            for (int p = 0; p < NUM_PESOS; p++) {
+                sb.append(ETAPES[e]).append('.').append(NOMS[p]).append('=');
+                if (p == MULTIPLICADOR_ALINEACIO) {
+                    sb.append(pesos[e][p]);
+                } else {
+                    sb.append((long) pesos[e][p]);
+                }
+                sb.append(System.lineSeparator());
+            }
+        }
+        return sb.toString();
+    }
+}
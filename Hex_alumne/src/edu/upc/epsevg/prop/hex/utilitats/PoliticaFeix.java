@@ -0,0 +1,215 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.util.Arrays;
+
+/**
+ * Política d'amplada del feix de la cerca alfa-beta: quants dels moviments
+ * ordenats de cada node es cerquen.
+ *
+ * A l'arrel es cerquen com a molt {@code ampladaArrel} moviments. Als
+ * nodes interiors l'amplada comença a {@code ampladaInterior} al primer
+ * nivell i es multiplica per {@code decaiment} a cada nivell més avall,
+ * sense baixar de {@code ampladaMinima}. Com més ple és el tauler més s'eixampla,
+ * multiplicant-la per {@code 1 + factorFase * ocupació}: al final de la
+ * partida hi ha menys moviments i les jugades tàctiques importen més.
+ *
+ * A més, un cop cercats {@code ampladaMinima} moviments d'un node interior,
+ * es deixen de cercar els que l'ordenació puntua per sota del millor en més
+ * d'una fracció {@code salt} del rang de puntuacions del node. Com que la
+ * fracció és relativa al rang, no depèn de l'escala de la funció
+ * d'avaluació.
+ *
+ * La política també recull, per a cada nivell, la posició en l'ordre del
+ * millor moviment dels nodes on s'ha trobat un valor exacte o un tall.
+ * {@link #getFraccioMesEnlla(int, int)} diu quina part d'aquests nodes
+ * hauria perdut el millor moviment amb un feix de {@code k}, que és la dada
+ * per ajustar les amplades. Les estadístiques no són segures entre fils:
+ * cada cerca ha de tenir la seva política.
+ */
+public class PoliticaFeix {
+
+    /** Amplada sense límit. */
+    public static final int SENSE_LIMIT = Integer.MAX_VALUE;
+    /** Nivells amb estadístiques pròpies; els més profunds s'acumulen a l'últim. */
+    public static final int NIVELLS = 16;
+    /** Posicions amb estadístiques pròpies; les més llunyanes s'acumulen a l'última. */
+    public static final int RANGS = 128;
+
+    private final int ampladaArrel;
+    private final int ampladaInterior;
+    private final double decaiment;
+    private final int ampladaMinima;
+    private final double factorFase;
+    private final double salt;
+
+    private final long[][] rangs = new long[NIVELLS][RANGS];
+    private final long[] nodes = new long[NIVELLS];
+    private long tallsSalt;
+
+    /**
+     * Crea la política per defecte: l'arrel sense límit i els nodes
+     * interiors de 24 moviments al primer nivell fins a 8 als més profunds.
+     */
+    public PoliticaFeix() {
+        this(SENSE_LIMIT, 24, 0.8, 8, 0.5, 0.75);
+    }
+
+    /**
+     * Crea una política amb els paràmetres indicats.
+     *
+     * @param ampladaArrel Moviments cercats a l'arrel.
+     * @param ampladaInterior Moviments cercats al primer nivell sota l'arrel.
+     * @param decaiment Factor de l'amplada per cada nivell més avall, entre
+     * 0 i 1.
+     * @param ampladaMinima Amplada mínima de qualsevol node.
+     * @param factorFase Eixamplament amb el tauler ple: l'amplada es
+     * multiplica per {@code 1 + factorFase * ocupació}.
+     * @param salt Fracció del rang de puntuacions de l'ordenació a partir de
+     * la qual es deixen de cercar moviments. 1 o més no talla mai.
+     */
+    public PoliticaFeix(int ampladaArrel, int ampladaInterior, double decaiment, int ampladaMinima, double factorFase, double salt) {
+        if (ampladaArrel < 1 || ampladaInterior < 1 || ampladaMinima < 1) {
+            throw new IllegalArgumentException("Les amplades han de ser positives");
+        }
+        if (decaiment <= 0 || decaiment > 1) {
+            throw new IllegalArgumentException("El decaiment ha d'estar entre 0 i 1");
+        }
+        this.ampladaArrel = ampladaArrel;
+        this.ampladaInterior = ampladaInterior;
+        this.decaiment = decaiment;
+        this.ampladaMinima = ampladaMinima;
+        this.factorFase = Math.max(0, factorFase);
+        this.salt = salt;
+    }
+
+    /**
+     * Crea una còpia dels paràmetres d'una política, amb les estadístiques
+     * buides.
+     *
+     * @param altra La política que es copia.
+     */
+    public PoliticaFeix(PoliticaFeix altra) {
+        this(altra.ampladaArrel, altra.ampladaInterior, altra.decaiment, altra.ampladaMinima, altra.factorFase, altra.salt);
+    }
+
+    /**
+     * Crea una política de la mateixa amplada a tots els nodes i sense tall
+     * per salt de puntuació.
+     *
+     * @param amplada Moviments cercats a cada node.
+     * @return La política.
+     */
+    public static PoliticaFeix fixa(int amplada) {
+        return new PoliticaFeix(amplada, amplada, 1, amplada, 0, 1);
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel; 0 és l'arrel.
+     * @param n Nombre de moviments del node.
+     * @param tauler El tauler del node.
+     * @return El nombre de moviments que s'han de cercar, entre 1 i
+     * {@code n}.
+     */
+    public int amplada(int nivell, int n, TaulerCerca tauler) {
+        if (nivell == 0) return Math.min(n, ampladaArrel);
+        double ocupacio = (double) tauler.getNumPedres() / tauler.getNumCaselles();
+        double amplada = ampladaInterior * Math.pow(decaiment, nivell - 1) * (1 + factorFase * ocupacio);
+        return (int) Math.min(n, Math.max(ampladaMinima, Math.round(amplada)));
+    }
+
+    /**
+     * Decideix si un moviment d'un node interior queda fora del feix per la
+     * diferència de puntuació amb el millor. Els moviments arriben en ordre
+     * decreixent, així que a partir del primer que es talla es poden tallar
+     * tots.
+     *
+     * @param rang Posició del moviment en l'ordre del node.
+     * @param valor Puntuació de l'ordenació del moviment.
+     * @param millor Millor puntuació de l'ordenació al node.
+     * @param pitjor Pitjor puntuació de l'ordenació al node.
+     * @return Si el moviment no s'ha de cercar.
+     */
+    public boolean talla(int rang, int valor, int millor, int pitjor) {
+        if (rang < ampladaMinima || millor <= pitjor) return false;
+        if (valor < millor - salt * ((long) millor - pitjor)) {
+            tallsSalt++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Registra la posició del millor moviment d'un node on s'ha trobat un
+     * valor exacte o un tall.
+     *
+     * @param nivell Jugades fetes des de l'arrel; 0 és l'arrel.
+     * @param rang Posició del millor moviment en l'ordre del node.
+     */
+    public void registra(int nivell, int rang) {
+        int i = Math.min(nivell, NIVELLS - 1);
+        rangs[i][Math.min(rang, RANGS - 1)]++;
+        nodes[i]++;
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel; 0 és l'arrel.
+     * @return El nombre de nodes registrats al nivell.
+     */
+    public long getNodes(int nivell) {
+        return nodes[Math.min(nivell, NIVELLS - 1)];
+    }
+
+    /**
+     * @param nivell Jugades fetes des de l'arrel; 0 és l'arrel.
+     * @param k Una amplada de feix.
+     * @return La fracció dels nodes registrats al nivell on el millor
+     * moviment ocupava la posició {@code k} o una de més enllà, o 0 si no
+     * n'hi ha cap.
+     */
+    public double getFraccioMesEnlla(int nivell, int k) {
+        int i = Math.min(nivell, NIVELLS - 1);
+        if (nodes[i] == 0) return 0;
+        long mesEnlla = 0;
+        for (int r = Math.max(0, k); r < RANGS; r++) {
+            mesEnlla += rangs[i][r];
+        }
+        return (double) mesEnlla / nodes[i];
+    }
+
+    /**
+     * @return El nombre de nodes on s'han deixat de cercar moviments per la
+     * diferència de puntuació.
+     */
+    public long getTallsSalt() {
+        return tallsSalt;
+    }
+
+    /**
+     * Buida les estadístiques.
+     */
+    public void reinicia() {
+        for (long[] r : rangs) {
+            Arrays.fill(r, 0);
+        }
+        Arrays.fill(nodes, 0);
+        tallsSalt = 0;
+    }
+
+    /**
+     * @return Una taula amb, per a cada nivell amb dades, el nombre de nodes
+     * i la fracció on el millor moviment era més enllà de les posicions 4,
+     * 8, 16 i 24.
+     */
+    public String informe() {
+        StringBuilder sb = new StringBuilder("nivell      nodes    >=4    >=8   >=16   >=24\n");
+        for (int nivell = 0; nivell < NIVELLS; nivell++) {
+            if (nodes[nivell] == 0) continue;
+            sb.append(String.format("%6d %10d", nivell, nodes[nivell]));
+            for (int k : new int[]{4, 8, 16, 24}) {
+                sb.append(String.format(" %5.1f%%", 100 * getFraccioMesEnlla(nivell, k)));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,262 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Registre de posicions etiquetades per ajustar l'heurística: afegeix
+ * posicions d'una mida de tauler al final d'un fitxer binari compacte i
+ * descarta les que ja hi són, comparant el hash canònic
+ * ({@link TaulerCerca#getHashCanonic()}), de manera que una posició i la
+ * seva girada 180 graus només es guarden una vegada. Es pot compartir entre
+ * fils: cada posició es codifica al fil que la crida i només la comprovació
+ * de duplicats i la còpia al buffer d'escriptura es fan en exclusió mútua.
+ * Es llegeixen amb {@link ConjuntPosicions}.
+ *
+ * Format del fitxer (little-endian):
+ * <ul>
+ * <li>capçalera de 16 bytes: {@link #MAGIC}, {@link #VERSIO}, la mida del
+ * tauler i la mida de cada registre;</li>
+ * <li>per a cada posició, un registre de mida fixa amb el hash canònic (8
+ * bytes), la puntuació de la cerca des del punt de vista del jugador que
+ * mou (4 bytes), el jugador que mou (1 byte: 1 o 2), el resultat (1 byte: 1
+ * si el jugador que mou acaba guanyant, 0 si perd) i les caselles en
+ * l'ordre de {@link TaulerCerca}, a 2 bits per casella (0 buida, 1 jugador
+ * 1, 2 jugador 2).</li>
+ * </ul>
+ * Una posició de 11x11 ocupa 45 bytes. Si un procés s'atura a mitja
+ * escriptura, en tornar a obrir el registre es descarta el registre
+ * incomplet, i les posicions que ja hi havia es tenen en compte per als
+ * duplicats. Els hashes per als duplicats es guarden en una taula de
+ * {@code long} amb adreçament obert, de 8 a 16 bytes per posició.
+ */
+public class RegistrePosicions implements AutoCloseable {
+
+    /** Identificador del fitxer, "HEXD" en ASCII. */
+    public static final int MAGIC = 0x44584548;
+    /** Versió del format. */
+    public static final int VERSIO = 1;
+    static final int CAPCALERA = 16;
+    private static final int MIDA_BUFFER = 1 << 16;
+
+    private final int size;
+    private final int midaRegistre;
+    private final Zobrist zobrist;
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final ConjuntHashes hashes = new ConjuntHashes();
+    private long fi;
+    private long numPosicions;
+    private long duplicades;
+
+    /**
+     * Obre un registre per afegir-hi posicions. Si el fitxer no existeix es
+     * crea.
+     *
+     * @param fitxer El fitxer de posicions.
+     * @param size La mida del tauler.
+     * @throws IOException Si no es pot obrir, no té el format correcte o és
+     * d'una altra mida de tauler.
+     */
+    public RegistrePosicions(Path fitxer, int size) throws IOException {
+        this.size = size;
+        this.midaRegistre = midaRegistre(size);
+        this.zobrist = new Zobrist(size);
+        buffer = ByteBuffer.allocate(MIDA_BUFFER - MIDA_BUFFER % midaRegistre).order(ByteOrder.LITTLE_ENDIAN);
+        canal = FileChannel.open(fitxer, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (canal.size() == 0) {
+                ByteBuffer capcalera = ByteBuffer.allocate(CAPCALERA).order(ByteOrder.LITTLE_ENDIAN);
+                capcalera.putInt(MAGIC).putInt(VERSIO).putInt(size).putInt(midaRegistre).flip();
+                escriu(capcalera, 0);
+                fi = CAPCALERA;
+            } else {
+                int sizeFitxer = ConjuntPosicions.llegeixCapcalera(canal);
+                if (sizeFitxer != size) {
+                    throw new IOException("El fitxer és de posicions de " + sizeFitxer + "x" + sizeFitxer);
+                }
+                numPosicions = (canal.size() - CAPCALERA) / midaRegistre;
+                fi = CAPCALERA + numPosicions * midaRegistre;
+                // Descarta un registre escrit a mitges
+                canal.truncate(fi);
+                llegeixHashes();
+            }
+        } catch (IOException ex) {
+            canal.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param size La mida del tauler.
+     * @return Els bytes de cada registre.
+     */
+    static int midaRegistre(int size) {
+        return 14 + (size * size + 3) / 4;
+    }
+
+    private void llegeixHashes() throws IOException {
+        ByteBuffer bloc = ByteBuffer.allocate(buffer.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        long posicio = CAPCALERA;
+        while (posicio < fi) {
+            bloc.clear();
+            bloc.limit((int) Math.min(bloc.capacity(), fi - posicio));
+            while (bloc.hasRemaining()) {
+                if (canal.read(bloc, posicio + bloc.position()) < 0) {
+                    throw new IOException("Fitxer de posicions truncat");
+                }
+            }
+            for (int i = 0; i < bloc.limit(); i += midaRegistre) {
+                hashes.add(bloc.getLong(i));
+            }
+            posicio += bloc.limit();
+        }
+    }
+
+    /**
+     * Afegeix una posició si encara no és al registre.
+     *
+     * @param estat La posició, de la mida del registre.
+     * @param puntuacio La puntuació de la cerca des del punt de vista del
+     * jugador que mou.
+     * @param guanyaQuiMou Si el jugador que mou acaba guanyant la partida.
+     * @return Si s'ha afegit, és a dir, si no era un duplicat.
+     * @throws IOException Si no es pot escriure.
+     */
+    public boolean afegeix(HexGameStatus estat, int puntuacio, boolean guanyaQuiMou) throws IOException {
+        if (estat.getSize() != size) {
+            throw new IllegalArgumentException("El registre és de posicions de " + size + "x" + size);
+        }
+        TaulerCerca tauler = new TaulerCerca(estat, zobrist);
+        long hash = tauler.getHashCanonic();
+        byte[] registre = new byte[midaRegistre];
+        ByteBuffer codificat = ByteBuffer.wrap(registre).order(ByteOrder.LITTLE_ENDIAN);
+        codificat.putLong(hash).putInt(puntuacio);
+        codificat.put((byte) (tauler.getCurrentPlayerColor() == 1 ? 1 : 2));
+        codificat.put((byte) (guanyaQuiMou ? 1 : 0));
+        for (int c = 0; c < tauler.getNumCaselles(); c++) {
+            int color = tauler.getPos(c);
+            if (color != 0) {
+                registre[14 + (c >> 2)] |= (color == 1 ? 1 : 2) << ((c & 3) * 2);
+            }
+        }
+        synchronized (this) {
+            if (!hashes.add(hash)) {
+                duplicades++;
+                return false;
+            }
+            if (buffer.remaining() < midaRegistre) {
+                buida();
+            }
+            buffer.put(registre);
+            numPosicions++;
+            return true;
+        }
+    }
+
+    /**
+     * @return El nombre de posicions del registre, comptant les que encara
+     * són al buffer.
+     */
+    public synchronized long getNumPosicions() {
+        return numPosicions;
+    }
+
+    /**
+     * @return Les posicions descartades per duplicades des que s'ha obert.
+     */
+    public synchronized long getDuplicades() {
+        return duplicades;
+    }
+
+    /**
+     * Escriu al fitxer les posicions que són al buffer.
+     *
+     * @throws IOException Si no es pot escriure.
+     */
+    public synchronized void buida() throws IOException {
+        buffer.flip();
+        int bytes = buffer.remaining();
+        escriu(buffer, fi);
+        fi += bytes;
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            buida();
+        } finally {
+            canal.close();
+        }
+    }
+
+    private void escriu(ByteBuffer bytes, long posicio) throws IOException {
+        while (bytes.hasRemaining()) {
+            posicio += canal.write(bytes, posicio);
+        }
+    }
+
+    /**
+     * Conjunt de hashes amb adreçament obert i exploració lineal sobre un
+     * {@code long[]}, sense objectes per element. El 0 marca les caselles
+     * buides, així que el hash 0 es guarda a part. La taula es dobla quan
+     * s'omple més de la meitat.
+     */
+    private static class ConjuntHashes {
+
+        private long[] taula = new long[1 << 10];
+        private int mida;
+        private boolean teZero;
+
+        /**
+         * @param hash El hash.
+         * @return Si s'ha afegit, és a dir, si no hi era.
+         */
+        boolean add(long hash) {
+            if (hash == 0) {
+                boolean nou = !teZero;
+                teZero = true;
+                return nou;
+            }
+            if (2 * (mida + 1) > taula.length) {
+                creix();
+            }
+            if (!insereix(taula, hash)) {
+                return false;
+            }
+            mida++;
+            return true;
+        }
+
+        private void creix() {
+            long[] nova = new long[taula.length * 2];
+            for (long hash : taula) {
+                if (hash != 0) {
+                    insereix(nova, hash);
+                }
+            }
+            taula = nova;
+        }
+
+        private static boolean insereix(long[] taula, long hash) {
+            int mascara = taula.length - 1;
+            // Els hashes de Zobrist ja són aleatoris: n'hi ha prou de plegar-los
+            int i = (int) (hash ^ (hash >>> 32)) & mascara;
+            while (taula[i] != 0) {
+                if (taula[i] == hash) {
+                    return false;
+                }
+                i = (i + 1) & mascara;
+            }
+            taula[i] = hash;
+            return true;
+        }
+    }
+}
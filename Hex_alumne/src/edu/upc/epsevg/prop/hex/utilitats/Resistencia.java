@@ -0,0 +1,306 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+/**
+ * Avaluació per resistència elèctrica (Shannon, Anshelevich). Per a cada
+ * jugador el tauler es modela com una xarxa de resistències entre les seves
+ * dues vores: una casella buida té resistència 1, una pedra pròpia 0 i una
+ * pedra de l'oponent talla el pas. Entre dues caselles veïnes hi ha la suma
+ * de les seves resistències. Com menor és la resistència total, més a prop
+ * està el jugador de connectar per molts camins alhora.
+ *
+ * Els grups de pedres pròpies es tracten com un sol node i els que toquen
+ * una vora s'uneixen al terminal d'aquella vora. El sistema de potencials
+ * es resol amb gradient conjugat precondicionat amb la diagonal (Jacobi), i
+ * la solució de l'avaluació anterior es fa servir com a punt de partida:
+ * els nodes germans de la cerca només difereixen en una pedra i el
+ * gradient conjugat hi convergeix en poques iteracions.
+ */
+public class Resistencia implements Avaluador {
+
+    /** Valor d'una posició guanyada. */
+    public static final int VICTORIA = 1_000_000;
+    /** Multiplicador del logaritme del quocient de resistències. */
+    private static final double ESCALA = 1000;
+
+    private final Xarxa[] xarxes = {new Xarxa(1), new Xarxa(-1)};
+
+    /**
+     * Avalua el tauler com el logaritme del quocient entre la resistència de
+     * l'oponent i la del jugador.
+     *
+     * @param board tauler a avaluar
+     * @param player jugador des del punt de vista del qual s'avalua
+     * @return valor pel tauler avaluat, entre -{@link #VICTORIA} i
+     * {@link #VICTORIA}
+     */
+    @Override
+    public int eval(TaulerCerca board, PlayerType player) {
+        int color = PlayerType.getColor(player);
+        double propia = xarxa(color).resistencia(board);
+        if (propia == 0) return VICTORIA;
+        double rival = xarxa(-color).resistencia(board);
+        if (rival == 0) return -VICTORIA;
+        if (Double.isInfinite(propia)) return Double.isInfinite(rival) ? 0 : -VICTORIA;
+        if (Double.isInfinite(rival)) return VICTORIA;
+        double valor = ESCALA * Math.log(rival / propia);
+        return (int) Math.max(1 - VICTORIA, Math.min(VICTORIA - 1, Math.round(valor)));
+    }
+
+    /**
+     * @return Cert: la xarxa de resistències d'una posició i la de la seva
+     * girada 180 graus són la mateixa.
+     */
+    @Override
+    public boolean isSimetric() {
+        return true;
+    }
+
+    /**
+     * Calcula la resistència entre les vores d'un jugador.
+     *
+     * @param board El tauler.
+     * @param color Color del jugador (1 o -1).
+     * @return La resistència, 0 si el jugador ja ha connectat i infinit si
+     * l'oponent l'ha tallat.
+     */
+    public double resistencia(TaulerCerca board, int color) {
+        return xarxa(color).resistencia(board);
+    }
+
+    /**
+     * @return El total d'iteracions del gradient conjugat des que es va crear
+     * l'avaluador.
+     */
+    public long getIteracions() {
+        return xarxes[0].iteracions + xarxes[1].iteracions;
+    }
+
+    private Xarxa xarxa(int color) {
+        return xarxes[color == 1 ? 0 : 1];
+    }
+
+    /**
+     * Xarxa de resistències d'un jugador amb els vectors reutilitzables del
+     * gradient conjugat.
+     */
+    private static class Xarxa {
+
+        private static final int BLOCAT = -1;
+        private static final int FONT = -2;
+        private static final int POU = -3;
+        private static final double TOLERANCIA = 1e-10;
+        /** Conductància a terra que evita sistemes singulars en zones tancades. */
+        private static final double REGULARITZACIO = 1e-9;
+
+        private final int color;
+        private int numCaselles = -1;
+        private int[] node;
+        private int[] representant;
+        private int[] pila;
+        private double[] potencials;
+
+        private int[] fila;
+        private int[] columna;
+        private double[] conductancia;
+        private double[] diagonal;
+        private double[] terme;
+        private double[] aPou;
+        private double[] x;
+        private double[] r;
+        private double[] z;
+        private double[] p;
+        private double[] q;
+        long iteracions;
+
+        Xarxa(int color) {
+            this.color = color;
+        }
+
+        private void prepara(int caselles) {
+            if (caselles == numCaselles) return;
+            numCaselles = caselles;
+            node = new int[caselles];
+            representant = new int[caselles];
+            pila = new int[caselles];
+            potencials = new double[caselles];
+            fila = new int[caselles * 6];
+            columna = new int[caselles * 6];
+            conductancia = new double[caselles * 6];
+            diagonal = new double[caselles];
+            terme = new double[caselles];
+            aPou = new double[caselles];
+            x = new double[caselles];
+            r = new double[caselles];
+            z = new double[caselles];
+            p = new double[caselles];
+            q = new double[caselles];
+        }
+
+        private boolean esFont(int casella, int size) {
+            return color == 1 ? casella / size == 0 : casella % size == 0;
+        }
+
+        private boolean esPou(int casella, int size) {
+            return color == 1 ? casella / size == size - 1 : casella % size == size - 1;
+        }
+
+        double resistencia(TaulerCerca board) {
+            int size = board.getSize();
+            prepara(board.getNumCaselles());
+
+            // Numera els nodes: una casella buida és un node i un grup de
+            // pedres pròpies també, o bé s'uneix al terminal de la vora que toca
+            int numNodes = 0;
+            for (int c = 0; c < numCaselles; c++) {
+                node[c] = board.getPos(c) == -color ? BLOCAT : Integer.MIN_VALUE;
+            }
+            for (int c = 0; c < numCaselles; c++) {
+                if (node[c] != Integer.MIN_VALUE) continue;
+                if (board.getPos(c) == 0) {
+                    representant[numNodes] = c;
+                    node[c] = numNodes++;
+                    continue;
+                }
+                // Grup de pedres pròpies
+                int mida = 0;
+                boolean font = false;
+                boolean pou = false;
+                pila[mida++] = c;
+                node[c] = numNodes;
+                for (int i = 0; i < mida; i++) {
+                    int g = pila[i];
+                    font |= esFont(g, size);
+                    pou |= esPou(g, size);
+                    for (int k = 0; k < board.getNumVeins(g); k++) {
+                        int vei = board.getVei(g, k);
+                        if (board.getPos(vei) == color && node[vei] == Integer.MIN_VALUE) {
+                            node[vei] = numNodes;
+                            pila[mida++] = vei;
+                        }
+                    }
+                }
+                if (font && pou) return 0;
+                int id = font ? FONT : pou ? POU : numNodes;
+                for (int i = 0; i < mida; i++) {
+                    node[pila[i]] = id;
+                }
+                if (id == numNodes) {
+                    representant[numNodes++] = c;
+                }
+            }
+
+            // Munta el sistema: diagonal, entrades fora de la diagonal i terme independent
+            for (int i = 0; i < numNodes; i++) {
+                diagonal[i] = REGULARITZACIO;
+                terme[i] = 0;
+                aPou[i] = 0;
+            }
+            int numEntrades = 0;
+            for (int c = 0; c < numCaselles; c++) {
+                int i = node[c];
+                if (i < 0) continue;
+                int rc = board.getPos(c) == 0 ? 1 : 0;
+                if (rc == 1) {
+                    if (esFont(c, size)) {
+                        diagonal[i] += 1;
+                        terme[i] += 1;
+                    }
+                    if (esPou(c, size)) {
+                        diagonal[i] += 1;
+                        aPou[i] += 1;
+                    }
+                }
+                for (int k = 0; k < board.getNumVeins(c); k++) {
+                    int vei = board.getVei(c, k);
+                    int j = node[vei];
+                    if (j == BLOCAT || j == i) continue;
+                    int rd = board.getPos(vei) == 0 ? 1 : 0;
+                    if (rc + rd == 0) continue;
+                    double g = 1.0 / (rc + rd);
+                    diagonal[i] += g;
+                    if (j == FONT) {
+                        terme[i] += g;
+                    } else if (j == POU) {
+                        aPou[i] += g;
+                    } else {
+                        fila[numEntrades] = i;
+                        columna[numEntrades] = j;
+                        conductancia[numEntrades++] = g;
+                    }
+                }
+            }
+
+            // Punt de partida: els potencials de l'avaluació anterior
+            for (int i = 0; i < numNodes; i++) {
+                x[i] = potencials[representant[i]];
+            }
+            resol(numNodes, numEntrades);
+
+            double corrent = 0;
+            for (int i = 0; i < numNodes; i++) {
+                corrent += aPou[i] * x[i];
+            }
+            for (int c = 0; c < numCaselles; c++) {
+                int i = node[c];
+                potencials[c] = i >= 0 ? x[i] : i == FONT ? 1 : 0;
+            }
+            return corrent <= 1e-9 ? Double.POSITIVE_INFINITY : 1 / corrent;
+        }
+
+        private void multiplica(double[] v, double[] resultat, int numNodes, int numEntrades) {
+            for (int i = 0; i < numNodes; i++) {
+                resultat[i] = diagonal[i] * v[i];
+            }
+            for (int e = 0; e < numEntrades; e++) {
+                resultat[fila[e]] -= conductancia[e] * v[columna[e]];
+            }
+        }
+
+        /**
+         * Gradient conjugat amb precondicionador de Jacobi partint del valor
+         * que hi ha a {@code x}.
+         */
+        private void resol(int numNodes, int numEntrades) {
+            multiplica(x, q, numNodes, numEntrades);
+            double normaTerme = 0;
+            double rz = 0;
+            for (int i = 0; i < numNodes; i++) {
+                r[i] = terme[i] - q[i];
+                z[i] = r[i] / diagonal[i];
+                p[i] = z[i];
+                rz += r[i] * z[i];
+                normaTerme += terme[i] * terme[i];
+            }
+            double limit = TOLERANCIA * Math.max(normaTerme, 1e-30);
+            for (int it = 0; it < 4 * numNodes + 10; it++) {
+                double rr = 0;
+                for (int i = 0; i < numNodes; i++) {
+                    rr += r[i] * r[i];
+                }
+                if (rr <= limit) break;
+                iteracions++;
+                multiplica(p, q, numNodes, numEntrades);
+                double pq = 0;
+                for (int i = 0; i < numNodes; i++) {
+                    pq += p[i] * q[i];
+                }
+                if (pq <= 0) break;
+                double alfa = rz / pq;
+                double rzNou = 0;
+                for (int i = 0; i < numNodes; i++) {
+                    x[i] += alfa * p[i];
+                    r[i] -= alfa * q[i];
+                    z[i] = r[i] / diagonal[i];
+                    rzNou += r[i] * z[i];
+                }
+                double beta = rzNou / rz;
+                rz = rzNou;
+                for (int i = 0; i < numNodes; i++) {
+                    p[i] = z[i] + beta * p[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import java.util.Arrays;
+
+/**
+ * Taula de transposicions de mida fixa indexada pel hash de Zobrist de la
+ * posició. Cada entrada guarda la profunditat de la cerca, el tipus de cota de
+ * la puntuació, la puntuació i el millor moviment trobat.
+ *
+ * Les entrades es guarden empaquetades en dos vectors de {@code long} per no
+ * crear cap objecte durant la cerca.
+ *
+ * La taula es pot compartir entre fils sense bloquejos: la clau es guarda
+ * com a XOR del hash i les dades, de manera que si dos fils escriuen la
+ * mateixa entrada alhora i es llegeix una barreja de totes dues, la
+ * comprovació de la clau falla i l'entrada es tracta com a absent.
+ */
+public class TaulaTransposicio {
+
+    /** La puntuació guardada és exacta. */
+    public static final int EXACTE = 0;
+    /** La puntuació guardada és una cota inferior (tall beta). */
+    public static final int COTA_INFERIOR = 1;
+    /** La puntuació guardada és una cota superior (cap moviment supera alfa). */
+    public static final int COTA_SUPERIOR = 2;
+
+    /** Mida de la taula per defecte en megabytes. */
+    public static final int MEGABYTES_PER_DEFECTE = 64;
+
+    private static final int BYTES_PER_ENTRADA = 2 * Long.BYTES;
+    private static final long OCUPADA = 1L << 62;
+
+    private final long[] claus;
+    private final long[] dades;
+    private final int mascara;
+
+    /**
+     * Constructor de la classe TaulaTransposicio.
+     *
+     * @param megabytes Memòria màxima que pot ocupar la taula. El nombre
+     * d'entrades s'arrodoneix a la potència de dos inferior.
+     */
+    public TaulaTransposicio(int megabytes) {
+        long entrades = Math.max(1L, (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRADA);
+        int mida = (int) Long.highestOneBit(Math.min(entrades, 1L << 30));
+        claus = new long[mida];
+        dades = new long[mida];
+        mascara = mida - 1;
+    }
+
+    /**
+     * Busca una posició a la taula.
+     *
+     * @param hash El hash de Zobrist de la posició.
+     * @return Les dades empaquetades de l'entrada o 0 si la posició no hi és.
+     */
+    public long consulta(long hash) {
+        int index = (int) hash & mascara;
+        long entrada = dades[index];
+        return (claus[index] ^ entrada) == hash ? entrada : 0;
+    }
+
+    /**
+     * Guarda el resultat de la cerca d'una posició. Si la casella ja conté la
+     * mateixa posició només se substitueix si la nova cerca és com a mínim
+     * igual de profunda.
+     *
+     * @param hash El hash de Zobrist de la posició.
+     * @param profunditat La profunditat restant amb què s'ha cercat.
+     * @param tipus El tipus de cota ({@link #EXACTE}, {@link #COTA_INFERIOR} o
+     * {@link #COTA_SUPERIOR}).
+     * @param puntuacio La puntuació obtinguda.
+     * @param moviment El millor moviment (índex de casella) o -1 si no n'hi ha.
+     */
+    public void guarda(long hash, int profunditat, int tipus, int puntuacio, int moviment) {
+        int index = (int) hash & mascara;
+        long anterior = dades[index];
+        if ((claus[index] ^ anterior) == hash && profunditat(anterior) > profunditat) {
+            return;
+        }
+        long entrada = OCUPADA
+                | ((long) (moviment + 1) & 0xFFFF) << 42
+                | ((long) tipus & 0x3) << 40
+                | ((long) Math.min(profunditat, 0xFF)) << 32
+                | (puntuacio & 0xFFFFFFFFL);
+        claus[index] = hash ^ entrada;
+        dades[index] = entrada;
+    }
+
+    /**
+     * Buida totes les entrades de la taula.
+     */
+    public void neteja() {
+        Arrays.fill(claus, 0);
+        Arrays.fill(dades, 0);
+    }
+
+    /**
+     * @return El nombre d'entrades de la taula.
+     */
+    public int getMida() {
+        return claus.length;
+    }
+
+    /**
+     * @param entrada Dades empaquetades retornades per {@link #consulta(long)}.
+     * @return La puntuació guardada.
+     */
+    public static int puntuacio(long entrada) {
+        return (int) entrada;
+    }
+
+    /**
+     * @param entrada Dades empaquetades retornades per {@link #consulta(long)}.
+     * @return La profunditat de la cerca guardada.
+     */
+    public static int profunditat(long entrada) {
+        return (int) (entrada >>> 32) & 0xFF;
+    }
+
+    /**
+     * @param entrada Dades empaquetades retornades per {@link #consulta(long)}.
+     * @return El tipus de cota de la puntuació guardada.
+     */
+    public static int tipus(long entrada) {
+        return (int) (entrada >>> 40) & 0x3;
+    }
+
+    /**
+     * @param entrada Dades empaquetades retornades per {@link #consulta(long)}.
+     * @return L'índex de casella del millor moviment o -1 si no n'hi ha.
+     */
+    public static int moviment(long entrada) {
+        return ((int) (entrada >>> 42) & 0xFFFF) - 1;
+    }
+}
@@ -0,0 +1,479 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+import java.awt.Point;
+
+/**
+ * Tauler mutable per a la cerca. A diferència de {@link HexGameStatus}, les
+ * jugades es fan i es desfan sobre el mateix objecte amb
+ * {@link #play(int)} i {@link #undo()} sense crear cap objecte nou.
+ *
+ * Les caselles s'identifiquen amb l'índex {@code x * size + y}, que és el
+ * mateix ordre en què {@link HexGameStatus#getMoves()} retorna els moviments.
+ * Les pedres de cada jugador es guarden també en bitboards empaquetats en
+ * {@code long[]}, i la detecció de victòria es fa amb una unió-cerca (union-find)
+ * sense compressió de camins que es pot desfer jugada a jugada.
+ *
+ * A més del hash de Zobrist de la posició es manté el de la posició girada
+ * 180 graus, que és equivalent: el gir conserva les vores de cada jugador.
+ * El mínim dels dos és el hash canònic, el mateix per a totes dues
+ * orientacions. La transposició del tauler amb els colors canviats també
+ * conserva el valor de la partida, però no es fa servir: canvia el jugador
+ * que mou sense canviar el nombre de pedres de cada color, i per tant porta
+ * d'una posició que es pot donar en una partida a una que no es pot donar
+ * mai, perquè el primer jugador sempre té tantes pedres o una més que el
+ * segon.
+ */
+public class TaulerCerca {
+
+    /** Direccions veïnes en un tauler hexagonal. */
+    private static final int[][] DIRECCIONS = {
+        {1, 0}, {0, 1}, {-1, 1}, {-1, 0}, {0, -1}, {1, -1}
+    };
+
+    private final int size;
+    private final int numCaselles;
+    private final byte[] caselles;
+    private final long[][] pedres;
+    private final int[] veins;
+    private final int[] numVeins;
+
+    private final int[] jugades;
+    private int numJugades;
+    private int numPedres;
+    private int colorActual;
+    private int guanyador;
+
+    private final Zobrist zobrist;
+    private long hash;
+    private long hashGirat;
+
+    private TermesHeuristica termes;
+
+    // Unió-cerca amb desfer. Els nodes numCaselles..numCaselles+3 són les vores:
+    // oest i est (jugador 1), nord i sud (jugador 2).
+    private final int[] pare;
+    private final int[] mida;
+    private final int[] historial;
+    private int numHistorial;
+    private final int[] marques;
+
+    /**
+     * Crea un tauler de cerca a partir d'un estat del joc.
+     *
+     * @param status L'estat del joc.
+     */
+    public TaulerCerca(HexGameStatus status) {
+        this(status, new Zobrist(status.getSize()));
+    }
+
+    /**
+     * Crea un tauler de cerca a partir d'un estat del joc reutilitzant unes
+     * claus de Zobrist ja creades.
+     *
+     * @param status L'estat del joc.
+     * @param zobrist Claus de Zobrist per a la mida del tauler.
+     */
+    public TaulerCerca(HexGameStatus status, Zobrist zobrist) {
+        this.size = status.getSize();
+        this.numCaselles = size * size;
+        this.zobrist = zobrist;
+        caselles = new byte[numCaselles];
+        pedres = new long[2][(numCaselles + 63) / 64];
+        veins = new int[numCaselles * 6];
+        numVeins = new int[numCaselles];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int c = x * size + y;
+                for (int[] dir : DIRECCIONS) {
+                    int nx = x + dir[0];
+                    int ny = y + dir[1];
+                    if (nx >= 0 && nx < size && ny >= 0 && ny < size) {
+                        veins[c * 6 + numVeins[c]++] = nx * size + ny;
+                    }
+                }
+            }
+        }
+
+        jugades = new int[numCaselles];
+        marques = new int[numCaselles + 1];
+        pare = new int[numCaselles + 4];
+        mida = new int[numCaselles + 4];
+        historial = new int[numCaselles + 4];
+        for (int i = 0; i < pare.length; i++) {
+            pare[i] = i;
+            mida[i] = 1;
+        }
+
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int color = status.getPos(x, y);
+                if (color != 0) {
+                    posa(x * size + y, color);
+                }
+            }
+        }
+        numHistorial = 0;
+        colorActual = status.getCurrentPlayerColor();
+    }
+
+    /**
+     * @return La mida del tauler.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return El nombre de caselles del tauler.
+     */
+    public int getNumCaselles() {
+        return numCaselles;
+    }
+
+    /**
+     * @param x Coordenada X.
+     * @param y Coordenada Y.
+     * @return El color de la casella: 0 si és buida, 1 o -1 segons el jugador.
+     */
+    public int getPos(int x, int y) {
+        return caselles[x * size + y];
+    }
+
+    /**
+     * @param casella Índex de la casella.
+     * @return El color de la casella: 0 si és buida, 1 o -1 segons el jugador.
+     */
+    public int getPos(int casella) {
+        return caselles[casella];
+    }
+
+    /**
+     * @param casella Índex de la casella.
+     * @return El nombre de veïns dins del tauler.
+     */
+    public int getNumVeins(int casella) {
+        return numVeins[casella];
+    }
+
+    /**
+     * @param casella Índex de la casella.
+     * @param k Posició del veí, entre 0 i {@link #getNumVeins(int)} - 1.
+     * @return L'índex de la casella veïna.
+     */
+    public int getVei(int casella, int k) {
+        return veins[casella * 6 + k];
+    }
+
+    /**
+     * @return El color del jugador que ha de col·locar pedra (1 o -1).
+     */
+    public int getCurrentPlayerColor() {
+        return colorActual;
+    }
+
+    /**
+     * @return El jugador que ha de col·locar pedra.
+     */
+    public PlayerType getCurrentPlayer() {
+        return colorActual == 1 ? PlayerType.PLAYER1 : PlayerType.PLAYER2;
+    }
+
+    /**
+     * @return El nombre de pedres que hi ha al tauler.
+     */
+    public int getNumPedres() {
+        return numPedres;
+    }
+
+    /**
+     * @return El nombre de jugades fetes amb {@link #play(int)} que es poden
+     * desfer.
+     */
+    public int getNumJugades() {
+        return numJugades;
+    }
+
+    /**
+     * @return L'última casella jugada amb {@link #play(int)} o -1 si no n'hi
+     * ha cap.
+     */
+    public int getUltimaJugada() {
+        return numJugades == 0 ? -1 : jugades[numJugades - 1];
+    }
+
+    /**
+     * @return El hash de Zobrist de la posició actual.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return El hash de Zobrist de la posició girada 180 graus.
+     */
+    public long getHashGirat() {
+        return hashGirat;
+    }
+
+    /**
+     * @return El hash canònic de la posició: el mínim entre el seu hash i el
+     * de la posició girada, igual per a les dues orientacions.
+     */
+    public long getHashCanonic() {
+        return Math.min(hash, hashGirat);
+    }
+
+    /**
+     * @return Si la posició és igual a la seva girada 180 graus.
+     */
+    public boolean isSimetric() {
+        return hash == hashGirat;
+    }
+
+    /**
+     * @param casella Índex de la casella.
+     * @return La casella girada 180 graus: (x, y) passa a ser
+     * (size-1-x, size-1-y).
+     */
+    public int gira(int casella) {
+        return numCaselles - 1 - casella;
+    }
+
+    /**
+     * Passa una casella de l'orientació actual a l'orientació canònica (la
+     * del hash canònic) o al revés, perquè el gir és la seva pròpia inversa.
+     * Els moviments que es guarden amb el hash canònic s'han de guardar en
+     * l'orientació canònica.
+     *
+     * @param casella Índex de la casella o -1.
+     * @return La casella en l'altra orientació si la posició actual no és la
+     * canònica, o la mateixa casella altrament.
+     */
+    public int orientaCanonica(int casella) {
+        return casella >= 0 && hashGirat < hash ? gira(casella) : casella;
+    }
+
+    /**
+     * @return Les claus de Zobrist que fa servir el tauler.
+     */
+    public Zobrist getZobrist() {
+        return zobrist;
+    }
+
+    /**
+     * @return Si algun jugador ha connectat les seves vores.
+     */
+    public boolean isGameOver() {
+        return guanyador != 0;
+    }
+
+    /**
+     * @return El color del guanyador o 0 si la partida no ha acabat.
+     */
+    public int getGuanyador() {
+        return guanyador;
+    }
+
+    /**
+     * Retorna els recomptes incrementals de l'heurística. Es calculen sencers
+     * la primera vegada que es demanen i a partir d'aleshores
+     * {@link #play(int)} i {@link #undo()} els mantenen al dia.
+     *
+     * @return Els recomptes de l'heurística del tauler.
+     */
+    public TermesHeuristica getTermes() {
+        if (termes == null) {
+            termes = new TermesHeuristica(this);
+        }
+        return termes;
+    }
+
+    /**
+     * Retorna el bitboard de les pedres d'un jugador. El bit {@code c} de la
+     * paraula {@code c >> 6} indica si hi ha una pedra a la casella {@code c}.
+     * El vector és intern i no s'ha de modificar.
+     *
+     * @param color Color del jugador (1 o -1).
+     * @return El bitboard del jugador.
+     */
+    public long[] getPedres(int color) {
+        return pedres[color == 1 ? 0 : 1];
+    }
+
+    /**
+     * Omple un vector amb les caselles buides en ordre creixent d'índex.
+     *
+     * @param moviments Vector on es deixen les caselles, de mida suficient.
+     * @return El nombre de caselles buides.
+     */
+    public int getMoviments(int[] moviments) {
+        int n = 0;
+        long[] p1 = pedres[0];
+        long[] p2 = pedres[1];
+        for (int w = 0; w < p1.length; w++) {
+            long buides = ~(p1[w] | p2[w]);
+            if (w == p1.length - 1 && (numCaselles & 63) != 0) {
+                buides &= (1L << (numCaselles & 63)) - 1;
+            }
+            while (buides != 0) {
+                moviments[n++] = (w << 6) + Long.numberOfTrailingZeros(buides);
+                buides &= buides - 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Comprova sense jugar-hi si una pedra del jugador que mou a una casella
+     * buida connectaria les seves vores.
+     *
+     * @param casella Índex d'una casella buida.
+     * @return Si el jugador que mou guanya jugant-hi.
+     */
+    public boolean guanyaAmb(int casella) {
+        int vora = colorActual == 1 ? numCaselles : numCaselles + 2;
+        int arrel1 = troba(vora);
+        int arrel2 = troba(vora + 1);
+        int x = casella / size;
+        int y = casella % size;
+        boolean toca1 = colorActual == 1 ? x == 0 : y == 0;
+        boolean toca2 = colorActual == 1 ? x == size - 1 : y == size - 1;
+        for (int k = 0; k < numVeins[casella]; k++) {
+            int vei = veins[casella * 6 + k];
+            if (caselles[vei] == colorActual) {
+                int arrel = troba(vei);
+                toca1 |= arrel == arrel1;
+                toca2 |= arrel == arrel2;
+            }
+        }
+        return toca1 && toca2;
+    }
+
+    /**
+     * Col·loca una pedra del jugador actual i passa el torn.
+     *
+     * @param casella Índex d'una casella buida.
+     */
+    public void play(int casella) {
+        marques[numJugades] = numHistorial;
+        jugades[numJugades++] = casella;
+        posa(casella, colorActual);
+        colorActual = -colorActual;
+    }
+
+    /**
+     * Desfà l'última jugada feta amb {@link #play(int)}.
+     */
+    public void undo() {
+        if (numJugades == 0) {
+            throw new IllegalStateException("No hi ha cap jugada per desfer");
+        }
+        int casella = jugades[--numJugades];
+        int color = caselles[casella];
+        int marca = marques[numJugades];
+        while (numHistorial > marca) {
+            int fill = historial[--numHistorial];
+            int arrel = pare[fill];
+            mida[arrel] -= mida[fill];
+            pare[fill] = fill;
+        }
+        caselles[casella] = 0;
+        pedres[color == 1 ? 0 : 1][casella >> 6] &= ~(1L << casella);
+        hash ^= zobrist.clau(casella / size, casella % size, color);
+        int girada = gira(casella);
+        hashGirat ^= zobrist.clau(girada / size, girada % size, color);
+        numPedres--;
+        guanyador = 0;
+        colorActual = color;
+        if (termes != null) {
+            termes.actualitza(this, casella);
+        }
+    }
+
+    /**
+     * Converteix el tauler en un estat del joc.
+     *
+     * @return Un {@link HexGameStatus} amb les mateixes pedres i torn.
+     */
+    public HexGameStatus toHexGameStatus() {
+        // El constructor de HexGameStatus rep les files per coordenada Y
+        byte[][] board = new byte[size][size];
+        for (int c = 0; c < numCaselles; c++) {
+            board[c % size][c / size] = caselles[c];
+        }
+        return new HexGameStatus(board, getCurrentPlayer());
+    }
+
+    /**
+     * @param casella Índex de la casella.
+     * @return El punt corresponent a la casella.
+     */
+    public Point toPoint(int casella) {
+        return new Point(casella / size, casella % size);
+    }
+
+    /**
+     * @param p Un punt del tauler.
+     * @return L'índex de casella corresponent.
+     */
+    public int toCasella(Point p) {
+        return p.x * size + p.y;
+    }
+
+    private void posa(int casella, int color) {
+        caselles[casella] = (byte) color;
+        pedres[color == 1 ? 0 : 1][casella >> 6] |= 1L << casella;
+        hash ^= zobrist.clau(casella / size, casella % size, color);
+        int girada = gira(casella);
+        hashGirat ^= zobrist.clau(girada / size, girada % size, color);
+        numPedres++;
+
+        int x = casella / size;
+        int y = casella % size;
+        if (color == 1) {
+            if (x == 0) uneix(casella, numCaselles);
+            if (x == size - 1) uneix(casella, numCaselles + 1);
+        } else {
+            if (y == 0) uneix(casella, numCaselles + 2);
+            if (y == size - 1) uneix(casella, numCaselles + 3);
+        }
+        for (int k = 0; k < numVeins[casella]; k++) {
+            int vei = veins[casella * 6 + k];
+            if (caselles[vei] == color) {
+                uneix(casella, vei);
+            }
+        }
+
+        int vora = color == 1 ? numCaselles : numCaselles + 2;
+        if (troba(vora) == troba(vora + 1)) {
+            guanyador = color;
+        }
+        if (termes != null) {
+            termes.actualitza(this, casella);
+        }
+    }
+
+    private int troba(int node) {
+        while (pare[node] != node) {
+            node = pare[node];
+        }
+        return node;
+    }
+
+    private void uneix(int a, int b) {
+        int ra = troba(a);
+        int rb = troba(b);
+        if (ra == rb) return;
+        if (mida[ra] < mida[rb]) {
+            int t = ra;
+            ra = rb;
+            rb = t;
+        }
+        pare[rb] = ra;
+        mida[ra] += mida[rb];
+        historial[numHistorial++] = rb;
+    }
+}
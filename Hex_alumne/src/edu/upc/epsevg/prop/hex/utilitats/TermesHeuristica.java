@@ -0,0 +1,233 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+/**
+ * Recomptes dels termes de {@link Heuristica} que es mantenen de manera
+ * incremental sobre un {@link TaulerCerca}.
+ *
+ * Per a cada casella ocupada es guarden els patrons que compleix pel seu
+ * color (pont, plantilla de vora, plantilla d'interior, amenaça doble,
+ * escala i veïns buits no alineats), i per a cada color la suma de tots
+ * ells sense pesos. Els pesos depenen de l'etapa de la partida i
+ * s'apliquen en avaluar.
+ *
+ * Els patrons es consulten a les taules de {@link PatronsHeuristica}. Per a
+ * cada casella es guarda el codi del seu entorn des del punt de vista de
+ * cada color, i quan canvia una casella només cal actualitzar el codi i
+ * recalcular els patrons de les caselles que la tenen a l'entorn.
+ */
+public class TermesHeuristica {
+
+    private static final int PONT = PatronsHeuristica.PONT;
+    private static final int VORA = PatronsHeuristica.VORA;
+    private static final int INTERIOR = PatronsHeuristica.INTERIOR;
+    private static final int DOBLE = PatronsHeuristica.DOBLE;
+    private static final int ESCALA = PatronsHeuristica.ESCALA;
+
+    private final int size;
+    private final PatronsHeuristica patrons;
+    private final int[] numVeins;
+    private final int[] numEst;
+
+    private final byte[] colors;
+    // Codi de l'entorn de cada casella: índex 0 per al color 1 i índex 1 per al color -1
+    private final int[][] codis;
+    private final int[] trets;
+    private final int[] desalineats;
+
+    // Recomptes per color: índex 0 per al color 1 i índex 1 per al color -1
+    private final int[] pontVeins = new int[2];
+    private final int[] pontEst = new int[2];
+    private final int[] ponts = new int[2];
+    private final int[] vores = new int[2];
+    private final int[] interiors = new int[2];
+    private final int[] dobles = new int[2];
+    private final int[] escales = new int[2];
+    private final int[] sumaDesalineats = new int[2];
+    private final int[] centrals = new int[2];
+    private final int[] cantonades = new int[2];
+    private final int[] diagonalPrincipal = new int[2];
+    private final int[] diagonalSecundaria = new int[2];
+
+    /**
+     * Calcula tots els termes d'un tauler.
+     *
+     * @param board El tauler.
+     */
+    public TermesHeuristica(TaulerCerca board) {
+        size = board.getSize();
+        patrons = PatronsHeuristica.per(size);
+        int numCaselles = board.getNumCaselles();
+        colors = new byte[numCaselles];
+        trets = new int[numCaselles];
+        desalineats = new int[numCaselles];
+        numVeins = new int[numCaselles];
+        numEst = new int[numCaselles];
+
+        codis = new int[2][numCaselles];
+        for (int c = 0; c < numCaselles; c++) {
+            int x = c / size;
+            numVeins[c] = board.getNumVeins(c);
+            for (int k = 0; k < numVeins[c]; k++) {
+                if (board.getVei(c, k) / size > x) numEst[c]++;
+            }
+            codis[0][c] = patrons.codi(board, c, 1);
+            codis[1][c] = patrons.codi(board, c, -1);
+        }
+
+        for (int c = 0; c < numCaselles; c++) {
+            recalcula(board, c);
+        }
+    }
+
+    /**
+     * Actualitza els termes després que una casella hagi canviat de color.
+     *
+     * @param board El tauler, ja amb la casella canviada.
+     * @param casella La casella que ha canviat.
+     */
+    public void actualitza(TaulerCerca board, int casella) {
+        int abans = colors[casella];
+        int despres = board.getPos(casella);
+        int canvi1 = PatronsHeuristica.xifra(despres, 1) - PatronsHeuristica.xifra(abans, 1);
+        int canvi2 = PatronsHeuristica.xifra(despres, -1) - PatronsHeuristica.xifra(abans, -1);
+        for (int k = 0; k < patrons.getNumAfectades(casella); k++) {
+            int c = patrons.getAfectada(casella, k);
+            int pes = patrons.getPes(casella, k);
+            codis[0][c] += canvi1 * pes;
+            codis[1][c] += canvi2 * pes;
+            recalcula(board, c);
+        }
+        recalcula(board, casella);
+    }
+
+    private void recalcula(TaulerCerca board, int c) {
+        if (colors[c] != 0) {
+            aplica(c, -1);
+        }
+        int color = board.getPos(c);
+        colors[c] = (byte) color;
+        if (color == 0) return;
+
+        int codi = codis[index(color)][c];
+        trets[c] = PatronsHeuristica.trets(codi);
+        desalineats[c] = PatronsHeuristica.desalineats(codi, color);
+        aplica(c, 1);
+    }
+
+    private void aplica(int c, int signe) {
+        int i = colors[c] == 1 ? 0 : 1;
+        int t = trets[c];
+        if ((t & PONT) != 0) {
+            ponts[i] += signe;
+            pontVeins[i] += signe * numVeins[c];
+            pontEst[i] += signe * numEst[c];
+        }
+        if ((t & VORA) != 0) vores[i] += signe;
+        if ((t & INTERIOR) != 0) interiors[i] += signe;
+        if ((t & DOBLE) != 0) dobles[i] += signe;
+        if ((t & ESCALA) != 0) escales[i] += signe;
+        sumaDesalineats[i] += signe * desalineats[c];
+
+        int x = c / size;
+        int y = c % size;
+        if (Heuristica.isCentralArea(size, x, y)) centrals[i] += signe;
+        if (Heuristica.isCornerArea(size, x, y)) cantonades[i] += signe;
+        if (x == y) diagonalPrincipal[i] += signe;
+        if (y == size - 1 - x) diagonalSecundaria[i] += signe;
+    }
+
+    private static int index(int color) {
+        return color == 1 ? 0 : 1;
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return La suma del nombre de veïns de les pedres que formen pont.
+     */
+    public int getPontVeins(int color) {
+        return pontVeins[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return La suma del nombre de veïns a l'est de les pedres que formen
+     * pont.
+     */
+    public int getPontEst(int color) {
+        return pontEst[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres que formen pont.
+     */
+    public int getPonts(int color) {
+        return ponts[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres que formen una plantilla de vora.
+     */
+    public int getVores(int color) {
+        return vores[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres que formen una plantilla d'interior.
+     */
+    public int getInteriors(int color) {
+        return interiors[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres amb almenys dos veïns buits.
+     */
+    public int getDobles(int color) {
+        return dobles[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres que formen una escala.
+     */
+    public int getEscales(int color) {
+        return escales[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return La suma dels veïns buits no alineats amb l'objectiu.
+     */
+    public int getDesalineats(int color) {
+        return sumaDesalineats[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres a l'àrea central.
+     */
+    public int getCentrals(int color) {
+        return centrals[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @return El nombre de pedres a les cantonades.
+     */
+    public int getCantonades(int color) {
+        return cantonades[index(color)];
+    }
+
+    /**
+     * @param color Color del jugador (1 o -1).
+     * @param principal true per la diagonal principal, false per la
+     * secundària.
+     * @return El nombre de pedres del color a la diagonal.
+     */
+    public int getDiagonal(int color, boolean principal) {
+        return principal ? diagonalPrincipal[index(color)] : diagonalSecundaria[index(color)];
+    }
+}
@@ -0,0 +1,86 @@
+package edu.upc.epsevg.prop.hex.utilitats;
+
+import edu.upc.epsevg.prop.hex.HexGameStatus;
+import edu.upc.epsevg.prop.hex.PlayerType;
+
+import java.util.SplittableRandom;
+
+/**
+ * Claus de Zobrist per codificar una posició del tauler de Hex en un enter de
+ * 64 bits. El hash es manté de manera incremental fent la XOR de la clau de la
+ * casella i el color de cada pedra que es col·loca.
+ */
+public class Zobrist {
+
+    private static final long LLAVOR = 0x9E3779B97F4A7C15L;
+
+    private final int size;
+    private final long[] claus;
+    private final long[] clausJugador;
+
+    /**
+     * Constructor de la classe Zobrist. Les claus es generen amb una llavor
+     * fixa perquè el hash d'una posició sigui el mateix entre execucions.
+     *
+     * @param size La mida del tauler.
+     */
+    public Zobrist(int size) {
+        this.size = size;
+        SplittableRandom random = new SplittableRandom(LLAVOR + size);
+        claus = new long[size * size * 2];
+        for (int i = 0; i < claus.length; i++) {
+            claus[i] = random.nextLong();
+        }
+        clausJugador = new long[]{random.nextLong(), random.nextLong()};
+    }
+
+    /**
+     * @return La mida del tauler per a la qual s'han generat les claus.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Obté la clau d'una pedra col·locada en una casella.
+     *
+     * @param x Coordenada X de la casella.
+     * @param y Coordenada Y de la casella.
+     * @param color Color de la pedra (1 o -1).
+     * @return La clau de Zobrist de la pedra.
+     */
+    public long clau(int x, int y, int color) {
+        return claus[(x * size + y) * 2 + (color == 1 ? 0 : 1)];
+    }
+
+    /**
+     * Obté la clau que identifica el jugador des del punt de vista del qual
+     * s'avalua la cerca. Cal incloure-la perquè les puntuacions guardades a la
+     * taula depenen d'aquest jugador.
+     *
+     * @param player El jugador.
+     * @return La clau associada al jugador.
+     */
+    public long clauJugador(PlayerType player) {
+        return clausJugador[PlayerType.to_01(player)];
+    }
+
+    /**
+     * Calcula el hash complet d'un tauler recorrent totes les caselles.
+     *
+     * @param tauler L'estat del joc.
+     * @return El hash de Zobrist de la posició.
+     */
+    public long hash(HexGameStatus tauler) {
+        long hash = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int color = tauler.getPos(x, y);
+                if (color != 0) {
+                    hash ^= clau(x, y, color);
+                }
+            }
+        }
+        return hash;
+    }
+}